@@ -1,6 +1,10 @@
 package bg.uni.sofia.fmi.mjt.wallet.client;
 
+import bg.uni.sofia.fmi.mjt.wallet.client.codec.BinaryCodec;
+import bg.uni.sofia.fmi.mjt.wallet.client.codec.WireFormat;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Response;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import bg.uni.sofia.fmi.mjt.wallet.client.command.Command;
 import bg.uni.sofia.fmi.mjt.wallet.client.exception.ServerNotFoundException;
 
@@ -9,20 +13,50 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Every command is sent with a request id of its own and a dedicated reader thread completes the
+ * pending request whose id the response carries. This lets callers pipeline many commands on the
+ * connection with {@link #sendRequestAsync(Command)} instead of paying a round trip for each of them.
+ * The commands are sent as JSON unless the client is created for the binary wire format, which it announces
+ * to the server with a single magic byte in front of its first frame.
+ */
 public class CryptoWalletClient {
     private static final int SERVER_PORT = 7777;
     private static final String SERVER_HOST = "localhost";
     private static final int BUFFER_SIZE = 4096;
+    private static final int FRAME_HEADER_SIZE = Integer.BYTES;
+    private static final int MAX_FRAME_SIZE = 1 << 20;
+    private static final String READER_THREAD_NAME = "wallet-client-reader";
     private Gson gson;
 
     private ByteBuffer buffer;
 
     private SocketChannel socketChannel;
 
+    private final WireFormat wireFormat;
+    private final Object writeLock;
+    private final AtomicLong nextRequestId;
+    private final Map<Long, CompletableFuture<Response>> pendingRequests;
+    private volatile IOException connectionFailure;
+    private boolean isWireFormatAnnounced;
+
     public CryptoWalletClient() {
+        this(WireFormat.JSON);
+    }
+
+    public CryptoWalletClient(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
         gson = new Gson();
         buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        writeLock = new Object();
+        nextRequestId = new AtomicLong();
+        pendingRequests = new ConcurrentHashMap<>();
     }
 
     public void run() throws ServerNotFoundException {
@@ -32,6 +66,9 @@ public class CryptoWalletClient {
         } catch (IOException e) {
             throw new ServerNotFoundException("The server is not working at the moment!", e);
         }
+        Thread reader = new Thread(this::readResponses, READER_THREAD_NAME);
+        reader.setDaemon(true);
+        reader.start();
     }
 
     public void stop() {
@@ -44,21 +81,117 @@ public class CryptoWalletClient {
 
     public String sendRequest(Command command) {
         try {
-            buffer.clear();
-            buffer.put(gson.toJson(command).getBytes());
-            buffer.flip(); // switch to reading mode
-            socketChannel.write(buffer); // buffer drain
+            return gson.toJson(sendRequestAsync(command).join());
+        } catch (CompletionException e) {
+            throw new RuntimeException("There is a problem with the network communication", e.getCause());
+        }
+    }
+
+    /**
+     * Sends the command without waiting for the previous ones to be answered.
+     *
+     * @return a future that is completed with the server's response to this command, or completed
+     * exceptionally if the connection is lost before the response arrives
+     */
+    public CompletableFuture<Response> sendRequestAsync(Command command) {
+        long requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        pendingRequests.put(requestId, response);
+        try {
+            IOException failure = connectionFailure;
+            if (failure != null) {
+                throw failure;
+            }
+            ByteBuffer frame = encodeFrame(command.withRequestId(requestId));
+            synchronized (writeLock) {
+                if (!isWireFormatAnnounced && wireFormat == WireFormat.BINARY) {
+                    // the magic byte, header and payload go out in a single write, otherwise Nagle's
+                    // algorithm delays the payload
+                    frame = ByteBuffer.allocate(1 + frame.remaining()).put(BinaryCodec.MAGIC).put(frame).flip();
+                }
+                isWireFormatAnnounced = true;
+                writeFully(frame);
+            }
+        } catch (IOException e) {
+            pendingRequests.remove(requestId);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                Response response = decodeResponse(readFrame());
+                CompletableFuture<Response> pending = pendingRequests.remove(response.getRequestId());
+                if (pending != null) {
+                    pending.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            connectionFailure = e;
+            for (Long requestId : pendingRequests.keySet()) {
+                CompletableFuture<Response> pending = pendingRequests.remove(requestId);
+                if (pending != null) {
+                    pending.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer encodeFrame(Command command) {
+        ByteBuffer frame;
+        if (wireFormat == WireFormat.BINARY) {
+            frame = BinaryCodec.encodeCommand(command, FRAME_HEADER_SIZE);
+        } else {
+            byte[] request = gson.toJson(command).getBytes(StandardCharsets.UTF_8);
+            frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + request.length);
+            frame.position(FRAME_HEADER_SIZE);
+            frame.put(request);
+            frame.flip();
+        }
+        frame.putInt(0, frame.remaining() - FRAME_HEADER_SIZE);
+        return frame;
+    }
+
+    private Response decodeResponse(ByteBuffer payload) throws IOException {
+        if (wireFormat == WireFormat.BINARY) {
+            return BinaryCodec.decodeResponse(payload);
+        }
+        try {
+            return gson.fromJson(new String(payload.array(), payload.arrayOffset() + payload.position(),
+                payload.remaining(), StandardCharsets.UTF_8), Response.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed response: " + e.getMessage(), e);
+        }
+    }
 
-            buffer.clear(); // switch to writing mode
-            socketChannel.read(buffer); // buffer fill
-            buffer.flip(); // switch to reading mode
+    private ByteBuffer readFrame() throws IOException {
+        buffer.clear();
+        buffer.limit(FRAME_HEADER_SIZE);
+        readFully(buffer);
+        buffer.flip();
+        int length = buffer.getInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
 
-            byte[] byteArray = new byte[buffer.remaining()];
-            buffer.get(byteArray);
+        ByteBuffer response = length <= BUFFER_SIZE ? buffer.clear().limit(length) : ByteBuffer.allocate(length);
+        readFully(response);
+        return response.flip();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            socketChannel.write(source);
+        }
+    }
 
-            return new String(byteArray, StandardCharsets.UTF_8); // buffer drain
-        } catch (Exception e) {
-            throw new RuntimeException("There is a problem with the network communication", e);
+    private void readFully(ByteBuffer destination) throws IOException {
+        while (destination.hasRemaining()) {
+            if (socketChannel.read(destination) < 0) {
+                throw new IOException("The server has closed the connection!");
+            }
         }
     }
 }
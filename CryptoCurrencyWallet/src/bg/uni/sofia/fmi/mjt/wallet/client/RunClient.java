@@ -1,5 +1,6 @@
 package bg.uni.sofia.fmi.mjt.wallet.client;
 
+import bg.uni.sofia.fmi.mjt.wallet.client.codec.WireFormat;
 import bg.uni.sofia.fmi.mjt.wallet.client.command.Command;
 import bg.uni.sofia.fmi.mjt.wallet.client.command.CommandCreator;
 import bg.uni.sofia.fmi.mjt.wallet.client.command.CommandExecutor;
@@ -11,9 +12,12 @@ import bg.uni.sofia.fmi.mjt.wallet.client.ui.ConsoleUI;
 import bg.uni.sofia.fmi.mjt.wallet.client.ui.UI;
 
 public class RunClient {
+    private static final String WIRE_FORMAT_PROPERTY = "wallet.wire.format";
+
     public static void main(String[] args) {
         UI ui = new ConsoleUI();
-        CryptoWalletClient cryptoWalletClient = new CryptoWalletClient();
+        WireFormat wireFormat = WireFormat.valueOf(System.getProperty(WIRE_FORMAT_PROPERTY, "json").toUpperCase());
+        CryptoWalletClient cryptoWalletClient = new CryptoWalletClient(wireFormat);
         try {
             cryptoWalletClient.run();
         } catch (ServerNotFoundException e) {
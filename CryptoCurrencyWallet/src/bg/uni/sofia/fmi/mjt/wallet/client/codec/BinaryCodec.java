@@ -0,0 +1,134 @@
+package bg.uni.sofia.fmi.mjt.wallet.client.codec;
+
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Response;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Client side of the compact binary protocol. The layout must stay in sync with the server's BinaryWireCodec:
+ * a command is an opcode byte, a varint request id and the arguments of the opcode, where strings are a varint
+ * byte length followed by UTF-8 bytes, amounts and prices are raw 8-byte doubles and page numbers and order ids
+ * are varints. The side of an order is the string buy or sell.
+ * A response is a varint request id, a 0/1 ok byte and the UTF-8 text up to the end of the frame.
+ */
+public class BinaryCodec {
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION_BIT = 0x80;
+    private static final int MAX_VARINT_LONG_SIZE = 10;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes the command into a new buffer that has the frame header space reserved at its start.
+     * The arguments are expected to be already validated by the CommandValidator.
+     */
+    public static ByteBuffer encodeCommand(Command command, int headerSize) {
+        String[] args = command.getArguments();
+        ByteBuffer destination = ByteBuffer.allocate(headerSize + maxEncodedSize(args));
+        destination.position(headerSize);
+        destination.put(opcode(command));
+        writeVarLong(destination, command.getRequestId());
+        switch (command.getCommandLabel()) {
+            case REGISTER, LOGIN -> {
+                writeString(destination, args[0]);
+                writeString(destination, args[1]);
+            }
+            case DEPOSIT_MONEY -> destination.putDouble(Double.parseDouble(args[0]));
+            case LIST_OFFERINGS -> writeVarLong(destination, Integer.parseInt(args[0]));
+            case BUY_ASSET, BUY_ASSET_QUANTITY, SELL_ASSET_QUANTITY, SELL_ASSET_VALUE -> {
+                writeString(destination, args[0]);
+                destination.putDouble(Double.parseDouble(args[1]));
+            }
+            case SELL_ASSET -> writeString(destination, args[0]);
+            case LIMIT_ORDER, MARKET_ORDER -> {
+                writeString(destination, args[0]);
+                writeString(destination, args[1]);
+                for (int i = 2; i < args.length; i++) {
+                    destination.putDouble(Double.parseDouble(args[i]));
+                }
+            }
+            case CANCEL_ORDER -> {
+                writeString(destination, args[0]);
+                writeVarLong(destination, Long.parseLong(args[1]));
+            }
+            default -> {
+            }
+        }
+        return destination.flip();
+    }
+
+    public static Response decodeResponse(ByteBuffer payload) throws IOException {
+        try {
+            long requestId = readVarLong(payload);
+            boolean ok = payload.get() != 0;
+            String text = new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(),
+                StandardCharsets.UTF_8);
+            return new Response(ok, text, requestId);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated response!", e);
+        }
+    }
+
+    private static byte opcode(Command command) {
+        return switch (command.getCommandLabel()) {
+            case REGISTER -> 1;
+            case LOGIN -> 2;
+            case DEPOSIT_MONEY -> 3;
+            case LIST_OFFERINGS -> 4;
+            case BUY_ASSET -> 5;
+            case SELL_ASSET -> 6;
+            case WALLET_SUMMARY -> 7;
+            case WALLET_OVERALL_SUMMARY -> 8;
+            case BUY_ASSET_QUANTITY -> 9;
+            case SELL_ASSET_QUANTITY -> 10;
+            case SELL_ASSET_VALUE -> 11;
+            case LIMIT_ORDER -> 12;
+            case MARKET_ORDER -> 13;
+            case CANCEL_ORDER -> 14;
+            default -> throw new IllegalArgumentException(
+                "Command is not sent to the server: " + command.getCommandLabel());
+        };
+    }
+
+    private static int maxEncodedSize(String[] args) {
+        int size = 1 + MAX_VARINT_LONG_SIZE;
+        for (String arg : args) {
+            size += MAX_VARINT_LONG_SIZE + arg.length() * 3;
+        }
+        return size;
+    }
+
+    private static void writeString(ByteBuffer destination, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(destination, bytes.length);
+        destination.put(bytes);
+    }
+
+    private static void writeVarLong(ByteBuffer destination, long value) {
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+            destination.put((byte) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT));
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+        destination.put((byte) value);
+    }
+
+    private static long readVarLong(ByteBuffer source) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_PAYLOAD_BITS) {
+            byte b = source.get();
+            value |= (long) (b & VARINT_PAYLOAD_MASK) << shift;
+            if ((b & VARINT_CONTINUATION_BIT) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long!");
+    }
+}
@@ -0,0 +1,6 @@
+package bg.uni.sofia.fmi.mjt.wallet.client.codec;
+
+public enum WireFormat {
+    JSON,
+    BINARY
+}
@@ -3,10 +3,16 @@ package bg.uni.sofia.fmi.mjt.wallet.client.command;
 public class Command {
     private CommandLabel commandLabel;
     private String[] arguments;
+    private long requestId;
 
     public Command(CommandLabel commandLabel, String[] arguments) {
+        this(commandLabel, arguments, 0);
+    }
+
+    public Command(CommandLabel commandLabel, String[] arguments, long requestId) {
         this.commandLabel = commandLabel;
         this.arguments = arguments;
+        this.requestId = requestId;
     }
 
     public CommandLabel getCommandLabel() {
@@ -17,6 +23,14 @@ public class Command {
         return arguments;
     }
 
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public Command withRequestId(long requestId) {
+        return new Command(commandLabel, arguments, requestId);
+    }
+
     @Override
     public String toString() {
         StringBuilder res = new StringBuilder();
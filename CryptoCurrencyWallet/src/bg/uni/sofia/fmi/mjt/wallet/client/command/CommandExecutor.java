@@ -39,6 +39,10 @@ public class CommandExecutor {
                     case DEPOSIT_MONEY -> depositMoney(command);
                     case BUY_ASSET -> buyAsset(command);
                     case SELL_ASSET -> sellAsset(command);
+                    case BUY_ASSET_QUANTITY, SELL_ASSET_QUANTITY, SELL_ASSET_VALUE -> assetAndAmountCommand(command);
+                    case LIMIT_ORDER -> limitOrder(command);
+                    case MARKET_ORDER -> marketOrder(command);
+                    case CANCEL_ORDER -> cancelOrder(command);
                     case LIST_OFFERINGS -> listOfferings(command);
                     case WALLET_SUMMARY, WALLET_OVERALL_SUMMARY -> noArgsCommand(command);
                     case LOG_OUT -> logOut();
@@ -60,7 +64,13 @@ public class CommandExecutor {
         ui.write(CommandLabel.DEPOSIT_MONEY.userCommand + " <money>");
         ui.write(CommandLabel.LIST_OFFERINGS.userCommand + " <page number>");
         ui.write(CommandLabel.BUY_ASSET.userCommand + " <assetID> <money>");
+        ui.write(CommandLabel.BUY_ASSET_QUANTITY.userCommand + " <assetID> <quantity>");
         ui.write(CommandLabel.SELL_ASSET.userCommand + " <assetID>");
+        ui.write(CommandLabel.SELL_ASSET_QUANTITY.userCommand + " <assetID> <quantity>");
+        ui.write(CommandLabel.SELL_ASSET_VALUE.userCommand + " <assetID> <money>");
+        ui.write(CommandLabel.LIMIT_ORDER.userCommand + " <buy|sell> <assetID> <quantity> <price>");
+        ui.write(CommandLabel.MARKET_ORDER.userCommand + " <buy|sell> <assetID> <quantity>");
+        ui.write(CommandLabel.CANCEL_ORDER.userCommand + " <assetID> <order ID>");
         ui.write(CommandLabel.WALLET_SUMMARY.userCommand);
         ui.write(CommandLabel.WALLET_OVERALL_SUMMARY.userCommand);
         ui.write(CommandLabel.LOG_OUT.userCommand);
@@ -126,6 +136,34 @@ public class CommandExecutor {
         printResponse(command);
     }
 
+    private void assetAndAmountCommand(Command command) {
+        if (!validator.validateAssetAndAmount(command)) {
+            return;
+        }
+        printResponse(command);
+    }
+
+    private void limitOrder(Command command) {
+        if (!validator.validateLimitOrder(command)) {
+            return;
+        }
+        printResponse(command);
+    }
+
+    private void marketOrder(Command command) {
+        if (!validator.validateMarketOrder(command)) {
+            return;
+        }
+        printResponse(command);
+    }
+
+    private void cancelOrder(Command command) {
+        if (!validator.validateCancelOrder(command)) {
+            return;
+        }
+        printResponse(command);
+    }
+
     private void listOfferings(Command command) {
         if (!validator.validateListOfferings(command)) {
             return;
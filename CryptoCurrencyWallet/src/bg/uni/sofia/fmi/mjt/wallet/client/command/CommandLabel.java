@@ -11,6 +11,12 @@ public enum CommandLabel {
     SELL_ASSET("sell"),
     WALLET_SUMMARY("get-wallet-summary"),
     WALLET_OVERALL_SUMMARY("get-wallet-overall-summary"),
+    BUY_ASSET_QUANTITY("buy-quantity"),
+    SELL_ASSET_QUANTITY("sell-quantity"),
+    SELL_ASSET_VALUE("sell-value"),
+    LIMIT_ORDER("limit-order"),
+    MARKET_ORDER("market-order"),
+    CANCEL_ORDER("cancel-order"),
     HELP("help"),
     LOG_OUT("log-out"),
     QUIT("quit");
@@ -21,6 +21,8 @@ public class CommandValidator {
     private static final String DIGITS_REGEX = "^\\d+$";
     private static final int ONE_DESIRED_ARG = 1;
     private static final int TWO_DESIRED_ARGS = 2;
+    private static final int THREE_DESIRED_ARGS = 3;
+    private static final int FOUR_DESIRED_ARGS = 4;
     private static final int ZERO_DESIRED_ARGS = 0;
     private static final String INVALID_SIZE_OF_ARGS = "You passed an invalid count of arguments!";
     private static final String WRONG_USERNAME_MESSAGE =
@@ -34,6 +36,11 @@ public class CommandValidator {
     private static final String WRONG_POSITIVE_INTEGER_MESSAGE =
         "Page number is not in correct format! Please insert a valid number!";
 
+    private static final String WRONG_ORDER_SIDE_MESSAGE = "Order side must be buy or sell!";
+    private static final String WRONG_ORDER_ID_MESSAGE =
+        "Order ID is not in correct format! Please insert a valid number!";
+    private static final Set<String> ORDER_SIDES = Set.of("buy", "sell");
+
     private static final String WRONG_ASSET_ID_MESSAGE = "There is no asset with this asset ID!";
     private UI ui;
     private final Set<String> assetIds;
@@ -87,6 +94,13 @@ public class CommandValidator {
     }
 
     public boolean validateBuyAsset(Command command) {
+        return validateAssetAndAmount(command);
+    }
+
+    /**
+     * Validates the commands that take an asset ID and a quantity or a sum of money.
+     */
+    public boolean validateAssetAndAmount(Command command) {
         if (!checkSizeOfPassedArguments(command.getArguments().length, TWO_DESIRED_ARGS)) {
             return false;
         }
@@ -112,10 +126,57 @@ public class CommandValidator {
         return true;
     }
 
+    public boolean validateLimitOrder(Command command) {
+        return validateOrder(command, FOUR_DESIRED_ARGS);
+    }
+
+    public boolean validateMarketOrder(Command command) {
+        return validateOrder(command, THREE_DESIRED_ARGS);
+    }
+
+    public boolean validateCancelOrder(Command command) {
+        if (!checkSizeOfPassedArguments(command.getArguments().length, TWO_DESIRED_ARGS)) {
+            return false;
+        }
+        if (!isValidAssetId(command.getArguments()[0].toUpperCase())) {
+            ui.writeError(WRONG_ASSET_ID_MESSAGE);
+            return false;
+        }
+        if (!isValidOrderId(command.getArguments()[1])) {
+            ui.writeError(WRONG_ORDER_ID_MESSAGE);
+            return false;
+        }
+        return true;
+    }
+
     public boolean validateCommandsWithNoArguments(Command command) {
         return checkSizeOfPassedArguments(command.getArguments().length, ZERO_DESIRED_ARGS);
     }
 
+    /**
+     * Validates an order of the form: side, asset ID and then the quantity and the price, if any.
+     */
+    private boolean validateOrder(Command command, int desiredArgs) {
+        if (!checkSizeOfPassedArguments(command.getArguments().length, desiredArgs)) {
+            return false;
+        }
+        if (!ORDER_SIDES.contains(command.getArguments()[0].toLowerCase())) {
+            ui.writeError(WRONG_ORDER_SIDE_MESSAGE);
+            return false;
+        }
+        if (!isValidAssetId(command.getArguments()[1].toUpperCase())) {
+            ui.writeError(WRONG_ASSET_ID_MESSAGE);
+            return false;
+        }
+        for (int i = 2; i < desiredArgs; i++) {
+            if (!isValidDouble(command.getArguments()[i])) {
+                ui.writeError(WRONG_DOUBLE_NUMBER_MESSAGE);
+                return false;
+            }
+        }
+        return true;
+    }
+
     private boolean isValidDouble(String str) {
         return str.matches(DOUBLE_REGEX);
     }
@@ -141,6 +202,14 @@ public class CommandValidator {
         return assetIds.contains(userInput);
     }
 
+    private static boolean isValidOrderId(String input) {
+        try {
+            return Pattern.matches(DIGITS_REGEX, input) && Long.parseLong(input) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     private static boolean isValidPositiveInteger(String input) {
         return Pattern.matches(DIGITS_REGEX, input) && Integer.parseInt(input) > 0;
     }
@@ -1,41 +1,63 @@
 package bg.uni.sofia.fmi.mjt.wallet.server;
 
-import com.google.gson.Gson;
-import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
 import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
-import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.Reactor;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.WorkerPool;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.WorkerPoolMetrics;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
 
-public class CryptoWalletServer {
+/**
+ * Accepts connections on the calling thread and hands them round-robin to a fixed number of reactors,
+ * each of which runs its own Selector on its own thread. When a worker pool is given, the reactors only
+ * do the network I/O and the commands are executed on the pool.
+ */
+public class CryptoWalletServer implements CryptoWalletServerAPI {
     public static final int SERVER_PORT = 7777;
     private static final String SERVER_HOST = "localhost";
-    private static final int BUFFER_SIZE = 4096;
-    private boolean isServerOn;
-    private Selector selector;
-    private ByteBuffer buffer;
+    private static final int DEFAULT_REACTORS_COUNT = Runtime.getRuntime().availableProcessors();
+    private volatile boolean isStopRequested;
+    private volatile Selector selector;
     private final CommandExecutor commandExecutor;
-
-    private final Gson gson;
+    private final int reactorsCount;
+    private final WorkerPool workerPool;
+    private Reactor[] reactors;
+    private Thread[] reactorThreads;
+    private int nextReactor;
 
     public CryptoWalletServer(CommandExecutor executor) {
+        this(executor, DEFAULT_REACTORS_COUNT);
+    }
+
+    public CryptoWalletServer(CommandExecutor executor, int reactorsCount) {
+        this(executor, reactorsCount, null);
+    }
+
+    public CryptoWalletServer(CommandExecutor executor, int reactorsCount, WorkerPool workerPool) {
+        if (reactorsCount <= 0) {
+            throw new IllegalArgumentException("Reactors count must be a positive number!");
+        }
         this.commandExecutor = executor;
-        gson = new Gson();
+        this.reactorsCount = reactorsCount;
+        this.workerPool = workerPool;
     }
 
+    @Override
     public void start() {
         try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            // published before the flag is checked, so a stop() either wakes the selector or is seen by the loop
             selector = Selector.open();
+            startReactors();
             configServerSocketChannel(serverSocketChannel, selector);
-            while (isServerOn) {
+            while (!isStopRequested) {
                 int readyChannels = selector.select();
                 if (readyChannels == 0) {
                     continue;
@@ -43,30 +65,35 @@ public class CryptoWalletServer {
                 Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
                 while (keyIterator.hasNext()) {
                     SelectionKey key = keyIterator.next();
-                    if (key.isReadable()) {
-                        SocketChannel sc = (SocketChannel) key.channel();
-                        String clientInput = getClientInput(sc);
-                        System.out.println(clientInput);
-                        if (clientInput == null) {
-                            continue;
-                        }
-                        processResponse(sc, key, clientInput);
-                    } else if (key.isAcceptable()) {
+                    keyIterator.remove();
+                    if (key.isAcceptable()) {
                         accept(key);
                     }
-                    keyIterator.remove();
                 }
             }
         } catch (IOException e) {
             throw new RuntimeException("There is a problem with starting the server", e);
+        } finally {
+            closeSelector();
+            stopReactors();
+            if (workerPool != null) {
+                workerPool.shutdown();
+                System.out.println(workerPool.getMetrics());
+            }
         }
     }
 
+    public WorkerPoolMetrics getWorkerPoolMetrics() {
+        return workerPool == null ? null : workerPool.getMetrics();
+    }
+
+    @Override
     public void stop() {
-        this.isServerOn = false;
+        this.isStopRequested = true;
         System.out.println("The server is stopped");
-        if (selector.isOpen()) {
-            selector.wakeup();
+        Selector currentSelector = selector;
+        if (currentSelector != null && currentSelector.isOpen()) {
+            currentSelector.wakeup();
         }
     }
 
@@ -74,51 +101,64 @@ public class CryptoWalletServer {
         channel.bind(new InetSocketAddress(SERVER_HOST, SERVER_PORT));
         channel.configureBlocking(false);
         channel.register(selector, SelectionKey.OP_ACCEPT);
-        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
-        this.isServerOn = true;
-        System.out.println("Server started!");
+        System.out.println("Server started with " + reactorsCount + " reactors!");
     }
 
-    private void processResponse(SocketChannel sc, SelectionKey key, String clientInput) throws IOException {
-        Response response = commandExecutor.execute(key, this.gson.fromJson(clientInput, Command.class));
-        printResponse(response);
-        sendResponse(sc, this.gson.toJson(response));
-    }
-
-    private void accept(SelectionKey key) throws IOException {
-        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
-        SocketChannel accept = sockChannel.accept();
-        accept.configureBlocking(false);
-        accept.register(selector, SelectionKey.OP_READ);
+    private void startReactors() throws IOException {
+        reactors = new Reactor[reactorsCount];
+        reactorThreads = new Thread[reactorsCount];
+        for (int i = 0; i < reactorsCount; i++) {
+            reactors[i] = new Reactor("reactor-" + i, commandExecutor, workerPool);
+            reactorThreads[i] = new Thread(reactors[i], reactors[i].getName());
+            reactorThreads[i].start();
+        }
     }
 
-    private String getClientInput(SocketChannel sc) throws IOException {
-        buffer.clear();
-        int r = sc.read(buffer);
-        if (r < 0) {
-            System.out.println("Client has closed the connection!");
-            sc.close();
-            return null;
+    private void closeSelector() {
+        if (selector == null) {
+            return;
+        }
+        try {
+            // the listening socket is released only once it is deregistered from the selector
+            selector.close();
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
         }
-        buffer.flip();
-        byte[] clientInputBytes = new byte[buffer.remaining()];
-        buffer.get(clientInputBytes);
-
-        return new String(clientInputBytes, StandardCharsets.UTF_8);
     }
 
-    private void sendResponse(SocketChannel sc, String response) throws IOException {
-        buffer.clear();
-        buffer.put(response.getBytes());
-        buffer.flip();
-        sc.write(buffer);
+    private void stopReactors() {
+        if (reactors == null) {
+            return;
+        }
+        for (Reactor reactor : reactors) {
+            if (reactor != null) {
+                reactor.stop();
+            }
+        }
+        // a reactor that executes the commands itself finishes the one in progress before it stops
+        for (Thread reactorThread : reactorThreads) {
+            if (reactorThread != null) {
+                try {
+                    reactorThread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 
-    private void printResponse(Response response) {
-        if (response.isOk()) {
-            System.out.println("Response: " + response.getResponse());
-        } else {
-            System.err.println("Response Error: " + response.getResponse());
+    private void accept(SelectionKey key) {
+        ServerSocketChannel sockChannel = (ServerSocketChannel) key.channel();
+        try {
+            SocketChannel accept = sockChannel.accept();
+            if (accept == null) {
+                return;
+            }
+            reactors[nextReactor].register(accept);
+            nextReactor = (nextReactor + 1) % reactorsCount;
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
         }
     }
 }
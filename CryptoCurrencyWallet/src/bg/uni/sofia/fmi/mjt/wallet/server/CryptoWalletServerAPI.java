@@ -0,0 +1,11 @@
+package bg.uni.sofia.fmi.mjt.wallet.server;
+
+public interface CryptoWalletServerAPI {
+    /**
+     * Starts serving clients. Blocks the calling thread until {@link #stop()} is called
+     * and every command in progress is finished.
+     */
+    void start();
+
+    void stop();
+}
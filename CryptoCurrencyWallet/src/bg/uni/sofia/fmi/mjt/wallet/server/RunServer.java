@@ -4,41 +4,227 @@ import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoWalletAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoWalletController;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.RequestBudget;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.AsyncCryptoConsumer;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.AsyncCryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.CryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.SyncCryptoConsumer;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.LockStripeMetrics;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderBookService;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserLocks;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserService;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.WalletService;
-import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.WalletServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.FileDatabase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.MappedFileDatabase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.WriteBehindPolicy;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.password.MDPasswordHasher;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.password.PasswordHasherAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.RejectionPolicy;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.WorkerPool;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.http.HttpClient;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class RunServer {
     private static final String USERS_FILE_PATH =
         "users.txt";
+    private static final String MAPPED_USERS_FILE_PATH = "users.db";
+    private static final String PRICES_FILE_PATH = "prices.bin";
     private static final String RES_DIRECTORY = "res";
 
     private static final int ASSETS_TO_SHOW = 20;
 
+    private static final String DATABASE_PROPERTY = "wallet.database";
+    private static final String FILE_DATABASE = "file";
+    private static final String MAPPED_DATABASE = "mapped";
+    private static final String SNAPSHOT_INTERVAL_PROPERTY = "wallet.database.snapshot.interval";
+    private static final String WRITE_BEHIND_DELAY_PROPERTY = "wallet.database.write.behind.delay";
+    private static final String WRITE_BEHIND_MAX_DIRTY_PROPERTY = "wallet.database.write.behind.max.dirty";
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+    private static final int DEFAULT_WRITE_BEHIND_MAX_DIRTY = 1000;
+    private static final String MAPPED_SYNC_INTERVAL_PROPERTY = "wallet.database.mapped.sync.interval";
+    private static final int DEFAULT_MAPPED_SYNC_INTERVAL_IN_MILLIS = 1000;
+    private static final String PRICES_MAX_AGE_PROPERTY = "wallet.prices.max.age.mins";
+    private static final String PRICES_CHECK_PERIOD_PROPERTY = "wallet.prices.check.period.secs";
+    private static final int DEFAULT_PRICES_MAX_AGE_IN_MINS = 30;
+    private static final int DEFAULT_PRICES_CHECK_PERIOD_IN_SECS = 60;
+    private static final String PRICES_BATCH_WINDOW_PROPERTY = "wallet.prices.batch.window.millis";
+    private static final int DEFAULT_PRICES_BATCH_WINDOW_IN_MILLIS = 50;
+    private static final String COIN_API_TIMEOUT_PROPERTY = "wallet.coinapi.timeout.secs";
+    private static final int DEFAULT_COIN_API_TIMEOUT_IN_SECS = 30;
+    private static final String COIN_API_URL_PROPERTY = "wallet.coinapi.url";
+    private static final String COIN_API_DAILY_QUOTA_PROPERTY = "wallet.coinapi.daily.quota";
+    private static final int DEFAULT_COIN_API_DAILY_QUOTA = 100;
+    private static final String USER_LOCK_STRIPES_PROPERTY = "wallet.user.lock.stripes";
+    private static final int DEFAULT_USER_LOCK_STRIPES = 64;
+    private static final String SERVER_MODE_PROPERTY = "wallet.server.mode";
+    private static final String SELECTOR_MODE = "selector";
+    private static final String VIRTUAL_THREADS_MODE = "virtual-threads";
+    private static final String REACTORS_PROPERTY = "wallet.reactors";
+    private static final String WORKERS_PROPERTY = "wallet.workers";
+    private static final String WORKER_QUEUE_PROPERTY = "wallet.worker.queue";
+    private static final String REJECTION_POLICY_PROPERTY = "wallet.worker.rejection";
+    private static final int DEFAULT_REACTORS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_WORKERS = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_WORKER_QUEUE = 1024;
+    private static final int SERVER_STOP_TIMEOUT_IN_SECS = 30;
+
     public static void main(String[] args) {
-        Path usersPath = Path.of(RES_DIRECTORY, USERS_FILE_PATH).toAbsolutePath();
-        Database database = new FileDatabase(usersPath);
+        Database database = createDatabase();
 
         HttpClient httpClient = HttpClient.newBuilder().build();
-        CryptoConsumerAPI consumerAPI = new SyncCryptoConsumer(httpClient, System.getenv("CryptoAPI_KEY"));
-        CryptoAssetUpdater updater = new CryptoAssetUpdater(consumerAPI);
-        WalletServiceAPI walletServiceAPI = new WalletService(database, updater);
+        // the quota of the key is shared by both consumers, which correct the budget with what CoinAPI reports
+        RequestBudget requestBudget =
+            new RequestBudget(Integer.getInteger(COIN_API_DAILY_QUOTA_PROPERTY, DEFAULT_COIN_API_DAILY_QUOTA));
+        // a different url points the server to a stand-in for CoinAPI, e.g. for load tests without network
+        String coinApiUrl = System.getProperty(COIN_API_URL_PROPERTY, CryptoConsumerAPI.COIN_API_BASE_URL);
+        CryptoConsumerAPI consumerAPI = new SyncCryptoConsumer(httpClient, coinApiUrl, System.getenv("CryptoAPI_KEY"),
+            requestBudget::onRemainingQuota);
+        AsyncCryptoConsumerAPI asyncConsumerAPI = new AsyncCryptoConsumer(httpClient, coinApiUrl,
+            System.getenv("CryptoAPI_KEY"),
+            Duration.ofSeconds(Integer.getInteger(COIN_API_TIMEOUT_PROPERTY, DEFAULT_COIN_API_TIMEOUT_IN_SECS)),
+            requestBudget::onRemainingQuota);
+        CryptoAssetUpdater updater = new CryptoAssetUpdater(consumerAPI, asyncConsumerAPI,
+            Path.of(RES_DIRECTORY, PRICES_FILE_PATH).toAbsolutePath(), requestBudget);
+        // prices older than the max age are downloaded again in the background, checked once per period
+        updater.setInterval(Integer.getInteger(PRICES_MAX_AGE_PROPERTY, DEFAULT_PRICES_MAX_AGE_IN_MINS));
+        // stale assets requested within the window are downloaded with a single request
+        updater.setBatchWindow(Duration.ofMillis(
+            Integer.getInteger(PRICES_BATCH_WINDOW_PROPERTY, DEFAULT_PRICES_BATCH_WINDOW_IN_MILLIS)));
+        updater.start(Duration.ofSeconds(
+            Integer.getInteger(PRICES_CHECK_PERIOD_PROPERTY, DEFAULT_PRICES_CHECK_PERIOD_IN_SECS)));
+        // trades of one user are serialized on one of the stripes, trades of different users run in parallel
+        UserLocks userLocks = new UserLocks(Integer.getInteger(USER_LOCK_STRIPES_PROPERTY, DEFAULT_USER_LOCK_STRIPES));
+        WalletService walletService = new WalletService(database, updater, userLocks);
+        // the order books are kept in memory, so what the orders lost by a crash reserved is given back
+        // before the first order is placed
+        OrderBookService orderBookService = new OrderBookService(database, updater, userLocks);
+        orderBookService.returnLostReservations();
         PasswordHasherAPI passwordHasherAPI = new MDPasswordHasher();
-        UserServiceAPI userService = new UserService(database, passwordHasherAPI);
+        UserServiceAPI userService = new UserService(database, passwordHasherAPI, userLocks);
 
-        CryptoWalletAPI wallet = new CryptoWalletController(userService, walletServiceAPI);
+        CryptoWalletAPI wallet = new CryptoWalletController(userService, walletService, orderBookService);
         CommandExecutor commandExecutor = new CommandExecutor(wallet);
-        CryptoWalletServer server = new CryptoWalletServer(commandExecutor);
-        server.start();
+        CryptoWalletServerAPI server = createServer(commandExecutor);
+        CountDownLatch serverStopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopServer(server, serverStopped);
+            // the open orders give back what they reserved before the database is flushed
+            orderBookService.cancelAll();
+            closeDatabase(database);
+            // saves the latest prices, so the next start does not wait for CoinAPI
+            updater.close();
+            System.out.println(updater.getMetrics());
+            printContendedStripes(walletService);
+        }));
+        try {
+            server.start();
+        } finally {
+            serverStopped.countDown();
+        }
+    }
+
+    /**
+     * Stops the server and waits until it has finished the commands in progress, so that no command
+     * changes a wallet after the open orders are cancelled.
+     */
+    private static void stopServer(CryptoWalletServerAPI server, CountDownLatch serverStopped) {
+        server.stop();
+        try {
+            if (!serverStopped.await(SERVER_STOP_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
+                System.out.println("The server did not stop in " + SERVER_STOP_TIMEOUT_IN_SECS + " seconds!");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void printContendedStripes(WalletService walletService) {
+        for (LockStripeMetrics metrics : walletService.getLockMetrics()) {
+            if (metrics.contentions() > 0) {
+                System.out.println(metrics);
+            }
+        }
+    }
+
+    /**
+     * -Dwallet.database=file (default) keeps the users in res/users.txt and its write-ahead log,
+     * -Dwallet.database=mapped keeps them in the memory-mapped res/users.db.
+     * The file database writes every change before answering unless -Dwallet.database.write.behind.delay
+     * is given: then changes are flushed every that many milliseconds, or as soon as
+     * -Dwallet.database.write.behind.max.dirty users (1000 by default) have changed, and a crash loses
+     * at most the last delay's worth of changes.
+     * The mapped database forces its changes to disk every -Dwallet.database.mapped.sync.interval
+     * milliseconds (1000 by default), and a crash loses at most the changes since then.
+     */
+    private static Database createDatabase() {
+        String database = System.getProperty(DATABASE_PROPERTY, FILE_DATABASE);
+        return switch (database) {
+            case FILE_DATABASE -> new FileDatabase(Path.of(RES_DIRECTORY, USERS_FILE_PATH).toAbsolutePath(),
+                Integer.getInteger(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL), createWriteBehindPolicy());
+            case MAPPED_DATABASE ->
+                new MappedFileDatabase(Path.of(RES_DIRECTORY, MAPPED_USERS_FILE_PATH).toAbsolutePath(),
+                    Duration.ofMillis(
+                        Integer.getInteger(MAPPED_SYNC_INTERVAL_PROPERTY, DEFAULT_MAPPED_SYNC_INTERVAL_IN_MILLIS)));
+            default -> throw new IllegalArgumentException("Unknown database: " + database);
+        };
+    }
+
+    private static WriteBehindPolicy createWriteBehindPolicy() {
+        Long delay = Long.getLong(WRITE_BEHIND_DELAY_PROPERTY);
+        if (delay == null) {
+            return null;
+        }
+        return new WriteBehindPolicy(Duration.ofMillis(delay),
+            Integer.getInteger(WRITE_BEHIND_MAX_DIRTY_PROPERTY, DEFAULT_WRITE_BEHIND_MAX_DIRTY));
+    }
+
+    /**
+     * Flushes what the database still holds in memory when the server is stopped.
+     */
+    private static void closeDatabase(Database database) {
+        if (database instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                System.out.println("Could not close the database: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * -Dwallet.server.mode=selector (default) runs the reactor-based server,
+     * -Dwallet.server.mode=virtual-threads serves every client on its own virtual thread.
+     */
+    private static CryptoWalletServerAPI createServer(CommandExecutor commandExecutor) {
+        String mode = System.getProperty(SERVER_MODE_PROPERTY, SELECTOR_MODE);
+        return switch (mode) {
+            case SELECTOR_MODE -> new CryptoWalletServer(commandExecutor,
+                Integer.getInteger(REACTORS_PROPERTY, DEFAULT_REACTORS), createWorkerPool());
+            case VIRTUAL_THREADS_MODE -> new VirtualThreadCryptoWalletServer(commandExecutor);
+            default -> throw new IllegalArgumentException("Unknown server mode: " + mode);
+        };
+    }
+
+    /**
+     * Commands run on a bounded worker pool unless -Dwallet.workers=0 is given,
+     * in which case they are executed inline on the reactor threads.
+     */
+    private static WorkerPool createWorkerPool() {
+        int workers = Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS);
+        if (workers == 0) {
+            return null;
+        }
+        int queueCapacity = Integer.getInteger(WORKER_QUEUE_PROPERTY, DEFAULT_WORKER_QUEUE);
+        RejectionPolicy rejectionPolicy =
+            RejectionPolicy.valueOf(System.getProperty(REJECTION_POLICY_PROPERTY, RejectionPolicy.REJECT.name()));
+        return new WorkerPool(workers, queueCapacity, rejectionPolicy);
     }
 }
@@ -0,0 +1,121 @@
+package bg.uni.sofia.fmi.mjt.wallet.server;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientConnection;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves every client on its own virtual thread over a blocking SocketChannel.
+ * Blocking reads, CoinAPI calls and disk writes only park the virtual thread of the client that caused them,
+ * so the business layer can stay synchronous while many mostly idle clients stay connected.
+ */
+public class VirtualThreadCryptoWalletServer implements CryptoWalletServerAPI {
+    private static final String SERVER_HOST = "localhost";
+    private static final String CLIENT_THREAD_PREFIX = "wallet-client-";
+
+    private final CommandExecutor commandExecutor;
+    private final Set<SocketChannel> clients;
+    private volatile boolean isStopRequested;
+    private volatile ServerSocketChannel serverSocketChannel;
+
+    public VirtualThreadCryptoWalletServer(CommandExecutor executor) {
+        this.commandExecutor = executor;
+        this.clients = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public void start() {
+        ExecutorService clientThreads =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(CLIENT_THREAD_PREFIX, 0).factory());
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            // published before the flag is checked, so a stop() either sees the channel or is seen by the loop
+            serverSocketChannel = channel;
+            channel.bind(new InetSocketAddress(SERVER_HOST, CryptoWalletServer.SERVER_PORT));
+            System.out.println("Server started with a virtual thread per client!");
+            while (!isStopRequested) {
+                SocketChannel client = channel.accept();
+                clients.add(client);
+                clientThreads.execute(() -> serve(client));
+            }
+        } catch (ClosedChannelException e) {
+            // stop() closed the server channel while we were binding it or waiting for clients
+        } catch (IOException e) {
+            throw new RuntimeException("There is a problem with starting the server", e);
+        } finally {
+            closeClients();
+            // a client thread finishes the command in progress before it sees its channel closed
+            clientThreads.close();
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.isStopRequested = true;
+        System.out.println("The server is stopped");
+        ServerSocketChannel channel = serverSocketChannel;
+        if (channel != null && channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            }
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        ClientConnection connection = new ClientConnection(client);
+        try (client) {
+            while (!isStopRequested) {
+                if (connection.read() < 0) {
+                    System.out.println("Client has closed the connection!");
+                    return;
+                }
+                Command command;
+                while ((command = connection.nextCommand()) != null) {
+                    Response response = commandExecutor.execute(connection.getSession(), command);
+                    printResponse(response);
+                    connection.enqueue(response);
+                }
+                // the channel is blocking, so flush returns only after everything is written
+                connection.flush();
+            }
+        } catch (ClosedChannelException e) {
+            // the server is stopping and closed the channel under us
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private void closeClients() {
+        for (SocketChannel client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            }
+        }
+    }
+
+    private void printResponse(Response response) {
+        if (response.isOk()) {
+            System.out.println("Response: " + response.getResponse());
+        } else {
+            System.err.println("Response Error: " + response.getResponse());
+        }
+    }
+}
@@ -1,4 +1,11 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.command;
 
-public record Command(CommandLabel commandLabel, String[] arguments) {
+/**
+ * A command sent by the client. The request id is chosen by the client and is copied into the response,
+ * so that a client with several commands in flight can match the responses to them.
+ */
+public record Command(CommandLabel commandLabel, String[] arguments, long requestId) {
+    public Command(CommandLabel commandLabel, String[] arguments) {
+        this(commandLabel, arguments, 0);
+    }
 }
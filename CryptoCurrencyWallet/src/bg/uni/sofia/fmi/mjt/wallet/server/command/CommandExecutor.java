@@ -1,9 +1,14 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.command;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientSession;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoWalletAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderResult;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.LoginAuthenticationException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.PasswordWrongFormatException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UnauthorizedUserException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserAlreadyExistsException;
@@ -11,7 +16,6 @@ import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UsernameWrongFormatException;
 import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
 
-import java.nio.channels.SelectionKey;
 import java.util.Arrays;
 
 public class CommandExecutor {
@@ -24,20 +28,41 @@ public class CommandExecutor {
         this.cryptoWallet = cryptoWallet;
     }
 
-    public Response execute(SelectionKey key, Command command) {
+    public Response execute(ClientSession session, Command command) {
+        Response response = executeCommand(session, command);
+        if (command == null) {
+            return response;
+        }
+        return new Response(response.isOk(), response.getResponse(), command.requestId());
+    }
+
+    private Response executeCommand(ClientSession session, Command command) {
         try {
             if (command == null || command.commandLabel() == null) {
                 return new Response(false, ERROR + "Command cannot be null!");
             }
             return switch (command.commandLabel()) {
-                case REGISTER -> register(key, command.arguments()[0], command.arguments()[1]);
-                case LOGIN -> login(key, command.arguments()[0], command.arguments()[1]);
-                case DEPOSIT_MONEY -> depositMoney(key, Double.parseDouble(command.arguments()[0]));
-                case LIST_OFFERINGS -> listOfferings(key, Integer.parseInt(command.arguments()[0]));
-                case BUY_ASSET -> buyAsset(key, command.arguments()[0], Double.parseDouble(command.arguments()[1]));
-                case SELL_ASSET -> sellAsset(key, command.arguments()[0]);
-                case WALLET_SUMMARY -> getWalletSummary(key);
-                case WALLET_OVERALL_SUMMARY -> getWalletOverallSummary(key);
+                case REGISTER -> register(session, command.arguments()[0], command.arguments()[1]);
+                case LOGIN -> login(session, command.arguments()[0], command.arguments()[1]);
+                case DEPOSIT_MONEY -> depositMoney(session, Double.parseDouble(command.arguments()[0]));
+                case LIST_OFFERINGS -> listOfferings(session, Integer.parseInt(command.arguments()[0]));
+                case BUY_ASSET -> buyAsset(session, command.arguments()[0], Double.parseDouble(command.arguments()[1]));
+                case SELL_ASSET -> sellAsset(session, command.arguments()[0]);
+                case WALLET_SUMMARY -> getWalletSummary(session);
+                case WALLET_OVERALL_SUMMARY -> getWalletOverallSummary(session);
+                case BUY_ASSET_QUANTITY ->
+                    buyAssetQuantity(session, command.arguments()[0], Double.parseDouble(command.arguments()[1]));
+                case SELL_ASSET_QUANTITY ->
+                    sellAssetQuantity(session, command.arguments()[0], Double.parseDouble(command.arguments()[1]));
+                case SELL_ASSET_VALUE ->
+                    sellAssetValue(session, command.arguments()[0], Double.parseDouble(command.arguments()[1]));
+                case LIMIT_ORDER -> placeLimitOrder(session, parseSide(command.arguments()[0]),
+                    command.arguments()[1], Double.parseDouble(command.arguments()[2]),
+                    Double.parseDouble(command.arguments()[3]));
+                case MARKET_ORDER -> placeMarketOrder(session, parseSide(command.arguments()[0]),
+                    command.arguments()[1], Double.parseDouble(command.arguments()[2]));
+                case CANCEL_ORDER ->
+                    cancelOrder(session, command.arguments()[0], Long.parseLong(command.arguments()[1]));
                 default -> new Response(false, UNKNOWN_COMMAND);
             };
         } catch (Exception e) {
@@ -46,9 +71,13 @@ public class CommandExecutor {
         }
     }
 
-    private Response register(SelectionKey key, String username, String password) {
+    private static OrderSide parseSide(String side) {
+        return OrderSide.valueOf(side.toUpperCase());
+    }
+
+    private Response register(ClientSession session, String username, String password) {
         try {
-            cryptoWallet.register(key, username, password);
+            cryptoWallet.register(session, username, password);
             String responseStr = "You successfully signed up!";
             return new Response(true, responseStr);
         } catch (UsernameWrongFormatException e) {
@@ -67,9 +96,9 @@ public class CommandExecutor {
         }
     }
 
-    private Response login(SelectionKey key, String username, String password) {
+    private Response login(ClientSession session, String username, String password) {
         try {
-            cryptoWallet.login(key, username, password);
+            cryptoWallet.login(session, username, password);
             String responseStr = "You successfully logged in!";
             return new Response(true, responseStr);
         } catch (UserNotFoundException e) {
@@ -91,9 +120,9 @@ public class CommandExecutor {
         }
     }
 
-    private Response depositMoney(SelectionKey key, double amount) {
+    private Response depositMoney(ClientSession session, double amount) {
         try {
-            cryptoWallet.depositMoney(key, amount);
+            cryptoWallet.depositMoney(session, amount);
             String responseStr = "Successfully deposited " + String.format("%.4f", amount) + "$";
             return new Response(true, responseStr);
         } catch (UnauthorizedUserException e) {
@@ -103,9 +132,9 @@ public class CommandExecutor {
         }
     }
 
-    private Response listOfferings(SelectionKey key, int pageNumber) {
+    private Response listOfferings(ClientSession session, int pageNumber) {
         try {
-            String responseStr = cryptoWallet.listOfferings(key, pageNumber);
+            String responseStr = cryptoWallet.listOfferings(session, pageNumber);
             return new Response(true, responseStr);
         } catch (UnauthorizedUserException e) {
             ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
@@ -114,9 +143,9 @@ public class CommandExecutor {
         }
     }
 
-    private Response buyAsset(SelectionKey key, String assetId, double amount) {
+    private Response buyAsset(ClientSession session, String assetId, double amount) {
         try {
-            cryptoWallet.buyAsset(key, assetId, amount);
+            cryptoWallet.buyAsset(session, assetId, amount);
             String responseStr = "You successfully bought " + assetId + " for " + String.format("%.4f", amount) + "$";
             return new Response(true, responseStr);
         } catch (UnauthorizedUserException e) {
@@ -134,9 +163,30 @@ public class CommandExecutor {
         }
     }
 
-    private Response sellAsset(SelectionKey key, String assetId) {
+    private Response buyAssetQuantity(ClientSession session, String assetId, double quantity) {
+        try {
+            double paidMoney = cryptoWallet.buyAssetQuantity(session, assetId, quantity);
+            String responseStr = "You successfully bought " + String.format("%.4f", quantity) + " of " + assetId +
+                " for " + String.format("%.4f", paidMoney) + "$";
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (InsufficientBalanceException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough money!";
+            return new Response(false, responseStr);
+        } catch (InvalidAssetIdException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "There is no asset with this id!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response sellAsset(ClientSession session, String assetId) {
         try {
-            double earnedMoney = cryptoWallet.sellAsset(key, assetId);
+            double earnedMoney = cryptoWallet.sellAsset(session, assetId);
             String responseStr = "You successfully sold your actives from " + assetId + " and earned " +
                 String.format("%.4f", earnedMoney) + "$";
             return new Response(true, responseStr);
@@ -151,9 +201,118 @@ public class CommandExecutor {
         }
     }
 
-    private Response getWalletSummary(SelectionKey key) {
+    private Response sellAssetQuantity(ClientSession session, String assetId, double quantity) {
+        try {
+            double earnedMoney = cryptoWallet.sellAssetQuantity(session, assetId, quantity);
+            String responseStr = "You successfully sold " + String.format("%.4f", quantity) + " of " + assetId +
+                " and earned " + String.format("%.4f", earnedMoney) + "$";
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (InvalidAssetIdException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "There is no asset with this id!";
+            return new Response(false, responseStr);
+        } catch (InsufficientAssetAmountException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough of this asset!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response sellAssetValue(ClientSession session, String assetId, double money) {
+        try {
+            double earnedMoney = cryptoWallet.sellAssetValue(session, assetId, money);
+            String responseStr = "You successfully sold from " + assetId + " and earned " +
+                String.format("%.4f", earnedMoney) + "$";
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (InvalidAssetIdException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "There is no asset with this id!";
+            return new Response(false, responseStr);
+        } catch (InsufficientAssetAmountException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough of this asset!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response placeLimitOrder(ClientSession session, OrderSide side, String assetId, double quantity,
+                                     double price) {
+        try {
+            OrderResult result = cryptoWallet.placeLimitOrder(session, side, assetId, quantity, price);
+            String responseStr = "Your order " + result.orderId() + " traded " +
+                String.format("%.4f", result.filledAmount()) + " of " + assetId + " and has " +
+                String.format("%.4f", result.restingAmount()) + " left in the order book";
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (InvalidAssetIdException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "There is no asset with this id!";
+            return new Response(false, responseStr);
+        } catch (InsufficientBalanceException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough money!";
+            return new Response(false, responseStr);
+        } catch (InsufficientAssetAmountException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough of this asset!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response placeMarketOrder(ClientSession session, OrderSide side, String assetId, double quantity) {
+        try {
+            double tradedAmount = cryptoWallet.placeMarketOrder(session, side, assetId, quantity);
+            String responseStr = "Your order traded " + String.format("%.4f", tradedAmount) + " of " + assetId;
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (InvalidAssetIdException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "There is no asset with this id!";
+            return new Response(false, responseStr);
+        } catch (InsufficientBalanceException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough money!";
+            return new Response(false, responseStr);
+        } catch (InsufficientAssetAmountException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have enough of this asset!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response cancelOrder(ClientSession session, String assetId, long orderId) {
+        try {
+            cryptoWallet.cancelOrder(session, assetId, orderId);
+            String responseStr = "You successfully cancelled order " + orderId;
+            return new Response(true, responseStr);
+        } catch (UnauthorizedUserException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You are not logged in! Please log in to your account!";
+            return new Response(false, responseStr);
+        } catch (OrderNotFoundException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            String responseStr = "You do not have an open order with this id!";
+            return new Response(false, responseStr);
+        }
+    }
+
+    private Response getWalletSummary(ClientSession session) {
         try {
-            String responseStr = cryptoWallet.getWalletSummary(key);
+            String responseStr = cryptoWallet.getWalletSummary(session);
             return new Response(true, responseStr);
         } catch (UnauthorizedUserException e) {
             ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
@@ -162,9 +321,9 @@ public class CommandExecutor {
         }
     }
 
-    private Response getWalletOverallSummary(SelectionKey key) {
+    private Response getWalletOverallSummary(ClientSession session) {
         try {
-            String responseStr = cryptoWallet.getWalletOverallSummary(key);
+            String responseStr = cryptoWallet.getWalletOverallSummary(session);
             return new Response(true, responseStr);
         } catch (UnauthorizedUserException e) {
             ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
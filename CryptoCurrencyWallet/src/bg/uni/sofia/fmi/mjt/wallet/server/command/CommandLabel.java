@@ -1,12 +1,45 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.command;
 
 public enum CommandLabel {
-    REGISTER(),
-    LOGIN(),
-    DEPOSIT_MONEY(),
-    LIST_OFFERINGS(),
-    BUY_ASSET(),
-    SELL_ASSET(),
-    WALLET_SUMMARY(),
-    WALLET_OVERALL_SUMMARY()
+    REGISTER(1),
+    LOGIN(2),
+    DEPOSIT_MONEY(3),
+    LIST_OFFERINGS(4),
+    BUY_ASSET(5),
+    SELL_ASSET(6),
+    WALLET_SUMMARY(7),
+    WALLET_OVERALL_SUMMARY(8),
+    BUY_ASSET_QUANTITY(9),
+    SELL_ASSET_QUANTITY(10),
+    SELL_ASSET_VALUE(11),
+    LIMIT_ORDER(12),
+    MARKET_ORDER(13),
+    CANCEL_ORDER(14);
+
+    private static final CommandLabel[] BY_OPCODE = new CommandLabel[values().length + 1];
+
+    static {
+        for (CommandLabel label : values()) {
+            BY_OPCODE[label.opcode] = label;
+        }
+    }
+
+    /**
+     * The byte that identifies the command in the binary wire protocol.
+     */
+    public final byte opcode;
+
+    CommandLabel(int opcode) {
+        this.opcode = (byte) opcode;
+    }
+
+    /**
+     * @return the label with the given opcode or null if there is no such label
+     */
+    public static CommandLabel getByOpcode(byte opcode) {
+        if (opcode <= 0 || opcode >= BY_OPCODE.length) {
+            return null;
+        }
+        return BY_OPCODE[opcode];
+    }
 }
@@ -3,10 +3,16 @@ package bg.uni.sofia.fmi.mjt.wallet.server.command;
 public class Response {
     private final boolean ok;
     private final String response;
+    private final long requestId;
 
     public Response(boolean ok, String response) {
+        this(ok, response, 0);
+    }
+
+    public Response(boolean ok, String response, long requestId) {
         this.ok = ok;
         this.response = response;
+        this.requestId = requestId;
     }
 
     public boolean isOk() {
@@ -16,4 +22,8 @@ public class Response {
     public String getResponse() {
         return response;
     }
+
+    public long getRequestId() {
+        return requestId;
+    }
 }
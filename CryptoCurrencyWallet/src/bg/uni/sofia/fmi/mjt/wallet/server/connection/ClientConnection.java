@@ -0,0 +1,193 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.codec.BinaryWireCodec;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.codec.JsonWireCodec;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.codec.WireCodecAPI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Per-connection state that is attached to the client's SelectionKey.
+ * Messages on the wire are framed as a 4-byte big-endian payload length followed by the payload.
+ * Partial reads are accumulated until a whole frame is available and responses that could not be
+ * written at once stay in the write buffer until the channel becomes writable again.
+ * The payload format is chosen by the first byte the client sends: {@link BinaryWireCodec#MAGIC}
+ * selects the binary codec, anything else is the first byte of a JSON frame.
+ * Requests are executed one at a time in the order they arrived; the ones that arrive while
+ * another request is executing wait in the connection's request queue.
+ */
+public class ClientConnection {
+    public static final int FRAME_HEADER_SIZE = Integer.BYTES;
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int MAX_IDLE_WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final WireCodecAPI JSON_CODEC = new JsonWireCodec();
+
+    private final ByteChannel channel;
+    private final ClientSession session;
+    private final Deque<Command> pendingRequests;
+    private WireCodecAPI codec;
+    private ByteBuffer readBuffer;
+    private ByteBuffer writeBuffer;
+    private boolean isExecuting;
+
+    public ClientConnection(ByteChannel channel) {
+        this.channel = channel;
+        this.session = new ClientSession();
+        this.pendingRequests = new ArrayDeque<>();
+        this.readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    }
+
+    public ClientSession getSession() {
+        return session;
+    }
+
+    /**
+     * Reads whatever is currently available from the channel into the connection's read buffer.
+     *
+     * @return the number of bytes read or -1 if the client has closed the connection
+     */
+    public int read() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            readBuffer = grow(readBuffer, Math.min(readBuffer.capacity() * 2, FRAME_HEADER_SIZE + MAX_FRAME_SIZE));
+        }
+        return channel.read(readBuffer);
+    }
+
+    /**
+     * Decodes the next complete frame from the bytes read so far.
+     *
+     * @return the command in the frame or null if a whole frame has not been received yet
+     * @throws IOException if the client announced a frame with invalid length or sent a malformed command
+     */
+    public Command nextCommand() throws IOException {
+        readBuffer.flip();
+        try {
+            if (codec == null && !negotiateCodec()) {
+                return null;
+            }
+            if (readBuffer.remaining() < FRAME_HEADER_SIZE) {
+                return null;
+            }
+            int length = readBuffer.getInt(readBuffer.position());
+            if (length < 0 || length > MAX_FRAME_SIZE) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (readBuffer.remaining() < FRAME_HEADER_SIZE + length) {
+                ensureCapacity(FRAME_HEADER_SIZE + length);
+                return null;
+            }
+            int frameEnd = readBuffer.position() + FRAME_HEADER_SIZE + length;
+            int limit = readBuffer.limit();
+            readBuffer.position(readBuffer.position() + FRAME_HEADER_SIZE).limit(frameEnd);
+            try {
+                return codec.decode(readBuffer);
+            } finally {
+                readBuffer.limit(limit).position(frameEnd);
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    public void addRequest(Command request) {
+        pendingRequests.addLast(request);
+    }
+
+    public Command pollRequest() {
+        return pendingRequests.pollFirst();
+    }
+
+    public int getPendingRequestsCount() {
+        return pendingRequests.size();
+    }
+
+    public boolean isExecuting() {
+        return isExecuting;
+    }
+
+    public void setExecuting(boolean isExecuting) {
+        this.isExecuting = isExecuting;
+    }
+
+    /**
+     * Encodes the response as a frame at the end of the write buffer.
+     */
+    public void enqueue(Response response) {
+        WireCodecAPI responseCodec = codec == null ? JSON_CODEC : codec;
+        int maxFrameSize = FRAME_HEADER_SIZE + responseCodec.maxEncodedSize(response);
+        if (writeBuffer.remaining() < maxFrameSize) {
+            int capacity = Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + maxFrameSize);
+            writeBuffer = grow(writeBuffer, capacity);
+        }
+        int frameStart = writeBuffer.position();
+        writeBuffer.position(frameStart + FRAME_HEADER_SIZE);
+        responseCodec.encode(response, writeBuffer);
+        writeBuffer.putInt(frameStart, writeBuffer.position() - frameStart - FRAME_HEADER_SIZE);
+    }
+
+    /**
+     * Writes as much of the queued frames as the channel accepts without blocking.
+     *
+     * @return true if every queued frame has been written
+     */
+    public boolean flush() throws IOException {
+        writeBuffer.flip();
+        try {
+            channel.write(writeBuffer);
+            if (writeBuffer.hasRemaining()) {
+                return false;
+            }
+        } finally {
+            writeBuffer.compact();
+        }
+        if (writeBuffer.capacity() > MAX_IDLE_WRITE_BUFFER_SIZE) {
+            // do not keep a buffer sized for one huge response around for the whole life of the connection
+            writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+        return true;
+    }
+
+    public boolean hasPendingWrites() {
+        return writeBuffer.position() > 0;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean negotiateCodec() {
+        if (!readBuffer.hasRemaining()) {
+            return false;
+        }
+        if (readBuffer.get(readBuffer.position()) == BinaryWireCodec.MAGIC) {
+            readBuffer.get();
+            codec = new BinaryWireCodec();
+        } else {
+            codec = JSON_CODEC;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int frameSize) {
+        if (readBuffer.capacity() < frameSize) {
+            readBuffer.compact();
+            readBuffer = grow(readBuffer, frameSize);
+            readBuffer.flip();
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
@@ -0,0 +1,15 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+
+public class ClientSession {
+    private volatile User loggedInUser;
+
+    public User getLoggedInUser() {
+        return loggedInUser;
+    }
+
+    public void logIn(User user) {
+        this.loggedInUser = user;
+    }
+}
@@ -0,0 +1,123 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection.codec;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact protocol that a client selects by sending {@link #MAGIC} as the very first byte of the connection.
+ * A JSON client can never start with it, because its first byte is the high byte of a frame length.
+ * <p>
+ * Command payload: opcode byte, varint request id and the arguments of the opcode, where strings are
+ * a varint byte length followed by UTF-8 bytes, amounts and prices are raw 8-byte doubles and page numbers
+ * and order ids are varints. The side of an order is the string buy or sell.
+ * <p>
+ * Response payload: varint request id, a 0/1 ok byte and the UTF-8 text of the response up to the end of the frame.
+ * <p>
+ * Responses are encoded straight into the connection's write buffer, so an instance keeps encoder state
+ * and must not be shared between connections.
+ */
+public class BinaryWireCodec implements WireCodecAPI {
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private static final int VARINT_PAYLOAD_BITS = 7;
+    private static final int VARINT_PAYLOAD_MASK = 0x7F;
+    private static final int VARINT_CONTINUATION_BIT = 0x80;
+    private static final int MAX_VARINT_LONG_SIZE = 10;
+    private static final int MAX_UTF8_BYTES_PER_CHAR = 3;
+
+    private final CharsetEncoder encoder;
+
+    public BinaryWireCodec() {
+        this.encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public Command decode(ByteBuffer payload) throws IOException {
+        try {
+            CommandLabel label = CommandLabel.getByOpcode(payload.get());
+            if (label == null) {
+                throw new IOException("Unknown opcode: " + payload.get(payload.position() - 1));
+            }
+            long requestId = readVarLong(payload);
+            String[] arguments = switch (label) {
+                case REGISTER, LOGIN -> new String[] {readString(payload), readString(payload)};
+                case DEPOSIT_MONEY -> new String[] {Double.toString(payload.getDouble())};
+                case LIST_OFFERINGS -> new String[] {Long.toString(readVarLong(payload))};
+                case BUY_ASSET, BUY_ASSET_QUANTITY, SELL_ASSET_QUANTITY, SELL_ASSET_VALUE ->
+                    new String[] {readString(payload), Double.toString(payload.getDouble())};
+                case SELL_ASSET -> new String[] {readString(payload)};
+                case WALLET_SUMMARY, WALLET_OVERALL_SUMMARY -> new String[0];
+                case LIMIT_ORDER -> new String[] {readString(payload), readString(payload),
+                    Double.toString(payload.getDouble()), Double.toString(payload.getDouble())};
+                case MARKET_ORDER ->
+                    new String[] {readString(payload), readString(payload), Double.toString(payload.getDouble())};
+                case CANCEL_ORDER -> new String[] {readString(payload), Long.toString(readVarLong(payload))};
+            };
+            if (payload.hasRemaining()) {
+                throw new IOException("Unexpected bytes after the arguments of " + label);
+            }
+            return new Command(label, arguments, requestId);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated command!", e);
+        }
+    }
+
+    @Override
+    public int maxEncodedSize(Response response) {
+        String text = response.getResponse();
+        return MAX_VARINT_LONG_SIZE + 1 + MAX_UTF8_BYTES_PER_CHAR * (text == null ? 0 : text.length());
+    }
+
+    @Override
+    public void encode(Response response, ByteBuffer destination) {
+        writeVarLong(destination, response.getRequestId());
+        destination.put((byte) (response.isOk() ? 1 : 0));
+        if (response.getResponse() != null) {
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(response.getResponse()), destination, true);
+            encoder.flush(destination);
+        }
+    }
+
+    private static String readString(ByteBuffer source) throws IOException {
+        long length = readVarLong(source);
+        if (length < 0 || length > source.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        String value = new String(source.array(), source.arrayOffset() + source.position(), (int) length,
+            StandardCharsets.UTF_8);
+        source.position(source.position() + (int) length);
+        return value;
+    }
+
+    private static long readVarLong(ByteBuffer source) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_PAYLOAD_BITS) {
+            byte b = source.get();
+            value |= (long) (b & VARINT_PAYLOAD_MASK) << shift;
+            if ((b & VARINT_CONTINUATION_BIT) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long!");
+    }
+
+    private static void writeVarLong(ByteBuffer destination, long value) {
+        while ((value & ~VARINT_PAYLOAD_MASK) != 0) {
+            destination.put((byte) ((value & VARINT_PAYLOAD_MASK) | VARINT_CONTINUATION_BIT));
+            value >>>= VARINT_PAYLOAD_BITS;
+        }
+        destination.put((byte) value);
+    }
+}
@@ -0,0 +1,47 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection.codec;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The original protocol: commands and responses as UTF-8 encoded Gson JSON. It keeps no state,
+ * so one instance can serve every connection.
+ */
+public class JsonWireCodec implements WireCodecAPI {
+    // Gson escapes HTML and control characters as six character unicode escape sequences
+    private static final int MAX_BYTES_PER_CHAR = 6;
+    private static final int MAX_ENVELOPE_SIZE = 64;
+    private static final Gson GSON = new Gson();
+
+    @Override
+    public Command decode(ByteBuffer payload) throws IOException {
+        String json = new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(),
+            StandardCharsets.UTF_8);
+        try {
+            Command command = GSON.fromJson(json, Command.class);
+            if (command == null) {
+                throw new IOException("Empty command!");
+            }
+            return command;
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed command: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int maxEncodedSize(Response response) {
+        String text = response.getResponse();
+        return MAX_ENVELOPE_SIZE + MAX_BYTES_PER_CHAR * (text == null ? 0 : text.length());
+    }
+
+    @Override
+    public void encode(Response response, ByteBuffer destination) {
+        destination.put(GSON.toJson(response).getBytes(StandardCharsets.UTF_8));
+    }
+}
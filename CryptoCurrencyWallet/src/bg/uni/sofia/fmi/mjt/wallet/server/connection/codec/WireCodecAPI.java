@@ -0,0 +1,31 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection.codec;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns frame payloads into commands and responses into frame payloads. The framing itself,
+ * the 4-byte length in front of every payload, is done by the connection.
+ */
+public interface WireCodecAPI {
+    /**
+     * Decodes the command whose payload lies between the buffer's position and limit.
+     *
+     * @throws IOException if the payload is not a valid command
+     */
+    Command decode(ByteBuffer payload) throws IOException;
+
+    /**
+     * @return an upper bound of the number of bytes {@link #encode(Response, ByteBuffer)} writes for the response
+     */
+    int maxEncodedSize(Response response);
+
+    /**
+     * Writes the payload of the response at the buffer's position. The buffer must have at least
+     * {@link #maxEncodedSize(Response)} bytes remaining.
+     */
+    void encode(Response response, ByteBuffer destination);
+}
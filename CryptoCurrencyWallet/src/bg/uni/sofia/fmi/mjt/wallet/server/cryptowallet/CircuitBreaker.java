@@ -0,0 +1,113 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops the calls to CoinAPI after a number of consecutive failures, so that a struggling upstream is not hit
+ * by every refresh. The circuit stays open for a backoff that doubles with every trip, up to a maximum, with
+ * a random jitter so that the probes of several servers do not line up. Once the backoff has passed,
+ * a single probe call is let through: its success closes the circuit and its failure opens it again.
+ */
+public class CircuitBreaker {
+    private final int failureThreshold;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final LongSupplier nanoClock;
+    private final Random random;
+    private State state;
+    private int consecutiveFailures;
+    private int consecutiveTrips;
+    private long openUntilNanos;
+    private long trips;
+    private long rejectedCalls;
+
+    public CircuitBreaker(int failureThreshold, Duration baseBackoff, Duration maxBackoff) {
+        this(failureThreshold, baseBackoff, maxBackoff, System::nanoTime, new Random());
+    }
+
+    CircuitBreaker(int failureThreshold, Duration baseBackoff, Duration maxBackoff, LongSupplier nanoClock,
+                   Random random) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Failure threshold must be a positive number!");
+        }
+        if (baseBackoff.isNegative() || maxBackoff.compareTo(baseBackoff) < 0) {
+            throw new IllegalArgumentException("Backoff must not be negative or bigger than the max backoff!");
+        }
+        this.failureThreshold = failureThreshold;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.nanoClock = nanoClock;
+        this.random = random;
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * @return whether a call may be made now; while the circuit is half-open, only the first caller gets true
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && nanoClock.getAsLong() - openUntilNanos >= 0) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        consecutiveTrips = 0;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            open();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return how many times the circuit has opened
+     */
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    /**
+     * @return how many calls were not let through because the circuit was open
+     */
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        trips++;
+        // doubles with every trip in a row, without overflowing the shift
+        long backoff = baseBackoffNanos << Math.min(consecutiveTrips, Long.numberOfLeadingZeros(baseBackoffNanos) - 1);
+        backoff = Math.min(backoff, maxBackoffNanos);
+        consecutiveTrips++;
+        // equal jitter: at least half of the backoff, so a probe never comes right after the failure
+        long jitter = backoff / 2 == 0 ? 0 : random.nextLong(backoff / 2 + 1);
+        openUntilNanos = nanoClock.getAsLong() + backoff - backoff / 2 + jitter;
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
@@ -1,10 +1,15 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.RequestBudget.RequestPriority;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.AsyncCryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.CryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.CoinAPIUnavailableException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
 
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
@@ -12,72 +17,449 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
-public class CryptoAssetUpdater {
+/**
+ * Downloads the prices from CoinAPI. Once started, it keeps a {@link PriceSnapshot} fresh from a background
+ * thread: the whole list is downloaded again when it gets older than the update interval, and single assets
+ * that turn out to be stale are refreshed on request. Readers of the snapshot never wait for the network
+ * and never lock: every refresh builds a new snapshot and swaps it in with a single atomic update.
+ * <p>
+ * When an {@link AsyncCryptoConsumerAPI} is given, the background refreshes are made with it, so the refresher
+ * thread does not wait for the downloads either. The same refreshes are available to callers as futures
+ * through {@link #refreshAllAssetsAsync()} and {@link #refreshAssetAsync(String)}.
+ * <p>
+ * Refreshes are single-flight: while the price of an asset is being downloaded, every other request to refresh
+ * it shares that download instead of sending one of its own, so a popular asset going stale during a spike of
+ * trades costs a single CoinAPI request. Stale assets are not refreshed one by one either: the ones requested
+ * within a short batch window are downloaded together with a single request.
+ * <p>
+ * When a prices file is given, every full download is saved to it next to the asset ids file, and so are the
+ * latest prices on {@link #close()}. The next start serves the saved prices right away and refreshes them in
+ * the background, so neither the startup time nor the ability to start depends on CoinAPI.
+ * <p>
+ * The refreshes go through a {@link CircuitBreaker}. While CoinAPI keeps failing, the calls are suspended with
+ * an exponential backoff and the last known prices stay in use; {@link #checkStale(PriceSnapshot)} tells the
+ * callers when they are serving such prices and {@link #getMetrics()} reports how often that happened.
+ * <p>
+ * With a {@link RequestBudget}, every call also has to fit the daily quota of the key. When the budget gets
+ * tight, the refreshes of single assets are dropped in favour of the refreshes of the whole list, and the
+ * whole list is refreshed less often.
+ */
+public class CryptoAssetUpdater implements Closeable {
     private static final int UPDATE_INTERVAL_IN_MINS = 30;
+    private static final Duration BATCH_WINDOW = Duration.ofMillis(50);
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 3;
+    private static final Duration CIRCUIT_BASE_BACKOFF = Duration.ofSeconds(30);
+    private static final Duration CIRCUIT_MAX_BACKOFF = Duration.ofMinutes(30);
+    private static final String REFRESHER_THREAD_NAME = "wallet-price-refresher";
     private static final String RES_DIRECTORY = "res";
     private static final String ASSET_IDS_FILE_PATH = "assetIds.txt";
     private Path assetIdsPath = Path.of(RES_DIRECTORY, ASSET_IDS_FILE_PATH).toAbsolutePath();
     private CryptoConsumerAPI cryptoConsumer;
-    private int intervalInMins;
+    private AsyncCryptoConsumerAPI asyncCryptoConsumer;
+    private volatile int intervalInMins;
+    private volatile Duration batchWindow;
+    private volatile Duration checkPeriod;
+    private final AtomicReference<PriceSnapshot> snapshot;
+    private final AtomicReference<CompletableFuture<PriceSnapshot>> allAssetsRefresh;
+    private final Map<String, CompletableFuture<PriceSnapshot>> assetRefreshes;
+    private final Object batchLock;
+    private Map<String, CompletableFuture<PriceSnapshot>> pendingBatch;
+    private final Path pricesPath;
+    private final CircuitBreaker circuitBreaker;
+    private final RequestBudget requestBudget;
+    private final LongAdder staleServed;
+    private ScheduledExecutorService refresher;
 
     public CryptoAssetUpdater(CryptoConsumerAPI cryptoConsumer) {
+        this(cryptoConsumer, null);
+    }
+
+    public CryptoAssetUpdater(CryptoConsumerAPI cryptoConsumer, AsyncCryptoConsumerAPI asyncCryptoConsumer) {
+        this(cryptoConsumer, asyncCryptoConsumer, null);
+    }
+
+    /**
+     * @param pricesPath the file the prices are saved to and loaded from on start, or null to always download them
+     */
+    public CryptoAssetUpdater(CryptoConsumerAPI cryptoConsumer, AsyncCryptoConsumerAPI asyncCryptoConsumer,
+                              Path pricesPath) {
+        this(cryptoConsumer, asyncCryptoConsumer, pricesPath, null);
+    }
+
+    /**
+     * @param pricesPath    the file the prices are saved to and loaded from on start, or null to always download them
+     * @param requestBudget the budget every call to CoinAPI has to fit in, or null to make calls without a limit
+     */
+    public CryptoAssetUpdater(CryptoConsumerAPI cryptoConsumer, AsyncCryptoConsumerAPI asyncCryptoConsumer,
+                              Path pricesPath, RequestBudget requestBudget) {
         this.cryptoConsumer = cryptoConsumer;
+        this.asyncCryptoConsumer = asyncCryptoConsumer;
+        this.pricesPath = pricesPath;
+        this.requestBudget = requestBudget;
+        this.circuitBreaker = new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_BASE_BACKOFF, CIRCUIT_MAX_BACKOFF);
+        this.staleServed = new LongAdder();
         this.intervalInMins = UPDATE_INTERVAL_IN_MINS;
+        this.snapshot = new AtomicReference<>(PriceSnapshot.empty());
+        this.allAssetsRefresh = new AtomicReference<>();
+        this.assetRefreshes = new ConcurrentHashMap<>();
+        this.batchWindow = BATCH_WINDOW;
+        this.checkPeriod = Duration.ZERO;
+        this.batchLock = new Object();
+        this.pendingBatch = new LinkedHashMap<>();
+    }
+
+    /**
+     * Loads the saved prices and starts checking every {@code checkPeriod} whether they have to be downloaded
+     * again. The first check runs right away in the background, so saved prices older than the update interval
+     * are downloaded again without blocking, and so are the prices when none were saved. Until that first
+     * download is done, the snapshot is empty. The downloads go through the circuit breaker and the request
+     * budget, so a start without network does not fail.
+     */
+    public void start(Duration checkPeriod) {
+        this.checkPeriod = checkPeriod;
+        PriceSnapshot saved = loadSavedPrices();
+        if (saved != null) {
+            snapshot.set(saved);
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, REFRESHER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> runInBackground(this::refreshAllAssetsIfNeeded), 0,
+            checkPeriod.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the latest prices, without waiting for a refresh that is in progress
+     */
+    public PriceSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Tells whether the prices are older than the refreshes let them get, i.e. older than the update interval
+     * in force, as stretched by the request budget, plus one check period. That happens while the refreshes are
+     * failing or suspended, and the prices are counted as served stale if so. The empty snapshot served while
+     * the first prices are downloaded is not stale.
+     */
+    public boolean checkStale(PriceSnapshot prices) {
+        if (!prices.isLoaded()) {
+            return false;
+        }
+        Duration age = Duration.between(prices.fetchedAt(), LocalDateTime.now());
+        if (age.compareTo(getRefreshInterval().plus(checkPeriod)) <= 0) {
+            return false;
+        }
+        staleServed.increment();
+        return true;
+    }
+
+    public PriceRefreshMetrics getMetrics() {
+        PriceSnapshot latest = snapshot.get();
+        return new PriceRefreshMetrics(circuitBreaker.getState(), circuitBreaker.getConsecutiveFailures(),
+            circuitBreaker.getTrips(), circuitBreaker.getRejectedCalls(),
+            requestBudget == null ? -1 : (long) requestBudget.getRemaining(),
+            requestBudget == null ? 0 : requestBudget.getRejectedRequests(), staleServed.sum(), latest.version(),
+            latest.isLoaded() ? latest.getStaleness().toSeconds() : -1);
+    }
+
+    /**
+     * Schedules a refresh of the asset if its price is older than the update interval. Does not wait for it,
+     * so the caller goes on with the price it has.
+     */
+    public void refreshAssetIfNeeded(String assetId) {
+        refreshAssetsIfNeeded(List.of(assetId));
+    }
+
+    /**
+     * Adds the assets whose prices are older than the update interval to the next batch. The batch is downloaded
+     * with a single request once the batch window after its first asset has passed. Does not wait for it.
+     */
+    public void refreshAssetsIfNeeded(Collection<String> assetIds) {
+        if (refresher == null) {
+            return;
+        }
+        boolean isNewBatch = false;
+        synchronized (batchLock) {
+            for (String assetId : assetIds) {
+                if (!isAssetOutdated(assetId) || assetRefreshes.containsKey(assetId)) {
+                    continue;
+                }
+                CompletableFuture<PriceSnapshot> refresh = new CompletableFuture<>();
+                if (assetRefreshes.putIfAbsent(assetId, refresh) == null) {
+                    isNewBatch |= pendingBatch.isEmpty();
+                    pendingBatch.put(assetId, refresh);
+                }
+            }
+        }
+        if (isNewBatch) {
+            refresher.schedule(() -> runInBackground(this::refreshPendingBatch), batchWindow.toNanos(),
+                TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Downloads the whole list of assets without blocking. While a download is in progress,
+     * callers get the future of that same download.
+     *
+     * @return a future of the snapshot with the downloaded prices
+     */
+    public CompletableFuture<PriceSnapshot> refreshAllAssetsAsync() {
+        AsyncCryptoConsumerAPI consumer = requireAsyncConsumer();
+        CompletableFuture<PriceSnapshot> refresh = new CompletableFuture<>();
+        CompletableFuture<PriceSnapshot> inProgress = allAssetsRefresh.compareAndExchange(null, refresh);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        LocalDateTime fetchedAt = LocalDateTime.now();
+        guarded(RequestPriority.FULL_REFRESH, consumer::getAllAssetsAsync)
+            .thenApply(assets -> publishAllAssets(assets, fetchedAt))
+            .whenComplete((published, failure) -> {
+                allAssetsRefresh.set(null);
+                if (failure != null) {
+                    refresh.completeExceptionally(failure);
+                } else {
+                    refresh.complete(published);
+                }
+            });
+        return refresh;
+    }
+
+    /**
+     * Downloads the price of a single asset without blocking. While a download of the same asset is in progress,
+     * callers get the future of that same download.
+     *
+     * @return a future of the snapshot with the downloaded price
+     */
+    public CompletableFuture<PriceSnapshot> refreshAssetAsync(String assetId) {
+        AsyncCryptoConsumerAPI consumer = requireAsyncConsumer();
+        return singleFlight(assetId,
+            () -> guarded(RequestPriority.ASSET_REFRESH, () -> consumer.getAssetByIdAsync(assetId))
+                .thenApply(this::publishAsset));
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        PriceSnapshot latest = snapshot.get();
+        if (latest.isLoaded()) {
+            // keeps the single assets refreshed since the last full download as well
+            savePrices(latest);
+        }
     }
 
-    public Map<String, CryptoAsset> updateAllAssetsIfNeeded(Map<String, CryptoAsset> assetMap) {
-        if (assetMap.isEmpty()) {
-            List<CryptoAsset> assetList = null;
-            try {
-                assetList = this.cryptoConsumer.getAllAssets();
-            } catch (InvalidCredentialsForAPIException e) {
-                throw new RuntimeException(e.getMessage(), e.getCause());
+    private List<CryptoAsset> fetchAssets(Collection<String> assetIds) {
+        try {
+            return cryptoConsumer.getAssetsByIds(assetIds);
+        } catch (InvalidCredentialsForAPIException e) {
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+    }
+
+    private void refreshPendingBatch() {
+        Map<String, CompletableFuture<PriceSnapshot>> batch;
+        synchronized (batchLock) {
+            batch = pendingBatch;
+            pendingBatch = new LinkedHashMap<>();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        CompletableFuture<List<CryptoAsset>> download = guarded(RequestPriority.ASSET_REFRESH,
+            () -> asyncCryptoConsumer != null
+            ? asyncCryptoConsumer.getAssetsByIdsAsync(batch.keySet())
+            : CompletableFuture.completedFuture(fetchAssets(batch.keySet())));
+        download.thenApply(this::publishAssets).whenComplete((published, failure) -> {
+            batch.forEach((assetId, refresh) -> {
+                assetRefreshes.remove(assetId, refresh);
+                if (failure != null) {
+                    refresh.completeExceptionally(failure);
+                } else {
+                    refresh.complete(published);
+                }
+            });
+            if (failure != null) {
+                logFailure(failure);
             }
-            for (var a : assetList) {
-                assetMap.put(a.assetId(), a);
+        });
+    }
+
+    private void refreshAllAssetsIfNeeded() {
+        PriceSnapshot latest = snapshot.get();
+        if (latest.isLoaded() &&
+            Duration.between(latest.fetchedAt(), LocalDateTime.now()).compareTo(getRefreshInterval()) <= 0) {
+            return;
+        }
+        if (asyncCryptoConsumer != null) {
+            refreshAllAssetsAsync().exceptionally(CryptoAssetUpdater::logFailure);
+            return;
+        }
+        guarded(RequestPriority.FULL_REFRESH, () -> {
+            refreshAllAssets();
+            return CompletableFuture.completedFuture(null);
+        }).exceptionally(CryptoAssetUpdater::logFailure);
+    }
+
+    /**
+     * @return the update interval, stretched while the request budget is tight
+     */
+    private Duration getRefreshInterval() {
+        Duration interval = Duration.ofMinutes(intervalInMins);
+        return requestBudget == null ? interval : requestBudget.stretch(interval);
+    }
+
+    /**
+     * Makes the call if it fits the request budget and the circuit is closed, and reports its outcome to the
+     * circuit breaker.
+     *
+     * @return the future of the call, or a future failed with CoinAPIUnavailableException if it was not made
+     */
+    private <T> CompletableFuture<T> guarded(RequestPriority priority, Supplier<CompletableFuture<T>> call) {
+        if (requestBudget != null && !requestBudget.tryAcquire(priority)) {
+            return CompletableFuture.failedFuture(
+                new CoinAPIUnavailableException("The CoinAPI request budget is spent for now!"));
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            if (requestBudget != null) {
+                requestBudget.release();
             }
-            writeCryptoAssetsIdsToFile(assetList.stream().map(CryptoAsset::assetId).toList());
-            return assetMap;
+            return CompletableFuture.failedFuture(
+                new CoinAPIUnavailableException("CoinAPI calls are suspended after repeated failures!"));
         }
-        var assetList = assetMap.values().stream().toList();
-        var earliest = Collections.min(assetList, Comparator.comparing(CryptoAsset::lastUpdated));
-        var currTime = LocalDateTime.now();
-        Duration duration = Duration.between(earliest.lastUpdated(), currTime);
-        if (duration.toMinutes() > this.intervalInMins) {
-            update(assetList, assetMap);
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
         }
-        return assetMap;
+        return result.whenComplete((value, failure) -> {
+            if (failure != null) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        });
     }
 
-    private void update(List<CryptoAsset> assetList, Map<String, CryptoAsset> assetMap) {
+    private void refreshAllAssets() {
+        LocalDateTime fetchedAt = LocalDateTime.now();
+        List<CryptoAsset> assetList;
         try {
             assetList = cryptoConsumer.getAllAssets();
         } catch (InvalidCredentialsForAPIException e) {
             throw new RuntimeException(e.getMessage(), e.getCause());
         }
-        assetMap.clear();
+        publishAllAssets(assetList, fetchedAt);
+    }
+
+    private PriceSnapshot publishAllAssets(List<CryptoAsset> assetList, LocalDateTime fetchedAt) {
+        Map<String, CryptoAsset> assets = new LinkedHashMap<>();
         for (var a : assetList) {
-            assetMap.put(a.assetId(), a);
+            assets.put(a.assetId(), a);
         }
+        writeCryptoAssetsIdsToFile(assetList.stream().map(CryptoAsset::assetId).toList());
+        PriceSnapshot published =
+            snapshot.updateAndGet(latest -> PriceSnapshot.of(assets, latest.version() + 1, fetchedAt));
+        savePrices(published);
+        return published;
     }
 
-    public Map<String, CryptoAsset> updateAssetIfNeeded(Map<String, CryptoAsset> assetMap, String assetId) {
-        var asset = assetMap.get(assetId);
-        Duration duration = Duration.between(asset.lastUpdated(), LocalDateTime.now());
-        if (duration.toMinutes() > this.intervalInMins) {
-            try {
-                asset = cryptoConsumer.getAssetById(asset.assetId());
-            } catch (InvalidCredentialsForAPIException e) {
-                throw new RuntimeException(e.getMessage(), e.getCause());
+    private PriceSnapshot publishAsset(CryptoAsset fetched) {
+        return publishAssets(List.of(fetched));
+    }
+
+    private PriceSnapshot publishAssets(List<CryptoAsset> fetched) {
+        return snapshot.updateAndGet(latest -> {
+            List<CryptoAsset> newer = fetched.stream().filter(asset -> {
+                CryptoAsset known = latest.assets().get(asset.assetId());
+                return known == null || asset.lastUpdated().isAfter(known.lastUpdated());
+            }).toList();
+            return newer.isEmpty() ? latest : latest.withAssets(newer);
+        });
+    }
+
+    /**
+     * Starts the refresh of the asset unless one is already in flight, in which case its future is returned.
+     * The asset is forgotten once the refresh completes, so the next request after it starts a new one.
+     */
+    private CompletableFuture<PriceSnapshot> singleFlight(String assetId,
+                                                          Supplier<CompletableFuture<PriceSnapshot>> fetch) {
+        CompletableFuture<PriceSnapshot> refresh = new CompletableFuture<>();
+        CompletableFuture<PriceSnapshot> inProgress = assetRefreshes.putIfAbsent(assetId, refresh);
+        if (inProgress != null) {
+            return inProgress;
+        }
+        CompletableFuture<PriceSnapshot> download;
+        try {
+            download = fetch.get();
+        } catch (RuntimeException e) {
+            assetRefreshes.remove(assetId, refresh);
+            refresh.completeExceptionally(e);
+            return refresh;
+        }
+        download.whenComplete((published, failure) -> {
+            assetRefreshes.remove(assetId, refresh);
+            if (failure != null) {
+                refresh.completeExceptionally(failure);
+            } else {
+                refresh.complete(published);
             }
-            assetMap.put(assetId, asset);
+        });
+        return refresh;
+    }
+
+    private AsyncCryptoConsumerAPI requireAsyncConsumer() {
+        if (asyncCryptoConsumer == null) {
+            throw new IllegalStateException("The updater was created without an async consumer!");
+        }
+        return asyncCryptoConsumer;
+    }
+
+    private boolean isAssetOutdated(String assetId) {
+        CryptoAsset asset = snapshot.get().assets().get(assetId);
+        return asset != null && isOutdated(asset.lastUpdated());
+    }
+
+    private boolean isOutdated(LocalDateTime lastUpdated) {
+        return Duration.between(lastUpdated, LocalDateTime.now()).toMinutes() > this.intervalInMins;
+    }
+
+    private static void runInBackground(Runnable refresh) {
+        try {
+            refresh.run();
+        } catch (RuntimeException e) {
+            // the old prices stay in use and the next check tries again
+            logFailure(e);
+        }
+    }
+
+    private static PriceSnapshot logFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof CoinAPIUnavailableException) {
+            // an expected consequence of an earlier failure or of the budget, not a failure of its own
+            return null;
         }
-        return assetMap;
+        ErrorLogger.log("Message: " + cause.getMessage() + " | Stack Trace: " +
+            Arrays.toString(cause.getStackTrace()));
+        return null;
     }
 
     public void setInterval(int intervalInMins) {
@@ -87,6 +469,38 @@ public class CryptoAssetUpdater {
         this.intervalInMins = intervalInMins;
     }
 
+    public void setBatchWindow(Duration batchWindow) {
+        if (batchWindow.isNegative()) {
+            throw new IllegalArgumentException("Batch window cannot be negative!");
+        }
+        this.batchWindow = batchWindow;
+    }
+
+    private PriceSnapshot loadSavedPrices() {
+        if (pricesPath == null) {
+            return null;
+        }
+        try {
+            return PriceSnapshotFile.read(pricesPath);
+        } catch (IOException e) {
+            // a damaged file is as good as none, the prices are downloaded instead
+            logFailure(e);
+            return null;
+        }
+    }
+
+    private synchronized void savePrices(PriceSnapshot prices) {
+        if (pricesPath == null) {
+            return;
+        }
+        try {
+            PriceSnapshotFile.write(pricesPath, prices);
+        } catch (IOException e) {
+            // the prices in memory are still good, only the next start has to download them
+            logFailure(e);
+        }
+    }
+
     private void writeCryptoAssetsIdsToFile(List<String> assetIds) {
         if (Files.exists(assetIdsPath)) {
             return;
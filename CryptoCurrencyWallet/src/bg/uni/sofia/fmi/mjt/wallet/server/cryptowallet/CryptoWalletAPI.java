@@ -1,34 +1,57 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientSession;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderResult;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.LoginAuthenticationException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.PasswordWrongFormatException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UnauthorizedUserException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserAlreadyExistsException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UsernameWrongFormatException;
 
-import java.nio.channels.SelectionKey;
-
 public interface CryptoWalletAPI {
-    void register(SelectionKey key, String username, String password)
+    void register(ClientSession session, String username, String password)
         throws UsernameWrongFormatException, PasswordWrongFormatException, UserAlreadyExistsException;
 
-    void login(SelectionKey key, String username, String password)
+    void login(ClientSession session, String username, String password)
         throws UsernameWrongFormatException, PasswordWrongFormatException, UserNotFoundException,
         LoginAuthenticationException;
 
-    void depositMoney(SelectionKey key, double amount) throws UnauthorizedUserException;
+    void depositMoney(ClientSession session, double amount) throws UnauthorizedUserException;
+
+    String listOfferings(ClientSession session, int pageNumber) throws UnauthorizedUserException;
 
-    String listOfferings(SelectionKey key, int pageNumber) throws UnauthorizedUserException;
+    void buyAsset(ClientSession session, String assetId, double money)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException;
 
-    void buyAsset(SelectionKey key, String assetId, double money)
+    double buyAssetQuantity(ClientSession session, String assetId, double quantity)
         throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException;
 
-    double sellAsset(SelectionKey key, String assetId) throws UnauthorizedUserException, InvalidAssetIdException;
+    double sellAsset(ClientSession session, String assetId) throws UnauthorizedUserException, InvalidAssetIdException;
+
+    double sellAssetQuantity(ClientSession session, String assetId, double quantity)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException;
+
+    double sellAssetValue(ClientSession session, String assetId, double money)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException;
+
+    String getWalletSummary(ClientSession session) throws UnauthorizedUserException;
+
+    String getWalletOverallSummary(ClientSession session) throws UnauthorizedUserException;
+
+    OrderResult placeLimitOrder(ClientSession session, OrderSide side, String assetId, double quantity, double price)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException,
+        InsufficientAssetAmountException;
 
-    String getWalletSummary(SelectionKey key) throws UnauthorizedUserException;
+    double placeMarketOrder(ClientSession session, OrderSide side, String assetId, double quantity)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException,
+        InsufficientAssetAmountException;
 
-    String getWalletOverallSummary(SelectionKey key) throws UnauthorizedUserException;
+    void cancelOrder(ClientSession session, String assetId, long orderId)
+        throws UnauthorizedUserException, OrderNotFoundException;
 }
@@ -1,89 +1,147 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientSession;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderBookServiceAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderResult;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.WalletServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.LoginAuthenticationException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.PasswordWrongFormatException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UnauthorizedUserException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserAlreadyExistsException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UsernameWrongFormatException;
 
-import java.nio.channels.SelectionKey;
-
 public class CryptoWalletController implements CryptoWalletAPI {
 
     private final UserServiceAPI userService;
     private final WalletServiceAPI walletService;
+    private final OrderBookServiceAPI orderBookService;
 
-    public CryptoWalletController(UserServiceAPI userService, WalletServiceAPI walletService) {
+    public CryptoWalletController(UserServiceAPI userService, WalletServiceAPI walletService,
+                                  OrderBookServiceAPI orderBookService) {
         this.userService = userService;
         this.walletService = walletService;
+        this.orderBookService = orderBookService;
     }
 
     @Override
-    public void register(SelectionKey key, String username, String password)
+    public void register(ClientSession session, String username, String password)
         throws UsernameWrongFormatException, PasswordWrongFormatException, UserAlreadyExistsException {
         User registeredUser = userService.register(username, password);
-        key.attach(registeredUser);
+        session.logIn(registeredUser);
     }
 
     @Override
-    public void login(SelectionKey key, String username, String password)
+    public void login(ClientSession session, String username, String password)
         throws UsernameWrongFormatException, PasswordWrongFormatException, UserNotFoundException,
         LoginAuthenticationException {
         var loggedInUser = userService.login(username, password);
-        key.attach(loggedInUser);
+        session.logIn(loggedInUser);
     }
 
     @Override
-    public void depositMoney(SelectionKey key, double amount) throws UnauthorizedUserException {
-        checkAuthorization(key);
-        User currentUser = (User) key.attachment();
+    public void depositMoney(ClientSession session, double amount) throws UnauthorizedUserException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
         walletService.depositMoney(currentUser, amount);
     }
 
     @Override
-    public String listOfferings(SelectionKey key, int pageNumber) throws UnauthorizedUserException {
-        checkAuthorization(key);
+    public String listOfferings(ClientSession session, int pageNumber) throws UnauthorizedUserException {
+        checkAuthorization(session);
         return walletService.listOfferings(pageNumber);
     }
 
     @Override
-    public void buyAsset(SelectionKey key, String assetId, double money)
+    public void buyAsset(ClientSession session, String assetId, double money)
         throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException {
-        checkAuthorization(key);
-        User currentUser = (User) key.attachment();
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
         walletService.buyAsset(currentUser, assetId, money);
     }
 
     @Override
-    public double sellAsset(SelectionKey key, String assetId)
+    public double buyAssetQuantity(ClientSession session, String assetId, double quantity)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        return walletService.buyAssetQuantity(currentUser, assetId, quantity);
+    }
+
+    @Override
+    public double sellAsset(ClientSession session, String assetId)
         throws UnauthorizedUserException, InvalidAssetIdException {
-        checkAuthorization(key);
-        User currentUser = (User) key.attachment();
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
         return walletService.sellAsset(currentUser, assetId);
     }
 
     @Override
-    public String getWalletSummary(SelectionKey key) throws UnauthorizedUserException {
-        checkAuthorization(key);
-        User currentUser = (User) key.attachment();
+    public double sellAssetQuantity(ClientSession session, String assetId, double quantity)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        return walletService.sellAssetQuantity(currentUser, assetId, quantity);
+    }
+
+    @Override
+    public double sellAssetValue(ClientSession session, String assetId, double money)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        return walletService.sellAssetValue(currentUser, assetId, money);
+    }
+
+    @Override
+    public String getWalletSummary(ClientSession session) throws UnauthorizedUserException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
         return walletService.getWalletSummary(currentUser);
     }
 
     @Override
-    public String getWalletOverallSummary(SelectionKey key) throws UnauthorizedUserException {
-        checkAuthorization(key);
-        User currentUser = (User) key.attachment();
+    public String getWalletOverallSummary(ClientSession session) throws UnauthorizedUserException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
         return walletService.getWalletOverallSummary(currentUser);
     }
 
-    private void checkAuthorization(SelectionKey key) throws UnauthorizedUserException {
-        if (key.attachment() == null) {
+    @Override
+    public OrderResult placeLimitOrder(ClientSession session, OrderSide side, String assetId, double quantity,
+                                      double price)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException,
+        InsufficientAssetAmountException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        return orderBookService.placeLimitOrder(currentUser, side, assetId, quantity, price);
+    }
+
+    @Override
+    public double placeMarketOrder(ClientSession session, OrderSide side, String assetId, double quantity)
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException,
+        InsufficientAssetAmountException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        return orderBookService.placeMarketOrder(currentUser, side, assetId, quantity);
+    }
+
+    @Override
+    public void cancelOrder(ClientSession session, String assetId, long orderId)
+        throws UnauthorizedUserException, OrderNotFoundException {
+        checkAuthorization(session);
+        User currentUser = session.getLoggedInUser();
+        orderBookService.cancelOrder(currentUser, assetId, orderId);
+    }
+
+    private void checkAuthorization(ClientSession session) throws UnauthorizedUserException {
+        if (session.getLoggedInUser() == null) {
             throw new UnauthorizedUserException("You need to log in to your account first!");
         }
     }
@@ -0,0 +1,21 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+public record PriceRefreshMetrics(
+    CircuitBreaker.State circuitState,
+    int consecutiveFailures,
+    long circuitTrips,
+    long rejectedCalls,
+    long remainingBudget,
+    long budgetRejectedCalls,
+    long staleServed,
+    long snapshotVersion,
+    long stalenessInSecs
+) {
+    @Override
+    public String toString() {
+        return "Prices: circuit=" + circuitState + ", consecutive failures=" + consecutiveFailures + ", trips=" +
+            circuitTrips + ", rejected calls=" + rejectedCalls + ", remaining budget=" + remainingBudget +
+            ", budget rejected calls=" + budgetRejectedCalls + ", stale served=" + staleServed + ", version=" +
+            snapshotVersion + ", staleness=" + stalenessInSecs + "s";
+    }
+}
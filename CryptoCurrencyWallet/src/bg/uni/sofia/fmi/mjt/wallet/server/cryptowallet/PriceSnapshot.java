@@ -0,0 +1,75 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable prices that the request handlers read without locking. A refresh never changes a snapshot,
+ * it publishes a new one with a higher version instead.
+ *
+ * @param assets    the assets by id, in the order CoinAPI returned them
+ * @param offerings the assets with a price worth listing, in the same order
+ * @param version   grows by one with every published snapshot
+ * @param fetchedAt when the whole list of assets was downloaded, or null while the first one is in progress
+ */
+public record PriceSnapshot(Map<String, CryptoAsset> assets, List<CryptoAsset> offerings, long version,
+                            LocalDateTime fetchedAt) {
+    private static final double MIN_POSSIBLE_PRICE = 0.0001;
+
+    public PriceSnapshot {
+        assets = Collections.unmodifiableMap(new LinkedHashMap<>(assets));
+        offerings = List.copyOf(offerings);
+    }
+
+    /**
+     * @return the snapshot served until the first prices are downloaded, with no assets and no download time
+     */
+    public static PriceSnapshot empty() {
+        return of(Map.of(), 0, null);
+    }
+
+    public static PriceSnapshot of(Map<String, CryptoAsset> assets, long version, LocalDateTime fetchedAt) {
+        List<CryptoAsset> offerings = assets.values().stream()
+            .filter(a -> a.priceUSD() != null && a.priceUSD() > MIN_POSSIBLE_PRICE).toList();
+        return new PriceSnapshot(assets, offerings, version, fetchedAt);
+    }
+
+    /**
+     * @return the next version of the snapshot with the price of a single asset replaced
+     */
+    public PriceSnapshot withAsset(CryptoAsset asset) {
+        return withAssets(List.of(asset));
+    }
+
+    /**
+     * @return the next version of the snapshot with the prices of the given assets replaced
+     */
+    public PriceSnapshot withAssets(Collection<CryptoAsset> newPrices) {
+        Map<String, CryptoAsset> newAssets = new LinkedHashMap<>(assets);
+        for (CryptoAsset asset : newPrices) {
+            newAssets.put(asset.assetId(), asset);
+        }
+        return of(newAssets, version + 1, fetchedAt);
+    }
+
+    /**
+     * @return whether the whole list of assets has been downloaded, which is not so only for the empty snapshot
+     */
+    public boolean isLoaded() {
+        return fetchedAt != null;
+    }
+
+    /**
+     * @return how long ago the whole list of assets was downloaded, only for a loaded snapshot
+     */
+    public Duration getStaleness() {
+        return Duration.between(fetchedAt, LocalDateTime.now());
+    }
+}
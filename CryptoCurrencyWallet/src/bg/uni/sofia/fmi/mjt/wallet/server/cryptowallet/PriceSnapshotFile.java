@@ -0,0 +1,123 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores a {@link PriceSnapshot} on disk, so that the server can start with the last prices it has seen
+ * instead of waiting for CoinAPI.
+ * <p>
+ * Version 1 layout: a 4-byte magic and a 2-byte version, the snapshot version as a long, the time of the
+ * download, the assets count as an int and for every asset its id as modified UTF-8, a byte of flags telling
+ * whether the name and the price are present, the name, the price as a double and the time of its update.
+ * Times are written as the seconds and nanoseconds of the local date-time read as UTC.
+ */
+public final class PriceSnapshotFile {
+    private static final int MAGIC = 0x43575050;
+    private static final short CURRENT_VERSION = 1;
+    private static final byte HAS_NAME = 1;
+    private static final byte HAS_PRICE = 2;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private PriceSnapshotFile() {
+    }
+
+    /**
+     * Replaces the file with the given snapshot. The old file stays in place until the new one is complete.
+     */
+    public static void write(Path path, PriceSnapshot snapshot) throws IOException {
+        Path tmpPath = path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            output.writeInt(MAGIC);
+            output.writeShort(CURRENT_VERSION);
+            output.writeLong(snapshot.version());
+            writeTime(output, snapshot.fetchedAt());
+            output.writeInt(snapshot.assets().size());
+            for (CryptoAsset asset : snapshot.assets().values()) {
+                writeAsset(output, asset);
+            }
+        }
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the stored snapshot or null if there is no file yet
+     * @throws IOException if the file cannot be read or is not a snapshot written by this class
+     */
+    public static PriceSnapshot read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a prices file!");
+            }
+            short version = input.readShort();
+            if (version != CURRENT_VERSION) {
+                throw new IOException("Unsupported prices file version: " + version);
+            }
+            long snapshotVersion = input.readLong();
+            LocalDateTime fetchedAt = readTime(input);
+            int count = input.readInt();
+            if (count < 0) {
+                throw new IOException("Invalid assets count: " + count);
+            }
+            Map<String, CryptoAsset> assets = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                CryptoAsset asset = readAsset(input);
+                assets.put(asset.assetId(), asset);
+            }
+            return PriceSnapshot.of(assets, snapshotVersion, fetchedAt);
+        }
+    }
+
+    private static void writeAsset(DataOutputStream output, CryptoAsset asset) throws IOException {
+        output.writeUTF(asset.assetId());
+        byte flags = 0;
+        if (asset.name() != null) {
+            flags |= HAS_NAME;
+        }
+        if (asset.priceUSD() != null) {
+            flags |= HAS_PRICE;
+        }
+        output.writeByte(flags);
+        if (asset.name() != null) {
+            output.writeUTF(asset.name());
+        }
+        if (asset.priceUSD() != null) {
+            output.writeDouble(asset.priceUSD());
+        }
+        writeTime(output, asset.lastUpdated());
+    }
+
+    private static CryptoAsset readAsset(DataInputStream input) throws IOException {
+        String assetId = input.readUTF();
+        byte flags = input.readByte();
+        String name = (flags & HAS_NAME) != 0 ? input.readUTF() : null;
+        Double priceUSD = (flags & HAS_PRICE) != 0 ? input.readDouble() : null;
+        return new CryptoAsset(assetId, name, priceUSD, readTime(input));
+    }
+
+    private static void writeTime(DataOutputStream output, LocalDateTime time) throws IOException {
+        output.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        output.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream input) throws IOException {
+        long seconds = input.readLong();
+        int nanos = input.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
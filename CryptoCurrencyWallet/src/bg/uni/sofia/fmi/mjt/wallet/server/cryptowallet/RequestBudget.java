@@ -0,0 +1,109 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that spreads the daily CoinAPI quota over the day. The bucket holds up to a day's worth of
+ * requests and refills continuously at the rate of the quota, so spending it all in the morning leaves
+ * only a trickle for the rest of the day. When CoinAPI reports the remaining quota of the key, the bucket
+ * never holds more than that.
+ * <p>
+ * Once the bucket gets below the reserve, only the refreshes of the whole list are let through: they keep
+ * every price fresh at once, while single assets can wait for the next one. The less is left in the bucket,
+ * the more the interval between the refreshes is stretched, see {@link #stretch(Duration)}.
+ */
+public class RequestBudget {
+    private static final double RESERVE_FRACTION = 0.2;
+    private static final double STRETCH_FRACTION = 0.5;
+    private static final int MAX_STRETCH = 8;
+    private static final long NANOS_PER_DAY = Duration.ofDays(1).toNanos();
+
+    private final long dailyQuota;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+    private long rejectedRequests;
+
+    public RequestBudget(long dailyQuota) {
+        this(dailyQuota, System::nanoTime);
+    }
+
+    RequestBudget(long dailyQuota, LongSupplier nanoClock) {
+        if (dailyQuota <= 0) {
+            throw new IllegalArgumentException("Daily quota must be a positive number!");
+        }
+        this.dailyQuota = dailyQuota;
+        this.nanoClock = nanoClock;
+        this.tokens = dailyQuota;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token for a request of the given priority.
+     *
+     * @return whether the request may be sent
+     */
+    public synchronized boolean tryAcquire(RequestPriority priority) {
+        refill();
+        double floor = priority == RequestPriority.FULL_REFRESH ? 0 : RESERVE_FRACTION * dailyQuota;
+        if (tokens - 1 < floor) {
+            rejectedRequests++;
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Gives back the token of a request that was not sent after all.
+     */
+    public synchronized void release() {
+        tokens = Math.min(dailyQuota, tokens + 1);
+    }
+
+    /**
+     * Caps the bucket at the quota CoinAPI reports as remaining for the key, which also counts the requests
+     * of other clients sharing it.
+     */
+    public synchronized void onRemainingQuota(long remaining) {
+        refill();
+        tokens = Math.max(0, Math.min(tokens, remaining));
+    }
+
+    /**
+     * @return the interval as it is while at least half of the bucket is left, stretched in proportion to
+     * how much less is left, up to eight times
+     */
+    public Duration stretch(Duration interval) {
+        double fraction = getRemaining() / dailyQuota;
+        if (fraction >= STRETCH_FRACTION) {
+            return interval;
+        }
+        double factor = Math.min(MAX_STRETCH, STRETCH_FRACTION / Math.max(fraction, 1.0 / NANOS_PER_DAY));
+        return Duration.ofNanos((long) Math.min(Long.MAX_VALUE, interval.toNanos() * factor));
+    }
+
+    public synchronized double getRemaining() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * @return how many requests were not let through because the budget was spent
+     */
+    public synchronized long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(dailyQuota, tokens + (double) (now - lastRefillNanos) * dailyQuota / NANOS_PER_DAY);
+        lastRefillNanos = now;
+    }
+
+    public enum RequestPriority {
+        FULL_REFRESH,
+        ASSET_REFRESH
+    }
+}
@@ -0,0 +1,129 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Calls CoinAPI with HttpClient.sendAsync, so no thread waits for the response. The body is collected
+ * as bytes by the client and parsed once it is complete, because reading a streamed body would block
+ * the thread that completes the future. The whole call, including the body, has to finish within the timeout.
+ */
+public class AsyncCryptoConsumer implements AsyncCryptoConsumerAPI {
+    private static final String ASSETS_PATH = "/v1/assets";
+    private static final String FILTER_ASSET_ID_PARAMETER = "?filter_asset_id=";
+    private static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final int CREDENTIALS_BAD_REQUEST_STATUS_CODE = 401;
+
+    private final HttpClient client;
+    private final String apiKey;
+    private final String assetsUrl;
+    private final Duration timeout;
+    private final LongConsumer remainingQuotaListener;
+
+    public AsyncCryptoConsumer(HttpClient client, String apiKey, Duration timeout) {
+        this(client, apiKey, timeout, remaining -> { });
+    }
+
+    /**
+     * @param remainingQuotaListener gets the remaining quota of the key after every response that reports it
+     */
+    public AsyncCryptoConsumer(HttpClient client, String apiKey, Duration timeout,
+                               LongConsumer remainingQuotaListener) {
+        this(client, CryptoConsumerAPI.COIN_API_BASE_URL, apiKey, timeout, remainingQuotaListener);
+    }
+
+    /**
+     * @param baseUrl the scheme, host and port of CoinAPI or of a server standing in for it
+     */
+    public AsyncCryptoConsumer(HttpClient client, String baseUrl, String apiKey, Duration timeout,
+                               LongConsumer remainingQuotaListener) {
+        this.client = client;
+        this.assetsUrl = baseUrl + ASSETS_PATH;
+        this.apiKey = apiKey;
+        this.timeout = timeout;
+        this.remainingQuotaListener = remainingQuotaListener;
+    }
+
+    @Override
+    public CompletableFuture<List<CryptoAsset>> getAllAssetsAsync() {
+        return send(assetsUrl).thenApply(response -> parseResponse(response, true));
+    }
+
+    @Override
+    public CompletableFuture<CryptoAsset> getAssetByIdAsync(String id) {
+        return send(assetsUrl + "/" + id).thenApply(response -> {
+            List<CryptoAsset> assets = parseResponse(response, false);
+            if (assets.isEmpty()) {
+                throw new RuntimeException("No valid response!");
+            }
+            return assets.get(0);
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<CryptoAsset>> getAssetsByIdsAsync(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        return send(assetsUrl + FILTER_ASSET_ID_PARAMETER + String.join(",", ids))
+            .thenApply(response -> parseResponse(response, false));
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(String url) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder().uri(URI.create(url)).header("X-CoinAPI-Key", apiKey)
+                .timeout(timeout).build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new RuntimeException(e.getMessage(), e));
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+            .thenApply(response -> {
+                reportRemainingQuota(response);
+                return response;
+            });
+    }
+
+    /**
+     * Passes the remaining quota of the key to the listener, when CoinAPI reports it.
+     */
+    private void reportRemainingQuota(HttpResponse<?> response) {
+        HttpHeaders headers = response.headers();
+        if (headers == null) {
+            return;
+        }
+        try {
+            headers.firstValueAsLong(RATE_LIMIT_REMAINING_HEADER).ifPresent(remainingQuotaListener);
+        } catch (NumberFormatException e) {
+            // a malformed header tells nothing about the quota
+        }
+    }
+
+    private static List<CryptoAsset> parseResponse(HttpResponse<byte[]> response, boolean isCryptoOnly) {
+        if (response.statusCode() == CREDENTIALS_BAD_REQUEST_STATUS_CODE) {
+            throw new CompletionException(
+                new InvalidCredentialsForAPIException("API Key is not specified or it is not correctly formatted!"));
+        }
+        try {
+            return CryptoAssetParser.parse(new ByteArrayInputStream(response.body()), isCryptoOnly);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+}
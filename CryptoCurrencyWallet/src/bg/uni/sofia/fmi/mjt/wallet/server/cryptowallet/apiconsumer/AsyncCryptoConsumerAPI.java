@@ -0,0 +1,20 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link CryptoConsumerAPI}. The futures complete exceptionally with
+ * InvalidCredentialsForAPIException when CoinAPI rejects the key, with a TimeoutException when it does
+ * not answer in time and with the cause of the failure otherwise.
+ */
+public interface AsyncCryptoConsumerAPI {
+    CompletableFuture<List<CryptoAsset>> getAllAssetsAsync();
+
+    CompletableFuture<CryptoAsset> getAssetByIdAsync(String id);
+
+    CompletableFuture<List<CryptoAsset>> getAssetsByIdsAsync(Collection<String> ids);
+}
@@ -0,0 +1,75 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a CoinAPI assets array straight from the response stream. Only the four fields a
+ * {@link CryptoAsset} needs are read; the rest of every record is skipped without being decoded,
+ * so the payload is never held in memory as a whole.
+ */
+public class CryptoAssetParser {
+    private static final String ASSET_ID_FIELD = "asset_id";
+    private static final String NAME_FIELD = "name";
+    private static final String TYPE_IS_CRYPTO_FIELD = "type_is_crypto";
+    private static final String PRICE_USD_FIELD = "price_usd";
+
+    /**
+     * @param isCryptoOnly whether to drop the records that are not crypto currencies
+     * @throws IOException if the stream can not be read or is not an array of assets
+     */
+    public static List<CryptoAsset> parse(InputStream inputStream, boolean isCryptoOnly) throws IOException {
+        LocalDateTime lastUpdated = LocalDateTime.now();
+        List<CryptoAsset> result = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                CryptoAsset asset = readAsset(reader, isCryptoOnly, lastUpdated);
+                if (asset != null) {
+                    result.add(asset);
+                }
+            }
+            reader.endArray();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed assets: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    private static CryptoAsset readAsset(JsonReader reader, boolean isCryptoOnly, LocalDateTime lastUpdated)
+        throws IOException {
+        String assetId = null;
+        String name = null;
+        Double priceUSD = null;
+        boolean isCrypto = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case ASSET_ID_FIELD -> assetId = reader.nextString();
+                case NAME_FIELD -> name = reader.nextString();
+                case TYPE_IS_CRYPTO_FIELD -> isCrypto = reader.nextInt() != 0;
+                case PRICE_USD_FIELD -> priceUSD = reader.nextDouble();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (isCryptoOnly && !isCrypto) {
+            return null;
+        }
+        return new CryptoAsset(assetId, name, priceUSD, lastUpdated);
+    }
+}
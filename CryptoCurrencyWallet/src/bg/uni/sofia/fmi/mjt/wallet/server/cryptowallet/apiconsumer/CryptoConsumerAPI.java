@@ -3,10 +3,18 @@ package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CryptoConsumerAPI {
+    String COIN_API_BASE_URL = "https://rest.coinapi.io";
+
     List<CryptoAsset> getAllAssets() throws InvalidCredentialsForAPIException;
 
     CryptoAsset getAssetById(String id) throws InvalidCredentialsForAPIException;
+
+    /**
+     * Downloads the given assets with a single request. Ids that CoinAPI does not know are left out of the result.
+     */
+    List<CryptoAsset> getAssetsByIds(Collection<String> ids) throws InvalidCredentialsForAPIException;
 }
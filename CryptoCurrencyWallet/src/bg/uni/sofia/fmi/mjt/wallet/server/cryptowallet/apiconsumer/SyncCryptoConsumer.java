@@ -1,68 +1,81 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
 
-import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.Asset;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 public class SyncCryptoConsumer implements CryptoConsumerAPI {
     private HttpClient client;
     private String apiKey;
-    private static final String COIN_API_URL = "https://rest.coinapi.io/v1/assets";
+    private String assetsUrl;
+    private LongConsumer remainingQuotaListener;
+    private static final String ASSETS_PATH = "/v1/assets";
+    private static final String FILTER_ASSET_ID_PARAMETER = "?filter_asset_id=";
+    private static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
 
     private static final int CREDENTIALS_BAD_REQUEST_STATUS_CODE = 401;
 
     public SyncCryptoConsumer(HttpClient client, String apiKey) {
+        this(client, apiKey, remaining -> { });
+    }
+
+    /**
+     * @param remainingQuotaListener gets the remaining quota of the key after every response that reports it
+     */
+    public SyncCryptoConsumer(HttpClient client, String apiKey, LongConsumer remainingQuotaListener) {
+        this(client, COIN_API_BASE_URL, apiKey, remainingQuotaListener);
+    }
+
+    /**
+     * @param baseUrl the scheme, host and port of CoinAPI or of a server standing in for it
+     */
+    public SyncCryptoConsumer(HttpClient client, String baseUrl, String apiKey,
+                              LongConsumer remainingQuotaListener) {
         this.client = client;
+        this.assetsUrl = baseUrl + ASSETS_PATH;
         this.apiKey = apiKey;
+        this.remainingQuotaListener = remainingQuotaListener;
     }
 
+    /**
+     * The response body is parsed while it is being received, see {@link CryptoAssetParser}.
+     */
     @Override
     public List<CryptoAsset> getAllAssets() throws InvalidCredentialsForAPIException {
-        HttpResponse<String> responseStr;
+        HttpResponse<InputStream> response;
         URI uri;
         try {
-            uri = new URI(COIN_API_URL);
+            uri = new URI(assetsUrl);
         } catch (URISyntaxException e) {
             throw new RuntimeException(e.getMessage(), e.getCause());
         }
         HttpRequest request =
             HttpRequest.newBuilder().uri(uri).header("X-CoinAPI-Key", apiKey).build();
         try {
-            responseStr = client.send(request, HttpResponse.BodyHandlers.ofString());
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e.getMessage(), e.getCause());
         }
-        validateResponse(responseStr.statusCode());
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        Asset[] response = gson.fromJson(responseStr.body(), Asset[].class);
-        List<CryptoAsset> result = new ArrayList<>();
-        for (var it : response) {
-            if (it.typeIsCrypto() == 0) {
-                continue;
-            }
-            result.add(new CryptoAsset(it.assetId(), it.name(), it.priceUSD(), LocalDateTime.now()));
-        }
-        return result;
+        return parseResponse(response, true);
     }
 
     @Override
     public CryptoAsset getAssetById(String id) throws InvalidCredentialsForAPIException {
-        HttpResponse<String> responseStr;
+        HttpResponse<InputStream> response;
         URI uri;
         try {
-            uri = new URI(COIN_API_URL + "/" + id);
+            uri = new URI(assetsUrl + "/" + id);
 
         } catch (URISyntaxException e) {
             throw new RuntimeException(e.getMessage(), e.getCause());
@@ -70,17 +83,63 @@ public class SyncCryptoConsumer implements CryptoConsumerAPI {
         HttpRequest request =
             HttpRequest.newBuilder().uri(uri).header("X-CoinAPI-Key", apiKey).build();
         try {
-            responseStr = client.send(request, HttpResponse.BodyHandlers.ofString());
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e.getMessage(), e.getCause());
         }
-        validateResponse(responseStr.statusCode());
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        Asset[] response = gson.fromJson(responseStr.body(), Asset[].class);
-        if (response.length == 0) {
+        List<CryptoAsset> assets = parseResponse(response, false);
+        if (assets.isEmpty()) {
             throw new RuntimeException("No valid response!");
         }
-        return new CryptoAsset(response[0].assetId(), response[0].name(), response[0].priceUSD(), LocalDateTime.now());
+        return assets.get(0);
+    }
+
+    @Override
+    public List<CryptoAsset> getAssetsByIds(Collection<String> ids) throws InvalidCredentialsForAPIException {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        HttpResponse<InputStream> response;
+        URI uri;
+        try {
+            uri = new URI(assetsUrl + FILTER_ASSET_ID_PARAMETER + String.join(",", ids));
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+        HttpRequest request =
+            HttpRequest.newBuilder().uri(uri).header("X-CoinAPI-Key", apiKey).build();
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException e) {
+            throw new RuntimeException(e.getMessage(), e.getCause());
+        }
+        return parseResponse(response, false);
+    }
+
+    private List<CryptoAsset> parseResponse(HttpResponse<InputStream> response, boolean isCryptoOnly)
+        throws InvalidCredentialsForAPIException {
+        try (InputStream body = response.body()) {
+            reportRemainingQuota(response);
+            validateResponse(response.statusCode());
+            return CryptoAssetParser.parse(body, isCryptoOnly);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Passes the remaining quota of the key to the listener, when CoinAPI reports it.
+     */
+    private void reportRemainingQuota(HttpResponse<?> response) {
+        HttpHeaders headers = response.headers();
+        if (headers == null) {
+            return;
+        }
+        try {
+            headers.firstValueAsLong(RATE_LIMIT_REMAINING_HEADER).ifPresent(remainingQuotaListener);
+        } catch (NumberFormatException e) {
+            // a malformed header tells nothing about the quota
+        }
     }
 
     private void validateResponse(int responseStatusCode) throws InvalidCredentialsForAPIException {
@@ -0,0 +1,360 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+
+import java.util.Arrays;
+
+/**
+ * Limit order book of a single asset that matches orders by price-time priority: the best price first and,
+ * within a price, the oldest order first. Prices and amounts are longs in {@link MicroUnits}.
+ * <p>
+ * Every side keeps its price levels in a sorted long array with the best price last, so the best level
+ * is found and removed in constant time and a new level is put in place with a binary search. Orders and
+ * levels are pooled and reused, so matching does not allocate once the pools have grown to the size
+ * of the book.
+ * <p>
+ * An order id carries the slot of the order in its low bits and a sequence number above them, so a cancel
+ * finds its order without a map and an id of an order that is gone does not match the order that reuses
+ * the slot.
+ * <p>
+ * Not thread-safe: the owner of the book guards it with a lock.
+ *
+ * @param <T> the owner of the orders, handed back to the {@link TradeListener}
+ */
+public class OrderBook<T> {
+    private static final int SLOT_BITS = 24;
+    private static final int MAX_ORDERS = 1 << SLOT_BITS;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final TradeListener<T> listener;
+    private final BookSide bids = new BookSide(OrderSide.BUY);
+    private final BookSide asks = new BookSide(OrderSide.SELL);
+
+    private Order[] orders = new Order[INITIAL_CAPACITY];
+    private int usedSlots;
+    private Order freeOrders;
+    private PriceLevel freeLevels;
+    private long sequence;
+
+    public OrderBook(TradeListener<T> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Matches the order against the other side as long as the prices cross and keeps the rest in the book.
+     *
+     * @return the id of the order, which stays valid while {@link #restingAmount(long)} is positive
+     * @throws IllegalStateException if the book already holds the maximum number of orders
+     */
+    public long placeLimit(OrderSide side, long price, long amount, T owner) {
+        Order order = allocateOrder();
+        order.side = side;
+        order.price = price;
+        order.owner = owner;
+        long remaining = match(side, price, amount, owner);
+        if (remaining == 0) {
+            long id = order.id;
+            freeOrder(order);
+            return id;
+        }
+        order.remaining = remaining;
+        sideOf(side).add(order);
+        return order.id;
+    }
+
+    /**
+     * Matches the order against the other side at any price. Whatever cannot be filled is dropped.
+     *
+     * @return the amount that was filled
+     */
+    public long placeMarket(OrderSide side, long amount, T owner) {
+        long limit = side == OrderSide.BUY ? Long.MAX_VALUE : 0;
+        return amount - match(side, limit, amount, owner);
+    }
+
+    /**
+     * @return the part of the amount that a market order of the side would fill now
+     */
+    public long fillableAmount(OrderSide side, long amount) {
+        BookSide makers = sideOf(side.opposite());
+        long fillable = 0;
+        for (int i = makers.size - 1; i >= 0 && fillable < amount; i--) {
+            fillable += Math.min(amount - fillable, makers.levels[i].amount);
+        }
+        return fillable;
+    }
+
+    /**
+     * @return the money that a market order of the side would trade now, rounded like every single fill
+     */
+    public long marketValue(OrderSide side, long amount) {
+        BookSide makers = sideOf(side.opposite());
+        long value = 0;
+        long left = amount;
+        for (int i = makers.size - 1; i >= 0 && left > 0; i--) {
+            for (Order maker = makers.levels[i].head; maker != null && left > 0; maker = maker.next) {
+                long fill = Math.min(left, maker.remaining);
+                value += MicroUnits.multiply(fill, maker.price);
+                left -= fill;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the owner of the order or null if the order is not in the book
+     */
+    @SuppressWarnings("unchecked")
+    public T ownerOf(long orderId) {
+        Order order = find(orderId);
+        return order == null ? null : (T) order.owner;
+    }
+
+    /**
+     * @return the amount that the order still offers, 0 if the order is not in the book
+     */
+    public long restingAmount(long orderId) {
+        Order order = find(orderId);
+        return order == null ? 0 : order.remaining;
+    }
+
+    /**
+     * Removes the order from the book.
+     *
+     * @return the amount that the order still offered, 0 if the order is not in the book
+     */
+    public long cancel(long orderId) {
+        Order order = find(orderId);
+        if (order == null) {
+            return 0;
+        }
+        long remaining = order.remaining;
+        sideOf(order.side).remove(order);
+        freeOrder(order);
+        return remaining;
+    }
+
+    /**
+     * @return the ids of all orders in the book
+     */
+    public long[] orderIds() {
+        long[] ids = new long[usedSlots];
+        int count = 0;
+        for (int i = 0; i < usedSlots; i++) {
+            if (orders[i].remaining > 0) {
+                ids[count++] = orders[i].id;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * @return the best price of the side or 0 if the side is empty
+     */
+    public long bestPrice(OrderSide side) {
+        BookSide bookSide = sideOf(side);
+        return bookSide.size == 0 ? 0 : bookSide.levels[bookSide.size - 1].price;
+    }
+
+    /**
+     * @return the amount offered at the price on the side
+     */
+    public long amountAt(OrderSide side, long price) {
+        BookSide bookSide = sideOf(side);
+        int index = bookSide.indexOf(price);
+        return index < 0 ? 0 : bookSide.levels[index].amount;
+    }
+
+    /**
+     * @return the amount that is left after filling the taker against the opposite side up to the limit
+     */
+    private long match(OrderSide side, long limit, long amount, T taker) {
+        BookSide makers = sideOf(side.opposite());
+        long left = amount;
+        while (left > 0 && makers.size > 0) {
+            PriceLevel level = makers.levels[makers.size - 1];
+            if (side == OrderSide.BUY ? level.price > limit : level.price < limit) {
+                break;
+            }
+            while (left > 0 && level.head != null) {
+                Order maker = level.head;
+                long fill = Math.min(left, maker.remaining);
+                maker.remaining -= fill;
+                level.amount -= fill;
+                left -= fill;
+                @SuppressWarnings("unchecked")
+                T makerOwner = (T) maker.owner;
+                listener.onTrade(makerOwner, taker, side, level.price, fill, maker.remaining);
+                if (maker.remaining == 0) {
+                    makers.remove(maker);
+                    freeOrder(maker);
+                }
+            }
+        }
+        return left;
+    }
+
+    private BookSide sideOf(OrderSide side) {
+        return side == OrderSide.BUY ? bids : asks;
+    }
+
+    private Order find(long orderId) {
+        int slot = (int) (orderId & (MAX_ORDERS - 1));
+        if (orderId <= 0 || slot >= usedSlots) {
+            return null;
+        }
+        Order order = orders[slot];
+        return order.id == orderId && order.remaining > 0 ? order : null;
+    }
+
+    private Order allocateOrder() {
+        Order order = freeOrders;
+        if (order != null) {
+            freeOrders = order.next;
+            order.next = null;
+        } else {
+            if (usedSlots == MAX_ORDERS) {
+                throw new IllegalStateException("The order book is full!");
+            }
+            if (usedSlots == orders.length) {
+                orders = Arrays.copyOf(orders, orders.length * 2);
+            }
+            order = new Order(usedSlots);
+            orders[usedSlots++] = order;
+        }
+        order.id = (++sequence << SLOT_BITS) | order.slot;
+        return order;
+    }
+
+    private void freeOrder(Order order) {
+        order.remaining = 0;
+        order.owner = null;
+        order.level = null;
+        order.prev = null;
+        order.next = freeOrders;
+        freeOrders = order;
+    }
+
+    private PriceLevel allocateLevel(long price) {
+        PriceLevel level = freeLevels;
+        if (level == null) {
+            level = new PriceLevel();
+        } else {
+            freeLevels = level.nextFree;
+            level.nextFree = null;
+        }
+        level.price = price;
+        return level;
+    }
+
+    private void freeLevel(PriceLevel level) {
+        level.head = null;
+        level.tail = null;
+        level.amount = 0;
+        level.nextFree = freeLevels;
+        freeLevels = level;
+    }
+
+    private static class Order {
+        private final int slot;
+        private long id;
+        private OrderSide side;
+        private long price;
+        private long remaining;
+        private Object owner;
+        private PriceLevel level;
+        private Order prev;
+        private Order next;
+
+        Order(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * The orders at one price, oldest first.
+     */
+    private static class PriceLevel {
+        private long price;
+        private long amount;
+        private Order head;
+        private Order tail;
+        private PriceLevel nextFree;
+    }
+
+    private class BookSide {
+        // the keys are the prices of the bids and the negated prices of the asks, so the best level is always last
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private PriceLevel[] levels = new PriceLevel[INITIAL_CAPACITY];
+        private int size;
+        private final boolean bids;
+
+        BookSide(OrderSide side) {
+            this.bids = side == OrderSide.BUY;
+        }
+
+        void add(Order order) {
+            long key = keyOf(order.price);
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            PriceLevel level;
+            if (index >= 0) {
+                level = levels[index];
+            } else {
+                index = -index - 1;
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    levels = Arrays.copyOf(levels, size * 2);
+                }
+                System.arraycopy(keys, index, keys, index + 1, size - index);
+                System.arraycopy(levels, index, levels, index + 1, size - index);
+                level = allocateLevel(order.price);
+                keys[index] = key;
+                levels[index] = level;
+                size++;
+            }
+            order.level = level;
+            order.prev = level.tail;
+            if (level.tail == null) {
+                level.head = order;
+            } else {
+                level.tail.next = order;
+            }
+            level.tail = order;
+            level.amount += order.remaining;
+        }
+
+        void remove(Order order) {
+            PriceLevel level = order.level;
+            level.amount -= order.remaining;
+            if (order.prev == null) {
+                level.head = order.next;
+            } else {
+                order.prev.next = order.next;
+            }
+            if (order.next == null) {
+                level.tail = order.prev;
+            } else {
+                order.next.prev = order.prev;
+            }
+            order.next = null;
+            if (level.head == null) {
+                int index = size - 1;
+                if (levels[index] != level) {
+                    index = indexOf(level.price);
+                }
+                System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+                System.arraycopy(levels, index + 1, levels, index, size - index - 1);
+                levels[--size] = null;
+                freeLevel(level);
+            }
+        }
+
+        int indexOf(long price) {
+            return Arrays.binarySearch(keys, 0, size, keyOf(price));
+        }
+
+        private long keyOf(long price) {
+            return bids ? price : -price;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook;
+
+public enum OrderSide {
+    BUY,
+    SELL;
+
+    public OrderSide opposite() {
+        return this == BUY ? SELL : BUY;
+    }
+}
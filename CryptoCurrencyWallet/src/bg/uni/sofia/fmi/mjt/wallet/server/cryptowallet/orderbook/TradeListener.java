@@ -0,0 +1,16 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook;
+
+/**
+ * Is told about every fill while an order is matched. It is called by the thread that placed the order,
+ * under whatever lock guards the {@link OrderBook}.
+ *
+ * @param <T> the owner of the orders
+ */
+public interface TradeListener<T> {
+    /**
+     * @param price          the price of the maker order, in micro-dollars
+     * @param amount         the amount traded, in micro-units
+     * @param makerRemaining the amount that the maker order still offers, 0 if it is filled and gone
+     */
+    void onTrade(T maker, T taker, OrderSide takerSide, long price, long amount, long makerRemaining);
+}
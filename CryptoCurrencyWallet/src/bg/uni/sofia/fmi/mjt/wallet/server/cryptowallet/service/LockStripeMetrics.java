@@ -0,0 +1,17 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+/**
+ * @param contentions the acquisitions that had to wait for another thread
+ */
+public record LockStripeMetrics(
+    int stripe,
+    long acquisitions,
+    long contentions,
+    long waitMicros
+) {
+    @Override
+    public String toString() {
+        return "User lock stripe " + stripe + ": acquisitions=" + acquisitions + ", contentions=" + contentions +
+            ", wait=" + waitMicros + "us";
+    }
+}
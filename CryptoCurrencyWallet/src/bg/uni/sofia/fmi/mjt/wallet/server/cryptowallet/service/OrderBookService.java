@@ -0,0 +1,286 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderBook;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.TradeListener;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Matches the orders of the users against each other on an {@link OrderBook} per asset, next to the trades
+ * of the {@link WalletService} at the CoinAPI price.
+ * <p>
+ * What an order may spend is reserved when it is placed: a buy moves the price of its whole amount from
+ * the balance to the reserved balance of the user and a sell moves its amount from the position to the
+ * reserved assets, so a fill only adds to wallets and cannot fail.
+ * A book is guarded by its own monitor and the wallets by the {@link UserLocks} shared with the WalletService,
+ * which are always taken after the monitor. The taker is written to the database once its whole order is
+ * matched and every maker once per fill.
+ * <p>
+ * The books are kept in memory only. {@link #cancelAll()} returns the reservations of the open orders when
+ * the server stops, and {@link #returnLostReservations()} returns the ones that the users still hold when
+ * the server starts, which the orders lost in a crash left behind.
+ */
+public class OrderBookService implements OrderBookServiceAPI {
+    private final Database database;
+    private final CryptoAssetUpdater cryptoAssetUpdater;
+    private final UserLocks userLocks;
+    private final Map<String, Market> markets;
+
+    public OrderBookService(Database database, CryptoAssetUpdater updater, UserLocks userLocks) {
+        this.database = database;
+        this.cryptoAssetUpdater = updater;
+        this.userLocks = userLocks;
+        this.markets = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public OrderResult placeLimitOrder(User user, OrderSide side, String assetId, double quantity, double price)
+        throws InvalidAssetIdException, InsufficientBalanceException, InsufficientAssetAmountException {
+        long amount = WalletService.toPositiveMicros(quantity, "Quantity");
+        long limitPrice = WalletService.toPositiveMicros(price, "Price");
+        Market market = getMarket(assetId);
+
+        synchronized (market) {
+            long reservedMoney = side == OrderSide.BUY ? MicroUnits.multiplyRoundingUp(amount, limitPrice) : 0;
+            OrderOwner owner = reserve(new OrderOwner(user, side, limitPrice, 0), assetId, amount, reservedMoney);
+            market.takerSpent = 0;
+            long orderId = market.book.placeLimit(side, limitPrice, amount, owner);
+            long restingAmount = market.book.restingAmount(orderId);
+
+            // the resting amount keeps its price reserved, the money saved by trading at better prices is returned
+            long refund = side == OrderSide.BUY ?
+                reservedMoney - market.takerSpent - MicroUnits.multiplyRoundingUp(restingAmount, limitPrice) : 0;
+            finishTaker(owner, assetId, refund, 0);
+            return new OrderResult(orderId, MicroUnits.toDouble(amount - restingAmount),
+                MicroUnits.toDouble(restingAmount));
+        }
+    }
+
+    @Override
+    public double placeMarketOrder(User user, OrderSide side, String assetId, double quantity)
+        throws InvalidAssetIdException, InsufficientBalanceException, InsufficientAssetAmountException {
+        long amount = WalletService.toPositiveMicros(quantity, "Quantity");
+        Market market = getMarket(assetId);
+
+        synchronized (market) {
+            // the value is rounded like every fill, so a buy spends exactly what it reserves
+            long reservedMoney = side == OrderSide.BUY ? market.book.marketValue(side, amount) : 0;
+            OrderOwner owner = reserve(new OrderOwner(user, side, 0, 0), assetId, amount, reservedMoney);
+            market.takerSpent = 0;
+            long filledAmount = market.book.placeMarket(side, amount, owner);
+
+            if (side == OrderSide.BUY) {
+                finishTaker(owner, assetId, reservedMoney - market.takerSpent, 0);
+            } else {
+                finishTaker(owner, assetId, 0, amount - filledAmount);
+            }
+            return MicroUnits.toDouble(filledAmount);
+        }
+    }
+
+    @Override
+    public void cancelOrder(User user, String assetId, long orderId) throws OrderNotFoundException {
+        Market market = markets.get(assetId);
+        if (market == null) {
+            throw new OrderNotFoundException("There is no order book for " + assetId);
+        }
+
+        synchronized (market) {
+            OrderOwner owner = market.book.ownerOf(orderId);
+            if (owner == null || !owner.user().equals(user)) {
+                throw new OrderNotFoundException("There is no open order " + orderId + " of yours for " + assetId);
+            }
+            returnReservation(owner, assetId, market.book.cancel(orderId));
+        }
+    }
+
+    /**
+     * Cancels the open orders of every book and returns what they reserved to the wallets.
+     */
+    public void cancelAll() {
+        for (Market market : markets.values()) {
+            synchronized (market) {
+                for (long orderId : market.book.orderIds()) {
+                    OrderOwner owner = market.book.ownerOf(orderId);
+                    returnReservation(owner, market.assetId, market.book.cancel(orderId));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns to the wallets what the users still have reserved, which is only left behind by the orders
+     * of a server that did not stop cleanly. Must be called when the server starts, before any order
+     * is placed, since the reservations of open orders cannot be told apart from the lost ones.
+     */
+    public void returnLostReservations() {
+        for (User user : database.getUsers().values()) {
+            userLocks.lock(user.getUsername());
+            try {
+                if (user.getReservedBalance() == 0 && user.getReservedAssets().isEmpty()) {
+                    continue;
+                }
+                user.returnReservedMoney(user.getReservedBalance());
+                for (Purchase reserved : List.copyOf(user.getReservedAssets())) {
+                    user.releaseReservedAsset(reserved.assetId(), reserved.amount());
+                    returnToPosition(user, reserved.assetId(), reserved.amount(), reserved.avgPrice());
+                }
+                database.updateUser(user);
+            } finally {
+                userLocks.unlock(user.getUsername());
+            }
+        }
+    }
+
+    private Market getMarket(String assetId) throws InvalidAssetIdException {
+        if (!cryptoAssetUpdater.getSnapshot().assets().containsKey(assetId)) {
+            throw new InvalidAssetIdException("Asset ID is invalid!");
+        }
+        return markets.computeIfAbsent(assetId, Market::new);
+    }
+
+    private OrderOwner reserve(OrderOwner owner, String assetId, long amount, long money)
+        throws InsufficientBalanceException, InsufficientAssetAmountException {
+        User user = owner.user();
+        userLocks.lock(user.getUsername());
+        try {
+            if (owner.side() == OrderSide.BUY) {
+                if (user.getBalance() < money) {
+                    throw new InsufficientBalanceException(
+                        "There is no enough money in your account! Please first deposit money!");
+                }
+                user.reserveMoney(money);
+                return owner;
+            }
+
+            long amountHeld = user.getAmountOfAsset(assetId);
+            if (amount > amountHeld) {
+                throw new InsufficientAssetAmountException("There is not enough " + assetId + " in your account! " +
+                    "You have only " + String.format("%.4f", MicroUnits.toDouble(amountHeld)));
+            }
+            long avgPrice = user.getAvgPrice(assetId);
+            if (amount == amountHeld) {
+                user.removePurchase(assetId);
+            } else {
+                user.addPurchase(new Purchase(assetId, amountHeld - amount, avgPrice));
+            }
+            user.reserveAsset(assetId, amount, avgPrice);
+            return new OrderOwner(user, owner.side(), owner.limitPrice(), avgPrice);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
+    }
+
+    private void finishTaker(OrderOwner taker, String assetId, long refund, long returnedAmount) {
+        User user = taker.user();
+        userLocks.lock(user.getUsername());
+        try {
+            user.returnReservedMoney(refund);
+            if (returnedAmount > 0) {
+                user.releaseReservedAsset(assetId, returnedAmount);
+                returnToPosition(user, assetId, returnedAmount, taker.avgPrice());
+            }
+            database.updateUser(user);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
+    }
+
+    private void returnReservation(OrderOwner owner, String assetId, long remaining) {
+        User user = owner.user();
+        userLocks.lock(user.getUsername());
+        try {
+            if (owner.side() == OrderSide.BUY) {
+                user.returnReservedMoney(MicroUnits.multiplyRoundingUp(remaining, owner.limitPrice()));
+            } else {
+                user.releaseReservedAsset(assetId, remaining);
+                returnToPosition(user, assetId, remaining, owner.avgPrice());
+            }
+            database.updateUser(user);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
+    }
+
+    private static void addToPosition(User user, String assetId, long amount, long cost) {
+        long previousAmount = user.getAmountOfAsset(assetId);
+        long previousAvg = user.getAvgPrice(assetId);
+        long newAvg = MicroUnits.divide(MicroUnits.multiply(previousAmount, previousAvg) + cost,
+            previousAmount + amount);
+        user.addPurchase(new Purchase(assetId, previousAmount + amount, newAvg));
+    }
+
+    /**
+     * Gives back an amount taken by a sell order, at the average price it was taken with.
+     */
+    private static void returnToPosition(User user, String assetId, long amount, long avgPrice) {
+        if (!user.containsAsset(assetId) || user.getAvgPrice(assetId) == avgPrice) {
+            user.addPurchase(new Purchase(assetId, user.getAmountOfAsset(assetId) + amount, avgPrice));
+        } else {
+            addToPosition(user, assetId, amount, MicroUnits.multiply(amount, avgPrice));
+        }
+    }
+
+    /**
+     * The book of an asset, which settles its own fills. Guarded by its monitor.
+     */
+    private final class Market implements TradeListener<OrderOwner> {
+        private final String assetId;
+        private final OrderBook<OrderOwner> book;
+        // the money that the taker paid to the makers while its order was matched
+        private long takerSpent;
+
+        Market(String assetId) {
+            this.assetId = assetId;
+            this.book = new OrderBook<>(this);
+        }
+
+        @Override
+        public void onTrade(OrderOwner maker, OrderOwner taker, OrderSide takerSide, long price, long amount,
+                            long makerRemaining) {
+            long value = MicroUnits.multiply(amount, price);
+            OrderOwner buyer = takerSide == OrderSide.BUY ? taker : maker;
+            OrderOwner seller = takerSide == OrderSide.BUY ? maker : taker;
+
+            userLocks.lock(buyer.user().getUsername());
+            try {
+                addToPosition(buyer.user(), assetId, amount, value);
+                buyer.user().spendReservedMoney(value);
+                if (buyer == maker) {
+                    // the maker trades at its own price, so this releases what the amount reserved
+                    long released = MicroUnits.multiplyRoundingUp(makerRemaining + amount, price) -
+                        MicroUnits.multiplyRoundingUp(makerRemaining, price);
+                    buyer.user().returnReservedMoney(released - value);
+                    database.updateUser(buyer.user());
+                } else {
+                    takerSpent += value;
+                }
+            } finally {
+                userLocks.unlock(buyer.user().getUsername());
+            }
+
+            userLocks.lock(seller.user().getUsername());
+            try {
+                seller.user().increaseBalance(value);
+                seller.user().releaseReservedAsset(assetId, amount);
+                if (seller == maker) {
+                    database.updateUser(seller.user());
+                }
+            } finally {
+                userLocks.unlock(seller.user().getUsername());
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
+
+public interface OrderBookServiceAPI {
+    OrderResult placeLimitOrder(User user, OrderSide side, String assetId, double quantity, double price)
+        throws InvalidAssetIdException, InsufficientBalanceException, InsufficientAssetAmountException;
+
+    /**
+     * @return the amount that was traded, which is less than the quantity if the book is not deep enough
+     */
+    double placeMarketOrder(User user, OrderSide side, String assetId, double quantity)
+        throws InvalidAssetIdException, InsufficientBalanceException, InsufficientAssetAmountException;
+
+    void cancelOrder(User user, String assetId, long orderId) throws OrderNotFoundException;
+}
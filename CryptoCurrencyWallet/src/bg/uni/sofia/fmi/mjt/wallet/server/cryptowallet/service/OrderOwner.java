@@ -0,0 +1,13 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+
+/**
+ * What the {@link OrderBookService} needs to settle an order of the user.
+ *
+ * @param limitPrice the price of a limit order or 0 for a market order, in micro-dollars
+ * @param avgPrice   the average price that the amount of a sell order was bought for, in micro-dollars
+ */
+record OrderOwner(User user, OrderSide side, long limitPrice, long avgPrice) {
+}
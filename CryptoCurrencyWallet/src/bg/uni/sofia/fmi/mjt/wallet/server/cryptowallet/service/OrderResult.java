@@ -0,0 +1,12 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+/**
+ * @param filledAmount  the amount traded right away
+ * @param restingAmount the amount left in the order book under the order id
+ */
+public record OrderResult(
+    long orderId,
+    double filledAmount,
+    double restingAmount
+) {
+}
@@ -0,0 +1,73 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serializes the changes to a wallet while different wallets are changed in parallel. Every username is
+ * mapped to one of a fixed number of locks, so the memory does not grow with the number of users; two users
+ * sharing a stripe only wait for each other when they trade at the same time. The locks are reentrant.
+ */
+public class UserLocks {
+    private static final int MAX_STRIPES = 1 << 16;
+
+    private final Stripe[] stripes;
+
+    /**
+     * @param stripesCount the number of locks, rounded up to a power of two
+     */
+    public UserLocks(int stripesCount) {
+        if (stripesCount <= 0 || stripesCount > MAX_STRIPES) {
+            throw new IllegalArgumentException("Stripes count must be between 1 and " + MAX_STRIPES + "!");
+        }
+        this.stripes = new Stripe[stripesCount == 1 ? 1 : Integer.highestOneBit(stripesCount - 1) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public void lock(String username) {
+        stripes[stripeOf(username)].lock();
+    }
+
+    public void unlock(String username) {
+        stripes[stripeOf(username)].lock.unlock();
+    }
+
+    /**
+     * @return the metrics of every stripe, in the order of the stripes
+     */
+    public List<LockStripeMetrics> getMetrics() {
+        List<LockStripeMetrics> metrics = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            metrics.add(new LockStripeMetrics(i, stripes[i].acquisitions.sum(), stripes[i].contentions.sum(),
+                stripes[i].waitNanos.sum() / 1000));
+        }
+        return metrics;
+    }
+
+    int stripeOf(String username) {
+        int hash = username.hashCode();
+        // the high bits are mixed in, since only the low ones pick the stripe
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder contentions = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        private void lock() {
+            if (!lock.tryLock()) {
+                contentions.increment();
+                long start = System.nanoTime();
+                lock.lock();
+                waitNanos.add(System.nanoTime() - start);
+            }
+            acquisitions.increment();
+        }
+    }
+}
@@ -11,20 +11,34 @@ import bg.uni.sofia.fmi.mjt.wallet.server.exception.UsernameWrongFormatException
 import bg.uni.sofia.fmi.mjt.wallet.server.validation.StringValidator;
 
 public class UserService implements UserServiceAPI {
+    private static final int DEFAULT_LOCK_STRIPES = 64;
     private final Database database;
     private final PasswordHasherAPI passwordHasher;
+    private final UserLocks userLocks;
 
     public UserService(Database database, PasswordHasherAPI passwordHasher) {
+        this(database, passwordHasher, new UserLocks(DEFAULT_LOCK_STRIPES));
+    }
+
+    public UserService(Database database, PasswordHasherAPI passwordHasher, UserLocks userLocks) {
         this.database = database;
         this.passwordHasher = passwordHasher;
+        this.userLocks = userLocks;
     }
 
     @Override
     public User register(String username, String password)
         throws UsernameWrongFormatException, UserAlreadyExistsException, PasswordWrongFormatException {
-        User user = buildUser(username, password);
-        database.addUser(user);
-        return user;
+        validateStrings(username, password);
+        // two registrations of one username take the same stripe, so only the first one adds the user
+        userLocks.lock(username);
+        try {
+            User user = buildUser(username, password);
+            database.addUser(user);
+            return user;
+        } finally {
+            userLocks.unlock(username);
+        }
     }
 
     @Override
@@ -43,9 +57,7 @@ public class UserService implements UserServiceAPI {
         return user;
     }
 
-    private User buildUser(String username, String password)
-        throws UsernameWrongFormatException, PasswordWrongFormatException, UserAlreadyExistsException {
-        validateStrings(username, password);
+    private User buildUser(String username, String password) throws UserAlreadyExistsException {
         if (database.checkIfUserExists(username)) {
             throw new UserAlreadyExistsException("There is already an user with this username!");
         }
@@ -1,48 +1,66 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
 
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.PriceSnapshot;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 
-import java.util.Comparator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Works with the latest prices of the {@link CryptoAssetUpdater}, which are refreshed in the background,
+ * so no request waits for CoinAPI.
+ * <p>
+ * Several sessions of the same user share one {@link User}, so every method that reads or changes a wallet
+ * holds the {@link UserLocks} lock of its owner, including the write to the database, which encodes the user.
+ * <p>
+ * Money and amounts are kept in {@link MicroUnits}; the doubles of the commands and of CoinAPI are converted
+ * once, on the way in.
+ */
 public class WalletService implements WalletServiceAPI {
     private static final int ASSETS_TO_SHOW_BY_DEF = 20;
-
-    private static final double MIN_POSSIBLE_PRICE = 0.0001;
+    private static final int DEFAULT_LOCK_STRIPES = 64;
     private final Database database;
     private final CryptoAssetUpdater cryptoAssetUpdater;
-    private Map<String, CryptoAsset> assets;
+    private final UserLocks userLocks;
     private int assetsToShow;
 
     public WalletService(Database database, CryptoAssetUpdater updater) {
+        this(database, updater, new UserLocks(DEFAULT_LOCK_STRIPES));
+    }
+
+    public WalletService(Database database, CryptoAssetUpdater updater, UserLocks userLocks) {
         this.database = database;
         this.cryptoAssetUpdater = updater;
-        this.assets = new LinkedHashMap<>();
-        cryptoAssetUpdater.updateAllAssetsIfNeeded(assets);
+        this.userLocks = userLocks;
         this.assetsToShow = ASSETS_TO_SHOW_BY_DEF;
     }
 
     @Override
     public void depositMoney(User user, double money) {
-        user.increaseBalance(money);
-        database.updateUser(user);
+        userLocks.lock(user.getUsername());
+        try {
+            user.increaseBalance(MicroUnits.of(money));
+            database.updateUser(user);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
     }
 
     @Override
     public String listOfferings(int pageNumber) {
-        assets = cryptoAssetUpdater.updateAllAssetsIfNeeded(assets);
+        PriceSnapshot prices = cryptoAssetUpdater.getSnapshot();
+        List<CryptoAsset> assetList = prices.offerings().stream()
+            .skip((long) (pageNumber - 1) * assetsToShow).limit(assetsToShow).toList();
         StringBuilder sb = new StringBuilder();
-        var assetList =
-            assets.values().stream().filter(a -> a.priceUSD() != null && a.priceUSD() > MIN_POSSIBLE_PRICE).skip(
-                (long) (pageNumber - 1) * assetsToShow).limit(assetsToShow).toList();
+        appendStaleNotice(sb, prices);
         for (var a : assetList) {
             sb.append("Asset ID: ").append(a.assetId()).append(" -> ").append("Price: ")
                 .append(String.format("%.4f", a.priceUSD())).append("$ per unit!");
@@ -54,87 +72,164 @@ public class WalletService implements WalletServiceAPI {
     @Override
     public void buyAsset(User user, String assetId, double money)
         throws InsufficientBalanceException, InvalidAssetIdException {
-        assets = cryptoAssetUpdater.updateAssetIfNeeded(assets, assetId);
-
-        CryptoAsset asset = getAssetByAssetId(assetId);
+        long price = getTradablePrice(assetId);
+        long moneyToPay = MicroUnits.of(money);
 
-        if (Double.compare(user.getBalance(), money) < 0) {
-            throw new InsufficientBalanceException(
-                "There is no enough money in your account! Please first deposit money!");
+        userLocks.lock(user.getUsername());
+        try {
+            if (user.getBalance() < moneyToPay) {
+                throw new InsufficientBalanceException(
+                    "There is no enough money in your account! Please first deposit money!");
+            }
+            long amountToBuy = MicroUnits.divide(moneyToPay, price);
+            if (amountToBuy <= 0) {
+                throw new InsufficientBalanceException("The money is not enough to buy any " + assetId + "!");
+            }
+            buy(user, assetId, amountToBuy, moneyToPay);
+        } finally {
+            userLocks.unlock(user.getUsername());
         }
+    }
 
-        double previousAmount = user.getAmountOfAsset(assetId);
-        double previousAvg = user.getAvgPrice(assetId);
-        double amountToBuy = money / asset.priceUSD();
+    @Override
+    public double buyAssetQuantity(User user, String assetId, double quantity)
+        throws InsufficientBalanceException, InvalidAssetIdException {
+        long amountToBuy = toPositiveMicros(quantity, "Quantity");
+        long price = getTradablePrice(assetId);
+        long moneyToPay = MicroUnits.multiplyRoundingUp(amountToBuy, price);
 
-        double newAvg =
-            (previousAmount * previousAvg + amountToBuy * asset.priceUSD()) / (previousAmount + amountToBuy);
-        user.removePurchase(assetId);
-        Purchase purchase = new Purchase(assetId, previousAmount + amountToBuy, newAvg);
-        user.addPurchase(purchase);
-        user.decreaseBalance(money);
-        database.updateUser(user);
+        userLocks.lock(user.getUsername());
+        try {
+            if (user.getBalance() < moneyToPay) {
+                throw new InsufficientBalanceException(
+                    "There is no enough money in your account! Please first deposit money!");
+            }
+            buy(user, assetId, amountToBuy, moneyToPay);
+            return MicroUnits.toDouble(moneyToPay);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
     }
 
     @Override
     public double sellAsset(User user, String assetId) throws InvalidAssetIdException {
-        if (!user.containsAsset(assetId)) {
-            throw new InvalidAssetIdException("You do not have purchases from " + assetId);
+        userLocks.lock(user.getUsername());
+        try {
+            if (!user.containsAsset(assetId)) {
+                throw new InvalidAssetIdException("You do not have purchases from " + assetId);
+            }
+            CryptoAsset asset = getUpdatedAsset(assetId);
+
+            long receivingMoney = sell(user, assetId, user.getAmountOfAsset(assetId), MicroUnits.of(asset.priceUSD()));
+            return MicroUnits.toDouble(receivingMoney);
+        } finally {
+            userLocks.unlock(user.getUsername());
         }
-        assets = cryptoAssetUpdater.updateAssetIfNeeded(assets, assetId);
+    }
 
-        CryptoAsset asset = getAssetByAssetId(assetId);
+    @Override
+    public double sellAssetQuantity(User user, String assetId, double quantity)
+        throws InvalidAssetIdException, InsufficientAssetAmountException {
+        long amountToSell = toPositiveMicros(quantity, "Quantity");
 
-        double amountOfAsset = user.getAmountOfAsset(assetId);
-        user.removePurchase(assetId);
-        double receivingMoney = asset.priceUSD() * amountOfAsset;
-        user.increaseBalance(receivingMoney);
-        database.updateUser(user);
-        return receivingMoney;
+        userLocks.lock(user.getUsername());
+        try {
+            if (!user.containsAsset(assetId)) {
+                throw new InvalidAssetIdException("You do not have purchases from " + assetId);
+            }
+            CryptoAsset asset = getUpdatedAsset(assetId);
+
+            checkAmountHeld(user, assetId, amountToSell);
+            long receivingMoney = sell(user, assetId, amountToSell, MicroUnits.of(asset.priceUSD()));
+            return MicroUnits.toDouble(receivingMoney);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
+    }
+
+    @Override
+    public double sellAssetValue(User user, String assetId, double money)
+        throws InvalidAssetIdException, InsufficientAssetAmountException {
+        long moneyToReceive = toPositiveMicros(money, "Money");
+
+        userLocks.lock(user.getUsername());
+        try {
+            if (!user.containsAsset(assetId)) {
+                throw new InvalidAssetIdException("You do not have purchases from " + assetId);
+            }
+            long price = getTradablePrice(assetId);
+
+            // rounding the amount up makes sure that the user receives at least the requested money
+            long amountToSell = MicroUnits.divideRoundingUp(moneyToReceive, price);
+            checkAmountHeld(user, assetId, amountToSell);
+            long receivingMoney = sell(user, assetId, amountToSell, price);
+            return MicroUnits.toDouble(receivingMoney);
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
     }
 
     @Override
     public String getWalletSummary(User user) {
         StringBuilder sb = new StringBuilder();
-        sb.append("Current balance: ").append(String.format("%.4f", user.getBalance())).append("$");
-        sb.append(System.lineSeparator());
-        List<Purchase> sortedPurchases = user.getPurchases().stream()
-            .sorted(Comparator.comparing(Purchase::assetId)).toList();
-        for (var it : sortedPurchases) {
-            sb.append("Asset ID: ").append(it.assetId()).append(" Amount: ").append(String.format("%.4f", it.amount()));
+        userLocks.lock(user.getUsername());
+        try {
+            sb.append("Current balance: ").append(String.format("%.4f", MicroUnits.toDouble(user.getBalance())))
+                .append("$");
             sb.append(System.lineSeparator());
+            for (var it : user.getPurchases()) {
+                sb.append("Asset ID: ").append(it.assetId()).append(" Amount: ")
+                    .append(String.format("%.4f", MicroUnits.toDouble(it.amount())));
+                sb.append(System.lineSeparator());
+            }
+        } finally {
+            userLocks.unlock(user.getUsername());
         }
         return sb.toString();
     }
 
     @Override
     public String getWalletOverallSummary(User user) {
-        assets = cryptoAssetUpdater.updateAllAssetsIfNeeded(assets);
-        var userPurchases = user.getPurchases();
+        PriceSnapshot prices = cryptoAssetUpdater.getSnapshot();
+        Map<String, CryptoAsset> currentAssets = prices.assets();
         StringBuilder sb = new StringBuilder();
-        List<Purchase> sortedPurchases = user.getPurchases().stream()
-            .sorted(Comparator.comparing(Purchase::assetId)).toList();
-        for (var up : sortedPurchases) {
-            CryptoAsset currentAsset = this.assets.get(up.assetId());
-            double difference = up.amount() * currentAsset.priceUSD() - up.amount() * up.avgPrice();
-            if (difference == 0.0) {
+        appendStaleNotice(sb, prices);
+        List<Purchase> purchases = copyPurchases(user);
+        cryptoAssetUpdater.refreshAssetsIfNeeded(purchases.stream().map(Purchase::assetId).toList());
+        for (var up : purchases) {
+            CryptoAsset currentAsset = currentAssets.get(up.assetId());
+            String amount = String.format("%.4f", MicroUnits.toDouble(up.amount()));
+            if (currentAsset == null || currentAsset.priceUSD() == null) {
+                // before the first download, or when the last one did not include the asset
                 sb.append("Asset ID: ").append(up.assetId()).append(" | Amount: ")
-                    .append(String.format("%.4f", up.amount())).append(" | You do not have profit or loss!");
-            } else if (difference > 0.0) {
+                    .append(amount).append(" | The price is not available yet!");
+                sb.append(System.lineSeparator());
+                continue;
+            }
+            long difference = MicroUnits.multiply(up.amount(), MicroUnits.of(currentAsset.priceUSD())) -
+                MicroUnits.multiply(up.amount(), up.avgPrice());
+            if (difference == 0) {
+                sb.append("Asset ID: ").append(up.assetId()).append(" | Amount: ")
+                    .append(amount).append(" | You do not have profit or loss!");
+            } else if (difference > 0) {
                 sb.append("Asset ID: ").append(up.assetId()).append(" | Amount: ")
-                    .append(String.format("%.4f", up.amount())).append(" | UP: ")
-                    .append(String.format("%.4f", difference)).append("$");
+                    .append(amount).append(" | UP: ")
+                    .append(String.format("%.4f", MicroUnits.toDouble(difference))).append("$");
             } else {
                 difference = -difference;
                 sb.append("Asset ID: ").append(up.assetId()).append(" | Amount: ")
-                    .append(String.format("%.4f", up.amount())).append(" | DOWN: ")
-                    .append(String.format("%.4f", difference)).append("$");
+                    .append(amount).append(" | DOWN: ")
+                    .append(String.format("%.4f", MicroUnits.toDouble(difference))).append("$");
             }
             sb.append(System.lineSeparator());
         }
         return sb.toString();
     }
 
+    public List<LockStripeMetrics> getLockMetrics() {
+        return userLocks.getMetrics();
+    }
+
     @Override
     public void setAssetsToShow(int assetsToShow) {
         if (assetsToShow < 0) {
@@ -143,10 +238,95 @@ public class WalletService implements WalletServiceAPI {
         this.assetsToShow = assetsToShow;
     }
 
-    private CryptoAsset getAssetByAssetId(String assetId) throws InvalidAssetIdException {
-        if (!assets.containsKey(assetId)) {
+    /**
+     * Warns that the prices are still being downloaded, or that they are the last known ones, which the server
+     * keeps serving while CoinAPI is failing.
+     */
+    private void appendStaleNotice(StringBuilder sb, PriceSnapshot prices) {
+        if (!prices.isLoaded()) {
+            sb.append("Prices are loading, please try again in a moment!");
+            sb.append(System.lineSeparator());
+        } else if (cryptoAssetUpdater.checkStale(prices)) {
+            sb.append("Prices may be outdated, they were last updated ").append(prices.getStaleness().toMinutes())
+                .append(" minutes ago!");
+            sb.append(System.lineSeparator());
+        }
+    }
+
+    private List<Purchase> copyPurchases(User user) {
+        userLocks.lock(user.getUsername());
+        try {
+            return List.copyOf(user.getPurchases());
+        } finally {
+            userLocks.unlock(user.getUsername());
+        }
+    }
+
+    /**
+     * Adds the amount to the position of the user in place and charges the money for it with a single write
+     * to the database. Must be called under the lock of the user after the balance is checked.
+     */
+    private void buy(User user, String assetId, long amountToBuy, long moneyToPay) {
+        long previousAmount = user.getAmountOfAsset(assetId);
+        long previousAvg = user.getAvgPrice(assetId);
+
+        // the average is the money paid over the amount held, so it includes the rounding of the amount
+        long newAvg = MicroUnits.divide(MicroUnits.multiply(previousAmount, previousAvg) + moneyToPay,
+            previousAmount + amountToBuy);
+        user.addPurchase(new Purchase(assetId, previousAmount + amountToBuy, newAvg));
+        user.decreaseBalance(moneyToPay);
+        database.updateUser(user);
+    }
+
+    /**
+     * Takes the amount from the position of the user in place, keeping the average price of the rest, and pays
+     * the money for it with a single write to the database. Must be called under the lock of the user.
+     *
+     * @return the money paid in micro-dollars
+     */
+    private long sell(User user, String assetId, long amountToSell, long price) {
+        long amountHeld = user.getAmountOfAsset(assetId);
+        if (amountToSell == amountHeld) {
+            user.removePurchase(assetId);
+        } else {
+            user.addPurchase(new Purchase(assetId, amountHeld - amountToSell, user.getAvgPrice(assetId)));
+        }
+        long receivingMoney = MicroUnits.multiply(amountToSell, price);
+        user.increaseBalance(receivingMoney);
+        database.updateUser(user);
+        return receivingMoney;
+    }
+
+    private void checkAmountHeld(User user, String assetId, long amount) throws InsufficientAssetAmountException {
+        long amountHeld = user.getAmountOfAsset(assetId);
+        if (amount > amountHeld) {
+            throw new InsufficientAssetAmountException("There is not enough " + assetId + " in your account! " +
+                "You have only " + String.format("%.4f", MicroUnits.toDouble(amountHeld)));
+        }
+    }
+
+    static long toPositiveMicros(double value, String name) {
+        long micros = MicroUnits.of(value);
+        if (micros <= 0) {
+            throw new IllegalArgumentException(name + " must be a positive number!");
+        }
+        return micros;
+    }
+
+    private long getTradablePrice(String assetId) throws InvalidAssetIdException {
+        long price = MicroUnits.of(getUpdatedAsset(assetId).priceUSD());
+        if (price <= 0) {
+            throw new InvalidAssetIdException(assetId + " is too cheap to be traded!");
+        }
+        return price;
+    }
+
+    private CryptoAsset getUpdatedAsset(String assetId) throws InvalidAssetIdException {
+        CryptoAsset asset = cryptoAssetUpdater.getSnapshot().assets().get(assetId);
+        if (asset == null) {
             throw new InvalidAssetIdException("Asset ID is invalid!");
         }
-        return assets.get(assetId);
+        cryptoAssetUpdater.refreshAssetIfNeeded(assetId);
+        return asset;
     }
 }
@@ -1,6 +1,7 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
 
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 
@@ -11,8 +12,28 @@ public interface WalletServiceAPI {
 
     void buyAsset(User user, String assetId, double money) throws InsufficientBalanceException, InvalidAssetIdException;
 
+    /**
+     * @return the money paid for the quantity
+     */
+    double buyAssetQuantity(User user, String assetId, double quantity)
+        throws InsufficientBalanceException, InvalidAssetIdException;
+
     double sellAsset(User user, String assetId) throws InvalidAssetIdException;
 
+    /**
+     * @return the money earned for the quantity
+     */
+    double sellAssetQuantity(User user, String assetId, double quantity)
+        throws InvalidAssetIdException, InsufficientAssetAmountException;
+
+    /**
+     * Sells as much of the asset as the money is worth.
+     *
+     * @return the money earned, which may exceed the requested money by the rounding of the amount
+     */
+    double sellAssetValue(User user, String assetId, double money)
+        throws InvalidAssetIdException, InsufficientAssetAmountException;
+
     String getWalletSummary(User user);
 
     String getWalletOverallSummary(User user);
@@ -1,40 +1,119 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.database;
 
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordReader;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordWriter;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.wal.WriteAheadLog;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class FileDatabase implements Database {
+/**
+ * Keeps the users in memory and persists them as a snapshot file plus a write-ahead log next to it.
+ * Every registration and update appends the new state of that one user to the log, so the cost of a trade
+ * does not grow with the number of accounts. Once the log holds enough records, the whole map is written
+ * as a new snapshot and the log is truncated. On startup the log is replayed on top of the last snapshot.
+ * Both store users in the binary layout of {@link UserRecordWriter}; a snapshot still in the old Java
+ * serialization format is migrated on startup. A snapshot is written from the bytes last logged for every user
+ * rather than from the users themselves, which other threads may be changing at that moment.
+ * <p>
+ * By default a change is durable when addUser or updateUser returns. With a {@link WriteBehindPolicy} they
+ * only mark the user dirty and return; a background flusher writes the dirty users to the log on the
+ * policy's interval, or sooner once enough of them pile up, and several changes of the same user in between
+ * are written as one record. {@link #close()} flushes whatever is still dirty.
+ */
+public class FileDatabase implements Database, Closeable {
+    private static final String WAL_SUFFIX = ".wal";
+    private static final String SNAPSHOT_TMP_SUFFIX = ".tmp";
+    private static final String LEGACY_BACKUP_SUFFIX = ".legacy";
+    private static final int DEFAULT_SNAPSHOT_INTERVAL = 10_000;
+    private static final String FLUSHER_THREAD_NAME = "wallet-database-flusher";
+    private static final long SHUTDOWN_TIMEOUT_IN_SECS = 10;
+    // records written before the layout version was logged have only the type and hold version 1 users
+    private static final int VERSIONED_RECORD_FLAG = 0x80;
 
     private final Path usersPath;
+    private final int snapshotInterval;
+    private final WriteAheadLog writeAheadLog;
+    private final WriteBehindPolicy writeBehindPolicy;
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean isFlushRequested;
     private Map<String, User> users;
+    // the last encoded state of every user, guarded by this
+    private final Map<String, byte[]> encodedUsers;
+    private Map<String, byte[]> dirtyUsers;
 
     public FileDatabase(Path usersPath) {
+        this(usersPath, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * @param snapshotInterval the number of log records after which a new snapshot is written
+     */
+    public FileDatabase(Path usersPath, int snapshotInterval) {
+        this(usersPath, snapshotInterval, null);
+    }
+
+    /**
+     * @param snapshotInterval  the number of log records after which a new snapshot is written
+     * @param writeBehindPolicy when to flush the changed users, or null to write every change before returning
+     */
+    public FileDatabase(Path usersPath, int snapshotInterval, WriteBehindPolicy writeBehindPolicy) {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("Snapshot interval must be a positive number!");
+        }
         this.usersPath = usersPath;
+        this.snapshotInterval = snapshotInterval;
+        this.writeBehindPolicy = writeBehindPolicy;
+        this.isFlushRequested = new AtomicBoolean();
+        this.dirtyUsers = new LinkedHashMap<>();
         users = loadUsersFromFile();
+        try {
+            writeAheadLog = new WriteAheadLog(usersPath.resolveSibling(usersPath.getFileName() + WAL_SUFFIX));
+            writeAheadLog.replay(this::applyRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while replaying the write-ahead log!", e);
+        }
+        encodedUsers = new HashMap<>();
+        for (User user : users.values()) {
+            encodedUsers.put(user.getUsername(), UserRecordWriter.encodeUser(user));
+        }
+        flusher = writeBehindPolicy == null ? null : startFlusher(writeBehindPolicy);
     }
 
     @Override
     public void addUser(User user) {
-        users.put(user.getUsername(), user);
-        writeUsersToFile();
+        persist(RecordType.REGISTER, user);
     }
 
     @Override
     public void updateUser(User user) {
-        users.put(user.getUsername(), user);
-        writeUsersToFile();
+        persist(RecordType.UPDATE, user);
     }
 
     @Override
@@ -52,41 +131,212 @@ public class FileDatabase implements Database {
         return Collections.unmodifiableMap(this.users);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushDirtyUsers();
+        }
+        writeAheadLog.close();
+    }
+
+    private void persist(RecordType type, User user) {
+        if (writeBehindPolicy != null) {
+            markDirty(type, user);
+            return;
+        }
+        long sequenceNumber;
+        synchronized (this) {
+            // the map and the log are changed under the same lock, so the log order matches the map
+            users.put(user.getUsername(), user);
+            sequenceNumber = writeAheadLog.append(encodeRecord(type, encode(user)));
+        }
+        writeAheadLog.sync(sequenceNumber);
+        if (writeAheadLog.getRecordsCount() >= snapshotInterval) {
+            takeSnapshot();
+        }
+    }
+
+    private void markDirty(RecordType type, User user) {
+        int dirtyUsersCount;
+        synchronized (this) {
+            users.put(user.getUsername(), user);
+            // the user is encoded right away, so the flusher never reads a user that a trade is changing
+            dirtyUsers.put(user.getUsername(), encodeRecord(type, encode(user)));
+            dirtyUsersCount = dirtyUsers.size();
+        }
+        if (dirtyUsersCount >= writeBehindPolicy.maxDirtyUsers() && isFlushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushInBackground);
+        }
+    }
+
+    private ScheduledExecutorService startFlusher(WriteBehindPolicy policy) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, FLUSHER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long delay = policy.maxDelay().toNanos();
+        executor.scheduleWithFixedDelay(this::flushInBackground, delay, delay, TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    private void flushInBackground() {
+        isFlushRequested.set(false);
+        try {
+            flushDirtyUsers();
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled flushes
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    /**
+     * Writes the latest state of every dirty user to the log with a single sync.
+     */
+    private void flushDirtyUsers() {
+        long sequenceNumber = 0;
+        synchronized (this) {
+            if (dirtyUsers.isEmpty()) {
+                return;
+            }
+            for (byte[] record : dirtyUsers.values()) {
+                sequenceNumber = writeAheadLog.append(record);
+            }
+            dirtyUsers = new LinkedHashMap<>();
+        }
+        writeAheadLog.sync(sequenceNumber);
+        if (writeAheadLog.getRecordsCount() >= snapshotInterval) {
+            takeSnapshot();
+        }
+    }
+
+    private synchronized void takeSnapshot() {
+        if (writeAheadLog.getRecordsCount() < snapshotInterval) {
+            // another thread has just taken it
+            return;
+        }
+        writeUsersToFile(encodedUsers.values());
+        writeAheadLog.truncate();
+    }
+
+    /**
+     * Encodes the user and keeps the bytes for the next snapshot. Called under the lock of the database.
+     */
+    private byte[] encode(User user) {
+        byte[] encodedUser = UserRecordWriter.encodeUser(user);
+        encodedUsers.put(user.getUsername(), encodedUser);
+        return encodedUser;
+    }
+
     private Map<String, User> loadUsersFromFile() {
-        if (!Files.exists(usersPath)) {
-            return new HashMap<>();
+        Map<String, User> users = new ConcurrentHashMap<>();
+        try {
+            if (!Files.exists(usersPath) || Files.size(usersPath) == 0) {
+                return users;
+            }
+            if (isJavaSerializationFile()) {
+                loadLegacyUsers(users);
+                migrateLegacyFile(users.values());
+                return users;
+            }
+            try (UserRecordReader reader = new UserRecordReader(new FileInputStream(usersPath.toFile()))) {
+                User user;
+                while ((user = reader.read()) != null) {
+                    users.put(user.getUsername(), user);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while loading data from files", e);
+        }
+        return users;
+    }
+
+    private boolean isJavaSerializationFile() throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(usersPath.toFile()))) {
+            return input.readShort() == ObjectStreamConstants.STREAM_MAGIC;
         }
-        Map<String, User> users = new HashMap<>();
-        try (ObjectInputStream userInputStream = new ObjectInputStream(new FileInputStream(usersPath.toFile()))) {
+    }
+
+    private void loadLegacyUsers(Map<String, User> users) throws IOException {
+        try (LegacyUserInputStream userInputStream =
+                 new LegacyUserInputStream(new FileInputStream(usersPath.toFile()))) {
             while (true) {
                 try {
-                    User user = (User) userInputStream.readObject();
+                    User user = userInputStream.readUser();
                     users.put(user.getUsername(), user);
                 } catch (EOFException e) {
                     // End of file reached
                     break;
                 }
             }
-        } catch (IOException | ClassNotFoundException e) {
-            throw new RuntimeException("Error while loading data from files", e);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Error while loading data from files", e);
         }
-        return users;
     }
 
-    private void writeUsersToFile() {
-        if (!Files.exists(usersPath)) {
-            try {
-                Files.createFile(usersPath);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Something went wrong while creating a file", e);
-            }
-        }
-        try (ObjectOutputStream userOutputStream = new ObjectOutputStream(new FileOutputStream(usersPath.toFile()))) {
-            for (User user : users.values().stream().toList()) {
-                userOutputStream.writeObject(user);
+    /**
+     * One-shot migration from the Java serialization format the users were stored in before.
+     * The old file is kept next to the new one as a backup.
+     */
+    private void migrateLegacyFile(Collection<User> users) throws IOException {
+        Files.copy(usersPath, usersPath.resolveSibling(usersPath.getFileName() + LEGACY_BACKUP_SUFFIX),
+            StandardCopyOption.REPLACE_EXISTING);
+        writeUsersToFile(users.stream().map(UserRecordWriter::encodeUser).toList());
+    }
+
+    private void writeUsersToFile(Collection<byte[]> encodedUsers) {
+        Path tmpPath = usersPath.resolveSibling(usersPath.getFileName() + SNAPSHOT_TMP_SUFFIX);
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tmpPath.toFile());
+             UserRecordWriter writer = new UserRecordWriter(fileOutputStream)) {
+            for (byte[] encodedUser : encodedUsers) {
+                writer.write(encodedUser);
             }
+            writer.finish();
+            fileOutputStream.getFD().sync();
         } catch (IOException e) {
             throw new RuntimeException("Error while saving the users into file!", e);
         }
+        try {
+            // the old snapshot stays in place until the new one is complete
+            Files.move(tmpPath, usersPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Something went wrong while replacing the snapshot", e);
+        }
+    }
+
+    private static byte[] encodeRecord(RecordType type, byte[] encodedUser) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(VERSIONED_RECORD_FLAG | type.ordinal());
+            output.writeShort(UserRecordWriter.CURRENT_VERSION);
+            output.write(encodedUser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while encoding a log record!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void applyRecord(ByteBuffer record) {
+        try (DataInputStream input = new DataInputStream(
+            new ByteArrayInputStream(record.array(), record.arrayOffset() + record.position(), record.remaining()))) {
+            int type = input.readByte();
+            int version = (type & VERSIONED_RECORD_FLAG) != 0 ? input.readShort() : 1;
+            User user = UserRecordReader.readUser(input, version);
+            // records hold the whole state of the user, so a record simply replaces what came before it
+            users.put(user.getUsername(), user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while replaying a log record!", e);
+        }
+    }
+
+    private enum RecordType {
+        REGISTER,
+        UPDATE
     }
 }
@@ -0,0 +1,81 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads users stored with Java serialization, including those written while {@link User} and {@link Purchase}
+ * still held the money and the amounts as doubles. The classes of such a stream are read as the private
+ * copies below, which keep the old fields, and converted to {@link MicroUnits}.
+ */
+class LegacyUserInputStream extends ObjectInputStream {
+    LegacyUserInputStream(InputStream inputStream) throws IOException {
+        super(inputStream);
+    }
+
+    User readUser() throws IOException, ClassNotFoundException {
+        Object user = readObject();
+        if (user instanceof DoubleUser doubleUser) {
+            return doubleUser.toUser();
+        }
+        return (User) user;
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        ObjectStreamClass descriptor = super.readClassDescriptor();
+        if (descriptor.getName().equals(User.class.getName()) && hasDoubleField(descriptor, "balance")) {
+            return ObjectStreamClass.lookup(DoubleUser.class);
+        }
+        if (descriptor.getName().equals(Purchase.class.getName()) && hasDoubleField(descriptor, "amount")) {
+            return ObjectStreamClass.lookup(DoublePurchase.class);
+        }
+        return descriptor;
+    }
+
+    private static boolean hasDoubleField(ObjectStreamClass descriptor, String name) {
+        ObjectStreamField field = descriptor.getField(name);
+        return field != null && field.getType() == double.class;
+    }
+
+    /**
+     * Has the same serializable fields as {@link User} had, so the stream data is read into it unchanged.
+     */
+    private static class DoubleUser implements Serializable {
+        @Serial
+        private static final long serialVersionUID = -1822662178653243146L;
+        private String username;
+        private String passwordHash;
+        private double balance;
+        // declared as a Set like in the stream, a concrete type would not match the serialized field
+        @SuppressWarnings("serial")
+        private Set<DoublePurchase> purchases;
+
+        private User toUser() {
+            Set<Purchase> convertedPurchases = new HashSet<>();
+            if (purchases != null) {
+                for (DoublePurchase purchase : purchases) {
+                    convertedPurchases.add(purchase.toPurchase());
+                }
+            }
+            return new User(username, passwordHash, MicroUnits.of(balance), convertedPurchases);
+        }
+    }
+
+    private record DoublePurchase(String assetId, double amount, double avgPrice) implements Serializable {
+        private Purchase toPurchase() {
+            return new Purchase(assetId, MicroUnits.of(amount), MicroUnits.of(avgPrice));
+        }
+    }
+}
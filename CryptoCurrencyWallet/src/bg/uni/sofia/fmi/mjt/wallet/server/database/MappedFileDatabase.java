@@ -0,0 +1,478 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordReader;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordWriter;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the users in a memory-mapped file of fixed-size slots. A user is stored as the version of its layout
+ * followed by the user in the layout of {@link UserRecordWriter#writeUser(java.io.DataOutput, User)}, in a head
+ * slot continued in a chain of further slots when the portfolio does not fit in one. Records written before
+ * they carried their version have no versioned flag and are read in the record version of the file header,
+ * so a file of an older layout is read as is and every user moves to the current layout on its next update.
+ * <p>
+ * On startup only the usernames are read, to build the index from username to head slot; a user is decoded
+ * the first time it is requested. An update writes the user into free slots and leaves the slots of its
+ * previous record untouched, so its cost does not depend on the number of accounts. Once per sync interval,
+ * and on {@link #close()}, the new records are forced to disk, marked as the heads of their users and forced
+ * again, and only then are the replaced slots freed. A head carries a generation, so if a crash leaves both
+ * heads of a user, the newer one is kept on startup. The file on disk therefore always holds a whole record
+ * of every user, and a crash loses at most the updates of the last sync interval. The whole file is mapped
+ * at once, which limits it to 2GB.
+ * <p>
+ * Slot layout: a state byte (free, head or chain, with the generation and the versioned flag of a head in its
+ * upper bits), the index of the next slot in the chain or -1, the number of payload bytes in this slot as
+ * a short and the payload.
+ */
+public class MappedFileDatabase implements Database, Closeable {
+    private static final int MAGIC = 0x43575344;
+    // version 1 had no generations, which reads the same as generation 0, and versions 1 and 2 had no versions
+    // in the records, which reads the same as heads without the versioned flag
+    private static final short FILE_VERSION = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 256;
+    private static final int NEXT_SLOT_OFFSET = Byte.BYTES;
+    private static final int LENGTH_OFFSET = NEXT_SLOT_OFFSET + Integer.BYTES;
+    private static final int SLOT_HEADER_SIZE = LENGTH_OFFSET + Short.BYTES;
+    private static final int SLOT_PAYLOAD_SIZE = SLOT_SIZE - SLOT_HEADER_SIZE;
+    private static final byte FREE_SLOT = 0;
+    private static final byte HEAD_SLOT = 1;
+    private static final byte CHAIN_SLOT = 2;
+    private static final int STATE_MASK = 0x0F;
+    private static final int GENERATION_SHIFT = 4;
+    // at most two heads of a user are on disk at once, so counting modulo 4 tells which one is newer
+    private static final int GENERATION_MASK = 0x03;
+    private static final int VERSIONED_RECORD_FLAG = 0x40;
+    private static final int NO_SLOT = -1;
+    private static final int INITIAL_SLOTS_COUNT = 1024;
+    private static final int MAX_SLOTS_COUNT = (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE;
+    private static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofSeconds(1);
+    private static final String SYNC_THREAD_NAME = "wallet-database-sync";
+    private static final long SHUTDOWN_TIMEOUT_IN_SECS = 10;
+
+    private final FileChannel channel;
+    private final Map<String, Integer> headSlots;
+    private final Map<String, User> users;
+    private final Deque<Integer> freeSlots;
+    // the records written since the last sync by username, guarded by this
+    private final Map<String, PendingRecord> pendingRecords;
+    private final ScheduledExecutorService syncer;
+    private MappedByteBuffer buffer;
+    private int slotsCount;
+    // the layout of the records that do not carry their own version, never changed once the file is created
+    private int recordVersion;
+
+    public MappedFileDatabase(Path path) {
+        this(path, DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * @param syncInterval how often the updates are forced to disk, which is how many of them a crash can lose
+     */
+    public MappedFileDatabase(Path path, Duration syncInterval) {
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("Sync interval must be positive!");
+        }
+        this.headSlots = new ConcurrentHashMap<>();
+        this.users = new ConcurrentHashMap<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.pendingRecords = new LinkedHashMap<>();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while opening the users file!", e);
+        }
+        try {
+            if (channel.size() == 0) {
+                createFile();
+            } else {
+                openFile();
+            }
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw new UncheckedIOException("Error while opening the users file!", e);
+        }
+        syncer = startSyncer(syncInterval);
+    }
+
+    @Override
+    public void addUser(User user) {
+        persist(user);
+    }
+
+    @Override
+    public void updateUser(User user) {
+        persist(user);
+    }
+
+    @Override
+    public boolean checkIfUserExists(String username) {
+        return headSlots.containsKey(username);
+    }
+
+    @Override
+    public User getUserByUsername(String username) {
+        User user = users.get(username);
+        if (user != null || !headSlots.containsKey(username)) {
+            return user;
+        }
+        return loadUser(username);
+    }
+
+    /**
+     * Decodes every user that has not been requested yet, so it is as expensive as a full load.
+     */
+    @Override
+    public Map<String, User> getUsers() {
+        for (String username : headSlots.keySet()) {
+            getUserByUsername(username);
+        }
+        return Collections.unmodifiableMap(users);
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            syncPendingRecords();
+            channel.close();
+        }
+    }
+
+    private synchronized void persist(User user) {
+        String username = user.getUsername();
+        PendingRecord pending = pendingRecords.remove(username);
+        int replacedHead;
+        if (pending != null) {
+            // the earlier record has never been a head, so its slots can be reused right away
+            freeSlots.addAll(markChainFree(pending.head()));
+            replacedHead = pending.replacedHead();
+        } else {
+            replacedHead = headSlots.getOrDefault(username, NO_SLOT);
+        }
+        int head = writeRecord(encodeUser(user));
+        pendingRecords.put(username, new PendingRecord(head, replacedHead));
+        users.put(username, user);
+        headSlots.put(username, head);
+    }
+
+    /**
+     * Makes the records written since the last sync the heads of their users. Every step ends with a force,
+     * so the disk never holds a head whose record is not complete, nor loses a record before its successor
+     * is a head.
+     */
+    private synchronized void syncPendingRecords() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        buffer.force();
+        for (PendingRecord record : pendingRecords.values()) {
+            int generation = record.replacedHead() == NO_SLOT ? 0 : generationOf(record.replacedHead()) + 1;
+            // a single byte switches the user to the new record
+            buffer.put(offsetOf(record.head()), headState(generation));
+        }
+        buffer.force();
+        List<Integer> replacedSlots = new ArrayList<>();
+        for (PendingRecord record : pendingRecords.values()) {
+            replacedSlots.addAll(markChainFree(record.replacedHead()));
+        }
+        // a slot is reused only once it is free on disk too
+        buffer.force();
+        freeSlots.addAll(replacedSlots);
+        pendingRecords.clear();
+    }
+
+    private ScheduledExecutorService startSyncer(Duration syncInterval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, SYNC_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = syncInterval.toNanos();
+        executor.scheduleWithFixedDelay(this::syncInBackground, interval, interval, TimeUnit.NANOSECONDS);
+        return executor;
+    }
+
+    private void syncInBackground() {
+        try {
+            syncPendingRecords();
+        } catch (RuntimeException e) {
+            // an exception would cancel the scheduled syncs
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private synchronized User loadUser(String username) {
+        User user = users.get(username);
+        if (user != null) {
+            return user;
+        }
+        try {
+            int headSlot = headSlots.get(username);
+            DataInputStream record = new DataInputStream(new SlotChainInputStream(headSlot));
+            user = UserRecordReader.readUser(record, isVersioned(headSlot) ? record.readShort() : recordVersion);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while reading user " + username + "!", e);
+        }
+        users.put(username, user);
+        return user;
+    }
+
+    private void createFile() throws IOException {
+        recordVersion = UserRecordWriter.CURRENT_VERSION;
+        map(INITIAL_SLOTS_COUNT);
+        for (int slot = 0; slot < slotsCount; slot++) {
+            freeSlots.addLast(slot);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(Integer.BYTES, FILE_VERSION);
+        buffer.putShort(Integer.BYTES + Short.BYTES, (short) recordVersion);
+        buffer.putInt(Integer.BYTES + 2 * Short.BYTES, SLOT_SIZE);
+    }
+
+    private void openFile() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+            throw new IOException("Not a users file!");
+        }
+        short fileVersion = header.getShort();
+        if (fileVersion < 1 || fileVersion > FILE_VERSION) {
+            throw new IOException("Unsupported users file version: " + fileVersion);
+        }
+        recordVersion = header.getShort();
+        int slotSize = header.getInt();
+        if (slotSize != SLOT_SIZE) {
+            throw new IOException("Unsupported slot size: " + slotSize);
+        }
+        map((int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE));
+        buffer.putShort(Integer.BYTES, FILE_VERSION);
+        scanSlots();
+    }
+
+    /**
+     * Builds the index from the head slots and frees the slots no head leads to, which a crash before a sync
+     * leaves behind, as well as the older head of a user that a crash in the middle of a sync leaves behind.
+     */
+    private void scanSlots() throws IOException {
+        for (int slot = 0; slot < slotsCount; slot++) {
+            if ((buffer.get(offsetOf(slot)) & STATE_MASK) != HEAD_SLOT) {
+                continue;
+            }
+            DataInputStream record = new DataInputStream(new SlotChainInputStream(slot));
+            if (isVersioned(slot)) {
+                record.readShort();
+            }
+            String username = record.readUTF();
+            Integer otherHead = headSlots.get(username);
+            if (otherHead == null || generationOf(slot) == ((generationOf(otherHead) + 1) & GENERATION_MASK)) {
+                headSlots.put(username, slot);
+            }
+        }
+        BitSet usedSlots = new BitSet(slotsCount);
+        for (Map.Entry<String, Integer> head : headSlots.entrySet()) {
+            for (int chainSlot = head.getValue(); chainSlot != NO_SLOT; chainSlot = nextSlot(chainSlot)) {
+                if (chainSlot < 0 || chainSlot >= slotsCount) {
+                    throw new IOException("Invalid slot " + chainSlot + " in the chain of user " + head.getKey());
+                }
+                usedSlots.set(chainSlot);
+            }
+        }
+        for (int slot = usedSlots.nextClearBit(0); slot < slotsCount; slot = usedSlots.nextClearBit(slot + 1)) {
+            buffer.put(offsetOf(slot), FREE_SLOT);
+            freeSlots.addLast(slot);
+        }
+        buffer.force();
+    }
+
+    /**
+     * Writes the record into a chain of free slots. Every slot of it is marked as a chain slot, so the record
+     * is not read on startup until the sync marks its first slot as a head.
+     *
+     * @return the first slot of the record
+     */
+    private int writeRecord(byte[] record) {
+        int[] slots = new int[Math.max(1, (record.length + SLOT_PAYLOAD_SIZE - 1) / SLOT_PAYLOAD_SIZE)];
+        // allocating may remap the file, so the slots are taken before anything is written
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = allocateSlot();
+        }
+        for (int i = 0; i < slots.length; i++) {
+            int offset = offsetOf(slots[i]);
+            int written = i * SLOT_PAYLOAD_SIZE;
+            int length = Math.min(SLOT_PAYLOAD_SIZE, record.length - written);
+            buffer.put(offset + SLOT_HEADER_SIZE, record, written, length);
+            buffer.putShort(offset + LENGTH_OFFSET, (short) length);
+            buffer.putInt(offset + NEXT_SLOT_OFFSET, i + 1 < slots.length ? slots[i + 1] : NO_SLOT);
+            buffer.put(offset, CHAIN_SLOT);
+        }
+        return slots[0];
+    }
+
+    private int allocateSlot() {
+        if (freeSlots.isEmpty()) {
+            grow();
+        }
+        return freeSlots.pollFirst();
+    }
+
+    /**
+     * @return the slots of the chain, which are not handed out again until the caller adds them to the free ones
+     */
+    private List<Integer> markChainFree(int slot) {
+        List<Integer> chain = new ArrayList<>();
+        while (slot != NO_SLOT) {
+            int next = nextSlot(slot);
+            buffer.put(offsetOf(slot), FREE_SLOT);
+            chain.add(slot);
+            slot = next;
+        }
+        return chain;
+    }
+
+    private void grow() {
+        if (slotsCount == MAX_SLOTS_COUNT) {
+            throw new IllegalStateException("The users file is full!");
+        }
+        int oldSlotsCount = slotsCount;
+        try {
+            map((int) Math.min(2L * slotsCount, MAX_SLOTS_COUNT));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while growing the users file!", e);
+        }
+        for (int slot = oldSlotsCount; slot < slotsCount; slot++) {
+            freeSlots.addLast(slot);
+        }
+    }
+
+    private void map(int slotsCount) throws IOException {
+        // mapping past the end of the file extends it with zeroes, i.e. with free slots
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slotsCount * SLOT_SIZE);
+        this.slotsCount = slotsCount;
+    }
+
+    private int nextSlot(int slot) {
+        return buffer.getInt(offsetOf(slot) + NEXT_SLOT_OFFSET);
+    }
+
+    private static byte headState(int generation) {
+        return (byte) (HEAD_SLOT | VERSIONED_RECORD_FLAG | (generation & GENERATION_MASK) << GENERATION_SHIFT);
+    }
+
+    private boolean isVersioned(int headSlot) {
+        return (buffer.get(offsetOf(headSlot)) & VERSIONED_RECORD_FLAG) != 0;
+    }
+
+    private int generationOf(int headSlot) {
+        return (buffer.get(offsetOf(headSlot)) >> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    private static int offsetOf(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static byte[] encodeUser(User user) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SLOT_PAYLOAD_SIZE);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeShort(UserRecordWriter.CURRENT_VERSION);
+            UserRecordWriter.writeUser(output, user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while encoding user " + user.getUsername() + "!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A record that becomes the head of its user on the next sync, replacing the given head.
+     */
+    private record PendingRecord(int head, int replacedHead) {
+    }
+
+    /**
+     * Reads the payload of a record slot by slot, following the chain.
+     */
+    private class SlotChainInputStream extends InputStream {
+        private int slot;
+        private int position;
+        private int length;
+
+        SlotChainInputStream(int headSlot) {
+            this.slot = headSlot;
+            this.length = buffer.getShort(offsetOf(headSlot) + LENGTH_OFFSET);
+        }
+
+        @Override
+        public int read() {
+            if (!hasRemaining()) {
+                return -1;
+            }
+            return buffer.get(offsetOf(slot) + SLOT_HEADER_SIZE + position++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] destination, int offset, int count) {
+            if (count == 0) {
+                return 0;
+            }
+            if (!hasRemaining()) {
+                return -1;
+            }
+            int bytes = Math.min(count, length - position);
+            buffer.get(offsetOf(slot) + SLOT_HEADER_SIZE + position, destination, offset, bytes);
+            position += bytes;
+            return bytes;
+        }
+
+        private boolean hasRemaining() {
+            while (position == length) {
+                int next = nextSlot(slot);
+                if (next == NO_SLOT) {
+                    return false;
+                }
+                slot = next;
+                position = 0;
+                length = buffer.getShort(offsetOf(slot) + LENGTH_OFFSET);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database;
+
+import java.time.Duration;
+
+/**
+ * How long the file database may hold changed users in memory before writing them to disk.
+ * A crash loses at most the changes of the last {@code maxDelay}, plus the time the flush itself takes.
+ *
+ * @param maxDelay      the interval on which the dirty users are flushed
+ * @param maxDirtyUsers the number of dirty users that triggers a flush before the interval has passed
+ */
+public record WriteBehindPolicy(Duration maxDelay, int maxDirtyUsers) {
+    public WriteBehindPolicy {
+        if (maxDelay.isNegative() || maxDelay.isZero() || maxDirtyUsers <= 0) {
+            throw new IllegalArgumentException("Max delay and max dirty users must be positive!");
+        }
+    }
+}
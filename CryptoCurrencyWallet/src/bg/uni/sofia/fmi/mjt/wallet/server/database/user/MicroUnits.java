@@ -0,0 +1,81 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic on money and asset amounts kept as longs of millionths, i.e. micro-dollars and micro-units,
+ * so that balances add up exactly and do not drift over repeated trades. Products and quotients are rounded
+ * down, or up where the name says so, so that a trade never hands out more than it was paid for.
+ */
+public final class MicroUnits {
+    public static final long SCALE = 1_000_000L;
+    private static final BigInteger BIG_SCALE = BigInteger.valueOf(SCALE);
+    private static final double MAX_VALUE = (double) Long.MAX_VALUE / SCALE;
+
+    private MicroUnits() {
+    }
+
+    /**
+     * @return the value in millionths, rounded to the nearest one
+     * @throws ArithmeticException if the value is not finite or does not fit in a long of millionths
+     */
+    public static long of(double value) {
+        if (!Double.isFinite(value) || Math.abs(value) >= MAX_VALUE) {
+            throw new ArithmeticException("Value out of range: " + value);
+        }
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long micros) {
+        return (double) micros / SCALE;
+    }
+
+    /**
+     * @return the product of two values in millionths, e.g. the price of an amount
+     */
+    public static long multiply(long first, long second) {
+        long high = Math.multiplyHigh(first, second);
+        long low = first * second;
+        if (high == (low >> (Long.SIZE - 1))) {
+            return Math.floorDiv(low, SCALE);
+        }
+        return floorDiv(BigInteger.valueOf(first).multiply(BigInteger.valueOf(second)), BIG_SCALE);
+    }
+
+    /**
+     * @return the quotient of two values in millionths, e.g. the amount a sum buys
+     * @throws ArithmeticException if the divisor is zero
+     */
+    public static long divide(long dividend, long divisor) {
+        long high = Math.multiplyHigh(dividend, SCALE);
+        long low = dividend * SCALE;
+        if (high == (low >> (Long.SIZE - 1))) {
+            return Math.floorDiv(low, divisor);
+        }
+        return floorDiv(BigInteger.valueOf(dividend).multiply(BIG_SCALE), BigInteger.valueOf(divisor));
+    }
+
+    /**
+     * @return the product of two values in millionths, rounded up, e.g. the price to pay for an amount
+     */
+    public static long multiplyRoundingUp(long first, long second) {
+        return -multiply(-first, second);
+    }
+
+    /**
+     * @return the quotient of two values in millionths, rounded up, e.g. the amount to sell for a sum
+     * @throws ArithmeticException if the divisor is zero
+     */
+    public static long divideRoundingUp(long dividend, long divisor) {
+        return -divide(-dividend, divisor);
+    }
+
+    private static long floorDiv(BigInteger dividend, BigInteger divisor) {
+        BigInteger[] quotientAndRemainder = dividend.divideAndRemainder(divisor);
+        BigInteger quotient = quotientAndRemainder[0];
+        if (quotientAndRemainder[1].signum() * divisor.signum() < 0) {
+            quotient = quotient.subtract(BigInteger.ONE);
+        }
+        return quotient.longValueExact();
+    }
+}
@@ -2,5 +2,9 @@ package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
 
 import java.io.Serializable;
 
-public record Purchase(String assetId, double amount, double avgPrice) implements Serializable {
+/**
+ * @param amount   the amount of the asset in micro-units, see {@link MicroUnits}
+ * @param avgPrice the average price paid per unit in micro-dollars
+ */
+public record Purchase(String assetId, long amount, long avgPrice) implements Serializable {
 }
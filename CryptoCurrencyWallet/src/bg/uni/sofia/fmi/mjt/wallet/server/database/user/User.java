@@ -2,23 +2,55 @@ package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.TreeMap;
 
 public class User implements Serializable {
     @Serial
     private static final long serialVersionUID = -1822662178653243146L;
     private String username;
     private String passwordHash;
-    private double balance;
-    private Set<Purchase> purchases;
+    // in micro-dollars, see MicroUnits
+    private long balance;
+    // by asset id, so that a trade finds its holding without a scan and the summaries need no sorting
+    private TreeMap<String, Purchase> purchases;
+    // what the open orders of the user hold back from the balance and the purchases, in micro-dollars
+    // and by asset id, kept with the user so that a restart can return what the lost orders held
+    private long reservedBalance;
+    private TreeMap<String, Purchase> reservedAssets;
 
     public User(String username, String password) {
         this.username = username;
         this.passwordHash = password;
-        balance = 0.0;
-        purchases = new HashSet<>();
+        balance = 0;
+        purchases = new TreeMap<>();
+        reservedAssets = new TreeMap<>();
+    }
+
+    public User(String username, String passwordHash, long balance, Collection<Purchase> purchases) {
+        this(username, passwordHash, balance, purchases, 0, List.of());
+    }
+
+    public User(String username, String passwordHash, long balance, Collection<Purchase> purchases,
+                long reservedBalance, Collection<Purchase> reservedAssets) {
+        this.username = username;
+        this.passwordHash = passwordHash;
+        this.balance = balance;
+        this.purchases = new TreeMap<>();
+        for (Purchase purchase : purchases) {
+            this.purchases.put(purchase.assetId(), purchase);
+        }
+        this.reservedBalance = reservedBalance;
+        this.reservedAssets = new TreeMap<>();
+        for (Purchase reservedAsset : reservedAssets) {
+            this.reservedAssets.put(reservedAsset.assetId(), reservedAsset);
+        }
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
     }
 
     public boolean login(String username, String passwordHash) {
@@ -29,69 +61,128 @@ public class User implements Serializable {
         return username;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return this.balance;
     }
 
-    public void increaseBalance(double amount) {
+    public void increaseBalance(long amount) {
         if (amount < 0) {
             throw new RuntimeException("Amount cannot be negative!");
         }
         this.balance += amount;
     }
 
-    public void decreaseBalance(double amount) {
+    public void decreaseBalance(long amount) {
         if (amount < 0) {
             throw new RuntimeException("Amount cannot be negative!");
         }
         this.balance -= amount;
     }
 
-    public void addPurchase(Purchase purchase) {
-        purchases.add(purchase);
+    public long getReservedBalance() {
+        return reservedBalance;
     }
 
-    public void removePurchase(String assetId) {
-        for (var it : purchases) {
-            if (it.assetId().equals(assetId)) {
-                purchases.remove(it);
-                break;
-            }
+    /**
+     * Moves an amount of the balance to the reserved balance.
+     */
+    public void reserveMoney(long amount) {
+        decreaseBalance(amount);
+        reservedBalance += amount;
+    }
+
+    /**
+     * Takes an amount out of the reserved balance, where it was spent.
+     */
+    public void spendReservedMoney(long amount) {
+        if (amount < 0) {
+            throw new RuntimeException("Amount cannot be negative!");
         }
+        reservedBalance -= amount;
     }
 
-    public boolean containsAsset(String assetId) {
-        for (var it : purchases) {
-            if (it.assetId().equals(assetId)) {
-                return true;
-            }
+    /**
+     * Moves an amount of the reserved balance back to the balance.
+     */
+    public void returnReservedMoney(long amount) {
+        spendReservedMoney(amount);
+        increaseBalance(amount);
+    }
+
+    /**
+     * Adds to the reserved amount of an asset, averaging its price with what is already reserved.
+     * The amount is expected to be taken from the purchases by the caller.
+     */
+    public void reserveAsset(String assetId, long amount, long avgPrice) {
+        Purchase reserved = reservedAssets.get(assetId);
+        if (reserved == null) {
+            reservedAssets.put(assetId, new Purchase(assetId, amount, avgPrice));
+            return;
         }
-        return false;
+        long totalAmount = reserved.amount() + amount;
+        long cost = MicroUnits.multiply(reserved.amount(), reserved.avgPrice()) + MicroUnits.multiply(amount, avgPrice);
+        reservedAssets.put(assetId, new Purchase(assetId, totalAmount, MicroUnits.divide(cost, totalAmount)));
     }
 
-    public double getAmountOfAsset(String assetId) {
-        for (var it : purchases) {
-            if (it.assetId().equals(assetId)) {
-                return it.amount();
-            }
+    /**
+     * Takes an amount out of the reserved amount of an asset, where it was sold or returned to the purchases.
+     */
+    public void releaseReservedAsset(String assetId, long amount) {
+        Purchase reserved = reservedAssets.get(assetId);
+        long remaining = (reserved == null ? 0 : reserved.amount()) - amount;
+        if (remaining < 0) {
+            throw new RuntimeException("Amount cannot be more than what is reserved!");
+        }
+        if (remaining == 0) {
+            reservedAssets.remove(assetId);
+        } else {
+            reservedAssets.put(assetId, new Purchase(assetId, remaining, reserved.avgPrice()));
         }
-        return 0.0;
     }
 
-    public double getAvgPrice(String assetId) {
-        for (var it : purchases) {
-            if (it.assetId().equals(assetId)) {
-                return it.avgPrice();
-            }
+    /**
+     * @return a read-only view of the reserved amounts of the assets with their average prices, sorted by asset id
+     */
+    public Collection<Purchase> getReservedAssets() {
+        if (reservedAssets == null) {
+            return List.of();
         }
-        return 0.0;
+        return Collections.unmodifiableCollection(reservedAssets.values());
+    }
+
+    /**
+     * Replaces the purchase of the same asset, if there is one.
+     */
+    public void addPurchase(Purchase purchase) {
+        purchases.put(purchase.assetId(), purchase);
+    }
+
+    public void removePurchase(String assetId) {
+        purchases.remove(assetId);
+    }
+
+    public boolean containsAsset(String assetId) {
+        return purchases.containsKey(assetId);
+    }
+
+    public long getAmountOfAsset(String assetId) {
+        Purchase purchase = purchases.get(assetId);
+        return purchase == null ? 0 : purchase.amount();
+    }
+
+    public long getAvgPrice(String assetId) {
+        Purchase purchase = purchases.get(assetId);
+        return purchase == null ? 0 : purchase.avgPrice();
     }
 
-    public Set<Purchase> getPurchases() {
+    /**
+     * @return a read-only view of the purchases, sorted by asset id
+     */
+    public Collection<Purchase> getPurchases() {
         if (purchases == null) {
-            return new HashSet<>();
+            return List.of();
         }
-        return Collections.unmodifiableSet(purchases);
+        return Collections.unmodifiableCollection(purchases.values());
     }
 
     @Override
@@ -0,0 +1,104 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads users written by {@link UserRecordWriter}.
+ */
+public class UserRecordReader implements Closeable {
+    // the first version that stores what the open orders of a user reserve
+    private static final int RESERVATIONS_VERSION = 3;
+
+    private final DataInputStream input;
+    private final short version;
+    private boolean isFinished;
+
+    public UserRecordReader(InputStream inputStream) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream));
+        int magic = input.readInt();
+        if (magic != UserRecordWriter.MAGIC) {
+            throw new IOException("Not a users file, magic: " + Integer.toHexString(magic));
+        }
+        this.version = input.readShort();
+        if (version < 1 || version > UserRecordWriter.CURRENT_VERSION) {
+            throw new IOException("Unsupported users file version: " + version);
+        }
+    }
+
+    /**
+     * @return the next user or null if all users have been read
+     * @throws IOException if the file is malformed or ends before its end marker
+     */
+    public User read() throws IOException {
+        if (isFinished) {
+            return null;
+        }
+        byte marker = input.readByte();
+        if (marker == UserRecordWriter.END_MARKER) {
+            isFinished = true;
+            return null;
+        }
+        if (marker != UserRecordWriter.RECORD_MARKER) {
+            throw new IOException("Invalid record marker: " + marker);
+        }
+        return readUser(input, version);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Reads the fields of a single user written by {@link UserRecordWriter#writeUser(java.io.DataOutput, User)}
+     * in the given version of the layout.
+     */
+    public static User readUser(DataInput input, int version) throws IOException {
+        if (version < 1 || version > UserRecordWriter.CURRENT_VERSION) {
+            throw new IOException("Unsupported user record version: " + version);
+        }
+        String username = input.readUTF();
+        String passwordHash = input.readUTF();
+        long balance = readMicros(input, version);
+        List<Purchase> purchases = readPurchases(input, version);
+        if (version < RESERVATIONS_VERSION) {
+            return new User(username, passwordHash, balance, purchases);
+        }
+        long reservedBalance = input.readLong();
+        return new User(username, passwordHash, balance, purchases, reservedBalance, readPurchases(input, version));
+    }
+
+    private static List<Purchase> readPurchases(DataInput input, int version) throws IOException {
+        int purchasesCount = input.readInt();
+        if (purchasesCount < 0) {
+            throw new IOException("Invalid purchases count: " + purchasesCount);
+        }
+        List<Purchase> purchases = new ArrayList<>(purchasesCount);
+        for (int i = 0; i < purchasesCount; i++) {
+            purchases.add(new Purchase(input.readUTF(), readMicros(input, version), readMicros(input, version)));
+        }
+        return purchases;
+    }
+
+    /**
+     * Version 1 stored the values as doubles.
+     */
+    private static long readMicros(DataInput input, int version) throws IOException {
+        if (version > 1) {
+            return input.readLong();
+        }
+        double value = input.readDouble();
+        try {
+            return MicroUnits.of(value);
+        } catch (ArithmeticException e) {
+            throw new IOException("Invalid value: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+
+/**
+ * Writes users in the binary record layout read by {@link UserRecordReader}.
+ * <p>
+ * Version 3 layout: a 4-byte magic and a 2-byte version, then for every user a 1 marker byte, the username
+ * and the password hash as modified UTF-8, the balance as a long of micro-dollars, the purchases count as
+ * an int and an (assetId, amount, avgPrice) triple for every purchase, the amount and the price as longs of
+ * {@link MicroUnits}, then the reserved balance and the reserved assets in the same way as the balance and
+ * the purchases, and finally a 0 marker byte. The end marker tells a complete file from one that was
+ * cut short. Version 2 had no reservations and version 1 also stored the balance, the amounts and the prices
+ * as doubles; both are still read.
+ */
+public class UserRecordWriter implements Closeable {
+    public static final int MAGIC = 0x43575553;
+    public static final short CURRENT_VERSION = 3;
+    static final byte RECORD_MARKER = 1;
+    static final byte END_MARKER = 0;
+
+    private final DataOutputStream output;
+
+    public UserRecordWriter(OutputStream outputStream) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.writeInt(MAGIC);
+        output.writeShort(CURRENT_VERSION);
+    }
+
+    public void write(User user) throws IOException {
+        output.writeByte(RECORD_MARKER);
+        writeUser(output, user);
+    }
+
+    /**
+     * Writes a user already encoded by {@link #encodeUser(User)}.
+     */
+    public void write(byte[] encodedUser) throws IOException {
+        output.writeByte(RECORD_MARKER);
+        output.write(encodedUser);
+    }
+
+    /**
+     * Writes the end marker and flushes everything to the underlying stream without closing it.
+     */
+    public void finish() throws IOException {
+        output.writeByte(END_MARKER);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * @return the fields of the user as {@link #writeUser(DataOutput, User)} writes them
+     */
+    public static byte[] encodeUser(User user) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            writeUser(output, user);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while encoding a user!", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the fields of a single user in the current version of the layout, without any framing.
+     */
+    public static void writeUser(DataOutput output, User user) throws IOException {
+        output.writeUTF(user.getUsername());
+        output.writeUTF(user.getPasswordHash());
+        output.writeLong(user.getBalance());
+        writePurchases(output, user.getPurchases());
+        output.writeLong(user.getReservedBalance());
+        writePurchases(output, user.getReservedAssets());
+    }
+
+    private static void writePurchases(DataOutput output, Collection<Purchase> purchases) throws IOException {
+        output.writeInt(purchases.size());
+        for (Purchase purchase : purchases) {
+            output.writeUTF(purchase.assetId());
+            output.writeLong(purchase.amount());
+            output.writeLong(purchase.avgPrice());
+        }
+    }
+}
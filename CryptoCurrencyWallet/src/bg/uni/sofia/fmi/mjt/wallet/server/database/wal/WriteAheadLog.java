@@ -0,0 +1,186 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.wal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque records. Every record is framed as a 4-byte payload length, a 4-byte CRC32
+ * of the payload and the payload itself, so a record torn by a crash is detected and dropped on replay.
+ * <p>
+ * Appending and syncing are separate steps to allow group commit: {@link #append(byte[])} only queues the
+ * record in memory and {@link #sync(long)} makes it durable. While one thread is waiting for the disk,
+ * the records appended by other threads pile up and the next sync writes and forces all of them at once.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+    private final Object flushLock = new Object();
+    private List<byte[]> pendingRecords = new ArrayList<>();
+    private long appendedCount;
+    private volatile long syncedCount;
+    private long recordsInFile;
+    private IOException failure;
+
+    public WriteAheadLog(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads every intact record from the start of the log and positions the log after the last one,
+     * cutting off a torn record at the end if there is one.
+     */
+    public void replay(Consumer<ByteBuffer> recordConsumer) throws IOException {
+        synchronized (flushLock) {
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long position = 0;
+            long records = 0;
+            long size = channel.size();
+            while (position + RECORD_HEADER_SIZE <= size) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || position + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + RECORD_HEADER_SIZE);
+                payload.flip();
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                recordConsumer.accept(payload);
+                position += RECORD_HEADER_SIZE + length;
+                records++;
+            }
+            if (position < size) {
+                channel.truncate(position);
+                channel.force(false);
+            }
+            channel.position(position);
+            recordsInFile = records;
+        }
+    }
+
+    /**
+     * Queues the record. It is not durable until {@link #sync(long)} is called with the returned sequence number.
+     *
+     * @return the sequence number of the record
+     */
+    public synchronized long append(byte[] record) {
+        pendingRecords.add(record);
+        return ++appendedCount;
+    }
+
+    /**
+     * Blocks until the record with the given sequence number, and every record appended before it,
+     * is written and forced to the disk.
+     */
+    public void sync(long sequenceNumber) {
+        if (syncedCount >= sequenceNumber) {
+            return;
+        }
+        synchronized (flushLock) {
+            // a concurrent sync may have already written our record as part of its batch
+            if (syncedCount < sequenceNumber) {
+                flushPendingRecords();
+            }
+        }
+    }
+
+    /**
+     * @return the number of records in the log file, i.e. the records a restart would replay
+     */
+    public long getRecordsCount() {
+        synchronized (flushLock) {
+            return recordsInFile;
+        }
+    }
+
+    /**
+     * Drops every record in the log once the state they describe is safely stored elsewhere.
+     * Records that were appended but not synced yet are written out and dropped as well.
+     */
+    public void truncate() {
+        synchronized (flushLock) {
+            flushPendingRecords();
+            try {
+                channel.truncate(0);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error while truncating the write-ahead log!", e);
+            }
+            recordsInFile = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            flushPendingRecords();
+            channel.close();
+        }
+    }
+
+    private void flushPendingRecords() {
+        if (failure != null) {
+            // the records of the failed batch are lost, so nothing appended after them may be reported as durable
+            throw new UncheckedIOException("The write-ahead log failed earlier!", failure);
+        }
+        List<byte[]> batch;
+        long batchEnd;
+        synchronized (this) {
+            batch = pendingRecords;
+            batchEnd = appendedCount;
+            pendingRecords = new ArrayList<>();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            buffers[i] = frame(batch.get(i));
+        }
+        try {
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("Error while writing to the write-ahead log!", e);
+        }
+        recordsInFile += batch.size();
+        syncedCount = batchEnd;
+    }
+
+    private static ByteBuffer frame(byte[] record) {
+        ByteBuffer frame = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        frame.putInt(record.length);
+        frame.putInt(checksum(ByteBuffer.wrap(record)));
+        frame.put(record);
+        return frame.flip();
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,12 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.exception;
+
+public class CoinAPIUnavailableException extends Exception {
+
+    public CoinAPIUnavailableException(String message) {
+        super(message);
+    }
+
+    public CoinAPIUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
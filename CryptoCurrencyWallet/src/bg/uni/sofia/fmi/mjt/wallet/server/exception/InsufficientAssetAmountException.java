@@ -0,0 +1,11 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.exception;
+
+public class InsufficientAssetAmountException extends Exception {
+    public InsufficientAssetAmountException(String message) {
+        super(message);
+    }
+
+    public InsufficientAssetAmountException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,11 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.exception;
+
+public class OrderNotFoundException extends Exception {
+    public OrderNotFoundException(String message) {
+        super(message);
+    }
+
+    public OrderNotFoundException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
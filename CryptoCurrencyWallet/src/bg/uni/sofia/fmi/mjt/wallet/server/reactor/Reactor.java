@@ -0,0 +1,235 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.reactor;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientConnection;
+import bg.uni.sofia.fmi.mjt.wallet.server.logger.ErrorLogger;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves the connections handed to it by the acceptor on its own thread and its own Selector.
+ * A connection stays with the same reactor for its whole life, so its state is never shared between threads.
+ * Commands are executed either inline or, when a worker pool is given, on the pool; in that case the
+ * response is handed back to the reactor, which encodes and writes it on its own thread.
+ * A client may pipeline many commands on one connection; they are executed in the order they arrived
+ * and every response carries the request id of its command.
+ */
+public class Reactor implements Runnable {
+    private static final int MAX_PENDING_REQUESTS = 64;
+    private static final String SERVER_BUSY = "The server is busy at the moment! Please try again later!";
+
+    private final String name;
+    private final CommandExecutor commandExecutor;
+    private final WorkerPool workerPool;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels;
+    private final Queue<Completion> completions;
+    private volatile boolean isRunning;
+
+    public Reactor(String name, CommandExecutor commandExecutor) throws IOException {
+        this(name, commandExecutor, null);
+    }
+
+    public Reactor(String name, CommandExecutor commandExecutor, WorkerPool workerPool) throws IOException {
+        this.name = name;
+        this.commandExecutor = commandExecutor;
+        this.workerPool = workerPool;
+        this.selector = Selector.open();
+        this.pendingChannels = new ConcurrentLinkedQueue<>();
+        this.completions = new ConcurrentLinkedQueue<>();
+        this.isRunning = true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Hands an accepted channel over to this reactor. Safe to call from any thread.
+     */
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    public void stop() {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                selector.select();
+                registerPendingChannels();
+                writeCompletedResponses();
+                Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+                while (keyIterator.hasNext()) {
+                    SelectionKey key = keyIterator.next();
+                    keyIterator.remove();
+                    handleClient(key);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("There is a problem with reactor " + name, e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void registerPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new ClientConnection(channel));
+            } catch (IOException e) {
+                ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+                closeChannel(channel);
+            }
+        }
+    }
+
+    private void writeCompletedResponses() {
+        Completion completion;
+        while ((completion = completions.poll()) != null) {
+            SelectionKey key = completion.key();
+            if (!key.isValid()) {
+                continue;
+            }
+            ClientConnection connection = (ClientConnection) key.attachment();
+            connection.enqueue(completion.response());
+            connection.setExecuting(false);
+            dispatchRequests(key, connection);
+            try {
+                writePendingResponses(key, connection);
+            } catch (IOException e) {
+                ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+                closeConnection(key, connection);
+            }
+        }
+    }
+
+    private void handleClient(SelectionKey key) {
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if (key.isReadable() && !readClientInput(key, connection)) {
+                return;
+            }
+            if (key.isValid()) {
+                writePendingResponses(key, connection);
+            }
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+            closeConnection(key, connection);
+        }
+    }
+
+    private boolean readClientInput(SelectionKey key, ClientConnection connection) throws IOException {
+        int r = connection.read();
+        if (r < 0) {
+            System.out.println("Client has closed the connection!");
+            closeConnection(key, connection);
+            return false;
+        }
+        Command command;
+        while ((command = connection.nextCommand()) != null) {
+            connection.addRequest(command);
+        }
+        dispatchRequests(key, connection);
+        return true;
+    }
+
+    private void dispatchRequests(SelectionKey key, ClientConnection connection) {
+        while (!connection.isExecuting()) {
+            Command command = connection.pollRequest();
+            if (command == null) {
+                return;
+            }
+            if (workerPool == null) {
+                connection.enqueue(processResponse(connection, command));
+                continue;
+            }
+            connection.setExecuting(true);
+            boolean isAccepted = workerPool.submit(() -> {
+                completions.add(new Completion(key, processResponse(connection, command)));
+                selector.wakeup();
+            });
+            if (!isAccepted) {
+                connection.setExecuting(false);
+                connection.enqueue(new Response(false, SERVER_BUSY, command.requestId()));
+            }
+        }
+    }
+
+    private Response processResponse(ClientConnection connection, Command command) {
+        Response response = commandExecutor.execute(connection.getSession(), command);
+        printResponse(response);
+        return response;
+    }
+
+    private void writePendingResponses(SelectionKey key, ClientConnection connection) throws IOException {
+        if (!connection.flush()) {
+            // stop reading new commands until the client has consumed the responses it already has
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (connection.getPendingRequestsCount() >= MAX_PENDING_REQUESTS) {
+            // the client has sent more commands than we are willing to buffer, wait for the queue to drain
+            key.interestOps(0);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void closeConnection(SelectionKey key, ClientConnection connection) {
+        key.cancel();
+        try {
+            connection.close();
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            closeConnection(key, (ClientConnection) key.attachment());
+        }
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            closeChannel(channel);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private void closeChannel(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ErrorLogger.log("Message: " + e.getMessage() + " | Stack Trace: " + Arrays.toString(e.getStackTrace()));
+        }
+    }
+
+    private void printResponse(Response response) {
+        if (response.isOk()) {
+            System.out.println("Response: " + response.getResponse());
+        } else {
+            System.err.println("Response Error: " + response.getResponse());
+        }
+    }
+
+    private record Completion(SelectionKey key, Response response) {
+    }
+}
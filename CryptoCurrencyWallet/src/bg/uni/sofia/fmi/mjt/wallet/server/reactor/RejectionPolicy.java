@@ -0,0 +1,15 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.reactor;
+
+/**
+ * What the worker pool does with a command when its queue is full.
+ */
+public enum RejectionPolicy {
+    /**
+     * The command is not executed and the client is told that the server is busy.
+     */
+    REJECT,
+    /**
+     * The command is executed on the reactor thread that tried to submit it.
+     */
+    CALLER_RUNS
+}
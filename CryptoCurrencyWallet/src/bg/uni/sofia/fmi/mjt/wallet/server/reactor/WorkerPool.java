@@ -0,0 +1,102 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.reactor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool that executes commands away from the reactor threads,
+ * so that slow commands (CoinAPI calls, disk writes) do not stall the selector loops.
+ */
+public class WorkerPool {
+    private static final long SHUTDOWN_TIMEOUT_IN_SECS = 10;
+
+    private final ThreadPoolExecutor executor;
+    private final BlockingQueue<Runnable> queue;
+    private final int queueCapacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final LongAdder submittedTasks;
+    private final LongAdder completedTasks;
+    private final LongAdder rejectedTasks;
+    private final LongAdder callerRanTasks;
+    private final AtomicInteger largestQueueDepth;
+
+    public WorkerPool(int threadsCount, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        if (threadsCount <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Threads count and queue capacity must be positive numbers!");
+        }
+        this.queueCapacity = queueCapacity;
+        this.rejectionPolicy = rejectionPolicy;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(threadsCount, threadsCount, 0L, TimeUnit.MILLISECONDS, queue,
+            new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        this.submittedTasks = new LongAdder();
+        this.completedTasks = new LongAdder();
+        this.rejectedTasks = new LongAdder();
+        this.callerRanTasks = new LongAdder();
+        this.largestQueueDepth = new AtomicInteger();
+    }
+
+    /**
+     * Submits a task for execution.
+     *
+     * @return false if the queue is full and the rejection policy is {@link RejectionPolicy#REJECT}
+     */
+    public boolean submit(Runnable task) {
+        submittedTasks.increment();
+        Runnable countedTask = () -> {
+            try {
+                task.run();
+            } finally {
+                completedTasks.increment();
+            }
+        };
+        try {
+            executor.execute(countedTask);
+            largestQueueDepth.accumulateAndGet(queue.size(), Math::max);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                callerRanTasks.increment();
+                countedTask.run();
+                return true;
+            }
+            rejectedTasks.increment();
+            return false;
+        }
+    }
+
+    public WorkerPoolMetrics getMetrics() {
+        return new WorkerPoolMetrics(executor.getPoolSize(), executor.getActiveCount(), queue.size(), queueCapacity,
+            largestQueueDepth.get(), submittedTasks.sum(), completedTasks.sum(), rejectedTasks.sum(),
+            callerRanTasks.sum());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_IN_SECS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadsCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "wallet-worker-" + threadsCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
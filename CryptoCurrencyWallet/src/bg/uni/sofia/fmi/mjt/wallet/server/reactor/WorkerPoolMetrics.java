@@ -0,0 +1,20 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.reactor;
+
+public record WorkerPoolMetrics(
+    int poolSize,
+    int activeThreads,
+    int queueDepth,
+    int queueCapacity,
+    int largestQueueDepth,
+    long submittedTasks,
+    long completedTasks,
+    long rejectedTasks,
+    long callerRanTasks
+) {
+    @Override
+    public String toString() {
+        return "Worker pool: threads=" + poolSize + ", active=" + activeThreads + ", queue=" + queueDepth + "/" +
+            queueCapacity + ", largest queue=" + largestQueueDepth + ", submitted=" + submittedTasks +
+            ", completed=" + completedTasks + ", rejected=" + rejectedTasks + ", caller ran=" + callerRanTasks;
+    }
+}
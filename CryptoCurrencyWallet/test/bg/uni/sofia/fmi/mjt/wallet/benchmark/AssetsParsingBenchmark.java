@@ -0,0 +1,75 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.CryptoAssetParser;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.Asset;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.management.ThreadMXBean;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time and allocation of turning a /v1/assets payload into CryptoAssets the way getAllAssets used to
+ * (whole body as a String, Gson into Asset[], then filter) and with the streaming CryptoAssetParser.
+ * Without a recorded payload, one with the shape and size of the real response is generated.
+ * <p>
+ * Usage: AssetsParsingBenchmark [recorded payload file]
+ */
+public class AssetsParsingBenchmark {
+    private static final int GENERATED_ASSETS = 20_000;
+    private static final int ITERATIONS = 30;
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double BYTES_IN_MEGABYTE = 1024.0 * 1024.0;
+
+    public static void main(String[] args) throws IOException {
+        byte[] payload = args.length > 0 ? Files.readAllBytes(Path.of(args[0]))
+            : BenchmarkSupport.generateAssetsPayload(GENERATED_ASSETS);
+        System.out.printf("payload %.1f MB%n", payload.length / BYTES_IN_MEGABYTE);
+        for (int round = 0; round < 2; round++) {
+            run("string+gson", payload, AssetsParsingBenchmark::parseWholeBody);
+            run("streaming", payload, bytes -> CryptoAssetParser.parse(new ByteArrayInputStream(bytes), true));
+        }
+    }
+
+    private static void run(String name, byte[] payload, Parser parser) throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int assets = 0;
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assets = parser.parse(payload).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("%-12s %8.1f ms/parse %8.1f MB allocated/parse (%d assets)%n", name,
+            elapsed / NANOS_IN_MILLI / ITERATIONS, allocated / BYTES_IN_MEGABYTE / ITERATIONS, assets);
+    }
+
+    private static List<CryptoAsset> parseWholeBody(byte[] payload) {
+        String body = new String(payload, StandardCharsets.UTF_8);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Asset[] response = gson.fromJson(body, Asset[].class);
+        List<CryptoAsset> result = new ArrayList<>();
+        for (var it : response) {
+            if (it.typeIsCrypto() == 0) {
+                continue;
+            }
+            result.add(new CryptoAsset(it.assetId(), it.name(), it.priceUSD(), LocalDateTime.now()));
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        List<CryptoAsset> parse(byte[] payload) throws IOException;
+    }
+}
@@ -0,0 +1,117 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.client.CryptoWalletClient;
+import bg.uni.sofia.fmi.mjt.wallet.client.exception.ServerNotFoundException;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoWalletController;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.CryptoConsumerAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderBookService;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserLocks;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserService;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.WalletService;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.FileDatabase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.password.MDPasswordHasher;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+final class BenchmarkSupport {
+    static final int ASSETS_COUNT = 500;
+    private static final int USER_LOCK_STRIPES = 64;
+
+    private BenchmarkSupport() {
+    }
+
+    static CryptoWalletClient connect() throws InterruptedException {
+        CryptoWalletClient client = new CryptoWalletClient();
+        while (true) {
+            try {
+                client.run();
+                return client;
+            } catch (ServerNotFoundException e) {
+                // the server thread has not bound the port yet
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    static CommandExecutor createCommandExecutor(Path usersPath) throws IOException, InterruptedException {
+        Database database = new FileDatabase(usersPath);
+        CryptoAssetUpdater updater = new CryptoAssetUpdater(new StaticCryptoConsumer());
+        updater.start(Duration.ofMinutes(1));
+        while (updater.getSnapshot().version() == 0) {
+            // the first prices are downloaded in the background
+            Thread.sleep(10);
+        }
+        UserLocks userLocks = new UserLocks(USER_LOCK_STRIPES);
+        WalletService walletService = new WalletService(database, updater, userLocks);
+        OrderBookService orderBookService = new OrderBookService(database, updater, userLocks);
+        UserService userService = new UserService(database, new MDPasswordHasher(), userLocks);
+        return new CommandExecutor(new CryptoWalletController(userService, walletService, orderBookService));
+    }
+
+    static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    /**
+     * @return a /v1/assets payload with the shape of the real response, every tenth asset not being a crypto one
+     */
+    static byte[] generateAssetsPayload(int assetsCount) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < assetsCount; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"asset_id\":\"ASSET").append(i).append("\",\"name\":\"Asset number ").append(i)
+                .append("\",\"type_is_crypto\":").append(i % 10 == 0 ? 0 : 1)
+                .append(",\"data_quote_start\":\"2014-02-24T00:00:00.0000000Z\"")
+                .append(",\"data_quote_end\":\"2024-01-20T00:00:00.0000000Z\"")
+                .append(",\"data_orderbook_start\":\"2014-02-24T17:43:05.0000000Z\"")
+                .append(",\"data_orderbook_end\":\"2023-07-07T00:00:00.0000000Z\"")
+                .append(",\"data_trade_start\":\"2010-07-17T00:00:00.0000000Z\"")
+                .append(",\"data_trade_end\":\"2024-01-21T00:00:00.0000000Z\"")
+                .append(",\"data_symbols_count\":").append(100 + i)
+                .append(",\"volume_1hrs_usd\":").append(1234567.89 * (i + 1))
+                .append(",\"volume_1day_usd\":").append(98765432.1 * (i + 1))
+                .append(",\"volume_1mth_usd\":").append(1.234567891E10 * (i + 1))
+                .append(",\"price_usd\":").append(0.5 + i * 1.37)
+                .append(",\"id_icon\":\"4caf2b16-a017-4e26-a348-2cea69c34cba\"")
+                .append(",\"supply_current\":").append(19000000.0 + i)
+                .append(",\"supply_total\":").append(19000000.0 + i)
+                .append(",\"supply_max\":21000000")
+                .append(",\"data_start\":\"2010-07-17\",\"data_end\":\"2024-01-21\"}");
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class StaticCryptoConsumer implements CryptoConsumerAPI {
+        @Override
+        public List<CryptoAsset> getAllAssets() {
+            List<CryptoAsset> assets = new ArrayList<>();
+            for (int i = 0; i < ASSETS_COUNT; i++) {
+                assets.add(new CryptoAsset("ASSET" + i, "Asset " + i, 1.0 + i, LocalDateTime.now()));
+            }
+            return assets;
+        }
+
+        @Override
+        public CryptoAsset getAssetById(String id) {
+            return new CryptoAsset(id, id, 1.0, LocalDateTime.now());
+        }
+
+        @Override
+        public List<CryptoAsset> getAssetsByIds(Collection<String> ids) {
+            return ids.stream().map(this::getAssetById).toList();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves /v1/assets, /v1/assets?filter_asset_id=... and /v1/assets/{id} the way CoinAPI does, from a recorded
+ * payload or from a generated one, so that the whole server can be load tested without network access.
+ * Every served price takes a random step of up to the configured drift, and the responses can be delayed
+ * and failed on purpose. The remaining quota is reported in the X-RateLimit-Remaining header.
+ * <p>
+ * Usage: CoinAPIStandIn [port] [recorded payload file], then start the server with
+ * -Dwallet.coinapi.url=http://localhost:port and any CryptoAPI_KEY. The behaviour is set with
+ * -Dstandin.latency.ms, -Dstandin.latency.jitter.ms, -Dstandin.error.rate, -Dstandin.price.drift
+ * and -Dstandin.daily.quota.
+ */
+public class CoinAPIStandIn implements Closeable {
+    private static final int DEFAULT_PORT = 8088;
+    private static final int GENERATED_ASSETS = 20_000;
+    private static final String ASSETS_PATH = "/v1/assets";
+    private static final String FILTER_ASSET_ID_PARAMETER = "filter_asset_id=";
+    private static final String API_KEY_HEADER = "X-CoinAPI-Key";
+    private static final String ASSET_ID_FIELD = "asset_id";
+    private static final String PRICE_FIELD = "price_usd";
+    private static final int OK_STATUS_CODE = 200;
+    private static final int UNAUTHORIZED_STATUS_CODE = 401;
+    private static final int NOT_FOUND_STATUS_CODE = 404;
+    private static final int TOO_MANY_REQUESTS_STATUS_CODE = 429;
+    private static final int SERVER_ERROR_STATUS_CODE = 500;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, JsonObject> assets;
+    private final Behaviour behaviour;
+    private final AtomicLong remainingQuota;
+    private final AtomicLong requestsCount;
+    private final Gson gson;
+
+    /**
+     * @param port    the port to listen on, or 0 for any free one
+     * @param payload a /v1/assets response, as CoinAPI returns it
+     */
+    public CoinAPIStandIn(int port, byte[] payload, Behaviour behaviour) throws IOException {
+        this.assets = new LinkedHashMap<>();
+        for (JsonElement asset : JsonParser.parseString(new String(payload, StandardCharsets.UTF_8)).getAsJsonArray()) {
+            JsonObject object = asset.getAsJsonObject();
+            assets.put(object.get(ASSET_ID_FIELD).getAsString(), object);
+        }
+        this.behaviour = behaviour;
+        this.remainingQuota = new AtomicLong(behaviour.dailyQuota());
+        this.requestsCount = new AtomicLong();
+        this.gson = new Gson();
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext(ASSETS_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        byte[] payload = args.length > 1 ? Files.readAllBytes(Path.of(args[1]))
+            : BenchmarkSupport.generateAssetsPayload(GENERATED_ASSETS);
+        Behaviour behaviour = new Behaviour(Duration.ofMillis(Long.getLong("standin.latency.ms", 0)),
+            Duration.ofMillis(Long.getLong("standin.latency.jitter.ms", 0)),
+            Double.parseDouble(System.getProperty("standin.error.rate", "0")),
+            Double.parseDouble(System.getProperty("standin.price.drift", "0.001")),
+            Long.getLong("standin.daily.quota", Long.MAX_VALUE));
+        CoinAPIStandIn standIn = new CoinAPIStandIn(port, payload, behaviour);
+        System.out.println("CoinAPI stand-in is serving " + standIn.assets.size() + " assets on http://localhost:" +
+            standIn.getPort() + ASSETS_PATH);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRequestsCount() {
+        return requestsCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestsCount.incrementAndGet();
+            delay();
+            if (exchange.getRequestHeaders().getFirst(API_KEY_HEADER) == null) {
+                respond(exchange, UNAUTHORIZED_STATUS_CODE, error("No API key"));
+                return;
+            }
+            long quota = remainingQuota.getAndUpdate(remaining -> Math.max(0, remaining - 1));
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(Math.max(0, quota - 1)));
+            if (quota == 0) {
+                respond(exchange, TOO_MANY_REQUESTS_STATUS_CODE, error("Quota exceeded"));
+                return;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < behaviour.errorRate()) {
+                respond(exchange, SERVER_ERROR_STATUS_CODE, error("Injected failure"));
+                return;
+            }
+            List<String> assetIds = requestedAssetIds(exchange);
+            if (assetIds == null) {
+                respond(exchange, NOT_FOUND_STATUS_CODE, error("Unknown path"));
+                return;
+            }
+            respond(exchange, OK_STATUS_CODE, gson.toJson(serve(assetIds)));
+        }
+    }
+
+    /**
+     * @return the ids the request asks for, an empty list for all of them or null for an unknown path
+     */
+    private List<String> requestedAssetIds(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith(ASSETS_PATH + "/") && path.length() > ASSETS_PATH.length() + 1) {
+            return List.of(path.substring(ASSETS_PATH.length() + 1));
+        }
+        if (!path.equals(ASSETS_PATH) && !path.equals(ASSETS_PATH + "/")) {
+            return null;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null || !query.startsWith(FILTER_ASSET_ID_PARAMETER)) {
+            return List.of();
+        }
+        return Arrays.asList(query.substring(FILTER_ASSET_ID_PARAMETER.length()).split("[,;]"));
+    }
+
+    private synchronized JsonArray serve(List<String> assetIds) {
+        JsonArray response = new JsonArray();
+        for (JsonObject asset : assetIds.isEmpty() ? assets.values() : assetIds.stream().map(assets::get).toList()) {
+            if (asset == null) {
+                continue;
+            }
+            drift(asset);
+            response.add(asset.deepCopy());
+        }
+        return response;
+    }
+
+    private void drift(JsonObject asset) {
+        JsonElement price = asset.get(PRICE_FIELD);
+        if (price == null || behaviour.priceDrift() == 0) {
+            return;
+        }
+        double step = (ThreadLocalRandom.current().nextDouble() * 2 - 1) * behaviour.priceDrift();
+        asset.addProperty(PRICE_FIELD, price.getAsDouble() * (1 + step));
+    }
+
+    private void delay() {
+        long jitter = behaviour.latencyJitter().toMillis();
+        long millis = behaviour.latency().toMillis() + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        if (millis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message + "\"}";
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * @param errorRate  the share of the requests that fail with status 500
+     * @param priceDrift the biggest relative step a price takes every time it is served
+     * @param dailyQuota the requests served before every response is a 429
+     */
+    public record Behaviour(Duration latency, Duration latencyJitter, double errorRate, double priceDrift,
+                            long dailyQuota) {
+        public static Behaviour instant() {
+            return new Behaviour(Duration.ZERO, Duration.ZERO, 0, 0, Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.FileDatabase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.MappedFileDatabase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.WriteBehindPolicy;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+
+import java.io.Closeable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Latency of FileDatabase.updateUser, i.e. of persisting one trade, with a given number of accounts
+ * in the database and a given number of threads trading concurrently, followed by the time it takes
+ * to open the database again with that many accounts.
+ * <p>
+ * Usage: FileDatabaseBenchmark [accounts] [threads] [updates per thread] [file|write-behind|mapped]
+ */
+public class FileDatabaseBenchmark {
+    private static final int DEFAULT_ACCOUNTS = 5000;
+    private static final int DEFAULT_THREADS = 16;
+    private static final int DEFAULT_UPDATES_PER_THREAD = 50;
+    private static final String FILE_DATABASE = "file";
+    private static final String WRITE_BEHIND_DATABASE = "write-behind";
+    private static final String MAPPED_DATABASE = "mapped";
+    private static final int SNAPSHOT_INTERVAL = 10_000;
+    private static final WriteBehindPolicy WRITE_BEHIND_POLICY = new WriteBehindPolicy(Duration.ofMillis(100), 1000);
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ACCOUNTS;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_THREADS;
+        int updatesPerThread = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_UPDATES_PER_THREAD;
+        String databaseKind = args.length > 3 ? args[3] : FILE_DATABASE;
+
+        Path directory = Files.createTempDirectory("benchmark_database");
+        try {
+            Path usersPath = directory.resolve(databaseKind.equals(MAPPED_DATABASE) ? "users.db" : "users.txt");
+            Database database = open(usersPath, databaseKind);
+            for (int i = 0; i < accounts; i++) {
+                User user = new User("user" + i, "password_hash_" + i);
+                user.increaseBalance(MicroUnits.of(1000));
+                user.addPurchase(new Purchase("BTC", MicroUnits.of(0.5), MicroUnits.of(40000)));
+                database.addUser(user);
+            }
+
+            long[][] latencies = new long[threads][updatesPerThread];
+            CountDownLatch done = new CountDownLatch(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                long[] threadLatencies = latencies[t];
+                int offset = t;
+                new Thread(() -> {
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        User user = database.getUserByUsername("user" + ((offset + i * threads) % accounts));
+                        long updateStart = System.nanoTime();
+                        database.updateUser(user);
+                        threadLatencies[i] = System.nanoTime() - updateStart;
+                    }
+                    done.countDown();
+                }).start();
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+
+            long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            System.out.printf("%d accounts, %d threads: %.0f updates/s, p50 %.3f ms, p99 %.3f ms%n", accounts,
+                threads, all.length / (elapsed / NANOS_IN_SECOND),
+                BenchmarkSupport.percentile(all, 0.50) / NANOS_IN_MILLI,
+                BenchmarkSupport.percentile(all, 0.99) / NANOS_IN_MILLI);
+
+            ((Closeable) database).close();
+            long openStart = System.nanoTime();
+            Database reopened = open(usersPath, databaseKind);
+            long openTime = System.nanoTime() - openStart;
+            System.out.printf("startup with %d accounts: %.1f ms%n", accounts, openTime / NANOS_IN_MILLI);
+            ((Closeable) reopened).close();
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Database open(Path usersPath, String databaseKind) {
+        return switch (databaseKind) {
+            case FILE_DATABASE -> new FileDatabase(usersPath);
+            case WRITE_BEHIND_DATABASE -> new FileDatabase(usersPath, SNAPSHOT_INTERVAL, WRITE_BEHIND_POLICY);
+            case MAPPED_DATABASE -> new MappedFileDatabase(usersPath);
+            default -> throw new IllegalArgumentException("Unknown database: " + databaseKind);
+        };
+    }
+}
@@ -0,0 +1,84 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderBook;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Throughput and allocation of the OrderBook on a single thread, for a generated stream of limit orders
+ * around a mid price, cancels of open orders and market orders. A limit order expires after a few thousand
+ * more orders, so the book keeps a steady size. The stream is generated up front, so only the book is measured,
+ * and the first rounds warm it up.
+ * <p>
+ * Usage: OrderBookBenchmark [orders per round]
+ */
+public class OrderBookBenchmark {
+    private static final int DEFAULT_ORDERS = 2_000_000;
+    private static final int ROUNDS = 5;
+    private static final int OPEN_ORDERS_TRACKED = 8192;
+    private static final long MID_PRICE = MicroUnits.of(100.0);
+    private static final long TICK = MicroUnits.of(0.01);
+    private static final int PRICE_LEVELS = 200;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+
+    private static final byte LIMIT = 0;
+    private static final byte MARKET = 1;
+    private static final byte CANCEL = 2;
+
+    private static long fills;
+
+    public static void main(String[] args) {
+        int ordersCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ORDERS;
+        Random random = new Random(42);
+        byte[] kinds = new byte[ordersCount];
+        OrderSide[] sides = new OrderSide[ordersCount];
+        long[] prices = new long[ordersCount];
+        long[] amounts = new long[ordersCount];
+        int[] cancelSlots = new int[ordersCount];
+        for (int i = 0; i < ordersCount; i++) {
+            int kind = random.nextInt(100);
+            kinds[i] = kind < 70 ? LIMIT : kind < 80 ? MARKET : CANCEL;
+            sides[i] = random.nextBoolean() ? OrderSide.BUY : OrderSide.SELL;
+            // bids mostly below the mid and asks mostly above it, so about a fifth of the limit orders cross
+            int offset = random.nextInt(PRICE_LEVELS) - PRICE_LEVELS / 5;
+            prices[i] = sides[i] == OrderSide.BUY ? MID_PRICE - offset * TICK : MID_PRICE + offset * TICK;
+            amounts[i] = MicroUnits.of(0.01) * (1 + random.nextInt(100));
+            cancelSlots[i] = random.nextInt(OPEN_ORDERS_TRACKED);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            run(kinds, sides, prices, amounts, cancelSlots);
+        }
+    }
+
+    private static void run(byte[] kinds, OrderSide[] sides, long[] prices, long[] amounts, int[] cancelSlots) {
+        OrderBook<String> book = new OrderBook<>((maker, taker, takerSide, price, amount, makerRemaining) -> fills++);
+        long[] openOrders = new long[OPEN_ORDERS_TRACKED];
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        fills = 0;
+
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < kinds.length; i++) {
+            switch (kinds[i]) {
+                case LIMIT -> {
+                    // the order placed that many orders ago expires, so the book stays at a steady size
+                    book.cancel(openOrders[i % OPEN_ORDERS_TRACKED]);
+                    openOrders[i % OPEN_ORDERS_TRACKED] = book.placeLimit(sides[i], prices[i], amounts[i], "trader");
+                }
+                case MARKET -> book.placeMarket(sides[i], amounts[i], "trader");
+                default -> book.cancel(openOrders[cancelSlots[i]]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("%,12.0f orders/s %8.2f bytes allocated/order %,10d fills %,8d open orders%n",
+            kinds.length / (elapsed / NANOS_IN_SECOND), (double) allocated / kinds.length, fills,
+            book.orderIds().length);
+    }
+}
@@ -0,0 +1,70 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.client.CryptoWalletClient;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.CryptoWalletServer;
+import bg.uni.sofia.fmi.mjt.wallet.server.CryptoWalletServerAPI;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Wall-clock time of a batch of buy commands issued one round trip at a time and issued pipelined
+ * on the same connection.
+ * <p>
+ * Usage: PipeliningBenchmark [commands]
+ */
+public class PipeliningBenchmark {
+    private static final int DEFAULT_COMMANDS = 500;
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+
+    public static void main(String[] args) throws Exception {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COMMANDS;
+        Path usersPath = Files.createTempFile("benchmark_users", ".txt");
+        Files.delete(usersPath);
+        PrintStream out = System.out;
+        PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(silent);
+        System.setErr(silent);
+
+        CryptoWalletServerAPI server = new CryptoWalletServer(BenchmarkSupport.createCommandExecutor(usersPath), 1);
+        Thread serverThread = new Thread(server::start, "benchmark-server");
+        serverThread.start();
+        try {
+            CryptoWalletClient client = BenchmarkSupport.connect();
+            client.sendRequest(new Command(CommandLabel.REGISTER, new String[] {"bench_user", "password"}));
+            client.sendRequest(new Command(CommandLabel.DEPOSIT_MONEY, new String[] {"1000000"}));
+            Command buy = new Command(CommandLabel.BUY_ASSET, new String[] {"ASSET1", "1"});
+
+            long start = System.nanoTime();
+            for (int i = 0; i < commands; i++) {
+                client.sendRequest(buy);
+            }
+            long sequential = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<CompletableFuture<Response>> responses = new ArrayList<>();
+            for (int i = 0; i < commands; i++) {
+                responses.add(client.sendRequestAsync(buy));
+            }
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).join();
+            long pipelined = System.nanoTime() - start;
+            client.stop();
+
+            out.printf("%d buy commands: one at a time %.1f ms, pipelined %.1f ms%n", commands,
+                sequential / NANOS_IN_MILLI, pipelined / NANOS_IN_MILLI);
+        } finally {
+            server.stop();
+            serverThread.join();
+            Files.deleteIfExists(usersPath);
+        }
+        System.exit(0);
+    }
+}
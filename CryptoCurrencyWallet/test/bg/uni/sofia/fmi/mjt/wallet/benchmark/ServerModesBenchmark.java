@@ -0,0 +1,120 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.client.CryptoWalletClient;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.client.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.server.CryptoWalletServer;
+import bg.uni.sofia.fmi.mjt.wallet.server.CryptoWalletServerAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.VirtualThreadCryptoWalletServer;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandExecutor;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.RejectionPolicy;
+import bg.uni.sofia.fmi.mjt.wallet.server.reactor.WorkerPool;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+
+/**
+ * Side-by-side throughput and latency comparison of the selector and the virtual thread server modes.
+ * Every client logs in once and then issues read-only list-offerings commands back to back.
+ * <p>
+ * Usage: ServerModesBenchmark [clients] [requests per client]
+ */
+public class ServerModesBenchmark {
+    private static final int DEFAULT_CLIENTS = 64;
+    private static final int DEFAULT_REQUESTS_PER_CLIENT = 2000;
+    private static final int WARM_UP_REQUESTS = 200;
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REQUESTS_PER_CLIENT;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("%d clients x %d list-offerings requests, %d cores%n", clients, requestsPerClient, cores);
+        System.out.printf("%-28s %12s %10s %10s %10s%n", "mode", "req/s", "p50 ms", "p99 ms", "max ms");
+        run("selector, inline", clients, requestsPerClient,
+            executor -> new CryptoWalletServer(executor, cores));
+        run("selector, worker pool", clients, requestsPerClient,
+            executor -> new CryptoWalletServer(executor, cores, new WorkerPool(2 * cores, 1024, RejectionPolicy.REJECT)));
+        run("virtual threads", clients, requestsPerClient, VirtualThreadCryptoWalletServer::new);
+        System.exit(0);
+    }
+
+    private static void run(String mode, int clients, int requestsPerClient,
+                            Function<CommandExecutor, CryptoWalletServerAPI> serverFactory) throws Exception {
+        Path usersPath = Files.createTempFile("benchmark_users", ".txt");
+        Files.delete(usersPath);
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(silent);
+        System.setErr(silent);
+
+        CryptoWalletServerAPI server = serverFactory.apply(BenchmarkSupport.createCommandExecutor(usersPath));
+        Thread serverThread = new Thread(server::start, "benchmark-server");
+        serverThread.start();
+        try {
+            List<long[]> latencies = new ArrayList<>();
+            long elapsed = runClients(clients, requestsPerClient, latencies);
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+
+            out.printf("%-28s %12.0f %10.3f %10.3f %10.3f%n", mode, all.length / (elapsed / NANOS_IN_SECOND),
+                BenchmarkSupport.percentile(all, 0.50) / NANOS_IN_MILLI, BenchmarkSupport.percentile(all, 0.99) / NANOS_IN_MILLI,
+                all[all.length - 1] / NANOS_IN_MILLI);
+        } finally {
+            server.stop();
+            serverThread.join();
+            System.setOut(out);
+            System.setErr(err);
+            Files.deleteIfExists(usersPath);
+        }
+    }
+
+    private static long runClients(int clients, int requestsPerClient, List<long[]> latencies)
+        throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            long[] clientLatencies = new long[requestsPerClient];
+            latencies.add(clientLatencies);
+            String username = "bench_user" + i;
+            Thread client = new Thread(() -> {
+                try {
+                    CryptoWalletClient walletClient = BenchmarkSupport.connect();
+                    walletClient.sendRequest(new Command(CommandLabel.REGISTER, new String[] {username, "password"}));
+                    Command listOfferings = new Command(CommandLabel.LIST_OFFERINGS, new String[] {"1"});
+                    for (int r = 0; r < WARM_UP_REQUESTS; r++) {
+                        walletClient.sendRequest(listOfferings);
+                    }
+                    ready.countDown();
+                    go.await();
+                    for (int r = 0; r < requestsPerClient; r++) {
+                        long start = System.nanoTime();
+                        walletClient.sendRequest(listOfferings);
+                        clientLatencies[r] = System.nanoTime() - start;
+                    }
+                    walletClient.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            client.start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,117 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordReader;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write time, cold load time and file size of the users file in the old Java serialization format
+ * and in the binary record format.
+ * <p>
+ * Usage: UserFormatBenchmark [users]
+ */
+public class UserFormatBenchmark {
+    private static final int DEFAULT_USERS = 1_000_000;
+    private static final String[] ASSETS = {"BTC", "ETH", "USDT", "SOL"};
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double BYTES_IN_MEGABYTE = 1024.0 * 1024.0;
+
+    public static void main(String[] args) throws Exception {
+        int usersCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+        List<User> users = new ArrayList<>(usersCount);
+        for (int i = 0; i < usersCount; i++) {
+            User user = new User("user" + i, "password_hash_" + i);
+            user.increaseBalance(1000 + i);
+            for (int j = 0; j <= i % ASSETS.length; j++) {
+                user.addPurchase(new Purchase(ASSETS[j], MicroUnits.of(0.5 + j), MicroUnits.of(100.0 * (j + 1))));
+            }
+            users.add(user);
+        }
+
+        Path serializationFile = Files.createTempFile("users_serialization", ".txt");
+        Path recordFile = Files.createTempFile("users_records", ".txt");
+        try {
+            long start = System.nanoTime();
+            writeWithSerialization(serializationFile, users);
+            long serializationWrite = System.nanoTime() - start;
+            start = System.nanoTime();
+            writeRecords(recordFile, users);
+            long recordWrite = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int serializationLoaded = loadWithSerialization(serializationFile);
+            long serializationLoad = System.nanoTime() - start;
+            start = System.nanoTime();
+            int recordsLoaded = loadRecords(recordFile);
+            long recordLoad = System.nanoTime() - start;
+
+            print("serialization", serializationWrite, serializationLoad, serializationLoaded, serializationFile);
+            print("records", recordWrite, recordLoad, recordsLoaded, recordFile);
+        } finally {
+            Files.deleteIfExists(serializationFile);
+            Files.deleteIfExists(recordFile);
+        }
+    }
+
+    private static void writeWithSerialization(Path path, List<User> users) throws Exception {
+        try (ObjectOutputStream output =
+                 new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile())))) {
+            for (User user : users) {
+                output.writeObject(user);
+            }
+        }
+    }
+
+    private static void writeRecords(Path path, List<User> users) throws Exception {
+        try (UserRecordWriter writer = new UserRecordWriter(new FileOutputStream(path.toFile()))) {
+            for (User user : users) {
+                writer.write(user);
+            }
+            writer.finish();
+        }
+    }
+
+    private static int loadWithSerialization(Path path) throws Exception {
+        int count = 0;
+        try (ObjectInputStream input =
+                 new ObjectInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+            while (true) {
+                try {
+                    input.readObject();
+                    count++;
+                } catch (EOFException e) {
+                    return count;
+                }
+            }
+        }
+    }
+
+    private static int loadRecords(Path path) throws Exception {
+        int count = 0;
+        try (UserRecordReader reader = new UserRecordReader(new FileInputStream(path.toFile()))) {
+            while (reader.read() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void print(String format, long write, long load, int loaded, Path path) throws Exception {
+        System.out.printf("%-13s write %8.0f ms, load %8.0f ms (%d users), file %7.1f MB%n", format,
+            write / NANOS_IN_MILLI, load / NANOS_IN_MILLI, loaded, Files.size(path) / BYTES_IN_MEGABYTE);
+    }
+}
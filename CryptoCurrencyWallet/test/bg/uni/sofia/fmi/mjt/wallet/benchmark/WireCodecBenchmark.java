@@ -0,0 +1,115 @@
+package bg.uni.sofia.fmi.mjt.wallet.benchmark;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientConnection;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.codec.BinaryWireCodec;
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Server-side cost of decoding a buy command and encoding its response with the JSON and the binary codec,
+ * measured through ClientConnection over an in-memory channel.
+ * <p>
+ * Usage: WireCodecBenchmark [requests]
+ */
+public class WireCodecBenchmark {
+    private static final int DEFAULT_REQUESTS = 2_000_000;
+    private static final int BATCH = 64;
+    private static final String RESPONSE = "You successfully bought BTC for 12.5000$";
+
+    public static void main(String[] args) throws IOException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_REQUESTS;
+        byte[] jsonFrame = frame(("{\"commandLabel\":\"BUY_ASSET\",\"arguments\":[\"BTC\",\"12.5\"],"
+            + "\"requestId\":123456}").getBytes(StandardCharsets.UTF_8));
+        ByteBuffer binary = ByteBuffer.allocate(32);
+        binary.put(CommandLabel.BUY_ASSET.opcode).put((byte) 0xC0).put((byte) 0xC4).put((byte) 0x07);
+        binary.put((byte) 3).put("BTC".getBytes(StandardCharsets.US_ASCII)).putDouble(12.5);
+        byte[] binaryFrame = frame(Arrays.copyOf(binary.array(), binary.position()));
+
+        System.out.printf("%-8s %10s %14s %14s%n", "codec", "ns/req", "bytes/req", "wire bytes/req");
+        for (int round = 0; round < 2; round++) {
+            run("json", new byte[0], jsonFrame, requests);
+            run("binary", new byte[] {BinaryWireCodec.MAGIC}, binaryFrame, requests);
+        }
+    }
+
+    private static void run(String name, byte[] handshake, byte[] frame, int requests) throws IOException {
+        LoopbackChannel channel = new LoopbackChannel(handshake, frame);
+        ClientConnection connection = new ClientConnection(channel);
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int done = 0; done < requests; done += BATCH) {
+            connection.read();
+            Command command;
+            while ((command = connection.nextCommand()) != null) {
+                connection.enqueue(new Response(true, RESPONSE, command.requestId()));
+            }
+            connection.flush();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        long handled = channel.framesRead;
+        System.out.printf("%-8s %10.1f %14.1f %14.1f%n", name, (double) elapsed / handled,
+            (double) allocated / handled, frame.length + (double) channel.bytesWritten / handled);
+    }
+
+    private static byte[] frame(byte[] payload) {
+        return ByteBuffer.allocate(Integer.BYTES + payload.length).putInt(payload.length).put(payload).array();
+    }
+
+    /**
+     * Hands out up to a batch of request frames on every read and discards whatever is written.
+     */
+    private static class LoopbackChannel implements ByteChannel {
+        private final byte[] handshake;
+        private final byte[] frame;
+        private boolean isHandshakeSent;
+        private long framesRead;
+        private long bytesWritten;
+
+        LoopbackChannel(byte[] handshake, byte[] frame) {
+            this.handshake = handshake;
+            this.frame = frame;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            int start = destination.position();
+            if (!isHandshakeSent) {
+                destination.put(handshake);
+                isHandshakeSent = true;
+            }
+            for (int i = 0; i < BATCH && destination.remaining() >= frame.length; i++) {
+                destination.put(frame);
+                framesRead++;
+            }
+            return destination.position() - start;
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            int count = source.remaining();
+            source.position(source.limit());
+            bytesWritten += count;
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
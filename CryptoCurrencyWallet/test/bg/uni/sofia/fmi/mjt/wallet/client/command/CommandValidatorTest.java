@@ -153,6 +153,51 @@ public class CommandValidatorTest {
         verify(ui).writeError("Double number is not in correct format! Please insert a valid number!");
     }
 
+    @Test
+    void testValidateAssetAndAmountWithValidArgs() {
+        CommandValidator commandValidatorWithMockedAssets = new CommandValidator(ui, Set.of("BTC", "ETH"));
+        Command validCommand = new Command(CommandLabel.SELL_ASSET_QUANTITY, new String[]{"eth", "0.25"});
+        assertTrue(commandValidatorWithMockedAssets.validateAssetAndAmount(validCommand),
+            "Validation should pass with valid arguments");
+        verify(ui, never()).writeError(anyString());
+    }
+
+    @Test
+    void testValidateAssetAndAmountWithInvalidDouble() {
+        CommandValidator commandValidatorWithMockedAssets = new CommandValidator(ui, Set.of("BTC", "ETH"));
+        Command invalidDoubleCommand = new Command(CommandLabel.SELL_ASSET_VALUE, new String[]{"BTC", "all"});
+        assertFalse(commandValidatorWithMockedAssets.validateAssetAndAmount(invalidDoubleCommand),
+            "Validation should fail with invalid double");
+        verify(ui).writeError("Double number is not in correct format! Please insert a valid number!");
+    }
+
+    @Test
+    void testValidateLimitOrderWithValidArgs() {
+        CommandValidator commandValidatorWithMockedAssets = new CommandValidator(ui, Set.of("BTC", "ETH"));
+        Command validCommand = new Command(CommandLabel.LIMIT_ORDER, new String[]{"BUY", "btc", "0.5", "50000"});
+        assertTrue(commandValidatorWithMockedAssets.validateLimitOrder(validCommand),
+            "Validation should pass with valid arguments");
+        verify(ui, never()).writeError(anyString());
+    }
+
+    @Test
+    void testValidateMarketOrderWithInvalidSide() {
+        CommandValidator commandValidatorWithMockedAssets = new CommandValidator(ui, Set.of("BTC", "ETH"));
+        Command invalidSideCommand = new Command(CommandLabel.MARKET_ORDER, new String[]{"hold", "BTC", "0.5"});
+        assertFalse(commandValidatorWithMockedAssets.validateMarketOrder(invalidSideCommand),
+            "Validation should fail with invalid order side");
+        verify(ui).writeError("Order side must be buy or sell!");
+    }
+
+    @Test
+    void testValidateCancelOrderWithInvalidOrderId() {
+        CommandValidator commandValidatorWithMockedAssets = new CommandValidator(ui, Set.of("BTC", "ETH"));
+        Command invalidIdCommand = new Command(CommandLabel.CANCEL_ORDER, new String[]{"BTC", "99999999999999999999"});
+        assertFalse(commandValidatorWithMockedAssets.validateCancelOrder(invalidIdCommand),
+            "Validation should fail with invalid order ID");
+        verify(ui).writeError("Order ID is not in correct format! Please insert a valid number!");
+    }
+
     @Test
     void testValidateSellAssetWithValidArgs() {
         Set<String> mockedAssetIds = new HashSet<>();
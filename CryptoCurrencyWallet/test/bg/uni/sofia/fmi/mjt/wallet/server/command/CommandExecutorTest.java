@@ -1,9 +1,14 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.command;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientSession;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoWalletAPI;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderResult;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.LoginAuthenticationException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.PasswordWrongFormatException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UnauthorizedUserException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserAlreadyExistsException;
@@ -15,7 +20,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.nio.channels.SelectionKey;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -41,21 +45,21 @@ public class CommandExecutorTest {
     private CryptoWalletAPI cryptoWallet;
 
     @Mock
-    private SelectionKey selectionKey;
+    private ClientSession session;
 
     @InjectMocks
     private CommandExecutor commandExecutor;
 
     @Test
     void testExecuteCommandIsNull(){
-        Response result = commandExecutor.execute(selectionKey, null);
+        Response result = commandExecutor.execute(session, null);
         assertFalse(result.isOk(), RESPONSE_OK_MESSAGE);
         assertEquals("Error: Command cannot be null!", result.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
         Command nullCommand = mock(Command.class);
         when(nullCommand.commandLabel()).thenReturn(null);
 
-        result = commandExecutor.execute(selectionKey, nullCommand);
+        result = commandExecutor.execute(session, nullCommand);
         assertFalse(result.isOk(), RESPONSE_OK_MESSAGE);
         assertEquals("Error: Command cannot be null!", result.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
     }
@@ -68,20 +72,27 @@ public class CommandExecutorTest {
         List<String> args = List.of(username, password);
         Command validCommanad = new Command(CommandLabel.REGISTER, args.toArray(new String[0]));
         doThrow(new RuntimeException("Simulated exception")).when(cryptoWallet).register(any(), any(), any());
-        Response response = commandExecutor.execute(selectionKey, validCommanad);
+        Response response = commandExecutor.execute(session, validCommanad);
         assertFalse(response.isOk(), RESPONSE_NOT_OK_MESSAGE);
         assertEquals("Error: Simulated exception", response.getResponse(),RESPONSE_AS_EXPECTED_MESSAGE);
     }
 
+    @Test
+    void testExecuteCopiesRequestIdToResponse() {
+        Command listOfferingsCommand = new Command(CommandLabel.LIST_OFFERINGS, new String[]{"1"}, 42);
+        Response result = commandExecutor.execute(session, listOfferingsCommand);
+        assertEquals(42, result.getRequestId(), "Response should carry the request id of its command!");
+    }
+
     @Test
     void testExecuteRegisterCommandSuccessfully()
         throws UsernameWrongFormatException, UserAlreadyExistsException, PasswordWrongFormatException {
         List<String> args = List.of("username", "password");
         Command registerCommand = new Command(CommandLabel.REGISTER, args.toArray(new String[0]));
-        Response result = commandExecutor.execute(selectionKey, registerCommand);
+        Response result = commandExecutor.execute(session, registerCommand);
         assertTrue(result.isOk(), RESPONSE_OK_MESSAGE);
         assertEquals("You successfully signed up!", result.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
-        verify(cryptoWallet, times(1)).register(selectionKey, "username", "password");
+        verify(cryptoWallet, times(1)).register(session, "username", "password");
     }
 
     @Test
@@ -91,11 +102,11 @@ public class CommandExecutorTest {
         Command registerCommand = new Command(CommandLabel.REGISTER, args.toArray(new String[0]));
         doThrow(new UsernameWrongFormatException("Invalid username format")).when(cryptoWallet)
             .register(any(), eq("!invalidUsername"), anyString());
-        Response result = commandExecutor.execute(selectionKey, registerCommand);
+        Response result = commandExecutor.execute(session, registerCommand);
         assertFalse(result.isOk(), RESPONSE_NOT_OK_MESSAGE);
         assertEquals("The username that you provided is in wrong format!", result.getResponse(),
             RESPONSE_AS_EXPECTED_MESSAGE);
-        verify(cryptoWallet, times(1)).register(selectionKey, "!invalidUsername", "password");
+        verify(cryptoWallet, times(1)).register(session, "!invalidUsername", "password");
     }
 
     @Test
@@ -105,11 +116,11 @@ public class CommandExecutorTest {
         Command registerCommand = new Command(CommandLabel.REGISTER, args.toArray(new String[0]));
         doThrow(new UserAlreadyExistsException("There is already a user with this username")).when(cryptoWallet)
             .register(any(), eq("username"), anyString());
-        Response result = commandExecutor.execute(selectionKey, registerCommand);
+        Response result = commandExecutor.execute(session, registerCommand);
         assertFalse(result.isOk(), RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You cannot register with this username because there is an user with the same username!",
             result.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
-        verify(cryptoWallet, times(1)).register(selectionKey, "username", "password");
+        verify(cryptoWallet, times(1)).register(session, "username", "password");
     }
 
     @Test
@@ -119,10 +130,10 @@ public class CommandExecutorTest {
         Command registerCommand = new Command(CommandLabel.REGISTER, args.toArray(new String[0]));
         doThrow(new PasswordWrongFormatException("Invalid password format!")).when(cryptoWallet)
             .register(any(), eq("username"), anyString());
-        Response result = commandExecutor.execute(selectionKey, registerCommand);
+        Response result = commandExecutor.execute(session, registerCommand);
         assertFalse(result.isOk(), RESPONSE_NOT_OK_MESSAGE);
         assertEquals("The password that you provided is in wrong format!", result.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
-        verify(cryptoWallet, times(1)).register(selectionKey, "username", "pas");
+        verify(cryptoWallet, times(1)).register(session, "username", "pas");
     }
 
     @Test
@@ -130,11 +141,11 @@ public class CommandExecutorTest {
         PasswordWrongFormatException {
         List<String> args = List.of("validUsername", "validPassword");
         Command loginCommand = new Command(CommandLabel.LOGIN, args.toArray(new String[0]));
-        Response response = commandExecutor.execute(selectionKey, loginCommand);
+        Response response = commandExecutor.execute(session, loginCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("You successfully logged in!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).login(selectionKey, "validUsername", "validPassword");
+        verify(cryptoWallet, times(1)).login(session, "validUsername", "validPassword");
     }
 
     @Test
@@ -145,11 +156,11 @@ public class CommandExecutorTest {
         Command loginCommand = new Command(CommandLabel.LOGIN, args.toArray(new String[0]));
         doThrow(new UserNotFoundException("User with this username cannot be found!")).when(cryptoWallet)
             .login(any(), eq("invalidUsername"), anyString());
-        Response response = commandExecutor.execute(selectionKey, loginCommand);
+        Response response = commandExecutor.execute(session, loginCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("There is no user with this username!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).login(selectionKey, "invalidUsername", "validPassword");
+        verify(cryptoWallet, times(1)).login(session, "invalidUsername", "validPassword");
     }
 
     @Test
@@ -160,11 +171,11 @@ public class CommandExecutorTest {
         Command loginCommand = new Command(CommandLabel.LOGIN, args.toArray(new String[0]));
         doThrow(new UsernameWrongFormatException("Username is in wrong format!")).when(cryptoWallet)
             .login(any(), eq("!validUsername"), anyString());
-        Response response = commandExecutor.execute(selectionKey, loginCommand);
+        Response response = commandExecutor.execute(session, loginCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("The username that you provided is in wrong format!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).login(selectionKey, "!validUsername", "validPassword");
+        verify(cryptoWallet, times(1)).login(session, "!validUsername", "validPassword");
     }
 
     @Test
@@ -175,11 +186,11 @@ public class CommandExecutorTest {
         Command loginCommand = new Command(CommandLabel.LOGIN, args.toArray(new String[0]));
         doThrow(new LoginAuthenticationException("Wrong username or password!")).when(cryptoWallet)
             .login(any(), eq("validUsername"), anyString());
-        Response response = commandExecutor.execute(selectionKey, loginCommand);
+        Response response = commandExecutor.execute(session, loginCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("Your username or password is incorrect!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).login(selectionKey, "validUsername", "wrongPassword");
+        verify(cryptoWallet, times(1)).login(session, "validUsername", "wrongPassword");
     }
 
     @Test
@@ -190,11 +201,11 @@ public class CommandExecutorTest {
         Command loginCommand = new Command(CommandLabel.LOGIN, args.toArray(new String[0]));
         doThrow(new PasswordWrongFormatException("Password is in wrong format!")).when(cryptoWallet)
             .login(any(), eq("validUsername"), anyString());
-        Response response = commandExecutor.execute(selectionKey, loginCommand);
+        Response response = commandExecutor.execute(session, loginCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("The password that you provided is in wrong format!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).login(selectionKey, "validUsername", "pas");
+        verify(cryptoWallet, times(1)).login(session, "validUsername", "pas");
     }
 
     @Test
@@ -202,11 +213,11 @@ public class CommandExecutorTest {
         throws UnauthorizedUserException {
         String money = "100.0";
         Command depositMoneyCommand = new Command(CommandLabel.DEPOSIT_MONEY, new String[]{money});
-        Response response = commandExecutor.execute(selectionKey, depositMoneyCommand);
+        Response response = commandExecutor.execute(session, depositMoneyCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("Successfully deposited " + String.format("%.4f", 100.0) + "$", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).depositMoney(selectionKey, 100.0);
+        verify(cryptoWallet, times(1)).depositMoney(session, 100.0);
     }
 
     @Test
@@ -215,23 +226,23 @@ public class CommandExecutorTest {
         Command depositMoneyCommand = new Command(CommandLabel.DEPOSIT_MONEY, new String[]{money});
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .depositMoney(any(), eq(100.0));
-        Response response = commandExecutor.execute(selectionKey, depositMoneyCommand);
+        Response response = commandExecutor.execute(session, depositMoneyCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).depositMoney(selectionKey, 100.0);
+        verify(cryptoWallet, times(1)).depositMoney(session, 100.0);
     }
 
     @Test
     void testListOfferingsSuccessfully() throws UnauthorizedUserException {
         String page = "1";
         Command listOfferingsCommand = new Command(CommandLabel.LIST_OFFERINGS, new String[]{page});
-        when(cryptoWallet.listOfferings(selectionKey,1)).thenReturn("First page!");
-        Response response = commandExecutor.execute(selectionKey, listOfferingsCommand);
+        when(cryptoWallet.listOfferings(session,1)).thenReturn("First page!");
+        Response response = commandExecutor.execute(session, listOfferingsCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("First page!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).listOfferings(selectionKey, 1);
+        verify(cryptoWallet, times(1)).listOfferings(session, 1);
     }
 
     @Test
@@ -240,11 +251,11 @@ public class CommandExecutorTest {
         Command listOfferingsCommand = new Command(CommandLabel.LIST_OFFERINGS, new String[]{page});
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .listOfferings(any(), eq(1));
-        Response response = commandExecutor.execute(selectionKey, listOfferingsCommand);
+        Response response = commandExecutor.execute(session, listOfferingsCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).listOfferings(selectionKey, 1);
+        verify(cryptoWallet, times(1)).listOfferings(session, 1);
     }
 
     @Test
@@ -254,11 +265,11 @@ public class CommandExecutorTest {
         String amount = "100.0";
         List<String> args = List.of(assetID, amount);
         Command buyAssetCommand = new Command(CommandLabel.BUY_ASSET, args.toArray(new String[0]));
-        Response response = commandExecutor.execute(selectionKey, buyAssetCommand);
+        Response response = commandExecutor.execute(session, buyAssetCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("You successfully bought " +  assetID +  " for " + String.format("%.4f", Double.parseDouble(amount)) + "$", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).buyAsset(selectionKey, "BTC", 100.0);
+        verify(cryptoWallet, times(1)).buyAsset(session, "BTC", 100.0);
     }
 
     @Test
@@ -270,11 +281,11 @@ public class CommandExecutorTest {
         Command buyAssetCommand = new Command(CommandLabel.BUY_ASSET, args.toArray(new String[0]));
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .buyAsset(any(), eq("BTC"), eq(100.0));
-        Response response = commandExecutor.execute(selectionKey, buyAssetCommand);
+        Response response = commandExecutor.execute(session, buyAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).buyAsset(selectionKey, "BTC", 100.0);
+        verify(cryptoWallet, times(1)).buyAsset(session, "BTC", 100.0);
     }
 
     @Test
@@ -286,11 +297,11 @@ public class CommandExecutorTest {
         Command buyAssetCommand = new Command(CommandLabel.BUY_ASSET, args.toArray(new String[0]));
         doThrow(new InsufficientBalanceException("Insufficient balance!")).when(cryptoWallet)
             .buyAsset(any(), eq("BTC"), eq(100.0));
-        Response response = commandExecutor.execute(selectionKey, buyAssetCommand);
+        Response response = commandExecutor.execute(session, buyAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You do not have enough money!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).buyAsset(selectionKey, "BTC", 100.0);
+        verify(cryptoWallet, times(1)).buyAsset(session, "BTC", 100.0);
     }
 
     @Test
@@ -302,23 +313,23 @@ public class CommandExecutorTest {
         Command buyAssetCommand = new Command(CommandLabel.BUY_ASSET, args.toArray(new String[0]));
         doThrow(new InvalidAssetIdException("Invalid AssetID")).when(cryptoWallet)
             .buyAsset(any(), eq("BTC"), eq(100.0));
-        Response response = commandExecutor.execute(selectionKey, buyAssetCommand);
+        Response response = commandExecutor.execute(session, buyAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("There is no asset with this id!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).buyAsset(selectionKey, "BTC", 100.0);
+        verify(cryptoWallet, times(1)).buyAsset(session, "BTC", 100.0);
     }
 
     @Test
     void testSellAssetSuccessfully() throws UnauthorizedUserException, InvalidAssetIdException {
         String assetID = "BTC";
         Command sellAssetCommand = new Command(CommandLabel.SELL_ASSET, new String[]{assetID});
-        when(cryptoWallet.sellAsset(selectionKey, assetID)).thenReturn(1000.0);
-        Response response = commandExecutor.execute(selectionKey, sellAssetCommand);
+        when(cryptoWallet.sellAsset(session, assetID)).thenReturn(1000.0);
+        Response response = commandExecutor.execute(session, sellAssetCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("You successfully sold your actives from " + assetID + " and earned " + String.format("%.4f", 1000.0) + "$", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).sellAsset(selectionKey, "BTC");
+        verify(cryptoWallet, times(1)).sellAsset(session, "BTC");
     }
 
     @Test
@@ -327,11 +338,11 @@ public class CommandExecutorTest {
         Command sellAssetCommand = new Command(CommandLabel.SELL_ASSET, new String[]{assetID});
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .sellAsset(any(), eq("BTC"));
-        Response response = commandExecutor.execute(selectionKey, sellAssetCommand);
+        Response response = commandExecutor.execute(session, sellAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).sellAsset(selectionKey, "BTC");
+        verify(cryptoWallet, times(1)).sellAsset(session, "BTC");
     }
 
     @Test
@@ -340,22 +351,111 @@ public class CommandExecutorTest {
         Command sellAssetCommand = new Command(CommandLabel.SELL_ASSET, new String[]{assetID});
         doThrow(new InvalidAssetIdException("User with this username is not authorized")).when(cryptoWallet)
             .sellAsset(any(), eq("BTC"));
-        Response response = commandExecutor.execute(selectionKey, sellAssetCommand);
+        Response response = commandExecutor.execute(session, sellAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("There is no asset with this id!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).sellAsset(selectionKey, "BTC");
+        verify(cryptoWallet, times(1)).sellAsset(session, "BTC");
+    }
+
+    @Test
+    void testBuyAssetQuantitySuccessfully()
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientBalanceException {
+        Command command = new Command(CommandLabel.BUY_ASSET_QUANTITY, new String[]{"BTC", "0.5"});
+        when(cryptoWallet.buyAssetQuantity(session, "BTC", 0.5)).thenReturn(25000.0);
+        Response response = commandExecutor.execute(session, command);
+        assertTrue(response.isOk(), RESPONSE_OK_MESSAGE);
+        assertEquals("You successfully bought " + String.format("%.4f", 0.5) + " of BTC for " +
+            String.format("%.4f", 25000.0) + "$", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+
+        verify(cryptoWallet, times(1)).buyAssetQuantity(session, "BTC", 0.5);
+    }
+
+    @Test
+    void testSellAssetQuantitySuccessfully()
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException {
+        Command command = new Command(CommandLabel.SELL_ASSET_QUANTITY, new String[]{"BTC", "0.5"});
+        when(cryptoWallet.sellAssetQuantity(session, "BTC", 0.5)).thenReturn(25000.0);
+        Response response = commandExecutor.execute(session, command);
+        assertTrue(response.isOk(), RESPONSE_OK_MESSAGE);
+        assertEquals("You successfully sold " + String.format("%.4f", 0.5) + " of BTC and earned " +
+            String.format("%.4f", 25000.0) + "$", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+
+        verify(cryptoWallet, times(1)).sellAssetQuantity(session, "BTC", 0.5);
+    }
+
+    @Test
+    void testSellAssetQuantityCatchesInsufficientAssetAmountException()
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException {
+        Command command = new Command(CommandLabel.SELL_ASSET_QUANTITY, new String[]{"BTC", "0.5"});
+        doThrow(new InsufficientAssetAmountException("There is not enough BTC in your account!")).when(cryptoWallet)
+            .sellAssetQuantity(any(), eq("BTC"), eq(0.5));
+        Response response = commandExecutor.execute(session, command);
+        assertFalse(response.isOk(), RESPONSE_NOT_OK_MESSAGE);
+        assertEquals("You do not have enough of this asset!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+    }
+
+    @Test
+    void testSellAssetValueSuccessfully()
+        throws UnauthorizedUserException, InvalidAssetIdException, InsufficientAssetAmountException {
+        Command command = new Command(CommandLabel.SELL_ASSET_VALUE, new String[]{"BTC", "100.0"});
+        when(cryptoWallet.sellAssetValue(session, "BTC", 100.0)).thenReturn(100.01);
+        Response response = commandExecutor.execute(session, command);
+        assertTrue(response.isOk(), RESPONSE_OK_MESSAGE);
+        assertEquals("You successfully sold from BTC and earned " + String.format("%.4f", 100.01) + "$",
+            response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+
+        verify(cryptoWallet, times(1)).sellAssetValue(session, "BTC", 100.0);
+    }
+
+    @Test
+    void testPlaceLimitOrderSuccessfully() throws Exception {
+        Command command = new Command(CommandLabel.LIMIT_ORDER, new String[]{"buy", "BTC", "2", "50000"});
+        when(cryptoWallet.placeLimitOrder(session, OrderSide.BUY, "BTC", 2.0, 50000.0))
+            .thenReturn(new OrderResult(7, 0.5, 1.5));
+        Response response = commandExecutor.execute(session, command);
+        assertTrue(response.isOk(), RESPONSE_OK_MESSAGE);
+        assertEquals("Your order 7 traded " + String.format("%.4f", 0.5) + " of BTC and has " +
+            String.format("%.4f", 1.5) + " left in the order book", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+    }
+
+    @Test
+    void testPlaceLimitOrderWithUnknownSideIsNotOk() {
+        Command command = new Command(CommandLabel.LIMIT_ORDER, new String[]{"hold", "BTC", "2", "50000"});
+        Response response = commandExecutor.execute(session, command);
+        assertFalse(response.isOk(), RESPONSE_NOT_OK_MESSAGE);
+    }
+
+    @Test
+    void testPlaceMarketOrderCatchesInsufficientBalanceException() throws Exception {
+        Command command = new Command(CommandLabel.MARKET_ORDER, new String[]{"buy", "BTC", "2"});
+        doThrow(new InsufficientBalanceException("There is no enough money in your account!")).when(cryptoWallet)
+            .placeMarketOrder(session, OrderSide.BUY, "BTC", 2.0);
+        Response response = commandExecutor.execute(session, command);
+        assertFalse(response.isOk(), RESPONSE_NOT_OK_MESSAGE);
+        assertEquals("You do not have enough money!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
+    }
+
+    @Test
+    void testCancelOrderCatchesOrderNotFoundException() throws Exception {
+        Command command = new Command(CommandLabel.CANCEL_ORDER, new String[]{"BTC", "7"});
+        doThrow(new OrderNotFoundException("There is no open order 7 of yours for BTC")).when(cryptoWallet)
+            .cancelOrder(session, "BTC", 7L);
+        Response response = commandExecutor.execute(session, command);
+        assertFalse(response.isOk(), RESPONSE_NOT_OK_MESSAGE);
+        assertEquals("You do not have an open order with this id!", response.getResponse(),
+            RESPONSE_AS_EXPECTED_MESSAGE);
     }
 
     @Test
     void testGetWalletSummarySuccessfully() throws UnauthorizedUserException {
         Command getWalletSummaryCommand = new Command(CommandLabel.WALLET_SUMMARY, new String[]{});
-        when(cryptoWallet.getWalletSummary(selectionKey)).thenReturn("Wallet summary!");
-        Response response = commandExecutor.execute(selectionKey, getWalletSummaryCommand);
+        when(cryptoWallet.getWalletSummary(session)).thenReturn("Wallet summary!");
+        Response response = commandExecutor.execute(session, getWalletSummaryCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("Wallet summary!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).getWalletSummary(selectionKey);
+        verify(cryptoWallet, times(1)).getWalletSummary(session);
     }
 
     @Test
@@ -363,22 +463,22 @@ public class CommandExecutorTest {
         Command sellAssetCommand = new Command(CommandLabel.WALLET_SUMMARY, new String[]{});
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .getWalletSummary(any());
-        Response response = commandExecutor.execute(selectionKey, sellAssetCommand);
+        Response response = commandExecutor.execute(session, sellAssetCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).getWalletSummary(selectionKey);
+        verify(cryptoWallet, times(1)).getWalletSummary(session);
     }
 
     @Test
     void testGetWalletOverallSummarySuccessfully() throws UnauthorizedUserException {
         Command getWalletOverallSummaryCommand = new Command(CommandLabel.WALLET_OVERALL_SUMMARY, new String[]{});
-        when(cryptoWallet.getWalletOverallSummary(selectionKey)).thenReturn("Wallet overall summary!");
-        Response response = commandExecutor.execute(selectionKey, getWalletOverallSummaryCommand);
+        when(cryptoWallet.getWalletOverallSummary(session)).thenReturn("Wallet overall summary!");
+        Response response = commandExecutor.execute(session, getWalletOverallSummaryCommand);
         assertTrue(response.isOk(),RESPONSE_OK_MESSAGE);
         assertEquals("Wallet overall summary!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).getWalletOverallSummary(selectionKey);
+        verify(cryptoWallet, times(1)).getWalletOverallSummary(session);
     }
 
     @Test
@@ -386,10 +486,10 @@ public class CommandExecutorTest {
         Command getWalletOverallSummaryCommand = new Command(CommandLabel.WALLET_OVERALL_SUMMARY, new String[]{});
         doThrow(new UnauthorizedUserException("User with this username is not authorized")).when(cryptoWallet)
             .getWalletOverallSummary(any());
-        Response response = commandExecutor.execute(selectionKey, getWalletOverallSummaryCommand);
+        Response response = commandExecutor.execute(session, getWalletOverallSummaryCommand);
         assertFalse(response.isOk(),RESPONSE_NOT_OK_MESSAGE);
         assertEquals("You are not logged in! Please log in to your account!", response.getResponse(), RESPONSE_AS_EXPECTED_MESSAGE);
 
-        verify(cryptoWallet, times(1)).getWalletOverallSummary(selectionKey);
+        verify(cryptoWallet, times(1)).getWalletOverallSummary(session);
     }
 }
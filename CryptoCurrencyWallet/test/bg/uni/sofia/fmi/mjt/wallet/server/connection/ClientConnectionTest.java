@@ -0,0 +1,182 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.codec.BinaryWireCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ClientConnectionTest {
+    private static final String LOGIN_JSON =
+        "{\"commandLabel\":\"LOGIN\",\"arguments\":[\"username\",\"password\"],\"requestId\":7}";
+
+    @Mock
+    private ByteChannel channel;
+
+    @Test
+    void testNextCommandReturnsNullUntilTheWholeFrameIsRead() throws IOException {
+        ByteBuffer frame = encodeFrame(LOGIN_JSON);
+        byte[] firstPart = new byte[6];
+        frame.get(firstPart);
+        byte[] secondPart = new byte[frame.remaining()];
+        frame.get(secondPart);
+        when(channel.read(any())).thenAnswer(invocation -> fill(invocation.getArgument(0), firstPart))
+            .thenAnswer(invocation -> fill(invocation.getArgument(0), secondPart));
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.read();
+        assertNull(connection.nextCommand(), "Next command should be null when only part of the frame is read!");
+        connection.read();
+        Command command = connection.nextCommand();
+        assertEquals(CommandLabel.LOGIN, command.commandLabel(),
+            "Next command should be decoded once all of its bytes are read!");
+        assertArrayEquals(new String[] {"username", "password"}, command.arguments(),
+            "Arguments of the command should be decoded!");
+        assertEquals(7, command.requestId(), "Request id of the command should be decoded!");
+        assertNull(connection.nextCommand(), "There should be no more commands!");
+    }
+
+    @Test
+    void testNextCommandSplitsSeveralFramesReadAtOnce() throws IOException {
+        ByteBuffer first = encodeFrame("{\"commandLabel\":\"WALLET_SUMMARY\",\"arguments\":[],\"requestId\":1}");
+        ByteBuffer second = encodeFrame("{\"commandLabel\":\"WALLET_OVERALL_SUMMARY\",\"arguments\":[],\"requestId\":2}");
+        byte[] bytes = new byte[first.remaining() + second.remaining()];
+        ByteBuffer.wrap(bytes).put(first).put(second);
+        when(channel.read(any())).thenAnswer(invocation -> fill(invocation.getArgument(0), bytes));
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.read();
+        assertEquals(1, connection.nextCommand().requestId(), "First command should be returned first!");
+        assertEquals(2, connection.nextCommand().requestId(), "Second command should be returned second!");
+        assertNull(connection.nextCommand(), "There should be no more commands!");
+    }
+
+    @Test
+    void testNextCommandAccumulatesFramesBiggerThanTheInitialBuffer() throws IOException {
+        String username = "a".repeat(10_000);
+        ByteBuffer frame = encodeFrame("{\"commandLabel\":\"LOGIN\",\"arguments\":[\"" + username + "\",\"p\"]}");
+        when(channel.read(any())).thenAnswer(invocation -> {
+            ByteBuffer destination = invocation.getArgument(0);
+            int count = Math.min(destination.remaining(), frame.remaining());
+            destination.put(frame.slice(frame.position(), count));
+            frame.position(frame.position() + count);
+            return count;
+        });
+
+        ClientConnection connection = new ClientConnection(channel);
+        Command result = null;
+        while (result == null) {
+            connection.read();
+            result = connection.nextCommand();
+        }
+        assertEquals(username, result.arguments()[0], "Big frames should be accumulated over several reads!");
+    }
+
+    @Test
+    void testNextCommandThrowsIOExceptionWhenFrameLengthIsInvalid() throws IOException {
+        byte[] header = ByteBuffer.allocate(Integer.BYTES).putInt(-1).array();
+        when(channel.read(any())).thenAnswer(invocation -> fill(invocation.getArgument(0), header));
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.read();
+        assertThrows(IOException.class, connection::nextCommand,
+            "Next command should throw IOException when the frame length is negative!");
+    }
+
+    @Test
+    void testNextCommandThrowsIOExceptionWhenJsonIsMalformed() throws IOException {
+        ByteBuffer frame = encodeFrame("{\"commandLabel\":");
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        when(channel.read(any())).thenAnswer(invocation -> fill(invocation.getArgument(0), bytes));
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.read();
+        assertThrows(IOException.class, connection::nextCommand,
+            "Next command should throw IOException when the JSON is malformed!");
+    }
+
+    @Test
+    void testMagicByteSwitchesTheConnectionToTheBinaryCodec() throws IOException {
+        byte[] bytes = {BinaryWireCodec.MAGIC, 0, 0, 0, 2, CommandLabel.WALLET_SUMMARY.opcode, 9};
+        when(channel.read(any())).thenAnswer(invocation -> fill(invocation.getArgument(0), bytes));
+        ByteBuffer written = ByteBuffer.allocate(64);
+        when(channel.write(any())).thenAnswer(invocation -> {
+            ByteBuffer source = invocation.getArgument(0);
+            int count = source.remaining();
+            written.put(source);
+            return count;
+        });
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.read();
+        Command command = connection.nextCommand();
+        assertEquals(CommandLabel.WALLET_SUMMARY, command.commandLabel(),
+            "Command should be decoded with the binary codec after the magic byte!");
+        assertEquals(9, command.requestId(), "Request id should be decoded with the binary codec!");
+
+        connection.enqueue(new Response(true, "ok", 9));
+        assertTrue(connection.flush(), "Flush should report that everything is written!");
+        written.flip();
+        assertEquals(4, written.getInt(), "Frame should start with the length of the payload!");
+        assertEquals(9, written.get(), "Response should be encoded with the binary codec!");
+    }
+
+    @Test
+    void testFlushKeepsPartiallyWrittenFramesQueued() throws IOException {
+        ByteBuffer written = ByteBuffer.allocate(64);
+        when(channel.write(any())).thenAnswer(invocation -> {
+            ByteBuffer source = invocation.getArgument(0);
+            int count = Math.min(3, source.remaining());
+            written.put(source.slice(source.position(), count));
+            source.position(source.position() + count);
+            return count;
+        });
+
+        ClientConnection connection = new ClientConnection(channel);
+        connection.enqueue(new Response(true, "ok"));
+        while (!connection.flush()) {
+            assertTrue(connection.hasPendingWrites(), "The rest of the frame should still be queued!");
+        }
+        assertFalse(connection.hasPendingWrites(), "There should be nothing left to write!");
+
+        written.flip();
+        int length = written.getInt();
+        assertEquals(written.remaining(), length, "Frame should start with the length of the payload!");
+        byte[] payload = new byte[written.remaining()];
+        written.get(payload);
+        assertEquals("{\"ok\":true,\"response\":\"ok\",\"requestId\":0}", new String(payload, StandardCharsets.UTF_8),
+            "Payload should follow the length!");
+    }
+
+    private static ByteBuffer encodeFrame(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(ClientConnection.FRAME_HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.put(payload);
+        return frame.flip();
+    }
+
+    private static int fill(ByteBuffer destination, byte[] bytes) {
+        destination.put(bytes);
+        return bytes.length;
+    }
+}
@@ -0,0 +1,105 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.connection.codec;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Command;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.CommandLabel;
+import bg.uni.sofia.fmi.mjt.wallet.server.command.Response;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryWireCodecTest {
+    private final BinaryWireCodec codec = new BinaryWireCodec();
+
+    @Test
+    void testDecodeBuyAssetCommand() throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put(CommandLabel.BUY_ASSET.opcode);
+        payload.put((byte) 0xAC).put((byte) 0x02);
+        payload.put((byte) 3).put("BTC".getBytes(StandardCharsets.US_ASCII));
+        payload.putDouble(12.5);
+        payload.flip();
+
+        Command command = codec.decode(payload);
+        assertEquals(CommandLabel.BUY_ASSET, command.commandLabel(), "Opcode should be decoded to its label!");
+        assertEquals(300, command.requestId(), "Varint request id should be decoded!");
+        assertArrayEquals(new String[] {"BTC", "12.5"}, command.arguments(),
+            "String and double arguments should be decoded!");
+    }
+
+    @Test
+    void testDecodeSellAssetQuantityCommand() throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put(CommandLabel.SELL_ASSET_QUANTITY.opcode);
+        payload.put((byte) 1);
+        payload.put((byte) 3).put("ETH".getBytes(StandardCharsets.US_ASCII));
+        payload.putDouble(0.25);
+        payload.flip();
+
+        Command command = codec.decode(payload);
+        assertEquals(CommandLabel.SELL_ASSET_QUANTITY, command.commandLabel(), "Opcode should be decoded to its label!");
+        assertArrayEquals(new String[] {"ETH", "0.25"}, command.arguments(),
+            "Asset and quantity arguments should be decoded!");
+    }
+
+    @Test
+    void testDecodeLimitOrderCommand() throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(64);
+        payload.put(CommandLabel.LIMIT_ORDER.opcode);
+        payload.put((byte) 1);
+        payload.put((byte) 4).put("sell".getBytes(StandardCharsets.US_ASCII));
+        payload.put((byte) 3).put("BTC".getBytes(StandardCharsets.US_ASCII));
+        payload.putDouble(0.5).putDouble(50000.0);
+        payload.flip();
+
+        Command command = codec.decode(payload);
+        assertEquals(CommandLabel.LIMIT_ORDER, command.commandLabel(), "Opcode should be decoded to its label!");
+        assertArrayEquals(new String[] {"sell", "BTC", "0.5", "50000.0"}, command.arguments(),
+            "Side, asset, quantity and price arguments should be decoded!");
+    }
+
+    @Test
+    void testDecodeThrowsIOExceptionForUnknownOpcode() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {42, 1});
+        assertThrows(IOException.class, () -> codec.decode(payload),
+            "Decode should throw IOException for an unknown opcode!");
+    }
+
+    @Test
+    void testDecodeThrowsIOExceptionForTruncatedCommand() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {CommandLabel.DEPOSIT_MONEY.opcode, 1, 0, 0});
+        assertThrows(IOException.class, () -> codec.decode(payload),
+            "Decode should throw IOException when the arguments are cut short!");
+    }
+
+    @Test
+    void testDecodeThrowsIOExceptionForStringLongerThanThePayload() {
+        ByteBuffer payload = ByteBuffer.wrap(new byte[] {CommandLabel.SELL_ASSET.opcode, 1, 100, 'B'});
+        assertThrows(IOException.class, () -> codec.decode(payload),
+            "Decode should throw IOException when a string is longer than the payload!");
+    }
+
+    @Test
+    void testEncodeResponse() {
+        Response response = new Response(false, "Нямате пари!", 300);
+        ByteBuffer destination = ByteBuffer.allocate(codec.maxEncodedSize(response));
+        codec.encode(response, destination);
+        destination.flip();
+
+        assertEquals((byte) 0xAC, destination.get(), "Request id should be encoded as varint!");
+        assertEquals((byte) 0x02, destination.get(), "Request id should be encoded as varint!");
+        assertEquals(0, destination.get(), "Not ok responses should be encoded as 0!");
+        byte[] text = new byte[destination.remaining()];
+        destination.get(text);
+        assertEquals("Нямате пари!", new String(text, StandardCharsets.UTF_8),
+            "Response text should fill the rest of the payload!");
+        assertTrue(destination.limit() <= codec.maxEncodedSize(response),
+            "Encoded response should fit in its max encoded size!");
+    }
+}
@@ -0,0 +1,85 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitBreakerTest {
+    private AtomicLong clock;
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        circuitBreaker = new CircuitBreaker(2, Duration.ofSeconds(10), Duration.ofSeconds(25), clock::get,
+            new Random(42));
+    }
+
+    @Test
+    void testCircuitOpensAfterTheFailureThreshold() {
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.tryAcquire(), "Calls should be let through below the failure threshold!");
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(), "The circuit should open!");
+        assertFalse(circuitBreaker.tryAcquire(), "Calls should not be let through while the circuit is open!");
+        assertEquals(1, circuitBreaker.getRejectedCalls(), "The rejected call should be counted!");
+        assertEquals(1, circuitBreaker.getTrips(), "The trip should be counted!");
+    }
+
+    @Test
+    void testHalfOpenCircuitLetsASingleProbeThroughAfterTheBackoff() {
+        trip();
+        advance(4);
+        assertFalse(circuitBreaker.tryAcquire(), "No call should be let through before half of the backoff!");
+        advance(6);
+
+        assertTrue(circuitBreaker.tryAcquire(), "A probe should be let through after the backoff!");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(), "The circuit should be half-open!");
+        assertFalse(circuitBreaker.tryAcquire(), "Only a single probe should be let through!");
+
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState(), "A successful probe should close it!");
+        assertEquals(0, circuitBreaker.getConsecutiveFailures(), "A success should reset the failures!");
+        assertTrue(circuitBreaker.tryAcquire(), "Calls should be let through once the circuit is closed!");
+    }
+
+    @Test
+    void testFailedProbeOpensTheCircuitForALongerBackoff() {
+        trip();
+        advance(10);
+        assertTrue(circuitBreaker.tryAcquire(), "A probe should be let through after the backoff!");
+        circuitBreaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(), "A failed probe should open it again!");
+        advance(9);
+        assertFalse(circuitBreaker.tryAcquire(), "The second backoff should be at least half of twice the base!");
+        advance(16);
+        assertTrue(circuitBreaker.tryAcquire(), "The backoff should not exceed the maximum!");
+    }
+
+    @Test
+    void testConstructorThrowsIllegalArgumentExceptionWhenTheThresholdIsNotPositive() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new CircuitBreaker(0, Duration.ofSeconds(1), Duration.ofSeconds(2)),
+            "The failure threshold should be a positive number!");
+    }
+
+    private void trip() {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+    }
+
+    private void advance(long seconds) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
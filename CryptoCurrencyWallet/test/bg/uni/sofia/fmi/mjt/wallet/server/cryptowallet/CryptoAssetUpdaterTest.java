@@ -1,24 +1,42 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.AsyncCryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.CryptoConsumerAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.CoinAPIUnavailableException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -27,111 +45,294 @@ import static org.mockito.Mockito.when;
 public class CryptoAssetUpdaterTest {
     @Mock
     private CryptoConsumerAPI consumerAPI;
+    @Captor
+    private ArgumentCaptor<Collection<String>> assetIds;
 
     @InjectMocks
     private CryptoAssetUpdater updater;
 
     @Test
-    void testUpdateAllAssetsIfNeededWhenMapIsEmpty() throws InvalidCredentialsForAPIException {
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        List<CryptoAsset> assetList = Arrays.asList(
-            new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now()),
-            new CryptoAsset("ETH",  "Ethereum", 3000.0, LocalDateTime.now())
-        );
-        when(consumerAPI.getAllAssets()).thenReturn(assetList);
-        updater.setInterval(30);
-        Map<String, CryptoAsset> result = updater.updateAllAssetsIfNeeded(assetMap);
+    void testStartDownloadsTheFirstSnapshotInTheBackground()
+        throws InvalidCredentialsForAPIException, InterruptedException {
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(asset));
 
-        assertEquals(assetList.size(), result.size(), "Result map and expected map should have same sizes!");
-        for (CryptoAsset asset : assetList) {
-            assertTrue(result.containsKey(asset.assetId()), "Result should contain " + asset.assetId() + " as a key!");
-            assertEquals(asset, result.get(asset.assetId()), "Result should contain " + asset.assetId() + "as an asset!");
+        updater.start(Duration.ofHours(1));
+        try {
+            awaitFirstSnapshot(updater);
+            PriceSnapshot snapshot = updater.getSnapshot();
+            assertEquals(asset, snapshot.assets().get("BTC"), "Start should download the prices!");
+            assertTrue(snapshot.getStaleness().toMinutes() < 1, "The first snapshot should be fresh!");
+        } finally {
+            updater.close();
         }
-        verify(consumerAPI, times(1)).getAllAssets();
     }
 
     @Test
-    void testUpdateAllAssetsIfNeededWhenMapIsNotEmptyAndNeedsUpdate() throws InvalidCredentialsForAPIException {
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        CryptoAsset earliestAsset = new CryptoAsset("BTC","Bitcoin",50000.0,  now.minus(Duration.ofMinutes(40)));
-        assetMap.put(earliestAsset.assetId(), earliestAsset);
+    void testStartWithoutSavedPricesDoesNotFailWhenCoinAPIIsUnreachable()
+        throws InvalidCredentialsForAPIException, InterruptedException {
+        CountDownLatch attempted = new CountDownLatch(1);
+        when(consumerAPI.getAllAssets()).thenAnswer(invocation -> {
+            attempted.countDown();
+            throw new UncheckedIOException(new IOException("No network"));
+        });
 
-        List<CryptoAsset> newAssetList = Arrays.asList(
-            new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now()),
-            new CryptoAsset("ETH",  "Ethereum", 3000.0, LocalDateTime.now())
-        );
+        updater.start(Duration.ofHours(1));
+        try {
+            assertTrue(attempted.await(5, TimeUnit.SECONDS), "Start should try to download the prices!");
+            assertTrue(updater.getSnapshot().assets().isEmpty(), "The snapshot should stay empty until a download!");
+        } finally {
+            updater.close();
+        }
+    }
 
-        when(consumerAPI.getAllAssets()).thenReturn(newAssetList);
-        updater.setInterval(30);
-        Map<String, CryptoAsset> result = updater.updateAllAssetsIfNeeded(assetMap);
+    @Test
+    void testStartServesTheSavedPricesWithoutDownloadingThem() throws Exception {
+        Path pricesPath = Files.createTempFile("prices", ".bin");
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(asset));
+        try {
+            Files.delete(pricesPath);
+            CryptoAssetUpdater firstRun = new CryptoAssetUpdater(consumerAPI, null, pricesPath);
+            firstRun.start(Duration.ofHours(1));
+            awaitFirstSnapshot(firstRun);
+            firstRun.close();
 
-        assertEquals(newAssetList.size(), result.size(), "Result map and expected map should have same sizes!");
-        for (CryptoAsset asset : newAssetList) {
-            assertTrue(result.containsKey(asset.assetId()),"Result should contain " + asset.assetId() + " as a key!");
-            assertEquals(asset, result.get(asset.assetId()), "Result should contain " + asset.assetId() + "as an asset!");
+            CryptoAssetUpdater secondRun = new CryptoAssetUpdater(consumerAPI, null, pricesPath);
+            secondRun.start(Duration.ofHours(1));
+            try {
+                assertEquals(asset, secondRun.getSnapshot().assets().get("BTC"),
+                    "Start should serve the prices saved by the previous run!");
+                verify(consumerAPI, times(1)).getAllAssets();
+            } finally {
+                secondRun.close();
+            }
+        } finally {
+            Files.deleteIfExists(pricesPath);
         }
+    }
+
+    @Test
+    void testRefreshAssetIfNeededPublishesTheNewPriceInTheBackground()
+        throws InvalidCredentialsForAPIException, InterruptedException {
+        CryptoAsset staleAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now().minusMinutes(45));
+        CryptoAsset freshAsset = new CryptoAsset("BTC", "Bitcoin", 60000.0, LocalDateTime.now());
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(staleAsset));
+        when(consumerAPI.getAssetsByIds(any())).thenReturn(List.of(freshAsset));
 
-        verify(consumerAPI, times(1)).getAllAssets();
+        updater.start(Duration.ofHours(1));
+        try {
+            awaitFirstSnapshot(updater);
+            updater.refreshAssetIfNeeded("BTC");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!freshAsset.equals(updater.getSnapshot().assets().get("BTC")) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(freshAsset, updater.getSnapshot().assets().get("BTC"),
+                "The refreshed price should be published in a new snapshot!");
+        } finally {
+            updater.close();
+        }
     }
 
     @Test
-    void testUpdateAllAssetsIfNeededWhenMapIsNotEmptyAndDoesNotNeedUpdate() throws InvalidCredentialsForAPIException {
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        LocalDateTime now = LocalDateTime.now();
-        CryptoAsset earliestAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, now.minus(Duration.ofMinutes(20)));
-        assetMap.put(earliestAsset.assetId(), earliestAsset);
-        updater.setInterval(30);
-        Map<String, CryptoAsset> result = updater.updateAllAssetsIfNeeded(assetMap);
+    void testRefreshAssetIfNeededDoesNothingBeforeStart() throws InvalidCredentialsForAPIException {
+        updater.refreshAssetIfNeeded("BTC");
+        assertTrue(updater.getSnapshot().assets().isEmpty(), "There should be no prices before start!");
+        verify(consumerAPI, times(0)).getAssetsByIds(any());
+    }
+
+    @Test
+    void testRefreshAllAssetsAsyncPublishesANewVersion() throws Exception {
+        AsyncCryptoConsumerAPI asyncConsumer = mock(AsyncCryptoConsumerAPI.class);
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        CompletableFuture<List<CryptoAsset>> download = new CompletableFuture<>();
+        when(asyncConsumer.getAllAssetsAsync()).thenReturn(download);
+        CryptoAssetUpdater asyncUpdater = new CryptoAssetUpdater(consumerAPI, asyncConsumer);
+
+        CompletableFuture<PriceSnapshot> first = asyncUpdater.refreshAllAssetsAsync();
+        CompletableFuture<PriceSnapshot> second = asyncUpdater.refreshAllAssetsAsync();
+        assertTrue(asyncUpdater.getSnapshot().assets().isEmpty(), "Prices should not change before the download!");
+        download.complete(List.of(asset));
+
+        assertEquals(asset, first.get().assets().get("BTC"), "The downloaded prices should be published!");
+        assertEquals(first.get(), second.get(), "Concurrent refreshes should share one download!");
+        assertEquals(1, asyncUpdater.getSnapshot().version(), "The published snapshot should be the next version!");
+        verify(asyncConsumer, times(1)).getAllAssetsAsync();
+    }
+
+    @Test
+    void testRefreshAssetAsyncSharesTheDownloadInFlight() throws Exception {
+        AsyncCryptoConsumerAPI asyncConsumer = mock(AsyncCryptoConsumerAPI.class);
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        CompletableFuture<CryptoAsset> download = new CompletableFuture<>();
+        when(asyncConsumer.getAssetByIdAsync("BTC")).thenReturn(download)
+            .thenReturn(CompletableFuture.completedFuture(asset));
+        CryptoAssetUpdater asyncUpdater = new CryptoAssetUpdater(consumerAPI, asyncConsumer);
+
+        CompletableFuture<PriceSnapshot> first = asyncUpdater.refreshAssetAsync("BTC");
+        CompletableFuture<PriceSnapshot> second = asyncUpdater.refreshAssetAsync("BTC");
+        download.complete(asset);
+
+        assertEquals(asset, second.get().assets().get("BTC"), "Every caller should receive the downloaded price!");
+        assertEquals(first.get(), second.get(), "Concurrent refreshes of an asset should share one download!");
+        verify(asyncConsumer, times(1)).getAssetByIdAsync("BTC");
 
-        assertEquals(assetMap.size(), result.size(), "Result map and expected map should have same sizes!");
-        assertEquals(earliestAsset, result.get(earliestAsset.assetId()), "Result should contain " + earliestAsset.assetId() + "as an asset!");
+        asyncUpdater.refreshAssetAsync("BTC").get();
+        verify(asyncConsumer, times(2)).getAssetByIdAsync("BTC");
+    }
+
+    @Test
+    void testRefreshAssetIfNeededFetchesAStaleAssetOnceForConcurrentCallers() throws Exception {
+        CryptoAsset staleAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now().minusMinutes(45));
+        CryptoAsset freshAsset = new CryptoAsset("BTC", "Bitcoin", 60000.0, LocalDateTime.now());
+        CountDownLatch release = new CountDownLatch(1);
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(staleAsset));
+        when(consumerAPI.getAssetsByIds(any())).thenAnswer(invocation -> {
+            release.await();
+            return List.of(freshAsset);
+        });
+
+        updater.start(Duration.ofHours(1));
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            awaitFirstSnapshot(updater);
+            for (int i = 0; i < 100; i++) {
+                callers.execute(() -> updater.refreshAssetIfNeeded("BTC"));
+            }
+            callers.shutdown();
+            assertTrue(callers.awaitTermination(5, TimeUnit.SECONDS), "Callers should not wait for the download!");
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!freshAsset.equals(updater.getSnapshot().assets().get("BTC")) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(freshAsset, updater.getSnapshot().assets().get("BTC"),
+                "The refreshed price should be published in a new snapshot!");
+            verify(consumerAPI, times(1)).getAssetsByIds(any());
+        } finally {
+            callers.shutdownNow();
+            updater.close();
+        }
+    }
+
+    @Test
+    void testRefreshAssetIfNeededBatchesTheAssetsRequestedWithinTheWindow() throws Exception {
+        LocalDateTime staleTime = LocalDateTime.now().minusMinutes(45);
+        CryptoAsset freshBtc = new CryptoAsset("BTC", "Bitcoin", 60000.0, LocalDateTime.now());
+        CryptoAsset freshEth = new CryptoAsset("ETH", "Ethereum", 4000.0, LocalDateTime.now());
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(new CryptoAsset("BTC", "Bitcoin", 50000.0, staleTime),
+            new CryptoAsset("ETH", "Ethereum", 3000.0, staleTime), new CryptoAsset("XRP", "Ripple", 1.0, staleTime)));
+        when(consumerAPI.getAssetsByIds(assetIds.capture())).thenReturn(List.of(freshBtc, freshEth));
 
-        verify(consumerAPI, times(0)).getAllAssets();
+        updater.setBatchWindow(Duration.ofMillis(200));
+        updater.start(Duration.ofHours(1));
+        try {
+            awaitFirstSnapshot(updater);
+            updater.refreshAssetIfNeeded("BTC");
+            updater.refreshAssetsIfNeeded(List.of("ETH", "BTC"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!freshEth.equals(updater.getSnapshot().assets().get("ETH")) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(freshBtc, updater.getSnapshot().assets().get("BTC"),
+                "The refreshed prices should be published in a new snapshot!");
+            assertEquals(freshEth, updater.getSnapshot().assets().get("ETH"),
+                "The refreshed prices should be published in a new snapshot!");
+            assertEquals(List.of("BTC", "ETH"), List.copyOf(assetIds.getValue()),
+                "Only the requested stale assets should be downloaded!");
+            verify(consumerAPI, times(1)).getAssetsByIds(any());
+            verify(consumerAPI, times(0)).getAssetById(any());
+        } finally {
+            updater.close();
+        }
     }
 
     @Test
-    void testUpdateAssetIfNotNeeded() throws InvalidCredentialsForAPIException {
-        String assetId = "BTC";
-        CryptoAsset existingAsset = new CryptoAsset(assetId, "Bitcoin", 50000.0, LocalDateTime.now().minusMinutes(15));
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        assetMap.put(assetId, existingAsset);
+    void testRepeatedFailuresSuspendTheCallsToCoinAPI() {
+        AsyncCryptoConsumerAPI asyncConsumer = mock(AsyncCryptoConsumerAPI.class);
+        when(asyncConsumer.getAllAssetsAsync()).thenReturn(CompletableFuture.failedFuture(new IOException("down")));
+        CryptoAssetUpdater asyncUpdater = new CryptoAssetUpdater(consumerAPI, asyncConsumer);
 
-        Map<String, CryptoAsset> updatedAssets = updater.updateAssetIfNeeded(assetMap, assetId);
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ExecutionException.class, () -> asyncUpdater.refreshAllAssetsAsync().get(),
+                "A failed download should fail the refresh!");
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, () -> asyncUpdater.refreshAllAssetsAsync().get(),
+            "Refreshes should fail while the circuit is open!");
 
-        assertEquals(assetMap, updatedAssets, "Maps should be the same!");
-        verify(consumerAPI, times(0)).getAssetById(assetId);
+        assertInstanceOf(CoinAPIUnavailableException.class, e.getCause(),
+            "Refreshes should fail with CoinAPIUnavailableException while the circuit is open!");
+        verify(asyncConsumer, times(3)).getAllAssetsAsync();
+        PriceRefreshMetrics metrics = asyncUpdater.getMetrics();
+        assertEquals(CircuitBreaker.State.OPEN, metrics.circuitState(), "The circuit should be reported open!");
+        assertEquals(1, metrics.rejectedCalls(), "The suspended call should be reported!");
     }
 
     @Test
-    void testUpdateAssetIfNeeded() throws InvalidCredentialsForAPIException {
-        String assetId = "BTC";
-        CryptoAsset existingAsset = new CryptoAsset(assetId, "Bitcoin", 50000.0, LocalDateTime.now().minusMinutes(45));
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        assetMap.put(assetId, existingAsset);
+    void testTightBudgetKeepsTheRequestsForFullRefreshes() throws Exception {
+        AsyncCryptoConsumerAPI asyncConsumer = mock(AsyncCryptoConsumerAPI.class);
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        when(asyncConsumer.getAllAssetsAsync()).thenReturn(CompletableFuture.completedFuture(List.of(asset)));
+        RequestBudget budget = new RequestBudget(100);
+        budget.onRemainingQuota(10);
+        CryptoAssetUpdater asyncUpdater = new CryptoAssetUpdater(consumerAPI, asyncConsumer, null, budget);
 
-        CryptoAsset newAsset = new CryptoAsset(assetId, "Bitcoin", 50000.0, LocalDateTime.now());
-        when(consumerAPI.getAssetById(assetId)).thenReturn(newAsset);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> asyncUpdater.refreshAssetAsync("BTC").get(),
+            "Asset refreshes should fail when the budget is tight!");
+        assertInstanceOf(CoinAPIUnavailableException.class, e.getCause(),
+            "Asset refreshes should fail with CoinAPIUnavailableException when the budget is tight!");
+        assertEquals(asset, asyncUpdater.refreshAllAssetsAsync().get().assets().get("BTC"),
+            "Full refreshes should still be made when the budget is tight!");
+        verify(asyncConsumer, never()).getAssetByIdAsync(any());
+        assertEquals(1, asyncUpdater.getMetrics().budgetRejectedCalls(), "The rejected call should be reported!");
+    }
 
-        Map<String, CryptoAsset> updatedAssets = updater.updateAssetIfNeeded(assetMap, assetId);
+    @Test
+    void testCheckStaleCountsTheStalePricesServed() {
+        updater.setInterval(30);
 
-        assertEquals(assetMap, updatedAssets, "Maps should be the same!");
-        assertEquals(newAsset, updatedAssets.get(assetId), newAsset.assetId() + " should be in the map!");
-        verify(consumerAPI, times(1)).getAssetById(assetId);
+        assertTrue(updater.checkStale(PriceSnapshot.of(Map.of(), 1, LocalDateTime.now().minusMinutes(45))),
+            "Prices older than the interval should be stale!");
+        assertFalse(updater.checkStale(PriceSnapshot.of(Map.of(), 2, LocalDateTime.now())),
+            "Fresh prices should not be stale!");
+        assertEquals(1, updater.getMetrics().staleServed(), "Only the stale prices served should be counted!");
     }
 
     @Test
-    void testUpdateAssetIfNeededThrowsRuntimeException() throws InvalidCredentialsForAPIException {
-        String assetId = "BTC";
-        CryptoAsset existingAsset = new CryptoAsset(assetId, "Bitcoin", 50000.0, LocalDateTime.now().minusMinutes(45));
-        Map<String, CryptoAsset> assetMap = new HashMap<>();
-        assetMap.put(assetId, existingAsset);
+    void testPricesThatAreStillLoadingAreNotStale() {
+        assertFalse(updater.checkStale(updater.getSnapshot()), "The empty snapshot should not be stale!");
+        assertEquals(0, updater.getMetrics().staleServed(), "The empty snapshot should not be counted as stale!");
+        assertEquals(-1, updater.getMetrics().stalenessInSecs(), "The empty snapshot should have no staleness!");
+    }
 
-        when(consumerAPI.getAssetById(assetId)).thenThrow(new InvalidCredentialsForAPIException("Invalid credentials"));
+    @Test
+    void testCheckStaleAllowsForTheStretchedIntervalAndTheCheckPeriod()
+        throws InvalidCredentialsForAPIException, InterruptedException {
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        when(consumerAPI.getAllAssets()).thenReturn(List.of(asset));
+        RequestBudget budget = new RequestBudget(100);
+        // a quarter of the quota left stretches the interval twice
+        budget.onRemainingQuota(25);
+        CryptoAssetUpdater budgetedUpdater = new CryptoAssetUpdater(consumerAPI, null, null, budget);
+        budgetedUpdater.setInterval(30);
+        budgetedUpdater.start(Duration.ofMinutes(10));
+        try {
+            awaitFirstSnapshot(budgetedUpdater);
+            LocalDateTime now = LocalDateTime.now();
+            assertFalse(budgetedUpdater.checkStale(PriceSnapshot.of(Map.of(), 1, now.minusMinutes(65))),
+                "Prices within the stretched interval and a check period should not be stale!");
+            assertTrue(budgetedUpdater.checkStale(PriceSnapshot.of(Map.of(), 2, now.minusMinutes(75))),
+                "Prices older than the stretched interval and a check period should be stale!");
+        } finally {
+            budgetedUpdater.close();
+        }
+    }
 
-        assertThrows(RuntimeException.class, () -> updater.updateAssetIfNeeded(assetMap, assetId),
-            "UpdateAssetIfNeeded should throw Runtime Exception when the consumerAPI throws InvalidCredentialsForAPIException!");
-        verify(consumerAPI, times(1)).getAssetById(assetId);
+    @Test
+    void testRefreshAssetAsyncFailsWithoutAnAsyncConsumer() {
+        assertThrows(IllegalStateException.class, () -> updater.refreshAssetAsync("BTC"),
+            "Async refreshes should not be possible without an async consumer!");
     }
 
     @Test
@@ -140,4 +341,10 @@ public class CryptoAssetUpdaterTest {
             "Set Interval should throw RuntimeException when trying to set negative interval of minutes!");
     }
 
+    private static void awaitFirstSnapshot(CryptoAssetUpdater updater) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (updater.getSnapshot().version() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
 }
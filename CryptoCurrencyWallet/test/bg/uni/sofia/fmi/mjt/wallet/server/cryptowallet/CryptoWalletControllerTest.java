@@ -1,10 +1,15 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.connection.ClientSession;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.OrderBookServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.UserServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service.WalletServiceAPI;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UnauthorizedUserException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserAlreadyExistsException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.UserNotFoundException;
@@ -14,8 +19,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.nio.channels.SelectionKey;
-
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
@@ -33,7 +36,10 @@ public class CryptoWalletControllerTest {
     private WalletServiceAPI walletService;
 
     @Mock
-    private SelectionKey selectionKey;
+    private OrderBookServiceAPI orderBookService;
+
+    @Mock
+    private ClientSession session;
 
     @InjectMocks
     private CryptoWalletController cryptoWalletController;
@@ -44,8 +50,8 @@ public class CryptoWalletControllerTest {
         String password = "testPassword";
         User registeredUser = new User(username, "hashed_password");
         when(userService.register(username, password)).thenReturn(registeredUser);
-        cryptoWalletController.register(selectionKey, username, password);
-        verify(selectionKey, times(1)).attach(registeredUser);
+        cryptoWalletController.register(session, username, password);
+        verify(session, times(1)).logIn(registeredUser);
     }
 
     @Test
@@ -55,7 +61,7 @@ public class CryptoWalletControllerTest {
 
         when(userService.register(username, password)).thenThrow(UserAlreadyExistsException.class);
         assertThrows(UserAlreadyExistsException.class,
-            () -> cryptoWalletController.register(selectionKey, username, password),
+            () -> cryptoWalletController.register(session, username, password),
             "Register should throw UserAlreadyExistsException when userService throws one!");
     }
 
@@ -66,8 +72,8 @@ public class CryptoWalletControllerTest {
 
         User loggedInUser = new User(username, "hashed_password");
         when(userService.login(username, password)).thenReturn(loggedInUser);
-        cryptoWalletController.login(selectionKey, username, password);
-        verify(selectionKey, times(1)).attach(loggedInUser);
+        cryptoWalletController.login(session, username, password);
+        verify(session, times(1)).logIn(loggedInUser);
     }
 
     @Test
@@ -76,15 +82,15 @@ public class CryptoWalletControllerTest {
         String password = "secure_password";
         when(userService.login(username, password)).thenThrow(UserNotFoundException.class);
         assertThrows(UserNotFoundException.class,
-            () -> cryptoWalletController.login(selectionKey, username, password),
+            () -> cryptoWalletController.login(session, username, password),
             "Login should throw UserNotFoundException when userService throws one!");
     }
 
     @Test
     void testDepositMoneyUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.depositMoney(selectionKey, 100.0),
+            () -> cryptoWalletController.depositMoney(session, 100.0),
             "Deposit money should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -92,16 +98,16 @@ public class CryptoWalletControllerTest {
     @Test
     void testDepositMoneySuccessfully() throws UnauthorizedUserException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
-        cryptoWalletController.depositMoney(selectionKey, 100.0);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.depositMoney(session, 100.0);
         verify(walletService).depositMoney(mockUser, 100.0);
     }
 
     @Test
     void testListOfferingsUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.listOfferings(selectionKey, 1),
+            () -> cryptoWalletController.listOfferings(session, 1),
             "List offerings should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -109,7 +115,7 @@ public class CryptoWalletControllerTest {
     @Test
     void testListOfferingsSuccessfully() throws UnauthorizedUserException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
         StringBuilder expectedOutput1 = new StringBuilder();
         expectedOutput1.append("Asset ID: BTC -> Price: ").append(String.format("%.4f", 50000.0)).append("$ per unit!")
             .append(System.lineSeparator());
@@ -119,16 +125,16 @@ public class CryptoWalletControllerTest {
             .append(System.lineSeparator());
         when(walletService.listOfferings(1)).thenReturn(expectedOutput1.toString());
 
-        String result = cryptoWalletController.listOfferings(selectionKey, 1);
+        String result = cryptoWalletController.listOfferings(session, 1);
         assertEquals(expectedOutput1.toString(), result, "Result should be the same as the expected");
         verify(walletService).listOfferings(1);
     }
 
     @Test
     void testBuyAssetUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.buyAsset(selectionKey, "assetId", 100.0),
+            () -> cryptoWalletController.buyAsset(session, "assetId", 100.0),
             "Buy asset should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -137,16 +143,16 @@ public class CryptoWalletControllerTest {
     void testBuyAssetSuccessfully() throws UnauthorizedUserException, InvalidAssetIdException,
         InsufficientBalanceException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
-        cryptoWalletController.buyAsset(selectionKey, "assetId", 100.0);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.buyAsset(session, "assetId", 100.0);
         verify(walletService).buyAsset(mockUser, "assetId", 100.0);
     }
 
     @Test
     void testSellAssetUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.sellAsset(selectionKey, "assetId"),
+            () -> cryptoWalletController.sellAsset(session, "assetId"),
             "Sell asset should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -154,16 +160,60 @@ public class CryptoWalletControllerTest {
     @Test
     void testSellAssetSuccessfully() throws UnauthorizedUserException, InvalidAssetIdException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
-        cryptoWalletController.sellAsset(selectionKey, "assetId");
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.sellAsset(session, "assetId");
         verify(walletService).sellAsset(mockUser, "assetId");
     }
 
+    @Test
+    void testSellAssetQuantityUnauthorizedUser() {
+        when(session.getLoggedInUser()).thenReturn(null);
+        assertThrows(UnauthorizedUserException.class,
+            () -> cryptoWalletController.sellAssetQuantity(session, "assetId", 1.0),
+            "Sell asset quantity should throw UnauthorizedUserException for unauthorized user");
+        verifyNoInteractions(walletService);
+    }
+
+    @Test
+    void testPartialOrdersSuccessfully() throws UnauthorizedUserException, InvalidAssetIdException,
+        InsufficientBalanceException, InsufficientAssetAmountException {
+        User mockUser = mock(User.class);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.buyAssetQuantity(session, "assetId", 2.0);
+        cryptoWalletController.sellAssetQuantity(session, "assetId", 1.0);
+        cryptoWalletController.sellAssetValue(session, "assetId", 100.0);
+        verify(walletService).buyAssetQuantity(mockUser, "assetId", 2.0);
+        verify(walletService).sellAssetQuantity(mockUser, "assetId", 1.0);
+        verify(walletService).sellAssetValue(mockUser, "assetId", 100.0);
+    }
+
+    @Test
+    void testPlaceLimitOrderUnauthorizedUser() {
+        when(session.getLoggedInUser()).thenReturn(null);
+        assertThrows(UnauthorizedUserException.class,
+            () -> cryptoWalletController.placeLimitOrder(session, OrderSide.BUY, "assetId", 1.0, 100.0),
+            "Place limit order should throw UnauthorizedUserException for unauthorized user");
+        verifyNoInteractions(orderBookService);
+    }
+
+    @Test
+    void testOrdersSuccessfully() throws UnauthorizedUserException, InvalidAssetIdException,
+        InsufficientBalanceException, InsufficientAssetAmountException, OrderNotFoundException {
+        User mockUser = mock(User.class);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.placeLimitOrder(session, OrderSide.BUY, "assetId", 1.0, 100.0);
+        cryptoWalletController.placeMarketOrder(session, OrderSide.SELL, "assetId", 2.0);
+        cryptoWalletController.cancelOrder(session, "assetId", 42L);
+        verify(orderBookService).placeLimitOrder(mockUser, OrderSide.BUY, "assetId", 1.0, 100.0);
+        verify(orderBookService).placeMarketOrder(mockUser, OrderSide.SELL, "assetId", 2.0);
+        verify(orderBookService).cancelOrder(mockUser, "assetId", 42L);
+    }
+
     @Test
     void testGetWalletSummaryUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.getWalletSummary(selectionKey),
+            () -> cryptoWalletController.getWalletSummary(session),
             "Get wallet summary should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -171,16 +221,16 @@ public class CryptoWalletControllerTest {
     @Test
     void testGetWalletSummarySuccessfully() throws UnauthorizedUserException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
-        cryptoWalletController.getWalletSummary(selectionKey);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.getWalletSummary(session);
         verify(walletService).getWalletSummary(mockUser);
     }
 
     @Test
     void testGetWalletOverallSummaryUnauthorizedUser() {
-        when(selectionKey.attachment()).thenReturn(null);
+        when(session.getLoggedInUser()).thenReturn(null);
         assertThrows(UnauthorizedUserException.class,
-            () -> cryptoWalletController.getWalletOverallSummary(selectionKey),
+            () -> cryptoWalletController.getWalletOverallSummary(session),
             "Get wallet overall summary should throw UnauthorizedUserException for unauthorized user");
         verifyNoInteractions(walletService);
     }
@@ -188,8 +238,8 @@ public class CryptoWalletControllerTest {
     @Test
     void testGetWalletOverallSummarySuccessfully() throws UnauthorizedUserException {
         User mockUser = mock(User.class);
-        when(selectionKey.attachment()).thenReturn(mockUser);
-        cryptoWalletController.getWalletOverallSummary(selectionKey);
+        when(session.getLoggedInUser()).thenReturn(mockUser);
+        cryptoWalletController.getWalletOverallSummary(session);
         verify(walletService).getWalletOverallSummary(mockUser);
     }
 }
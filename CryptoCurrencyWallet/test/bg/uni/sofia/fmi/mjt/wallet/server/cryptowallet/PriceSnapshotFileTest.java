@@ -0,0 +1,63 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriceSnapshotFileTest {
+    private Path pricesPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pricesPath = Files.createTempFile("prices", ".bin");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(pricesPath);
+    }
+
+    @Test
+    void testReadReturnsTheWrittenSnapshot() throws IOException {
+        LocalDateTime fetchedAt = LocalDateTime.now().minusMinutes(5);
+        Map<String, CryptoAsset> assets = new LinkedHashMap<>();
+        assets.put("BTC", new CryptoAsset("BTC", "Bitcoin", 50000.0, fetchedAt));
+        assets.put("XYZ", new CryptoAsset("XYZ", null, null, LocalDateTime.now()));
+        assets.put("ETH", new CryptoAsset("ETH", "Ethereum", 3000.0, fetchedAt));
+        PriceSnapshot snapshot = PriceSnapshot.of(assets, 7, fetchedAt);
+
+        PriceSnapshotFile.write(pricesPath, snapshot);
+
+        assertEquals(snapshot, PriceSnapshotFile.read(pricesPath), "The read snapshot should be the written one!");
+        assertEquals(List.of("BTC", "XYZ", "ETH"), List.copyOf(PriceSnapshotFile.read(pricesPath).assets().keySet()),
+            "The assets should keep their order!");
+    }
+
+    @Test
+    void testReadReturnsNullWhenThereIsNoFile() throws IOException {
+        Files.delete(pricesPath);
+
+        assertNull(PriceSnapshotFile.read(pricesPath), "There should be no snapshot without a file!");
+    }
+
+    @Test
+    void testReadThrowsIOExceptionWhenTheFileIsNotAPricesFile() throws IOException {
+        Files.writeString(pricesPath, "BTC,50000");
+
+        assertThrows(IOException.class, () -> PriceSnapshotFile.read(pricesPath),
+            "Read should throw IOException when the file is not a prices file!");
+    }
+}
@@ -0,0 +1,59 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriceSnapshotTest {
+    private static final LocalDateTime FETCHED_AT = LocalDateTime.now();
+    private static final CryptoAsset BTC = new CryptoAsset("BTC", "Bitcoin", 50000.0, FETCHED_AT);
+    private static final CryptoAsset FTC = new CryptoAsset("FTC", "Feathercoin", 0.00001, FETCHED_AT);
+    private static final CryptoAsset ETH = new CryptoAsset("ETH", "Ethereum", 3000.0, FETCHED_AT);
+
+    @Test
+    void testOfferingsSkipAssetsWithoutAPriceAndKeepTheOrder() {
+        PriceSnapshot snapshot = PriceSnapshot.of(assets(BTC, FTC, ETH), 1, FETCHED_AT);
+
+        assertEquals(List.of(BTC, ETH), snapshot.offerings(),
+            "Offerings should contain only the assets with a price, in their original order!");
+    }
+
+    @Test
+    void testWithAssetReturnsANewVersionAndLeavesTheSnapshotUnchanged() {
+        PriceSnapshot snapshot = PriceSnapshot.of(assets(BTC, ETH), 1, FETCHED_AT);
+        CryptoAsset newBtc = new CryptoAsset("BTC", "Bitcoin", 60000.0, LocalDateTime.now());
+
+        PriceSnapshot next = snapshot.withAsset(newBtc);
+
+        assertEquals(2, next.version(), "The new snapshot should have the next version!");
+        assertEquals(newBtc, next.assets().get("BTC"), "The new snapshot should have the new price!");
+        assertEquals(newBtc, next.offerings().get(0), "The offerings should have the new price in the same place!");
+        assertEquals(BTC, snapshot.assets().get("BTC"), "The old snapshot should keep the old price!");
+    }
+
+    @Test
+    void testSnapshotIsNotChangedByTheMapItWasCreatedFrom() {
+        Map<String, CryptoAsset> assets = assets(BTC);
+        PriceSnapshot snapshot = PriceSnapshot.of(assets, 1, FETCHED_AT);
+        assets.put(ETH.assetId(), ETH);
+
+        assertEquals(1, snapshot.assets().size(), "The snapshot should keep its own copy of the assets!");
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.assets().put(ETH.assetId(), ETH),
+            "The assets of a snapshot should not be modifiable!");
+    }
+
+    private static Map<String, CryptoAsset> assets(CryptoAsset... assets) {
+        Map<String, CryptoAsset> result = new LinkedHashMap<>();
+        for (CryptoAsset asset : assets) {
+            result.put(asset.assetId(), asset);
+        }
+        return result;
+    }
+}
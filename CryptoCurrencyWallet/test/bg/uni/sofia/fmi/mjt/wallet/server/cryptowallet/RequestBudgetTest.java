@@ -0,0 +1,78 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.RequestBudget.RequestPriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestBudgetTest {
+    private AtomicLong clock;
+    private RequestBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong();
+        budget = new RequestBudget(10, clock::get);
+    }
+
+    @Test
+    void testAssetRefreshesLeaveTheReserveToFullRefreshes() {
+        for (int i = 0; i < 8; i++) {
+            assertTrue(budget.tryAcquire(RequestPriority.ASSET_REFRESH), "Requests should fit the budget!");
+        }
+
+        assertFalse(budget.tryAcquire(RequestPriority.ASSET_REFRESH),
+            "Asset refreshes should not spend the reserve!");
+        assertTrue(budget.tryAcquire(RequestPriority.FULL_REFRESH), "Full refreshes should spend the reserve!");
+        assertTrue(budget.tryAcquire(RequestPriority.FULL_REFRESH), "Full refreshes should spend the reserve!");
+        assertFalse(budget.tryAcquire(RequestPriority.FULL_REFRESH), "No request should fit a spent budget!");
+        assertEquals(2, budget.getRejectedRequests(), "The rejected requests should be counted!");
+    }
+
+    @Test
+    void testBudgetRefillsAtTheRateOfTheDailyQuota() {
+        for (int i = 0; i < 10; i++) {
+            budget.tryAcquire(RequestPriority.FULL_REFRESH);
+        }
+        clock.addAndGet(TimeUnit.HOURS.toNanos(12));
+
+        assertEquals(5, budget.getRemaining(), 0.001, "Half a day should refill half of the quota!");
+        clock.addAndGet(TimeUnit.DAYS.toNanos(2));
+        assertEquals(10, budget.getRemaining(), 0.001, "The budget should not exceed the daily quota!");
+    }
+
+    @Test
+    void testRemainingQuotaReportedByCoinAPICapsTheBudget() {
+        budget.onRemainingQuota(3);
+
+        assertEquals(3, budget.getRemaining(), 0.001, "The budget should not exceed the reported quota!");
+        budget.onRemainingQuota(100);
+        assertEquals(3, budget.getRemaining(), 0.001, "A reported quota should never grow the budget!");
+    }
+
+    @Test
+    void testIntervalIsStretchedWhenTheBudgetIsTight() {
+        Duration interval = Duration.ofMinutes(30);
+        assertEquals(interval, budget.stretch(interval), "The interval should not change with a full budget!");
+
+        budget.onRemainingQuota(2);
+        assertEquals(Duration.ofMinutes(75), budget.stretch(interval),
+            "The interval should grow as the budget shrinks!");
+        budget.onRemainingQuota(0);
+        assertEquals(Duration.ofMinutes(240), budget.stretch(interval), "The stretch should be limited!");
+    }
+
+    @Test
+    void testConstructorThrowsIllegalArgumentExceptionWhenTheQuotaIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RequestBudget(0),
+            "The daily quota should be a positive number!");
+    }
+}
@@ -0,0 +1,103 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncCryptoConsumerTest {
+    @Mock
+    private HttpClient client;
+    @Mock
+    private HttpResponse<byte[]> response;
+
+    private AsyncCryptoConsumer consumer;
+
+    @BeforeEach
+    void setConsumer() {
+        consumer = new AsyncCryptoConsumer(client, "testAPIKEY", Duration.ofMillis(200));
+    }
+
+    @Test
+    void testGetAllAssetsAsyncSuccessfully() throws Exception {
+        respondWith(200, "[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000,\"type_is_crypto\":1}," +
+            "{\"asset_id\":\"EUR\",\"name\":\"Euro\",\"price_usd\":1.5,\"type_is_crypto\":0}]");
+
+        List<CryptoAsset> result = consumer.getAllAssetsAsync().get();
+
+        assertEquals(1, result.size(), "Only the crypto assets should be returned!");
+        assertEquals("BTC", result.get(0).assetId(), "Asset ID should be the same as expected!");
+    }
+
+    @Test
+    void testGetAllAssetsAsyncFailsWithInvalidCredentials() {
+        respondWith(401, "");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> consumer.getAllAssetsAsync().get(),
+            "Get All Assets Async should fail when status code of the response is 401!");
+        assertInstanceOf(InvalidCredentialsForAPIException.class, e.getCause(),
+            "The future should fail with InvalidCredentialsForAPIException!");
+    }
+
+    @Test
+    void testGetAllAssetsAsyncFailsWhenTheClientFails() {
+        when(client.sendAsync(any(HttpRequest.class), anyBodyHandler())).thenReturn(
+            CompletableFuture.failedFuture(new IOException("IO Exception")));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> consumer.getAllAssetsAsync().get(),
+            "Get All Assets Async should fail when the request fails!");
+        assertInstanceOf(IOException.class, e.getCause(), "The future should fail with the cause of the failure!");
+    }
+
+    @Test
+    void testGetAssetByIdAsyncTimesOut() {
+        when(client.sendAsync(any(HttpRequest.class), anyBodyHandler())).thenReturn(
+            new CompletableFuture<>());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> consumer.getAssetByIdAsync("BTC").get(),
+            "Get Asset By Id Async should fail when there is no response in time!");
+        assertInstanceOf(TimeoutException.class, e.getCause(), "The future should fail with TimeoutException!");
+    }
+
+    @Test
+    void testGetAssetByIdAsyncFailsWhenTheResponseIsEmpty() {
+        respondWith(200, "[]");
+
+        assertThrows(ExecutionException.class, () -> consumer.getAssetByIdAsync("BTC").get(),
+            "Get Asset By Id Async should fail when the response is empty!");
+    }
+
+    private void respondWith(int statusCode, String body) {
+        when(response.statusCode()).thenReturn(statusCode);
+        if (statusCode != 401) {
+            when(response.body()).thenReturn(body.getBytes(StandardCharsets.UTF_8));
+        }
+        when(client.sendAsync(any(HttpRequest.class), anyBodyHandler())).thenReturn(
+            CompletableFuture.completedFuture(response));
+    }
+
+    private static HttpResponse.BodyHandler<byte[]> anyBodyHandler() {
+        return any();
+    }
+}
@@ -0,0 +1,64 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CryptoAssetParserTest {
+    @Test
+    void testParseSkipsUnusedFieldsOfAnyShape() throws IOException {
+        String json = "[{\"asset_id\":\"BTC\",\"data_symbols_count\":12,\"name\":\"Bitcoin\"," +
+            "\"chain_addresses\":[{\"chain_id\":\"X\",\"address\":\"Y\"}],\"extra\":{\"nested\":[1,2]}," +
+            "\"price_usd\":50000.5,\"type_is_crypto\":1}]";
+
+        List<CryptoAsset> result = CryptoAssetParser.parse(body(json), true);
+
+        assertEquals(1, result.size(), "Parse should return one asset!");
+        assertEquals("BTC", result.get(0).assetId(), "Asset ID should be read!");
+        assertEquals("Bitcoin", result.get(0).name(), "Asset name should be read!");
+        assertEquals(50000.5, result.get(0).priceUSD(), "Asset price should be read!");
+    }
+
+    @Test
+    void testParseDropsNonCryptoAssetsOnlyWhenAsked() throws IOException {
+        String json = "[{\"asset_id\":\"EUR\",\"type_is_crypto\":0,\"price_usd\":1.1}," +
+            "{\"asset_id\":\"ETH\",\"type_is_crypto\":1,\"price_usd\":3000}]";
+
+        assertEquals(1, CryptoAssetParser.parse(body(json), true).size(),
+            "Non-crypto assets should be dropped!");
+        assertEquals(2, CryptoAssetParser.parse(body(json), false).size(),
+            "Non-crypto assets should be kept when not filtering!");
+    }
+
+    @Test
+    void testParseLeavesMissingAndNullPricesEmpty() throws IOException {
+        String json = "[{\"asset_id\":\"A\",\"type_is_crypto\":1},{\"asset_id\":\"B\",\"price_usd\":null," +
+            "\"type_is_crypto\":1}]";
+
+        List<CryptoAsset> result = CryptoAssetParser.parse(body(json), true);
+
+        assertNull(result.get(0).priceUSD(), "Missing price should be null!");
+        assertNull(result.get(1).priceUSD(), "Null price should be null!");
+    }
+
+    @Test
+    void testParseThrowsIOExceptionForMalformedPayload() {
+        assertThrows(IOException.class, () -> CryptoAssetParser.parse(body("{\"error\":\"quota\"}"), true),
+            "Parse should throw IOException when the payload is not an array!");
+        assertThrows(IOException.class, () -> CryptoAssetParser.parse(body("[{\"asset_id\":\"BTC\""), true),
+            "Parse should throw IOException when the payload is cut short!");
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer;
+
+import bg.uni.sofia.fmi.mjt.wallet.benchmark.CoinAPIStandIn;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CryptoConsumerStandInTest {
+    private static final byte[] PAYLOAD = ("" +
+        "[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000,\"type_is_crypto\":1}," +
+        "{\"asset_id\":\"ETH\",\"name\":\"Ethereum\",\"price_usd\":3000,\"type_is_crypto\":1}," +
+        "{\"asset_id\":\"EUR\",\"name\":\"Euro\",\"price_usd\":1.1,\"type_is_crypto\":0}]")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private CoinAPIStandIn standIn;
+
+    @AfterEach
+    void tearDown() {
+        standIn.close();
+    }
+
+    @Test
+    void testConsumersReadTheAssetsFromTheConfiguredUrl() throws Exception {
+        standIn = new CoinAPIStandIn(0, PAYLOAD, CoinAPIStandIn.Behaviour.instant());
+        AtomicLong remainingQuota = new AtomicLong(-1);
+        SyncCryptoConsumer consumer = new SyncCryptoConsumer(client, baseUrl(), "key", remainingQuota::set);
+        AsyncCryptoConsumer asyncConsumer =
+            new AsyncCryptoConsumer(client, baseUrl(), "key", Duration.ofSeconds(5), remaining -> { });
+
+        assertEquals(List.of("BTC", "ETH"), consumer.getAllAssets().stream().map(CryptoAsset::assetId).toList(),
+            "Only the crypto assets of the stand-in should be returned!");
+        assertEquals(3000, consumer.getAssetById("ETH").priceUSD(), "The asset should be served by its id!");
+        assertEquals(List.of("BTC", "EUR"),
+            consumer.getAssetsByIds(List.of("BTC", "EUR")).stream().map(CryptoAsset::assetId).toList(),
+            "The filtered assets should be served!");
+        assertEquals(50000, asyncConsumer.getAssetByIdAsync("BTC").get().priceUSD(),
+            "The async consumer should read from the stand-in too!");
+        assertTrue(remainingQuota.get() > 0, "The stand-in should report the remaining quota!");
+        assertEquals(4, standIn.getRequestsCount(), "Every call should be a single request!");
+    }
+
+    @Test
+    void testPricesDriftWithinTheConfiguredStep() throws Exception {
+        standIn = new CoinAPIStandIn(0, PAYLOAD,
+            new CoinAPIStandIn.Behaviour(Duration.ZERO, Duration.ZERO, 0, 0.01, Long.MAX_VALUE));
+        SyncCryptoConsumer consumer = new SyncCryptoConsumer(client, baseUrl(), "key", remaining -> { });
+
+        double price = consumer.getAssetById("BTC").priceUSD();
+
+        assertTrue(Math.abs(price - 50000) <= 500, "A price should not drift more than the configured step!");
+    }
+
+    @Test
+    void testInjectedErrorsFailTheCalls() throws IOException {
+        standIn = new CoinAPIStandIn(0, PAYLOAD,
+            new CoinAPIStandIn.Behaviour(Duration.ZERO, Duration.ZERO, 1, 0, Long.MAX_VALUE));
+        SyncCryptoConsumer consumer = new SyncCryptoConsumer(client, baseUrl(), "key", remaining -> { });
+
+        assertThrows(RuntimeException.class, consumer::getAllAssets,
+            "Get All Assets should fail when the stand-in fails the request!");
+    }
+
+    private String baseUrl() {
+        return "http://localhost:" + standIn.getPort();
+    }
+}
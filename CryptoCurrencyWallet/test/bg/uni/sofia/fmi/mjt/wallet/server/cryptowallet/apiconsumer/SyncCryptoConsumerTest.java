@@ -5,21 +5,29 @@ import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidCredentialsForAPIExce
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -27,6 +35,8 @@ import static org.mockito.Mockito.when;
 public class SyncCryptoConsumerTest {
     @Mock
     private HttpClient client;
+    @Mock
+    private HttpResponse<InputStream> mockResponse;
 
     @InjectMocks
     private SyncCryptoConsumer consumer;
@@ -38,23 +48,21 @@ public class SyncCryptoConsumerTest {
 
     @Test
     void testGetAllAssetsInvalidCredentials() throws Exception {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(401);
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockResponse);
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
         assertThrows(InvalidCredentialsForAPIException.class, () -> consumer.getAllAssets(),
             "Get All Assets should throw InvalidCredentialsForAPIException when status code of the response is 401!");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAllAssetsSuccessfully() throws Exception {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(200);
-        when(mockResponse.body()).thenReturn("" +
+        when(mockResponse.body()).thenReturn(body("" +
             "[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000, \"type_is_crypto\":1}," +
             "{\"asset_id\":\"ETH\",\"name\":\"Ethereum\",\"price_usd\":3000, \"type_is_crypto\":1}," +
-            "{\"asset_id\":\"EUR\",\"name\":\"Euro\",\"price_usd\":1.5, \"type_is_crypto\":0}]");
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockResponse);
+            "{\"asset_id\":\"EUR\",\"name\":\"Euro\",\"price_usd\":1.5, \"type_is_crypto\":0}]"));
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
 
         List<CryptoAsset> result = consumer.getAllAssets();
 
@@ -71,43 +79,42 @@ public class SyncCryptoConsumerTest {
         assertEquals("Ethereum", cryptoAsset2.name(), "Asset Name should be the same as expected!");
         assertEquals(3000, cryptoAsset2.priceUSD(), "Asset priceUSD should be the same as expected!");
         assertNotNull(cryptoAsset2.lastUpdated(), "Asset last modified field should not be null!");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAllAssetsThrowsRuntimeExceptionWhenClientThrowsIOException() throws Exception {
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenThrow(
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenThrow(
             new IOException("IO Exception"));
         assertThrows(RuntimeException.class, () -> consumer.getAllAssets(),
             "Get All Assets  should throw RuntimeException when httpClient throws IOException");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAllAssetsThrowsRuntimeExceptionWhenClientThrowsInterruptedException() throws Exception {
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenThrow(
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenThrow(
             new InterruptedException("Interrupted Exception"));
         assertThrows(RuntimeException.class, () -> consumer.getAllAssets(),
             "Get All Assets  should throw RuntimeException when httpClient throws InterruptedException");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAssetByAssetIdInvalidCredentials() throws Exception {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(401);
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockResponse);
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
         assertThrows(InvalidCredentialsForAPIException.class, () -> consumer.getAssetById("BTC"),
             "Get All Assets by AssetID should throw InvalidCredentialsForAPIException when status code of the response is 401!");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAssetByIdSuccessfully() throws Exception {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(200);
-        when(mockResponse.body()).thenReturn("[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000, \"type_is_crypto\":1}]");
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockResponse);
+        when(mockResponse.body()).thenReturn(
+            body("[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000, \"type_is_crypto\":1}]"));
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
         CryptoAsset result = consumer.getAssetById("BTC");
         assertNotNull(result, "Result should not be null!");
         assertEquals("BTC", result.assetId(), "Result should contain the expected Asset ID");
@@ -115,32 +122,76 @@ public class SyncCryptoConsumerTest {
         assertEquals(50000, result.priceUSD(), "Result should contain the asset priceUSD!");
         assertNotNull(result.lastUpdated(), "Result last modified field cannot be null!");
     }
+    @Test
+    void testGetAssetsByIdsSendsASingleFilteredRequest() throws Exception {
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.body()).thenReturn(body("" +
+            "[{\"asset_id\":\"BTC\",\"name\":\"Bitcoin\",\"price_usd\":50000, \"type_is_crypto\":1}," +
+            "{\"asset_id\":\"ETH\",\"name\":\"Ethereum\",\"price_usd\":3000, \"type_is_crypto\":1}]"));
+        ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+        when(client.send(request.capture(), anyBodyHandler())).thenReturn(mockResponse);
+
+        List<CryptoAsset> result = consumer.getAssetsByIds(List.of("BTC", "ETH"));
+
+        assertEquals(2, result.size(), "Every requested asset should be returned!");
+        assertEquals("filter_asset_id=BTC,ETH", request.getValue().uri().getQuery(),
+            "The ids should be sent as a filter of a single request!");
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
+    }
+
+    @Test
+    void testRemainingQuotaIsReportedFromTheResponseHeaders() throws Exception {
+        AtomicLong remainingQuota = new AtomicLong(-1);
+        consumer = new SyncCryptoConsumer(client, "testAPIKEY", remainingQuota::set);
+        when(mockResponse.statusCode()).thenReturn(200);
+        when(mockResponse.headers()).thenReturn(
+            HttpHeaders.of(Map.of("X-RateLimit-Remaining", List.of("42")), (name, value) -> true));
+        when(mockResponse.body()).thenReturn(body("[]"));
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
+
+        consumer.getAllAssets();
+
+        assertEquals(42, remainingQuota.get(), "The remaining quota should be passed to the listener!");
+    }
+
+    @Test
+    void testGetAssetsByIdsWithoutIdsDoesNotSendARequest() throws Exception {
+        assertTrue(consumer.getAssetsByIds(List.of()).isEmpty(), "There should be no assets without ids!");
+        verify(client, never()).send(any(HttpRequest.class), anyBodyHandler());
+    }
+
     @Test
     void testGetAssetByIdThrowsRuntimeExceptionWhenAssetIdIsNotValid() throws Exception {
-        HttpResponse<String> mockResponse = mock(HttpResponse.class);
         when(mockResponse.statusCode()).thenReturn(200);
-        when(mockResponse.body()).thenReturn("[]");
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(mockResponse);
+        when(mockResponse.body()).thenReturn(body("[]"));
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenReturn(mockResponse);
         assertThrows(RuntimeException.class, () -> consumer.getAssetById("BTC"),
             "Get Asset by AssetID should throw RuntimeException when response is empty!");
     }
 
     @Test
     void testGetAssetByAssetIdThrowsRuntimeExceptionWhenClientThrowsIOException() throws Exception {
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenThrow(
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenThrow(
             new IOException("IO Exception"));
         assertThrows(RuntimeException.class, () -> consumer.getAssetById("BTC"),
             "Get Asset by AssetID should throw RuntimeException when httpClient throws IOException");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
     }
 
     @Test
     void testGetAssetByAssetIDThrowsRuntimeExceptionWhenClientThrowsInterruptedException() throws Exception {
-        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenThrow(
+        when(client.send(any(HttpRequest.class), anyBodyHandler())).thenThrow(
             new InterruptedException("Interrupted Exception"));
         assertThrows(RuntimeException.class, () -> consumer.getAssetById("BTC"),
             "Get Asset By AssetID should throw RuntimeException when httpClient throws InterruptedException");
-        verify(client).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(client).send(any(HttpRequest.class), anyBodyHandler());
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
     }
-}
 
+    private static HttpResponse.BodyHandler<InputStream> anyBodyHandler() {
+        return any();
+    }
+}
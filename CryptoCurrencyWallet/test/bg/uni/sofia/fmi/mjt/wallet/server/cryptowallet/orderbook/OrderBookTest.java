@@ -0,0 +1,124 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OrderBookTest {
+    private final List<Trade> trades = new ArrayList<>();
+    private final OrderBook<String> book = new OrderBook<>(
+        (maker, taker, takerSide, price, amount, makerRemaining) ->
+            trades.add(new Trade(maker, taker, takerSide, price, amount, makerRemaining)));
+
+    @Test
+    void testLimitOrdersThatDoNotCrossRestInTheBook() {
+        long bid = book.placeLimit(OrderSide.BUY, 99, 10, "buyer");
+        long ask = book.placeLimit(OrderSide.SELL, 101, 5, "seller");
+
+        assertTrue(trades.isEmpty(), "Orders that do not cross should not trade!");
+        assertEquals(99, book.bestPrice(OrderSide.BUY), "The bid should be the best bid!");
+        assertEquals(101, book.bestPrice(OrderSide.SELL), "The ask should be the best ask!");
+        assertEquals(10, book.restingAmount(bid), "The whole bid should rest!");
+        assertEquals(5, book.restingAmount(ask), "The whole ask should rest!");
+    }
+
+    @Test
+    void testMatchingFollowsPriceThenTimePriority() {
+        book.placeLimit(OrderSide.SELL, 102, 5, "third");
+        book.placeLimit(OrderSide.SELL, 101, 5, "first");
+        book.placeLimit(OrderSide.SELL, 101, 5, "second");
+
+        long taker = book.placeLimit(OrderSide.BUY, 102, 12, "taker");
+
+        assertEquals(List.of(new Trade("first", "taker", OrderSide.BUY, 101, 5, 0),
+                new Trade("second", "taker", OrderSide.BUY, 101, 5, 0),
+                new Trade("third", "taker", OrderSide.BUY, 102, 2, 3)), trades,
+            "The best price should trade first and the oldest order within a price!");
+        assertEquals(0, book.restingAmount(taker), "A filled order should not rest!");
+        assertEquals(3, book.amountAt(OrderSide.SELL, 102), "The rest of the last maker should stay!");
+        assertEquals(0, book.amountAt(OrderSide.SELL, 101), "The emptied level should be removed!");
+    }
+
+    @Test
+    void testLimitOrderStopsAtItsPriceAndRestsTheRest() {
+        book.placeLimit(OrderSide.BUY, 100, 4, "bid1");
+        book.placeLimit(OrderSide.BUY, 98, 4, "bid2");
+
+        long ask = book.placeLimit(OrderSide.SELL, 99, 10, "seller");
+
+        assertEquals(List.of(new Trade("bid1", "seller", OrderSide.SELL, 100, 4, 0)), trades,
+            "A sell should only trade with bids at or above its price!");
+        assertEquals(6, book.restingAmount(ask), "The rest of the sell should rest!");
+        assertEquals(99, book.bestPrice(OrderSide.SELL), "The rest should rest at its own price!");
+        assertEquals(98, book.bestPrice(OrderSide.BUY), "The untouched bid should stay!");
+    }
+
+    @Test
+    void testMarketOrderFillsWhatTheBookHasAndDropsTheRest() {
+        book.placeLimit(OrderSide.SELL, MicroUnits.of(2.0), MicroUnits.of(1.5), "ask1");
+        book.placeLimit(OrderSide.SELL, MicroUnits.of(3.0), MicroUnits.of(1.0), "ask2");
+
+        long amount = MicroUnits.of(5.0);
+        assertEquals(MicroUnits.of(2.5), book.fillableAmount(OrderSide.BUY, amount),
+            "The fillable amount should be the depth of the book!");
+        assertEquals(MicroUnits.of(6.0), book.marketValue(OrderSide.BUY, amount),
+            "The value should add up the fills!");
+
+        assertEquals(MicroUnits.of(2.5), book.placeMarket(OrderSide.BUY, amount, "taker"),
+            "A market order should fill what the book has!");
+        assertEquals(0, book.bestPrice(OrderSide.SELL), "The asks should be empty!");
+        assertEquals(0, book.bestPrice(OrderSide.BUY), "The rest of a market order should not rest!");
+    }
+
+    @Test
+    void testCancelRemovesTheOrderOnce() {
+        long first = book.placeLimit(OrderSide.BUY, 100, 4, "first");
+        long second = book.placeLimit(OrderSide.BUY, 100, 6, "second");
+
+        assertEquals("first", book.ownerOf(first), "The owner should be kept with the order!");
+        assertEquals(4, book.cancel(first), "Cancel should return what the order offered!");
+        assertNull(book.ownerOf(first), "A cancelled order should not be found!");
+        assertEquals(0, book.cancel(first), "An order should be cancelled only once!");
+        assertEquals(6, book.amountAt(OrderSide.BUY, 100), "The other order should stay at the price!");
+        assertArrayEquals(new long[] {second}, book.orderIds(), "Only the other order should be open!");
+    }
+
+    @Test
+    void testIdOfAGoneOrderDoesNotMatchTheOrderThatReusesItsSlot() {
+        long cancelled = book.placeLimit(OrderSide.SELL, 100, 1, "old");
+        book.cancel(cancelled);
+        long reused = book.placeLimit(OrderSide.SELL, 100, 1, "new");
+
+        assertTrue(reused != cancelled, "A new order should get a new id!");
+        assertEquals(0, book.cancel(cancelled), "The old id should not cancel the new order!");
+        assertEquals("new", book.ownerOf(reused), "The new order should stay in the book!");
+    }
+
+    @Test
+    void testBookKeepsManyLevelsSorted() {
+        for (int i = 1; i <= 200; i++) {
+            book.placeLimit(OrderSide.SELL, 1000 + (i * 37) % 200, 1, "seller" + i);
+        }
+        assertEquals(1000, book.bestPrice(OrderSide.SELL), "The lowest ask should be the best ask!");
+
+        long previousPrice = 0;
+        for (int i = 0; i < 200; i++) {
+            book.placeMarket(OrderSide.BUY, 1, "taker");
+            long price = trades.get(i).price();
+            assertTrue(price >= previousPrice, "Asks should be matched from the lowest price up!");
+            previousPrice = price;
+        }
+        assertEquals(0, book.bestPrice(OrderSide.SELL), "All asks should be matched!");
+    }
+
+    private record Trade(String maker, String taker, OrderSide takerSide, long price, long amount,
+                         long makerRemaining) {
+    }
+}
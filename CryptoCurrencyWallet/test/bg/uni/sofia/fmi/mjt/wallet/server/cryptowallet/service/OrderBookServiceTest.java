@@ -0,0 +1,248 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.PriceSnapshot;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.orderbook.OrderSide;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.OrderNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OrderBookServiceTest {
+    private static final Map<String, CryptoAsset> ASSETS = Map.of(
+        "BTC", new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now()),
+        "DOGE", new CryptoAsset("DOGE", "Doge coin", 1.5, LocalDateTime.now()));
+
+    @Mock
+    private Database database;
+
+    @Mock
+    private CryptoAssetUpdater cryptoAssetUpdater;
+    @Spy
+    private UserLocks userLocks = new UserLocks(4);
+    @InjectMocks
+    private OrderBookService orderBookService;
+
+    @Test
+    void testLimitOrdersOfTwoUsersTradeAtTheMakerPrice() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User seller = userWith("seller", 0.0, new Purchase("BTC", MicroUnits.of(2.0), MicroUnits.of(40000.0)));
+        User buyer = userWith("buyer", 60000.0);
+
+        OrderResult sell = orderBookService.placeLimitOrder(seller, OrderSide.SELL, "BTC", 1.0, 50000.0);
+        assertEquals(new OrderResult(sell.orderId(), 0.0, 1.0), sell, "A sell with no bids should rest!");
+        OrderResult buy = orderBookService.placeLimitOrder(buyer, OrderSide.BUY, "BTC", 1.0, 55000.0);
+
+        assertEquals(new OrderResult(buy.orderId(), 1.0, 0.0), buy, "The buy should be filled by the sell!");
+        assertEquals(MicroUnits.of(10000.0), buyer.getBalance(), "The buyer should pay the price of the seller!");
+        assertEquals(new Purchase("BTC", MicroUnits.of(1.0), MicroUnits.of(50000.0)), buyer.getPurchases().iterator()
+            .next(), "The buyer should get the amount at the price paid!");
+        assertEquals(MicroUnits.of(50000.0), seller.getBalance(), "The seller should get the price!");
+        assertEquals(new Purchase("BTC", MicroUnits.of(1.0), MicroUnits.of(40000.0)), seller.getPurchases()
+            .iterator().next(), "The rest of the seller's position should keep its average price!");
+    }
+
+    @Test
+    void testLimitBuyReservesMoneyUntilItIsCancelled() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User buyer = userWith("buyer", 100.0);
+
+        OrderResult buy = orderBookService.placeLimitOrder(buyer, OrderSide.BUY, "DOGE", 10.0, 2.0);
+        assertEquals(MicroUnits.of(80.0), buyer.getBalance(), "The price of the order should be reserved!");
+        assertEquals(MicroUnits.of(20.0), buyer.getReservedBalance(), "The reservation should be kept with the user!");
+
+        orderBookService.cancelOrder(buyer, "DOGE", buy.orderId());
+        assertEquals(MicroUnits.of(100.0), buyer.getBalance(), "Cancel should return the reserved money!");
+        assertEquals(0, buyer.getReservedBalance(), "Cancel should clear the reservation!");
+        assertThrows(OrderNotFoundException.class, () -> orderBookService.cancelOrder(buyer, "DOGE", buy.orderId()),
+            "An order should not be cancelled twice!");
+    }
+
+    @Test
+    void testSellOrderReservesTheAmountUntilItIsCancelled() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        Purchase position = new Purchase("DOGE", MicroUnits.of(10.0), MicroUnits.of(1.25));
+        User seller = userWith("seller", 0.0, position);
+
+        OrderResult sell = orderBookService.placeLimitOrder(seller, OrderSide.SELL, "DOGE", 10.0, 2.0);
+        assertTrue(seller.getPurchases().isEmpty(), "The amount of the order should be reserved!");
+        assertEquals(List.of(position), List.copyOf(seller.getReservedAssets()),
+            "The reservation should be kept with the user!");
+
+        orderBookService.cancelOrder(seller, "DOGE", sell.orderId());
+        assertEquals(List.of(position), List.copyOf(seller.getPurchases()),
+            "Cancel should return the amount at its average price!");
+        assertTrue(seller.getReservedAssets().isEmpty(), "Cancel should clear the reservation!");
+    }
+
+    @Test
+    void testCancelOrderThrowsOrderNotFoundExceptionForAnOrderOfAnotherUser() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User buyer = userWith("buyer", 100.0);
+        OrderResult buy = orderBookService.placeLimitOrder(buyer, OrderSide.BUY, "DOGE", 10.0, 2.0);
+
+        assertThrows(OrderNotFoundException.class,
+            () -> orderBookService.cancelOrder(userWith("other", 0.0), "DOGE", buy.orderId()),
+            "Cancel should throw OrderNotFoundException for an order of another user!");
+        assertEquals(MicroUnits.of(80.0), buyer.getBalance(), "The order should stay reserved!");
+    }
+
+    @Test
+    void testPlaceLimitOrderThrowsInsufficientBalanceExceptionWhenThePriceIsNotCovered() {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User buyer = userWith("buyer", 10.0);
+
+        assertThrows(InsufficientBalanceException.class,
+            () -> orderBookService.placeLimitOrder(buyer, OrderSide.BUY, "DOGE", 10.0, 2.0),
+            "Place limit order should throw InsufficientBalanceException when the balance is not enough!");
+        assertEquals(MicroUnits.of(10.0), buyer.getBalance(), "The balance should not be changed!");
+
+        verify(database, never()).updateUser(any());
+    }
+
+    @Test
+    void testPlaceMarketOrderThrowsInsufficientAssetAmountExceptionWhenSellingMoreThanHeld() {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User seller = userWith("seller", 0.0, new Purchase("DOGE", MicroUnits.of(1.0), MicroUnits.of(1.0)));
+
+        assertThrows(InsufficientAssetAmountException.class,
+            () -> orderBookService.placeMarketOrder(seller, OrderSide.SELL, "DOGE", 2.0),
+            "Place market order should throw InsufficientAssetAmountException when selling more than held!");
+
+        verify(database, never()).updateUser(any());
+    }
+
+    @Test
+    void testPlaceMarketOrderThrowsInvalidAssetIdExceptionForUnknownAsset() {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+
+        assertThrows(InvalidAssetIdException.class,
+            () -> orderBookService.placeMarketOrder(userWith("buyer", 1.0), OrderSide.BUY, "XYZ", 1.0),
+            "Place market order should throw InvalidAssetIdException for an unknown asset!");
+    }
+
+    @Test
+    void testMarketBuyTradesWhatTheBookHasAndPaysExactly() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User first = userWith("first", 0.0, new Purchase("DOGE", MicroUnits.of(1.5), MicroUnits.of(1.0)));
+        User second = userWith("second", 0.0, new Purchase("DOGE", MicroUnits.of(1.0), MicroUnits.of(1.0)));
+        User buyer = userWith("buyer", 100.0);
+        orderBookService.placeLimitOrder(first, OrderSide.SELL, "DOGE", 1.5, 2.0);
+        orderBookService.placeLimitOrder(second, OrderSide.SELL, "DOGE", 1.0, 3.0);
+
+        double traded = orderBookService.placeMarketOrder(buyer, OrderSide.BUY, "DOGE", 5.0);
+
+        assertEquals(2.5, traded, "A market order should trade what the book has!");
+        assertEquals(MicroUnits.of(94.0), buyer.getBalance(), "The buyer should pay for every fill!");
+        assertEquals(MicroUnits.of(2.5), buyer.getAmountOfAsset("DOGE"), "The buyer should get every fill!");
+        assertEquals(MicroUnits.of(3.0), first.getBalance(), "The first seller should get its price!");
+        assertEquals(MicroUnits.of(3.0), second.getBalance(), "The second seller should get its price!");
+    }
+
+    @Test
+    void testRandomOrdersDoNotCreateOrLoseMoneyOrAssets() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        User[] users = new User[5];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = userWith("user" + i, 1000.0, new Purchase("DOGE", MicroUnits.of(500.0), MicroUnits.of(1.5)));
+        }
+        Random random = new Random(42);
+
+        for (int i = 0; i < 2000; i++) {
+            User user = users[random.nextInt(users.length)];
+            OrderSide side = random.nextBoolean() ? OrderSide.BUY : OrderSide.SELL;
+            double quantity = 0.1 + random.nextInt(300) / 7.0;
+            try {
+                if (random.nextInt(4) == 0) {
+                    orderBookService.placeMarketOrder(user, side, "DOGE", quantity);
+                } else {
+                    orderBookService.placeLimitOrder(user, side, "DOGE", quantity, 1.0 + random.nextInt(100) / 99.0);
+                }
+            } catch (InsufficientBalanceException | InsufficientAssetAmountException e) {
+                // the user has run out of money or DOGE, the next order is placed by someone else
+            }
+        }
+        long money = 0;
+        long amount = 0;
+        for (User user : users) {
+            money += user.getBalance() + user.getReservedBalance();
+            amount += user.getAmountOfAsset("DOGE") + reservedAmount(user);
+        }
+        assertEquals(MicroUnits.of(5000.0), money, "The reservations should hold the rest of the money!");
+        assertEquals(MicroUnits.of(2500.0), amount, "The reservations should hold the rest of the DOGE!");
+        orderBookService.cancelAll();
+
+        money = 0;
+        amount = 0;
+        for (User user : users) {
+            money += user.getBalance();
+            amount += user.getAmountOfAsset("DOGE");
+            assertEquals(0, user.getReservedBalance(), "Cancel all should return the reserved money!");
+            assertEquals(0, reservedAmount(user), "Cancel all should return the reserved DOGE!");
+        }
+        assertEquals(MicroUnits.of(5000.0), money, "The money of all users should add up to what they started with!");
+        assertEquals(MicroUnits.of(2500.0), amount, "The DOGE of all users should add up to what they started with!");
+    }
+
+    @Test
+    void testReturnLostReservationsGivesBackWhatTheOrdersOfACrashedServerReserved() throws Exception {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(ASSETS, 1, LocalDateTime.now()));
+        Purchase position = new Purchase("DOGE", MicroUnits.of(10.0), MicroUnits.of(1.25));
+        User seller = userWith("seller", 0.0, position);
+        User buyer = userWith("buyer", 100.0);
+        orderBookService.placeLimitOrder(seller, OrderSide.SELL, "DOGE", 4.0, 2.0);
+        orderBookService.placeLimitOrder(seller, OrderSide.SELL, "DOGE", 6.0, 3.0);
+        orderBookService.placeLimitOrder(buyer, OrderSide.BUY, "DOGE", 5.0, 2.5);
+        when(database.getUsers()).thenReturn(Map.of("seller", seller, "buyer", buyer));
+        clearInvocations(database);
+
+        // the books of the crashed server are gone, a restarted server only has the users in the database
+        new OrderBookService(database, cryptoAssetUpdater, userLocks).returnLostReservations();
+
+        assertEquals(MicroUnits.of(92.0), buyer.getBalance(), "The buyer should get back the money of the rest!");
+        assertEquals(MicroUnits.of(4.0), buyer.getAmountOfAsset("DOGE"), "The buyer should keep what was traded!");
+        assertEquals(MicroUnits.of(8.0), seller.getBalance(), "The seller should keep the price of the trade!");
+        assertEquals(List.of(new Purchase("DOGE", MicroUnits.of(6.0), MicroUnits.of(1.25))),
+            List.copyOf(seller.getPurchases()), "The seller should get back the rest at its average price!");
+        for (User user : List.of(seller, buyer)) {
+            assertEquals(0, user.getReservedBalance(), "No money should stay reserved!");
+            assertTrue(user.getReservedAssets().isEmpty(), "No asset should stay reserved!");
+        }
+        verify(database).updateUser(seller);
+        verify(database).updateUser(buyer);
+    }
+
+    private static long reservedAmount(User user) {
+        return user.getReservedAssets().stream().mapToLong(Purchase::amount).sum();
+    }
+
+    private static User userWith(String username, double balance, Purchase... purchases) {
+        return new User(username, "hash", MicroUnits.of(balance), List.of(purchases));
+    }
+}
@@ -0,0 +1,71 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserLocksTest {
+    @Test
+    void testStripesCountIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new UserLocks(1).getMetrics().size(), "A single stripe should be kept!");
+        assertEquals(8, new UserLocks(5).getMetrics().size(), "The stripes count should be rounded up!");
+        assertEquals(16, new UserLocks(16).getMetrics().size(), "A power of two should be kept!");
+        assertThrows(IllegalArgumentException.class, () -> new UserLocks(0),
+            "There should be at least one stripe!");
+    }
+
+    @Test
+    void testUsersOnDifferentStripesDoNotWaitForEachOther() throws Exception {
+        UserLocks userLocks = new UserLocks(64);
+        String other = "user1";
+        for (int i = 2; userLocks.stripeOf(other) == userLocks.stripeOf("user0"); i++) {
+            other = "user" + i;
+        }
+        String otherUser = other;
+
+        userLocks.lock("user0");
+        try {
+            CompletableFuture.runAsync(() -> {
+                userLocks.lock(otherUser);
+                userLocks.unlock(otherUser);
+            }).get(5, TimeUnit.SECONDS);
+        } finally {
+            userLocks.unlock("user0");
+        }
+
+        assertEquals(0, userLocks.getMetrics().get(userLocks.stripeOf(otherUser)).contentions(),
+            "A user on another stripe should not wait!");
+        assertNotEquals(userLocks.stripeOf("user0"), userLocks.stripeOf(otherUser),
+            "The users should be on different stripes!");
+    }
+
+    @Test
+    void testContentionIsCountedPerStripe() throws Exception {
+        UserLocks userLocks = new UserLocks(64);
+        int stripe = userLocks.stripeOf("user0");
+
+        userLocks.lock("user0");
+        Thread waiter = new Thread(() -> {
+            userLocks.lock("user0");
+            userLocks.unlock("user0");
+        });
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (waiter.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        userLocks.unlock("user0");
+        waiter.join(5000);
+
+        LockStripeMetrics metrics = userLocks.getMetrics().get(stripe);
+        assertEquals(2, metrics.acquisitions(), "Both acquisitions should be counted!");
+        assertEquals(1, metrics.contentions(), "The waiting thread should be counted as a contention!");
+        assertEquals(0, userLocks.getMetrics().stream().filter(m -> m.stripe() != stripe)
+            .mapToLong(LockStripeMetrics::acquisitions).sum(), "The other stripes should not be touched!");
+    }
+}
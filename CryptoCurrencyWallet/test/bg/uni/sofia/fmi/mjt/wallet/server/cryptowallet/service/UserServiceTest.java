@@ -12,10 +12,21 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,6 +41,9 @@ public class UserServiceTest {
     @Mock
     private PasswordHasherAPI passwordHasher;
 
+    @Spy
+    private UserLocks userLocks = new UserLocks(4);
+
     @InjectMocks
     private UserService userService;
 
@@ -78,6 +92,40 @@ public class UserServiceTest {
         verify(database, times(1)).addUser(any(User.class));
     }
 
+    @Test
+    void testConcurrentRegistrationsOfTheSameUsernameAddOnlyOneUser() throws Exception {
+        int threadsCount = 8;
+        Set<String> usernames = ConcurrentHashMap.newKeySet();
+        when(database.checkIfUserExists(anyString())).thenAnswer(invocation -> usernames.contains(invocation
+            .getArgument(0, String.class)));
+        doAnswer(invocation -> {
+            // the add is slow, so a registration that did not wait would see no user yet
+            Thread.sleep(20);
+            return usernames.add(invocation.getArgument(0, User.class).getUsername());
+        }).when(database).addUser(any(User.class));
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threadsCount)) {
+            for (int i = 0; i < threadsCount; i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        userService.register("testUsername", "testPassword");
+                        return true;
+                    } catch (UserAlreadyExistsException e) {
+                        return false;
+                    }
+                }));
+            }
+        }
+        int registered = 0;
+        for (Future<Boolean> future : futures) {
+            registered += future.get() ? 1 : 0;
+        }
+
+        assertEquals(1, registered, "Only one registration of a username should succeed!");
+        verify(database, times(1)).addUser(any(User.class));
+    }
+
     @Test
     void testLoginThrowsUsernameWrongFormatExceptionWhenPassingNullForUsername(){
         assertThrows(UsernameWrongFormatException.class, () -> userService.login(null, "testPass"),
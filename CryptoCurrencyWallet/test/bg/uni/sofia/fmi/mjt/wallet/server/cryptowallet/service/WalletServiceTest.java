@@ -1,10 +1,13 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.service;
 
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.CryptoAssetUpdater;
+import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.PriceSnapshot;
 import bg.uni.sofia.fmi.mjt.wallet.server.cryptowallet.apiconsumer.assets.CryptoAsset;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.Database;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientAssetAmountException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InsufficientBalanceException;
 import bg.uni.sofia.fmi.mjt.wallet.server.exception.InvalidAssetIdException;
 import org.junit.jupiter.api.BeforeAll;
@@ -12,19 +15,25 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,6 +44,8 @@ public class WalletServiceTest {
 
     @Mock
     private CryptoAssetUpdater cryptoAssetUpdater;
+    @Spy
+    private UserLocks userLocks = new UserLocks(4);
     @InjectMocks
     private WalletService walletService;
 
@@ -65,7 +76,7 @@ public class WalletServiceTest {
 
         walletService.depositMoney(user, depositedMoney);
 
-        assertEquals(depositedMoney, user.getBalance(),
+        assertEquals(MicroUnits.of(depositedMoney), user.getBalance(),
             "User should have the deposited amount of money in their account!");
         verify(database).updateUser(user);
     }
@@ -75,7 +86,7 @@ public class WalletServiceTest {
         int pageNumber = 1;
         int assetsToShow = 3;
         walletService.setAssetsToShow(assetsToShow);
-        when(cryptoAssetUpdater.updateAllAssetsIfNeeded(anyMap())).thenReturn(assets);
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
         StringBuilder expectedOutput1 = new StringBuilder();
         expectedOutput1.append("Asset ID: BTC -> Price: ").append(String.format("%.4f", 50000.0)).append("$ per unit!")
             .append(System.lineSeparator());
@@ -100,6 +111,29 @@ public class WalletServiceTest {
             "List-offerings should retrieve the second page of the asssets!");
     }
 
+    @Test
+    void listOfferingsWarnsWhenThePricesAreStale() {
+        walletService.setAssetsToShow(1);
+        PriceSnapshot stalePrices = PriceSnapshot.of(assets, 1, LocalDateTime.now().minusMinutes(90));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(stalePrices);
+        when(cryptoAssetUpdater.checkStale(stalePrices)).thenReturn(true);
+
+        String expectedOutput = "Prices may be outdated, they were last updated 90 minutes ago!" +
+            System.lineSeparator() + "Asset ID: BTC -> Price: " + String.format("%.4f", 50000.0) + "$ per unit!" +
+            System.lineSeparator();
+
+        assertEquals(expectedOutput, walletService.listOfferings(1),
+            "List-offerings should warn that the last known prices are served!");
+    }
+
+    @Test
+    void listOfferingsTellsThatThePricesAreLoadingBeforeTheFirstDownload() {
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.empty());
+
+        assertEquals("Prices are loading, please try again in a moment!" + System.lineSeparator(),
+            walletService.listOfferings(1), "List-offerings should tell that the prices are not downloaded yet!");
+    }
+
     @Test
     void testAssetsToShowThrowsRuntimeExceptionWhenTryingToSetNegativeNumber() {
         assertThrows(RuntimeException.class, () -> walletService.setAssetsToShow(-2),
@@ -109,9 +143,10 @@ public class WalletServiceTest {
     @Test
     void testBuyAssetThrowsInsufficientBalanceExceptionWhenTryingToBuyAssetForMoneyThatAreNotInTheUserBalance() {
         User user = new User("testUsername", "testPassword");
-        user.increaseBalance(10.0);
+        user.increaseBalance(MicroUnits.of(10.0));
         CryptoAsset mockAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
-        when(cryptoAssetUpdater.updateAssetIfNeeded(any(), any())).thenReturn(Map.of("BTC", mockAsset));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(Map.of("BTC", mockAsset), 1,
+            LocalDateTime.now()));
         double purchaseAmount = 15.0;
         String assetId = "BTC";
         assertThrows(InsufficientBalanceException.class, () -> walletService.buyAsset(user, assetId, purchaseAmount),
@@ -124,7 +159,8 @@ public class WalletServiceTest {
     void testBuyAssetThrowsInvalidAssetIdExceptionWhenPassingInvalidId() {
         User user = new User("testUsername", "testPassword");
         CryptoAsset mockAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
-        when(cryptoAssetUpdater.updateAssetIfNeeded(any(), any())).thenReturn(Map.of("BTC", mockAsset));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(Map.of("BTC", mockAsset), 1,
+            LocalDateTime.now()));
         double purchaseAmount = 15.0;
         String assetId = "USD";
         assertThrows(InvalidAssetIdException.class, () -> walletService.buyAsset(user, assetId, purchaseAmount),
@@ -136,17 +172,34 @@ public class WalletServiceTest {
     @Test
     void testBuyAssetSuccess() throws InsufficientBalanceException, InvalidAssetIdException {
         User user = new User("testUsername", "testPassword");
-        user.increaseBalance(100.0);
+        user.increaseBalance(MicroUnits.of(100.0));
         CryptoAsset mockAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
-        when(cryptoAssetUpdater.updateAssetIfNeeded(any(), any())).thenReturn(Map.of("BTC", mockAsset));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(Map.of("BTC", mockAsset), 1,
+            LocalDateTime.now()));
 
         double purchaseAmount = 60.0;
         String assetId = "BTC";
         walletService.buyAsset(user, assetId, purchaseAmount);
-        assertEquals(40.0, user.getBalance(), "User balance should be decreased");
-        assertEquals(0.0012, user.getAmountOfAsset("BTC"), "User account should have this amount of asset!");
+        assertEquals(MicroUnits.of(40.0), user.getBalance(), "User balance should be decreased");
+        assertEquals(MicroUnits.of(0.0012), user.getAmountOfAsset("BTC"),
+            "User account should have this amount of asset!");
 
         verify(database).updateUser(user);
+        verify(cryptoAssetUpdater).refreshAssetIfNeeded("BTC");
+    }
+
+    @Test
+    void testRepeatedBuyAndSellCyclesDoNotDrift() throws InsufficientBalanceException, InvalidAssetIdException {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(100.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+
+        for (int i = 0; i < 1000; i++) {
+            walletService.buyAsset(user, "DOGE", 0.3);
+            walletService.sellAsset(user, "DOGE");
+        }
+
+        assertEquals(MicroUnits.of(100.0), user.getBalance(), "Buying and selling at the same price should be even!");
     }
 
     @Test
@@ -162,29 +215,122 @@ public class WalletServiceTest {
     @Test
     void testSellAssetSuccess() throws InvalidAssetIdException {
         User mockUser = mock(User.class);
+        when(mockUser.getUsername()).thenReturn("testUsername");
         when(mockUser.containsAsset(any())).thenReturn(true);
-        when(mockUser.getAmountOfAsset(any())).thenReturn(2.0);
+        when(mockUser.getAmountOfAsset(any())).thenReturn(MicroUnits.of(2.0));
         CryptoAsset mockAsset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
-        when(cryptoAssetUpdater.updateAssetIfNeeded(any(), any())).thenReturn(Map.of("BTC", mockAsset));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(Map.of("BTC", mockAsset), 1,
+            LocalDateTime.now()));
 
         String assetId = "BTC";
         double sellingMoney = walletService.sellAsset(mockUser, assetId);
         assertEquals(100000.0, sellingMoney,
             "Sell asset should return the amount of money that is earned from the sale of the asset!");
-        verify(mockUser).increaseBalance(sellingMoney);
+        verify(mockUser).increaseBalance(MicroUnits.of(sellingMoney));
         verify(mockUser).removePurchase(assetId);
 
         verify(database).updateUser(mockUser);
     }
 
+    @Test
+    void testBuyAssetQuantitySuccess() throws InsufficientBalanceException, InvalidAssetIdException {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(100.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+
+        double paidMoney = walletService.buyAssetQuantity(user, "DOGE", 10.0);
+        assertEquals(15.0, paidMoney, "Buy asset quantity should return the price of the quantity!");
+        assertEquals(MicroUnits.of(85.0), user.getBalance(), "User balance should be decreased");
+        assertEquals(MicroUnits.of(10.0), user.getAmountOfAsset("DOGE"),
+            "User account should have exactly the bought quantity!");
+        assertEquals(MicroUnits.of(1.5), user.getAvgPrice("DOGE"), "Average price should be the price of the asset!");
+
+        verify(database).updateUser(user);
+    }
+
+    @Test
+    void testBuyAssetQuantityThrowsInsufficientBalanceExceptionWhenTheQuantityCostsMoreThanTheBalance() {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(100.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+
+        assertThrows(InsufficientBalanceException.class, () -> walletService.buyAssetQuantity(user, "ETH", 0.5),
+            "Buy asset quantity should throw InsufficientBalanceException when the quantity costs too much!");
+        assertEquals(MicroUnits.of(100.0), user.getBalance(), "User balance should not be changed!");
+
+        verify(database, never()).updateUser(any());
+    }
+
+    @Test
+    void testSellAssetQuantityKeepsTheRestOfThePosition()
+        throws InsufficientBalanceException, InvalidAssetIdException, InsufficientAssetAmountException {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(30.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+        walletService.buyAssetQuantity(user, "DOGE", 20.0);
+
+        double earnedMoney = walletService.sellAssetQuantity(user, "DOGE", 5.0);
+        assertEquals(7.5, earnedMoney, "Sell asset quantity should return the money earned for the quantity!");
+        assertEquals(MicroUnits.of(7.5), user.getBalance(), "User balance should be increased by the earned money!");
+        assertEquals(MicroUnits.of(15.0), user.getAmountOfAsset("DOGE"), "The rest of the position should be kept!");
+        assertEquals(MicroUnits.of(1.5), user.getAvgPrice("DOGE"), "The average price should not be changed!");
+
+        walletService.sellAssetQuantity(user, "DOGE", 15.0);
+        assertTrue(user.getPurchases().isEmpty(), "Selling the whole quantity should remove the position!");
+        assertEquals(MicroUnits.of(30.0), user.getBalance(), "Buying and selling at the same price should be even!");
+
+        verify(database, times(3)).updateUser(user);
+    }
+
+    @Test
+    void testSellAssetQuantityThrowsInsufficientAssetAmountExceptionWhenSellingMoreThanHeld()
+        throws InsufficientBalanceException, InvalidAssetIdException {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(30.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+        walletService.buyAssetQuantity(user, "DOGE", 20.0);
+
+        assertThrows(InsufficientAssetAmountException.class, () -> walletService.sellAssetQuantity(user, "DOGE", 21.0),
+            "Sell asset quantity should throw InsufficientAssetAmountException when selling more than held!");
+        assertEquals(MicroUnits.of(20.0), user.getAmountOfAsset("DOGE"), "The position should not be changed!");
+
+        verify(database, times(1)).updateUser(user);
+    }
+
+    @Test
+    void testSellAssetQuantityThrowsIllegalArgumentExceptionWhenTheQuantityIsNotPositive() {
+        User user = new User("testUsername", "testPassword");
+        assertThrows(IllegalArgumentException.class, () -> walletService.sellAssetQuantity(user, "DOGE", 0.0),
+            "Sell asset quantity should throw IllegalArgumentException when the quantity is not positive!");
+
+        verify(database, never()).updateUser(any());
+    }
+
+    @Test
+    void testSellAssetValueSellsTheAmountWorthTheMoney()
+        throws InsufficientBalanceException, InvalidAssetIdException, InsufficientAssetAmountException {
+        User user = new User("testUsername", "testPassword");
+        user.increaseBalance(MicroUnits.of(30.0));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+        walletService.buyAssetQuantity(user, "DOGE", 20.0);
+
+        double earnedMoney = walletService.sellAssetValue(user, "DOGE", 1.0);
+        assertTrue(earnedMoney >= 1.0, "Sell asset value should earn at least the requested money!");
+        assertEquals(MicroUnits.of(20.0) - MicroUnits.divideRoundingUp(MicroUnits.of(1.0), MicroUnits.of(1.5)),
+            user.getAmountOfAsset("DOGE"), "The amount worth the money should be sold!");
+        assertEquals(MicroUnits.of(earnedMoney), user.getBalance(),
+            "User balance should be increased by the earned money!");
+    }
+
     @Test
     void testGetWalletSummary() {
         User mockUser = mock(User.class);
-        when(mockUser.getBalance()).thenReturn(100.0);
+        when(mockUser.getUsername()).thenReturn("testUsername");
+        when(mockUser.getBalance()).thenReturn(MicroUnits.of(100.0));
 
-        Purchase purchase1 = new Purchase("BTC", 2.0, 50000.0);
-        Purchase purchase2 = new Purchase("ETH", 3.5, 3000.0);
-        when(mockUser.getPurchases()).thenReturn(Set.of(purchase1, purchase2));
+        Purchase purchase1 = new Purchase("BTC", MicroUnits.of(2.0), MicroUnits.of(50000.0));
+        Purchase purchase2 = new Purchase("ETH", MicroUnits.of(3.5), MicroUnits.of(3000.0));
+        when(mockUser.getPurchases()).thenReturn(List.of(purchase1, purchase2));
 
         String walletSummary = walletService.getWalletSummary(mockUser);
 
@@ -198,16 +344,17 @@ public class WalletServiceTest {
     @Test
     void testGetWalletOverallSummary() {
         User mockUser = mock(User.class);
-        Purchase purchase1 = new Purchase("BTC", 2.0, 50000.0);
-        Purchase purchase2 = new Purchase("ETH", 2.0, 3000.0);
-        Purchase purchase3 = new Purchase("DOGE", 2.0, 1000.0);
-        when(mockUser.getPurchases()).thenReturn(Set.of(purchase1, purchase2, purchase3));
+        when(mockUser.getUsername()).thenReturn("testUsername");
+        Purchase purchase1 = new Purchase("BTC", MicroUnits.of(2.0), MicroUnits.of(50000.0));
+        Purchase purchase2 = new Purchase("ETH", MicroUnits.of(2.0), MicroUnits.of(3000.0));
+        Purchase purchase3 = new Purchase("DOGE", MicroUnits.of(2.0), MicroUnits.of(1000.0));
+        when(mockUser.getPurchases()).thenReturn(List.of(purchase1, purchase3, purchase2));
 
         CryptoAsset asset1 = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
         CryptoAsset asset2 = new CryptoAsset("ETH", "Ethereum", 3500.0, LocalDateTime.now());
         CryptoAsset asset3 = new CryptoAsset("DOGE", "Dogecoin", 500.0, LocalDateTime.now());
-        when(cryptoAssetUpdater.updateAllAssetsIfNeeded(anyMap())).thenReturn(
-            Map.of("BTC", asset1, "ETH", asset2, "DOGE", asset3));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(
+            PriceSnapshot.of(Map.of("BTC", asset1, "ETH", asset2, "DOGE", asset3), 1, LocalDateTime.now()));
 
         String walletSummary = walletService.getWalletOverallSummary(mockUser);
 
@@ -221,5 +368,58 @@ public class WalletServiceTest {
 
         assertEquals(expectedSummary, walletSummary,
             "Get-wallet-summary should return the all the purchases of the user!");
+        verify(cryptoAssetUpdater).refreshAssetsIfNeeded(List.of("BTC", "DOGE", "ETH"));
+    }
+
+    @Test
+    void testGetWalletOverallSummaryShowsThatAMissingPriceIsNotAvailable() {
+        User user = new User("testUsername", "testPass", 0, List.of(
+            new Purchase("BTC", MicroUnits.of(2.0), MicroUnits.of(50000.0)),
+            new Purchase("ETH", MicroUnits.of(2.0), MicroUnits.of(3000.0))));
+        CryptoAsset asset = new CryptoAsset("BTC", "Bitcoin", 50000.0, LocalDateTime.now());
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(Map.of("BTC", asset), 1,
+            LocalDateTime.now()));
+
+        String expectedSummary =
+            "Asset ID: BTC | Amount: " + String.format("%.4f", 2.0) + " | You do not have profit or loss!" +
+                System.lineSeparator() +
+                "Asset ID: ETH | Amount: " + String.format("%.4f", 2.0) + " | The price is not available yet!" +
+                System.lineSeparator();
+
+        assertEquals(expectedSummary, walletService.getWalletOverallSummary(user),
+            "Get-wallet-overall-summary should show the assets without a price instead of failing!");
+    }
+
+    @Test
+    void testConcurrentTradesOfTheSameUserDoNotLoseUpdates() throws Exception {
+        int threadsCount = 8;
+        int tradesPerThread = 500;
+        User user = new User("testUsername", "testPass");
+        user.increaseBalance(MicroUnits.of(threadsCount * tradesPerThread));
+        when(cryptoAssetUpdater.getSnapshot()).thenReturn(PriceSnapshot.of(assets, 1, LocalDateTime.now()));
+
+        List<Future<?>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threadsCount)) {
+            for (int i = 0; i < threadsCount; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < tradesPerThread; j++) {
+                        walletService.buyAsset(user, "XRP", 1.0);
+                        walletService.depositMoney(user, 1.0);
+                        walletService.getWalletSummary(user);
+                    }
+                    return null;
+                }));
+            }
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(MicroUnits.of(threadsCount * tradesPerThread), user.getBalance(),
+            "Every buy and every deposit should be applied to the balance!");
+        assertEquals(MicroUnits.of(threadsCount * tradesPerThread), user.getAmountOfAsset("XRP"),
+            "Every buy should be applied to the purchases!");
+        assertTrue(userLocks.getMetrics().stream().mapToLong(LockStripeMetrics::acquisitions).sum() >=
+            3L * threadsCount * tradesPerThread, "Every trade should take the lock of the user!");
     }
 }
@@ -1,16 +1,27 @@
 package bg.uni.sofia.fmi.mjt.wallet.server.database;
 
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
 import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.UserRecordReader;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.wal.WriteAheadLog;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -20,6 +31,15 @@ public class FileDatabaseTest {
     private static final String TEST_FILE_PATH = "test_users.txt";
     private static final String RES_DIRECTORY = "res";
     private static final Path testFilePath = Path.of(RES_DIRECTORY, TEST_FILE_PATH).toAbsolutePath();
+    private static final Path testWalPath = Path.of(RES_DIRECTORY, TEST_FILE_PATH + ".wal").toAbsolutePath();
+    // a user with a balance of 50 and 2 ETH bought at 3000, serialized while the values were doubles
+    private static final String DOUBLE_USER_STREAM =
+        "rO0ABXNyADViZy51bmkuc29maWEuZm1pLm1qdC53YWxsZXQuc2VydmVyLmRhdGFiYXNlLnVzZXIuVXNlcua0mmfH1Xj2AgAE" +
+            "RAAHYmFsYW5jZUwADHBhc3N3b3JkSGFzaHQAEkxqYXZhL2xhbmcvU3RyaW5nO0wACXB1cmNoYXNlc3QAD0xqYXZhL3V0aWwv" +
+            "U2V0O0wACHVzZXJuYW1lcQB+AAF4cEBJAAAAAAAAdAAJcGFzc3dvcmQxc3IAEWphdmEudXRpbC5IYXNoU2V0ukSFlZa4tzQD" +
+            "AAB4cHcMAAAAED9AAAAAAAABc3IAOWJnLnVuaS5zb2ZpYS5mbWkubWp0LndhbGxldC5zZXJ2ZXIuZGF0YWJhc2UudXNlci5Q" +
+            "dXJjaGFzZQAAAAAAAAAAAgADRAAGYW1vdW50RAAIYXZnUHJpY2VMAAdhc3NldElkcQB+AAF4cEAAAAAAAAAAQKdwAAAAAAB0" +
+            "AANFVEh4dAAFdXNlcjE=";
     static Database fileDatabase;
 
     @BeforeAll
@@ -30,7 +50,9 @@ public class FileDatabaseTest {
     @AfterAll
     static void tearDown() {
         try {
+            ((FileDatabase) fileDatabase).close();
             Files.deleteIfExists(testFilePath);
+            Files.deleteIfExists(testWalPath);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -87,11 +109,217 @@ public class FileDatabaseTest {
             assertEquals(2, testDatabase.getUsers().size(), "File Database should contain 2 users!");
             assertTrue(testDatabase.checkIfUserExists("user1"), "File Database should contain the first user!");
             assertTrue(testDatabase.checkIfUserExists("user2"), "File Database should contain the second user!");
+            testDatabase.close();
         } finally {
             Files.deleteIfExists(tempFilePath);
+            Files.deleteIfExists(Path.of(tempFilePath + ".wal"));
+            Files.deleteIfExists(Path.of(tempFilePath + ".legacy"));
         }
     }
 
+    @Test
+    void testLegacyFileIsMigratedToTheRecordFormat() throws IOException {
+        Path directory = Files.createTempDirectory("legacy_users");
+        Path usersPath = directory.resolve("users.txt");
+        try {
+            User legacyUser = new User("user1", "password1");
+            legacyUser.increaseBalance(MicroUnits.of(50.0));
+            legacyUser.addPurchase(new Purchase("ETH", MicroUnits.of(2.0), MicroUnits.of(3000.0)));
+            saveUsersToFile(usersPath, legacyUser);
+            new FileDatabase(usersPath).close();
+
+            try (UserRecordReader reader = new UserRecordReader(Files.newInputStream(usersPath))) {
+                User migrated = reader.read();
+                assertEquals(legacyUser, migrated, "The users file should be rewritten in the record format!");
+                assertEquals(MicroUnits.of(50.0), migrated.getBalance(), "Balance should survive the migration!");
+                assertEquals(MicroUnits.of(2.0), migrated.getAmountOfAsset("ETH"),
+                    "Purchases should survive the migration!");
+            }
+            assertTrue(Files.exists(directory.resolve("users.txt.legacy")), "The old file should be kept as backup!");
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testLegacyFileWithDoublePricesIsMigratedToMicroUnits() throws IOException {
+        Path directory = Files.createTempDirectory("legacy_users");
+        Path usersPath = directory.resolve("users.txt");
+        try {
+            Files.write(usersPath, Base64.getDecoder().decode(DOUBLE_USER_STREAM));
+            new FileDatabase(usersPath).close();
+
+            try (UserRecordReader reader = new UserRecordReader(Files.newInputStream(usersPath))) {
+                User migrated = reader.read();
+                assertEquals("user1", migrated.getUsername(), "The user should survive the migration!");
+                assertEquals(MicroUnits.of(50.0), migrated.getBalance(), "The double balance should be converted!");
+                assertEquals(List.of(new Purchase("ETH", MicroUnits.of(2.0), MicroUnits.of(3000.0))),
+                    List.copyOf(migrated.getPurchases()), "The double amounts and prices should be converted!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testUnversionedLogRecordsAreReplayedAsVersionOne() throws IOException {
+        Path directory = Files.createTempDirectory("wal_users");
+        Path usersPath = directory.resolve("users.txt");
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(record)) {
+                output.writeByte(1);
+                output.writeUTF("user1");
+                output.writeUTF("password1");
+                output.writeDouble(100.0);
+                output.writeInt(0);
+            }
+            try (WriteAheadLog writeAheadLog = new WriteAheadLog(directory.resolve("users.txt.wal"))) {
+                writeAheadLog.sync(writeAheadLog.append(record.toByteArray()));
+            }
+
+            try (FileDatabase database = new FileDatabase(usersPath)) {
+                assertEquals(MicroUnits.of(100.0), database.getUserByUsername("user1").getBalance(),
+                    "A record written before the version was logged should be read as version 1!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testRestartReplaysTheWriteAheadLog() throws IOException {
+        Path directory = Files.createTempDirectory("wal_users");
+        Path usersPath = directory.resolve("users.txt");
+        try {
+            try (FileDatabase database = new FileDatabase(usersPath)) {
+                User user = new User("user1", "password1");
+                database.addUser(user);
+                user.increaseBalance(MicroUnits.of(100.0));
+                user.addPurchase(new Purchase("BTC", MicroUnits.of(0.5), MicroUnits.of(40000.0)));
+                database.updateUser(user);
+            }
+
+            try (FileDatabase restarted = new FileDatabase(usersPath)) {
+                User user = restarted.getUserByUsername("user1");
+                assertEquals(MicroUnits.of(100.0), user.getBalance(), "Balance should be restored from the log!");
+                assertEquals(MicroUnits.of(0.5), user.getAmountOfAsset("BTC"),
+                    "Purchases should be restored from the log!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testSnapshotIsTakenAndTheLogTruncated() throws IOException {
+        Path directory = Files.createTempDirectory("wal_users");
+        Path usersPath = directory.resolve("users.txt");
+        Path walPath = directory.resolve("users.txt.wal");
+        try {
+            try (FileDatabase database = new FileDatabase(usersPath, 3)) {
+                database.addUser(new User("user1", "password1"));
+                database.addUser(new User("user2", "password2"));
+                database.addUser(new User("user3", "password3"));
+                database.addUser(new User("user4", "password4"));
+            }
+            assertTrue(Files.exists(usersPath), "A snapshot should be written after 3 records!");
+            assertTrue(Files.size(walPath) > 0, "The log should hold only the record after the snapshot!");
+
+            try (FileDatabase restarted = new FileDatabase(usersPath, 3)) {
+                assertEquals(4, restarted.getUsers().size(),
+                    "Users from both the snapshot and the log should be restored!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testSnapshotHoldsTheLoggedStateOfAUserAndNotItsLiveState() throws IOException {
+        Path directory = Files.createTempDirectory("wal_users");
+        Path usersPath = directory.resolve("users.txt");
+        try {
+            User trader = new User("trader", "password1");
+            try (FileDatabase database = new FileDatabase(usersPath, 2)) {
+                trader.increaseBalance(MicroUnits.of(100.0));
+                database.addUser(trader);
+                // a trade that is still changing the user when the next record triggers the snapshot
+                trader.decreaseBalance(MicroUnits.of(40.0));
+                database.addUser(new User("other", "password2"));
+            }
+            assertTrue(Files.exists(usersPath), "A snapshot should be written after 2 records!");
+
+            try (FileDatabase restarted = new FileDatabase(usersPath, 2)) {
+                assertEquals(MicroUnits.of(100.0), restarted.getUserByUsername("trader").getBalance(),
+                    "The snapshot should hold the last logged state of the user!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testWriteBehindCoalescesUpdatesUntilClose() throws IOException {
+        Path directory = Files.createTempDirectory("write_behind_users");
+        Path usersPath = directory.resolve("users.txt");
+        Path walPath = directory.resolve("users.txt.wal");
+        try {
+            try (FileDatabase database = new FileDatabase(usersPath, 100,
+                new WriteBehindPolicy(Duration.ofHours(1), 100))) {
+                User user = new User("user1", "password1");
+                database.addUser(user);
+                for (int i = 0; i < 10; i++) {
+                    user.increaseBalance(MicroUnits.of(10.0));
+                    database.updateUser(user);
+                }
+                assertEquals(0, Files.size(walPath), "Dirty users should not be written before a flush!");
+            }
+
+            try (WriteAheadLog log = new WriteAheadLog(walPath)) {
+                log.replay(record -> { });
+                assertEquals(1, log.getRecordsCount(), "Changes of the same user should be written as one record!");
+            }
+            try (FileDatabase restarted = new FileDatabase(usersPath)) {
+                assertEquals(MicroUnits.of(100.0), restarted.getUserByUsername("user1").getBalance(),
+                    "The last state of the user should be flushed on close!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void testWriteBehindFlushesWhenEnoughUsersAreDirty() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("write_behind_users");
+        Path usersPath = directory.resolve("users.txt");
+        Path walPath = directory.resolve("users.txt.wal");
+        try {
+            try (FileDatabase database = new FileDatabase(usersPath, 100,
+                new WriteBehindPolicy(Duration.ofHours(1), 2))) {
+                database.addUser(new User("user1", "password1"));
+                database.addUser(new User("user2", "password2"));
+
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (Files.size(walPath) == 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertTrue(Files.size(walPath) > 0, "Dirty users should be flushed once there are enough of them!");
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
     private void saveUsersToFile(Path filePath, User... users) throws IOException {
         try (ObjectOutputStream userOutputStream = new ObjectOutputStream(new FileOutputStream(filePath.toFile()))) {
             for (User user : users) {
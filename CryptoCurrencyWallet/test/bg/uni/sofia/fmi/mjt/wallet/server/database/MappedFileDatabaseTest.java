@@ -0,0 +1,221 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database;
+
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.MicroUnits;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.Purchase;
+import bg.uni.sofia.fmi.mjt.wallet.server.database.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedFileDatabaseTest {
+    // right after the 16-byte file header
+    private static final long FIRST_SLOT_OFFSET = 16;
+    private static final int SLOT_SIZE = 256;
+
+    private Path directory;
+    private Path usersPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("mapped_users");
+        usersPath = directory.resolve("users.db");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testAddedUserIsFound() throws IOException {
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = new User("user1", "password1");
+            database.addUser(user);
+
+            assertTrue(database.checkIfUserExists("user1"), "Mapped Database should contain the user!");
+            assertEquals(user, database.getUserByUsername("user1"), "Mapped Database should return the user!");
+            assertFalse(database.checkIfUserExists("user2"), "Mapped Database should not contain other users!");
+            assertNull(database.getUserByUsername("user2"), "Mapped Database should return null for missing users!");
+        }
+    }
+
+    @Test
+    void testUsersSurviveRestart() throws IOException {
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = new User("user1", "password1");
+            database.addUser(user);
+            user.increaseBalance(MicroUnits.of(100.0));
+            user.addPurchase(new Purchase("BTC", MicroUnits.of(0.5), MicroUnits.of(40000.0)));
+            database.updateUser(user);
+            database.addUser(new User("user2", "password2"));
+        }
+
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            assertTrue(database.checkIfUserExists("user2"), "Users should be indexed on startup!");
+            User user = database.getUserByUsername("user1");
+            assertEquals(MicroUnits.of(100.0), user.getBalance(), "The last update of the user should be read back!");
+            assertEquals(MicroUnits.of(0.5), user.getAmountOfAsset("BTC"),
+                "Purchases of the user should be read back!");
+            assertEquals(2, database.getUsers().size(), "Mapped Database should contain 2 users!");
+        }
+    }
+
+    @Test
+    void testPortfolioBiggerThanOneSlotIsChainedAndCutBackOnShrink() throws IOException {
+        User user = new User("user1", "password1");
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            database.addUser(user);
+            for (int i = 0; i < 100; i++) {
+                user.addPurchase(new Purchase("ASSET" + i, MicroUnits.of(i), MicroUnits.of(10.0 * i)));
+            }
+            database.updateUser(user);
+        }
+        long fileSize = Files.size(usersPath);
+
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User read = database.getUserByUsername("user1");
+            assertEquals(100, read.getPurchases().size(), "All purchases should be read from the chain of slots!");
+            assertEquals(MicroUnits.of(99.0), read.getAmountOfAsset("ASSET99"),
+                "The last purchase should be read back!");
+
+            for (int i = 1; i < 100; i++) {
+                read.removePurchase("ASSET" + i);
+            }
+            database.updateUser(read);
+            for (int i = 0; i < 200; i++) {
+                database.addUser(new User("other" + i, "password"));
+            }
+        }
+
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            assertEquals(1, database.getUserByUsername("user1").getPurchases().size(),
+                "The shrunk portfolio should be read back!");
+            assertEquals(201, database.getUsers().size(), "Mapped Database should contain 201 users!");
+        }
+        assertEquals(fileSize, Files.size(usersPath), "Slots freed by the shrink should be reused!");
+    }
+
+    @Test
+    void testFileKeepsThePreviousRecordUntilTheUpdateIsSynced() throws IOException {
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = new User("user1", "password1");
+            user.increaseBalance(MicroUnits.of(10.0));
+            database.addUser(user);
+        }
+
+        Path crashedPath = directory.resolve("crashed.db");
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath, Duration.ofHours(1))) {
+            User user = database.getUserByUsername("user1");
+            user.increaseBalance(MicroUnits.of(10.0));
+            database.updateUser(user);
+            // the file as a crash before the next sync would leave it
+            Files.copy(usersPath, crashedPath);
+        }
+
+        try (MappedFileDatabase crashed = new MappedFileDatabase(crashedPath)) {
+            assertEquals(MicroUnits.of(10.0), crashed.getUserByUsername("user1").getBalance(),
+                "An update that was not synced should leave the previous record in place!");
+        }
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            assertEquals(MicroUnits.of(20.0), database.getUserByUsername("user1").getBalance(),
+                "Close should sync the update!");
+        }
+    }
+
+    @Test
+    void testNewerHeadWinsWhenACrashLeavesBothHeadsOfAUser() throws IOException {
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = new User("user1", "password1");
+            user.increaseBalance(MicroUnits.of(10.0));
+            database.addUser(user);
+        }
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = database.getUserByUsername("user1");
+            user.increaseBalance(MicroUnits.of(10.0));
+            database.updateUser(user);
+        }
+        // marks the replaced first slot as a versioned head of generation 0 again, as if the sync stopped
+        // before freeing it
+        try (FileChannel channel = FileChannel.open(usersPath, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x41}), FIRST_SLOT_OFFSET);
+        }
+
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            assertEquals(MicroUnits.of(20.0), database.getUserByUsername("user1").getBalance(),
+                "The head of the newer generation should be read!");
+            assertEquals(1, database.getUsers().size(), "Mapped Database should contain 1 user!");
+        }
+    }
+
+    @Test
+    void testRecordsOfAnOlderLayoutAreReadNextToTheUpdatedOnes() throws IOException {
+        writeVersionOneFile(new User("user1", "password1", MicroUnits.of(12.5), List.of()),
+            new User("user2", "password2", MicroUnits.of(7.5), List.of()));
+
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User user = database.getUserByUsername("user1");
+            user.reserveMoney(MicroUnits.of(2.5));
+            database.updateUser(user);
+        }
+
+        // the header keeps the version of the old records, so there is no step at which a crash could make
+        // the records of either layout be read in the other one
+        try (MappedFileDatabase database = new MappedFileDatabase(usersPath)) {
+            User updated = database.getUserByUsername("user1");
+            assertEquals(MicroUnits.of(10.0), updated.getBalance(), "The updated record should be read!");
+            assertEquals(MicroUnits.of(2.5), updated.getReservedBalance(),
+                "The reservation of the updated record should be read!");
+            assertEquals(MicroUnits.of(7.5), database.getUserByUsername("user2").getBalance(),
+                "The record of the older layout should still be read in its layout!");
+        }
+    }
+
+    @Test
+    void testOpeningAnotherFileThrows() throws IOException {
+        Files.writeString(usersPath, "not a users file");
+        assertThrows(UncheckedIOException.class, () -> new MappedFileDatabase(usersPath),
+            "Mapped Database should not open a file in another format!");
+    }
+
+    /**
+     * Writes a file of version 1, with record version 1 in the header and a record of one slot per user.
+     */
+    private void writeVersionOneFile(User... users) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate((int) FIRST_SLOT_OFFSET + users.length * SLOT_SIZE);
+        file.putInt(0x43575344).putShort((short) 1).putShort((short) 1).putInt(SLOT_SIZE);
+        for (int i = 0; i < users.length; i++) {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try (DataOutputStream output = new DataOutputStream(payload)) {
+                output.writeUTF(users[i].getUsername());
+                output.writeUTF(users[i].getPasswordHash());
+                output.writeDouble(MicroUnits.toDouble(users[i].getBalance()));
+                output.writeInt(0);
+            }
+            file.position((int) FIRST_SLOT_OFFSET + i * SLOT_SIZE);
+            file.put((byte) 1).putInt(-1).putShort((short) payload.size()).put(payload.toByteArray());
+        }
+        Files.write(usersPath, file.array());
+    }
+}
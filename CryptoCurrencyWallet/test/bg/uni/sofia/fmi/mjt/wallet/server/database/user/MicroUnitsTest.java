@@ -0,0 +1,55 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MicroUnitsTest {
+    @Test
+    void testOfRoundsToTheNearestMillionth() {
+        assertEquals(100_000, MicroUnits.of(0.1), "A decimal value should be converted exactly!");
+        assertEquals(1, MicroUnits.of(0.0000007), "The value should be rounded to the nearest millionth!");
+        assertEquals(-2_500_000, MicroUnits.of(-2.5), "A negative value should be converted!");
+        assertThrows(ArithmeticException.class, () -> MicroUnits.of(Double.NaN),
+            "A value that is not a number should not be converted!");
+        assertThrows(ArithmeticException.class, () -> MicroUnits.of(1e13),
+            "A value that does not fit in a long of millionths should not be converted!");
+    }
+
+    @Test
+    void testMultiplyAndDivideRoundDown() {
+        assertEquals(MicroUnits.of(60.0), MicroUnits.multiply(MicroUnits.of(0.0012), MicroUnits.of(50000.0)),
+            "An amount times a price should be the money it is worth!");
+        assertEquals(MicroUnits.of(0.0012), MicroUnits.divide(MicroUnits.of(60.0), MicroUnits.of(50000.0)),
+            "Money over a price should be the amount it buys!");
+        assertEquals(333_333, MicroUnits.divide(MicroUnits.of(1.0), MicroUnits.of(3.0)),
+            "A quotient should be rounded down!");
+        assertEquals(-1, MicroUnits.multiply(-1, 1), "A negative product should be rounded down!");
+        assertThrows(ArithmeticException.class, () -> MicroUnits.divide(1, 0), "Division by zero should fail!");
+    }
+
+    @Test
+    void testRoundingUpVariantsRoundUpOnlyInexactResults() {
+        assertEquals(333_334, MicroUnits.divideRoundingUp(MicroUnits.of(1.0), MicroUnits.of(3.0)),
+            "An inexact quotient should be rounded up!");
+        assertEquals(MicroUnits.of(0.0012), MicroUnits.divideRoundingUp(MicroUnits.of(60.0), MicroUnits.of(50000.0)),
+            "An exact quotient should not be changed!");
+        assertEquals(1, MicroUnits.multiplyRoundingUp(1, 1), "An inexact product should be rounded up!");
+        assertEquals(MicroUnits.of(15.0), MicroUnits.multiplyRoundingUp(MicroUnits.of(10.0), MicroUnits.of(1.5)),
+            "An exact product should not be changed!");
+    }
+
+    @Test
+    void testMultiplyAndDivideDoNotOverflowInBetween() {
+        long amount = MicroUnits.of(1_000_000.0);
+        long price = MicroUnits.of(100_000.0);
+
+        assertEquals(MicroUnits.of(100_000_000_000.0), MicroUnits.multiply(amount, price),
+            "A product that fits should be returned even if the unscaled one does not!");
+        assertEquals(MicroUnits.of(10.0), MicroUnits.divide(amount, MicroUnits.of(100_000.0)),
+            "A quotient that fits should be returned even if the scaled dividend does not!");
+        assertThrows(ArithmeticException.class, () -> MicroUnits.multiply(Long.MAX_VALUE, Long.MAX_VALUE),
+            "A product that does not fit should fail!");
+    }
+}
@@ -0,0 +1,116 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserRecordReaderTest {
+    @Test
+    void testReadReturnsTheWrittenUsers() throws IOException {
+        User first = new User("user1", "hash1", MicroUnits.of(12.5),
+            Set.of(new Purchase("BTC", MicroUnits.of(0.25), MicroUnits.of(40000.0)),
+                new Purchase("ETH", MicroUnits.of(3.0), MicroUnits.of(2500.0))));
+        User second = new User("user2", "hash2");
+        byte[] bytes = write(first, second);
+
+        try (UserRecordReader reader = new UserRecordReader(new ByteArrayInputStream(bytes))) {
+            User readFirst = reader.read();
+            assertEquals(first, readFirst, "First user should be read first!");
+            assertEquals(MicroUnits.of(12.5), readFirst.getBalance(), "Balance should be read!");
+            assertEquals(List.copyOf(first.getPurchases()), List.copyOf(readFirst.getPurchases()), "Purchases should be read!");
+            assertEquals(second, reader.read(), "Second user should be read second!");
+            assertNull(reader.read(), "There should be no more users!");
+        }
+    }
+
+    @Test
+    void testReadReturnsTheReservationsOfTheUsers() throws IOException {
+        User user = new User("user1", "hash1", MicroUnits.of(1.0), List.of(), MicroUnits.of(20.0),
+            List.of(new Purchase("DOGE", MicroUnits.of(10.0), MicroUnits.of(1.25))));
+
+        try (UserRecordReader reader = new UserRecordReader(new ByteArrayInputStream(write(user)))) {
+            User readUser = reader.read();
+            assertEquals(MicroUnits.of(20.0), readUser.getReservedBalance(), "Reserved balance should be read!");
+            assertEquals(List.copyOf(user.getReservedAssets()), List.copyOf(readUser.getReservedAssets()),
+                "Reserved assets should be read!");
+        }
+    }
+
+    @Test
+    void testVersionTwoRecordsHaveNoReservations() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeUTF("user1");
+            output.writeUTF("hash1");
+            output.writeLong(MicroUnits.of(12.5));
+            output.writeInt(0);
+        }
+
+        User user = UserRecordReader.readUser(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 2);
+
+        assertEquals(MicroUnits.of(12.5), user.getBalance(), "The balance should be read!");
+        assertEquals(0, user.getReservedBalance(), "Nothing should be reserved!");
+        assertEquals(List.of(), List.copyOf(user.getReservedAssets()), "No asset should be reserved!");
+    }
+
+    @Test
+    void testVersionOneRecordsAreConvertedToMicroUnits() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeUTF("user1");
+            output.writeUTF("hash1");
+            output.writeDouble(12.5);
+            output.writeInt(1);
+            output.writeUTF("BTC");
+            output.writeDouble(0.25);
+            output.writeDouble(40000.0);
+        }
+
+        User user = UserRecordReader.readUser(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+
+        assertEquals(MicroUnits.of(12.5), user.getBalance(), "The double balance should be converted!");
+        assertEquals(List.of(new Purchase("BTC", MicroUnits.of(0.25), MicroUnits.of(40000.0))),
+            List.copyOf(user.getPurchases()), "The double amount and price should be converted!");
+    }
+
+    @Test
+    void testReadThrowsIOExceptionWhenTheFileIsCutShort() throws IOException {
+        byte[] bytes = write(new User("user1", "hash1"));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+
+        try (UserRecordReader reader = new UserRecordReader(new ByteArrayInputStream(truncated))) {
+            reader.read();
+            assertThrows(IOException.class, reader::read,
+                "Read should throw IOException when the end marker is missing!");
+        }
+    }
+
+    @Test
+    void testConstructorThrowsIOExceptionForAnotherFormat() {
+        byte[] bytes = {(byte) 0xAC, (byte) 0xED, 0, 5, 0, 0};
+        assertThrows(IOException.class, () -> new UserRecordReader(new ByteArrayInputStream(bytes)),
+            "Reader should throw IOException when the magic does not match!");
+    }
+
+    private static byte[] write(User... users) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (UserRecordWriter writer = new UserRecordWriter(bytes)) {
+            for (User user : users) {
+                writer.write(user);
+            }
+            writer.finish();
+        }
+        return bytes.toByteArray();
+    }
+}
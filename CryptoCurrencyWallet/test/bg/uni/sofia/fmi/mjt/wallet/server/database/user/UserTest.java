@@ -0,0 +1,48 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserTest {
+    @Test
+    void testPurchasesAreSortedByAssetId() {
+        User user = new User("user1", "hash1");
+        user.addPurchase(new Purchase("ETH", 1, 10));
+        user.addPurchase(new Purchase("BTC", 2, 20));
+        user.addPurchase(new Purchase("DOGE", 3, 30));
+
+        assertEquals(List.of("BTC", "DOGE", "ETH"), user.getPurchases().stream().map(Purchase::assetId).toList(),
+            "Purchases should be sorted by asset id!");
+        assertThrows(UnsupportedOperationException.class, () -> user.getPurchases().clear(),
+            "Purchases should not be changed through the returned view!");
+    }
+
+    @Test
+    void testAddPurchaseReplacesTheHoldingOfTheSameAsset() {
+        User user = new User("user1", "hash1");
+        user.addPurchase(new Purchase("BTC", 2, 20));
+        user.addPurchase(new Purchase("BTC", 5, 30));
+
+        assertEquals(1, user.getPurchases().size(), "There should be a single holding per asset!");
+        assertEquals(5, user.getAmountOfAsset("BTC"), "The amount of the last purchase should be kept!");
+        assertEquals(30, user.getAvgPrice("BTC"), "The price of the last purchase should be kept!");
+    }
+
+    @Test
+    void testRemovePurchase() {
+        User user = new User("user1", "hash1");
+        user.addPurchase(new Purchase("BTC", 2, 20));
+
+        user.removePurchase("BTC");
+
+        assertFalse(user.containsAsset("BTC"), "The removed asset should not be held!");
+        assertEquals(0, user.getAmountOfAsset("BTC"), "An asset that is not held should have no amount!");
+        assertTrue(user.getPurchases().isEmpty(), "There should be no purchases left!");
+    }
+}
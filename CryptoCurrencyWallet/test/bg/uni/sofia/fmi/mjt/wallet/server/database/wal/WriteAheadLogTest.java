@@ -0,0 +1,92 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.database.wal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WriteAheadLogTest {
+    private Path logPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        logPath = Files.createTempFile("wal", ".log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(logPath);
+    }
+
+    @Test
+    void testReplayReturnsSyncedRecordsInOrder() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(logPath)) {
+            log.append(bytes("first"));
+            long sequenceNumber = log.append(bytes("second"));
+            log.sync(sequenceNumber);
+            assertEquals(2, log.getRecordsCount(), "Both records should be in the log file!");
+        }
+
+        assertEquals(List.of("first", "second"), replay(), "Replay should return the records in append order!");
+    }
+
+    @Test
+    void testReplayDropsATornRecordAtTheEnd() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(logPath)) {
+            log.sync(log.append(bytes("complete")));
+        }
+        long intactSize = Files.size(logPath);
+        byte[] tornRecord = ByteBuffer.allocate(10).putInt(100).putInt(0).array();
+        Files.write(logPath, tornRecord, StandardOpenOption.APPEND);
+
+        assertEquals(List.of("complete"), replay(), "Replay should stop before the torn record!");
+        assertEquals(intactSize, Files.size(logPath), "The torn record should be cut off the log!");
+    }
+
+    @Test
+    void testReplayDropsARecordWithWrongChecksum() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(logPath)) {
+            log.sync(log.append(bytes("first")));
+            log.sync(log.append(bytes("second")));
+        }
+        byte[] content = Files.readAllBytes(logPath);
+        content[content.length - 1] ^= 1;
+        Files.write(logPath, content);
+
+        assertEquals(List.of("first"), replay(), "Replay should stop at the corrupted record!");
+    }
+
+    @Test
+    void testTruncateDropsEveryRecord() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(logPath)) {
+            log.sync(log.append(bytes("first")));
+            log.append(bytes("not synced"));
+            log.truncate();
+            assertEquals(0, log.getRecordsCount(), "There should be no records after truncate!");
+        }
+
+        assertEquals(List.of(), replay(), "Replay should find no records after truncate!");
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(logPath)) {
+            log.replay(record -> records.add(StandardCharsets.UTF_8.decode(record).toString()));
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package bg.uni.sofia.fmi.mjt.wallet.server.reactor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerPoolTest {
+    private WorkerPool workerPool;
+    private final CountDownLatch blocker = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        blocker.countDown();
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    void testSubmitRejectsTasksWhenQueueIsFull() throws InterruptedException {
+        workerPool = new WorkerPool(1, 1, RejectionPolicy.REJECT);
+        CountDownLatch started = new CountDownLatch(1);
+
+        assertTrue(workerPool.submit(() -> {
+            started.countDown();
+            await(blocker);
+        }), "First task should be executed by the only worker!");
+        assertTrue(started.await(5, TimeUnit.SECONDS), "First task should have started!");
+        assertTrue(workerPool.submit(() -> { }), "Second task should wait in the queue!");
+        assertFalse(workerPool.submit(() -> { }), "Third task should be rejected because the queue is full!");
+
+        WorkerPoolMetrics metrics = workerPool.getMetrics();
+        assertEquals(3, metrics.submittedTasks(), "All submitted tasks should be counted!");
+        assertEquals(1, metrics.rejectedTasks(), "The rejected task should be counted!");
+        assertEquals(1, metrics.queueDepth(), "One task should be waiting in the queue!");
+    }
+
+    @Test
+    void testSubmitRunsTaskOnCallerThreadWhenQueueIsFullAndPolicyIsCallerRuns() throws InterruptedException {
+        workerPool = new WorkerPool(1, 1, RejectionPolicy.CALLER_RUNS);
+        CountDownLatch started = new CountDownLatch(1);
+        workerPool.submit(() -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS), "First task should have started!");
+        workerPool.submit(() -> { });
+
+        Thread caller = Thread.currentThread();
+        boolean[] ranOnCaller = new boolean[1];
+        assertTrue(workerPool.submit(() -> ranOnCaller[0] = Thread.currentThread() == caller),
+            "Task should be accepted when the policy is CALLER_RUNS!");
+        assertTrue(ranOnCaller[0], "Task should have been executed on the submitting thread!");
+        assertEquals(1, workerPool.getMetrics().callerRanTasks(), "The task executed by the caller should be counted!");
+    }
+
+    @Test
+    void testMetricsCountCompletedTasks() throws InterruptedException {
+        workerPool = new WorkerPool(2, 10, RejectionPolicy.REJECT);
+        CountDownLatch done = new CountDownLatch(5);
+        for (int i = 0; i < 5; i++) {
+            workerPool.submit(done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS), "All tasks should be executed!");
+        workerPool.shutdown();
+        assertEquals(5, workerPool.getMetrics().completedTasks(), "All tasks should be counted as completed!");
+    }
+
+    @Test
+    void testConstructorThrowsIllegalArgumentExceptionWhenThreadsCountIsNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkerPool(0, 10, RejectionPolicy.REJECT),
+            "Worker pool should not be created without threads!");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}